@@ -20,9 +20,11 @@ import bftsmart.tom.util.TOMUtil;
 import org.slf4j.LoggerFactory;
 
 import java.security.PublicKey;
-import java.security.Signature;
-import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 
@@ -33,7 +35,6 @@ public class ClientData {
     ReentrantLock clientLock = new ReentrantLock();
 
     private int clientId;
-    //private PublicKey publicKey = null;
 
     private int session = -1;
 
@@ -46,7 +47,10 @@ public class ClientData {
     //anb: new code to deal with client requests that arrive after their execution
     private RequestList orderedRequests = new RequestList(5);
 
-    private Signature signatureVerificator = null;
+    //requests that arrived ahead of lastMessageReceived + 1 but inside the client window
+    private TreeMap<Integer, TOMMessage> heldRequests = new TreeMap<>();
+
+    private PublicKey publicKey = null;
     
     /**
      * Class constructor. Just store the clientId and creates a signature
@@ -58,13 +62,8 @@ public class ClientData {
     public ClientData(int clientId, PublicKey publicKey) {
         this.clientId = clientId;
         if(publicKey != null) {
-            try {
-                signatureVerificator = Signature.getInstance("SHA1withRSA");
-                signatureVerificator.initVerify(publicKey);
-                LOGGER.debug("Signature verifier initialized for client {}", clientId);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            this.publicKey = publicKey;
+            LOGGER.debug("Signature verifier initialized for client {}", clientId);
         }
     }
 
@@ -112,13 +111,51 @@ public class ClientData {
         return lastMessageReceivedTime;
     }
 
+    /**
+     * Keeps a request whose sequence is ahead of the next expected one until
+     * the missing sequences arrive.
+     *
+     * @param request the out of order request
+     * @return false if a request with the same sequence is already held
+     */
+    public boolean holdRequest(TOMMessage request) {
+        return heldRequests.putIfAbsent(request.getSequence(), request) == null;
+    }
+
+    /**
+     * Removes the held requests that follow lastMessageReceived without gaps,
+     * in sequence order. Held requests at or below lastMessageReceived are
+     * discarded, since that sequence was already accepted.
+     *
+     * @return the requests that can now be accepted, possibly empty
+     */
+    public List<TOMMessage> pollHeldRequests() {
+        if (heldRequests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        heldRequests.headMap(lastMessageReceived, true).clear();
+
+        List<TOMMessage> ready = new ArrayList<>();
+        int next = lastMessageReceived + 1;
+        TOMMessage request;
+        while ((request = heldRequests.remove(next)) != null) {
+            ready.add(request);
+            next++;
+        }
+        return ready;
+    }
+
+    public int getHeldRequestsCount() {
+        return heldRequests.size();
+    }
+
+    public void clearHeldRequests() {
+        heldRequests.clear();
+    }
+
     public boolean verifySignature(byte[] message, byte[] signature) {
-        if(signatureVerificator != null) {
-            try {
-                return TOMUtil.verifySignature(signatureVerificator, message, signature);
-            } catch (SignatureException ex) {
-                System.err.println("Error in processing client "+clientId+" signature: "+ex.getMessage());
-            }
+        if(publicKey != null) {
+            return TOMUtil.verifySignature(publicKey, message, signature);
         }
         return false;
     }
@@ -164,4 +201,20 @@ public class ClientData {
         }
     }
 
+    /**
+     * Returns the full reply of an ordered request, even if only its digest
+     * was sent to the client.
+     *
+     * @param reqSequence the sequence of the request
+     * @return the full reply, or null if it is not cached
+     */
+    public TOMMessage getFullReply(int reqSequence) {
+        TOMMessage request = orderedRequests.getBySequence(reqSequence);
+        if(request != null) {
+            return request.fullReply != null ? request.fullReply : request.reply;
+        } else {
+            return null;
+        }
+    }
+
 }
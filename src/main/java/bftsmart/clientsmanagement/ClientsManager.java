@@ -18,14 +18,19 @@ package bftsmart.clientsmanagement;
 import bftsmart.communication.ServerCommunicationSystem;
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.leaderchange.RequestsTimer;
 import bftsmart.tom.server.RequestVerifier;
+import bftsmart.tom.util.BatchDigest;
+import bftsmart.tom.util.OperationBatch;
 import org.slf4j.LoggerFactory;
 import utils.codec.Base58Utils;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
@@ -304,12 +309,19 @@ public class ClientsManager {
         }
 
         // if the content of the request is invalid, ignore it
-        if (controller.getStaticConf().isBFT() && !verifier.isValidRequest(request.getContent())) return false;
+        if (controller.getStaticConf().isBFT() && !isValidRequest(request)) return false;
         
 //        request.receptionTime = System.nanoTime();
 
         request.receptionTime = System.currentTimeMillis();
 
+        // compute the request digest on the receiving (network) thread, before taking any lock;
+        // it is reused later when hashing the batches that contain this request
+        if (fromClient && request.serializedMessageDigest == null && request.getSerializedMessage() != null) {
+            request.serializedMessageDigest = BatchDigest.requestDigest(request.getSerializedMessage(),
+                    request.serializedMessageSignature);
+        }
+
         int clientId = request.getSender();
         boolean accounted = false;
 
@@ -343,6 +355,7 @@ public class ClientsManager {
             clientData.setLastMessageReceived(-1);
             clientData.getOrderedRequests().clear();
             clientData.getPendingRequests().clear();
+            clientData.clearHeldRequests();
         }
 
         if ((clientData.getLastMessageReceived() == -1) || //first message received or new session (see above)
@@ -351,21 +364,16 @@ public class ClientsManager {
 
             //it is a new message and I have to verify it's signature
             if (!request.signed
-                    || clientData.verifySignature(request.serializedMessage,
+                    || clientData.verifySignature(request.getSerializedMessage(),
                     request.serializedMessageSignature)) {
 
                 //I don't have the message but it is valid, I will
                 //insert it in the pending requests of this client
+                addPendingRequest(clientData, request, fromClient);
 
-                request.recvFromClient = fromClient;
-                clientData.getPendingRequests().add(request); 
-                clientData.setLastMessageReceived(request.getSequence());
-                clientData.setLastMessageReceivedTime(request.receptionTime);
-                clientDatasTotal.getAndIncrement();
-
-                //create a timer for this message
-                if (timer != null) {
-                    timer.watch(request);
+                //the requests held inside the client window may follow it now
+                for (TOMMessage held : clientData.pollHeldRequests()) {
+                    addPendingRequest(clientData, held, true);
                 }
 
                 accounted = true;
@@ -375,12 +383,22 @@ public class ClientsManager {
             if (clientData.getLastMessageReceived() >= request.getSequence()) {
                 //I already have/had this message
 
+                //reuse the digest of the pending copy if it carries exactly the same bytes
+                adoptDigest(request, clientData.getPendingRequests().getById(request.getId()));
+
                 //send reply if it is available
                 TOMMessage reply = clientData.getReply(request.getSequence());
                 
                 if (reply != null && cs != null) {
 
-                    if (reply.recvFromClient && fromClient) {
+                    if (fromClient && reply.getReqType() == TOMMessageType.REPLY_DIGEST
+                            && request.getReplyServer() == -1) {
+                        //the client did not get a valid reply from its designated replier
+                        //and asks every replica for the full reply
+                        LOGGER.info("[CACHE] send full reply [Sender: {}, sequence: {}, session: {}", reply.getSender(), reply.getSequence(), reply.getSession());
+                        cs.send(new int[]{request.getSender()}, clientData.getFullReply(request.getSequence()));
+
+                    } else if (reply.recvFromClient && fromClient) {
                         LOGGER.info("[CACHE] re-send reply [Sender: {}, sequence: {}, session: {}", reply.getSender(), reply.getSequence(), reply.getSession());
                         cs.send(new int[]{request.getSender()}, reply);
 
@@ -392,6 +410,16 @@ public class ClientsManager {
                     
                 }
                 accounted = true;
+            } else if (fromClient && request.getSequence() <= clientData.getLastMessageReceived()
+                    + controller.getStaticConf().getClientWindow()) {
+                //an earlier request of a pipelining client is still missing, hold
+                //this one until the gap is filled
+                if (!request.signed
+                        || clientData.verifySignature(request.getSerializedMessage(),
+                        request.serializedMessageSignature)) {
+                    clientData.holdRequest(request);
+                    accounted = true;
+                }
             } else {
                 //a too forward message... the client must be malicious
                 accounted = false;
@@ -404,6 +432,55 @@ public class ClientsManager {
         return accounted;
     }
 
+    private boolean isValidRequest(TOMMessage request) {
+        if (request.isOperationBatch()) {
+            //every operation of an operation batch is verified on its own
+            byte[][] operations = OperationBatch.unpack(request.getContent());
+            if (operations == null) {
+                LOGGER.warn("Malformed operation batch from client[{}], sequence[{}]!", request.getSender(),
+                        request.getSequence());
+                return false;
+            }
+            if (verifier == RequestVerifier.ACCEPT_ALL) {
+                return true;
+            }
+            for (byte[] operation : operations) {
+                if (!verifier.isValidRequest(operation)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (verifier == RequestVerifier.ACCEPT_ALL) {
+            return true;
+        }
+        return verifier.isValidRequest(request.getContent());
+    }
+
+    private void addPendingRequest(ClientData clientData, TOMMessage request, boolean fromClient) {
+        request.recvFromClient = fromClient;
+        clientData.getPendingRequests().add(request);
+        clientData.setLastMessageReceived(request.getSequence());
+        clientData.setLastMessageReceivedTime(request.receptionTime);
+        clientDatasTotal.getAndIncrement();
+
+        //create a timer for this message
+        if (timer != null) {
+            timer.watch(request);
+        }
+    }
+
+    private void adoptDigest(TOMMessage request, TOMMessage pending) {
+        if (pending == null || pending == request || pending.serializedMessageDigest == null
+                || request.serializedMessageDigest != null) {
+            return;
+        }
+        if (Objects.equals(pending.getSerializedView(), request.getSerializedView())
+                && Arrays.equals(pending.serializedMessageSignature, request.serializedMessageSignature)) {
+            request.serializedMessageDigest = pending.serializedMessageDigest;
+        }
+    }
+
     /**
      * Notifies the ClientsManager that these requests were already executed.
      * 
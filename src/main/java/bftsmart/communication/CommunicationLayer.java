@@ -96,6 +96,20 @@ public interface CommunicationLayer {
 	 */
 	void addMessageListener(SystemMessageType type, MessageListener listener);
 
+	/**
+	 * 接收队列中等待处理的消息数量；
+	 * 
+	 * @return
+	 */
+	int getReceivingQueueSize();
+
+	/**
+	 * 到各个节点的发送队列中尚未发送的消息数量之和；
+	 * 
+	 * @return
+	 */
+	int getSendingQueueSize();
+
 	/**
 	 * 启动通讯服务；
 	 */
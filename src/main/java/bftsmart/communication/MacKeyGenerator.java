@@ -1,12 +1,12 @@
 package bftsmart.communication;
 
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 
 import javax.crypto.Mac;
@@ -16,6 +16,7 @@ import javax.crypto.spec.PBEKeySpec;
 
 import org.bouncycastle.util.Arrays;
 
+import bftsmart.tom.util.SignatureScheme;
 import utils.io.BytesUtils;
 
 public class MacKeyGenerator {
@@ -136,26 +137,26 @@ public class MacKeyGenerator {
 
 	private static byte[] sign(PrivateKey key, byte[] bytes) {
 		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
+			Signature signatureEngine = SignatureScheme.forKey(key).newSignature();
 			signatureEngine.initSign(key);
 
 			signatureEngine.update(bytes);
 
 			byte[] signature = signatureEngine.sign();
 			return signature;
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
+		} catch (GeneralSecurityException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 	}
 
 	public static boolean verify(PublicKey key, byte[] bytes, byte[] signature) {
 		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
+			Signature signatureEngine = SignatureScheme.forKey(key).newSignature();
 			signatureEngine.initVerify(key);
 
 			signatureEngine.update(bytes);
 			return signatureEngine.verify(signature);
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
+		} catch (GeneralSecurityException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 	}
@@ -35,6 +35,7 @@ import bftsmart.tom.core.messages.ForwardedMessage;
 import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.ViewMessage;
 import bftsmart.tom.leaderchange.HeartBeatMessage;
+import bftsmart.tom.leaderchange.LeaseGrantMessage;
 import bftsmart.tom.leaderchange.LCMessage;
 import bftsmart.tom.leaderchange.LeaderRequestMessage;
 import bftsmart.tom.leaderchange.LeaderResponseMessage;
@@ -75,6 +76,7 @@ public class MessageHandler {
 					|| (!tomLayer.controller.getStaticConf().isUseMACs()) //
 					|| consMsg.authenticated) {
 
+				tomLayer.heartBeatTimer.receiveConsensusMessage(consMsg);
 				acceptor.deliver(consMsg);
 
 			} else if (consMsg.getType() == MessageFactory.ACCEPT && consMsg.getProof() != null) {
@@ -106,9 +108,10 @@ public class MessageHandler {
 					myMAC = macKey.generateMac(data);
 				}
 
-				if (recvMAC != null && myMAC != null && Arrays.equals(recvMAC, myMAC))
+				if (recvMAC != null && myMAC != null && Arrays.equals(recvMAC, myMAC)) {
+					tomLayer.heartBeatTimer.receiveConsensusMessage(consMsg);
 					acceptor.deliver(consMsg);
-				else {
+				} else {
 					LOGGER.error("(MessageHandler.processData) WARNING: invalid MAC from {}", sm.getSender());
 				}
 			} else {
@@ -118,6 +121,9 @@ public class MessageHandler {
 		} else if (sm instanceof HeartBeatMessage) {
 			// 心跳消息
 			tomLayer.heartBeatTimer.receiveHeartBeatMessage((HeartBeatMessage) sm);
+		} else if (sm instanceof LeaseGrantMessage) {
+			// 租约授权消息
+			tomLayer.heartBeatTimer.receiveLeaseGrantMessage((LeaseGrantMessage) sm);
 		} else if (sm instanceof ViewMessage) {
 			// 视图消息
 			// 通过该消息可更新本地视图
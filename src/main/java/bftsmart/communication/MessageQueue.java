@@ -2,6 +2,7 @@ package bftsmart.communication;
 
 import bftsmart.consensus.messages.ConsensusMessage;
 import bftsmart.tom.leaderchange.HeartBeatMessage;
+import bftsmart.tom.leaderchange.LeaseGrantMessage;
 import bftsmart.tom.leaderchange.LeaderRequestMessage;
 import bftsmart.tom.leaderchange.LeaderResponseMessage;
 import bftsmart.tom.leaderchange.LeaderStatusRequestMessage;
@@ -47,6 +48,14 @@ public interface MessageQueue {
 	 */
 	SystemMessage take(SystemMessageType type) throws InterruptedException;
 
+	/**
+	 * 队列中指定类型的消息数量；
+	 * 
+	 * @param type 消息类型
+	 * @return
+	 */
+	int size(SystemMessageType type);
+
 	public static enum QueueDirection {
 		/**
 		 * Socket消息接收队列
@@ -81,8 +90,8 @@ public interface MessageQueue {
 		public static MessageQueue.SystemMessageType typeOf(SystemMessage sm) {
 			if (sm instanceof ConsensusMessage) {
 				return MessageQueue.SystemMessageType.CONSENSUS;
-			} else if (sm instanceof HeartBeatMessage || sm instanceof LeaderRequestMessage
-					|| sm instanceof LeaderResponseMessage || sm instanceof LeaderStatusRequestMessage
+			} else if (sm instanceof HeartBeatMessage || sm instanceof LeaseGrantMessage
+					|| sm instanceof LeaderRequestMessage || sm instanceof LeaderResponseMessage || sm instanceof LeaderStatusRequestMessage
 					|| sm instanceof LeaderStatusResponseMessage) {
 				return MessageQueue.SystemMessageType.HEART;
 			} else {
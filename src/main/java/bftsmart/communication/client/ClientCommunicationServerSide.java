@@ -17,6 +17,8 @@ package bftsmart.communication.client;
 
 import bftsmart.tom.core.messages.TOMMessage;
 
+import java.util.List;
+
 /**
  * Methods that should be implemented by the server side of the client-server communication system
  *
@@ -24,6 +26,19 @@ import bftsmart.tom.core.messages.TOMMessage;
  */
 public interface ClientCommunicationServerSide {   
    public void send(int[] targets, TOMMessage sm, boolean serializeClassHeaders);
+
+   /**
+    * Sends the reply attached to each request ({@link TOMMessage#reply}) to the
+    * sender of the request. Implementations may coalesce the replies that go
+    * through the same connection into a single flush.
+    *
+    * @param requests the answered requests
+    */
+   public default void sendReplies(List<TOMMessage> requests) {
+      for (TOMMessage request : requests) {
+         send(new int[] { request.getSender() }, request.reply, false);
+      }
+   }
    public int[] getClients();
    public void setRequestReceiver(RequestReceiver requestReceiver);
    public void shutdown();
@@ -32,4 +32,16 @@ public interface ReplyListener {
          * @param reply the TOMMessage including the reply
          */
 	public void replyReceived(RequestContext context, TOMMessage reply);
+
+        /**
+         * Used to deliver a tentative reply (type TENTATIVE_REPLY) or the invalidation of
+         * a tentative reply (type TENTATIVE_INVALIDATION) of an ordered request. Tentative
+         * replies are sent right after the request is precomputed, before it is decided;
+         * listeners that want to use them must wait for a larger quorum of matching replies
+         * than for normal replies. They are ignored by default.
+         * @param context The context associated to the reply
+         * @param reply the TOMMessage including the tentative reply
+         */
+	public default void tentativeReplyReceived(RequestContext context, TOMMessage reply) {
+	}
 }
@@ -24,7 +24,6 @@ import bftsmart.util.SSLContextFactory;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
 import io.netty.channel.ChannelHandler.Sharable;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslHandler;
@@ -37,15 +36,11 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.net.ssl.SSLEngine;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.net.ConnectException;
 import java.nio.channels.ClosedChannelException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.Signature;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -65,8 +60,6 @@ import java.util.logging.Level;
 @Sharable
 public class NettyClientServerCommunicationSystemClientSide extends SimpleChannelInboundHandler<TOMMessage> implements CommunicationSystemClientSide {
 
-    private static final int DEFAULT_THREAD_SIZE = 1;
-
     private static final int RECONNECT_SECONDS = 30;
 
     private static final int CONNECT_TIME_OUT = 5000;
@@ -78,8 +71,6 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
     //******* EDUARDO END **************//
     private Map<Integer,NettyClientServerSession> sessionTable = new ConcurrentHashMap<>();
     private ReentrantReadWriteLock rl;
-    //the signature engine used in the system
-    private Signature signatureEngine;
     private int signatureLength;
     private volatile boolean closed = false;
 
@@ -95,8 +86,8 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
         super();
         this.sslSecurity = sslSecurity;
         this.clientId = clientId;
-        // 使用单线程即可，因为对于每个连接具有时序性的要求
-        this.workerGroup = new NioEventLoopGroup(DEFAULT_THREAD_SIZE);
+        // 所有客户端共享事件循环；每个连接固定在其中一个事件循环上，满足每个连接的时序性要求；
+        this.workerGroup = SharedClientEventLoop.acquire();
         try {
             SecretKeyFactory fac = SecretKeyFactory.getInstance("PBEWithMD5AndDES");
 
@@ -182,9 +173,6 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
                         // Configure the client.
 
                         //EventLoopGroup workerGroup = new NioEventLoopGroup();
-                        if( workerGroup == null){
-                            workerGroup = new NioEventLoopGroup();
-                        }
 
                         //try {
                         Bootstrap b = new Bootstrap();
@@ -277,9 +265,6 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
                     try {
                         // Configure the client.
                         //EventLoopGroup workerGroup = ctx.channel().eventLoop();
-                        if( workerGroup == null){
-                            workerGroup = new NioEventLoopGroup();
-                        }
 
                         //try {
                         Bootstrap b = new Bootstrap();
@@ -330,22 +315,7 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
         LOGGER.debug("[NettyClientServerCommunicationSystemClientSide] sending request from {} with sequence number {} to {}", sm.getSender(), sm.getSequence(), Arrays.toString(targets));
         if (sm.serializedMessage == null) {
             //serialize message
-            DataOutputStream dos = null;
-            try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                dos = new DataOutputStream(baos);
-                sm.wExternal(dos);
-                dos.flush();
-                sm.serializedMessage = baos.toByteArray();
-            } catch (IOException ex) {
-                LOGGER.error("Impossible to serialize message: {}", sm);
-            } finally {
-                try {
-                    dos.close();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
-            }
+            sm.serializedMessage = TOMMessage.messageToBytes(sm);
         }
 
         LOGGER.debug("[NettyClientServerCommunicationSystemClientSide] before sending request from {} with sequence number {} to {}", sm.getSender(), sm.getSequence(), Arrays.toString(targets));
@@ -396,23 +366,8 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
     @Override
     public void sign(TOMMessage sm) {
         //serialize message
-        DataOutputStream dos = null;
-        byte[] data = null;
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            dos = new DataOutputStream(baos);
-            sm.wExternal(dos);
-            dos.flush();
-            data = baos.toByteArray();
-            sm.serializedMessage = data;
-        } catch (IOException ex) {
-        } finally {
-            try {
-                dos.close();
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-        }
+        byte[] data = TOMMessage.messageToBytes(sm);
+        sm.serializedMessage = data;
 
         //******* EDUARDO BEGIN **************//
         //produce signature
@@ -423,19 +378,9 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
     }
 
     public byte[] signMessage(PrivateKey key, byte[] message) {
-        //long startTime = System.nanoTime();
+        // 使用进程内共享的签名引擎池，多个线程（以及多个客户端）可以并发签名；
         try {
-            if (signatureEngine == null) {
-                    signatureEngine = Signature.getInstance("SHA1withRSA");
-            }
-            byte[] result = null;
-
-            signatureEngine.initSign(key);
-            signatureEngine.update(message);
-            result = signatureEngine.sign();
-
-            //st.store(System.nanoTime() - startTime);
-            return result;
+            return TOMUtil.signMessage(key, message);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -444,6 +389,9 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
 
     @Override
     public void close() {
+        if (closed) {
+            return;
+        }
         this.closed = true;
         //Iterator sessions = sessionTable.values().iterator();
         rl.readLock().lock();
@@ -453,6 +401,7 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
             Channel c = ncss.getChannel();
             closeChannelAndEventLoop(c);
         }
+        SharedClientEventLoop.release();
     }
 
     private ChannelInitializer getChannelInitializer(boolean secure) throws NoSuchAlgorithmException{
@@ -504,8 +453,7 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
             if (c.parent() != null) {
                 c.parent().close();
             }
-            //c.eventLoop().shutdownGracefully();
-            workerGroup.shutdownGracefully();
+            // 事件循环由所有客户端共享，在 close 时释放引用；
     }
 
     private void scheduleReconnect(final ChannelHandlerContext ctx, int time){
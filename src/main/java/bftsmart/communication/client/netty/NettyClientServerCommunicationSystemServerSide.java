@@ -35,14 +35,13 @@ import utils.net.SSLSecurity;
 
 import javax.crypto.Mac;
 import javax.net.ssl.SSLEngine;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -270,35 +269,7 @@ public class NettyClientServerCommunicationSystemServerSide extends SimpleChanne
 	public void send(int[] targets, TOMMessage sm, boolean serializeClassHeaders) {
 
 		// serialize message
-		DataOutputStream dos = null;
-
-		byte[] data = null;
-		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			dos = new DataOutputStream(baos);
-			sm.wExternal(dos);
-			dos.flush();
-			data = baos.toByteArray();
-			sm.serializedMessage = data;
-		} catch (IOException ex) {
-			LOGGER.error("Error enconding message.");
-		} finally {
-			try {
-				dos.close();
-			} catch (IOException ex) {
-				LOGGER.error("Exception closing DataOutputStream: {}", ex.getMessage());
-			}
-		}
-
-		// replies are not signed in the current JBP version
-		sm.signed = false;
-		// produce signature if necessary (never in the current version)
-		if (sm.signed) {
-			// ******* EDUARDO BEGIN **************//
-			byte[] data2 = TOMUtil.signMessage(controller.getStaticConf().getRSAPrivateKey(), data);
-			// ******* EDUARDO END **************//
-			sm.serializedMessageSignature = data2;
-		}
+		serialize(sm);
 
 		for (int i = 0; i < targets.length; i++) {
 			rl.readLock().lock();
@@ -370,6 +341,55 @@ public class NettyClientServerCommunicationSystemServerSide extends SimpleChanne
 		}
 	}
 
+	/**
+	 * 把多个应答按照客户端连接分组写出，每个连接只 flush 一次；
+	 * <p>
+	 *
+	 * 连接尚未建立的客户端退回到 {@link #send(int[], TOMMessage, boolean)}；
+	 */
+	@Override
+	public void sendReplies(List<TOMMessage> requests) {
+		Set<Channel> written = new LinkedHashSet<>();
+		rl.readLock().lock();
+		try {
+			for (TOMMessage request : requests) {
+				TOMMessage reply = request.reply;
+				NettyClientServerSession ncss = sessionTable.get(request.getSender());
+				if (ncss == null) {
+					send(new int[] { request.getSender() }, reply, false);
+					continue;
+				}
+				serialize(reply);
+				reply.destination = request.getSender();
+				Channel channel = ncss.getChannel();
+				channel.write(reply);
+				written.add(channel);
+			}
+		} finally {
+			rl.readLock().unlock();
+		}
+		for (Channel channel : written) {
+			channel.flush();
+		}
+	}
+
+	/**
+	 * 序列化应答；按照应答的长度一次分配字节数组，直接写入，不经过中间的流；
+	 */
+	private void serialize(TOMMessage sm) {
+		sm.serializedMessage = TOMMessage.messageToBytes(sm);
+
+		// replies are not signed in the current JBP version
+		sm.signed = false;
+		// produce signature if necessary (never in the current version)
+		if (sm.signed) {
+			// ******* EDUARDO BEGIN **************//
+			byte[] data2 = TOMUtil.signMessage(controller.getStaticConf().getRSAPrivateKey(), sm.serializedMessage);
+			// ******* EDUARDO END **************//
+			sm.serializedMessageSignature = data2;
+		}
+	}
+
 	@Override
 	public int[] getClients() {
 
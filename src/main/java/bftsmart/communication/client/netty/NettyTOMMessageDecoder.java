@@ -17,6 +17,7 @@ package bftsmart.communication.client.netty;
 
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageView;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
@@ -26,8 +27,7 @@ import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +65,8 @@ public class NettyTOMMessageDecoder extends ByteToMessageDecoder {
     
     private boolean useMAC;
 
+    private final TOMMessageView view = new TOMMessageView();
+
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(NettyTOMMessageDecoder.class);
 
     
@@ -129,14 +131,11 @@ public class NettyTOMMessageDecoder extends ByteToMessageDecoder {
             buffer.readBytes(signature);
         }
 
-        DataInputStream dis = null;
         TOMMessage sm = null;
 
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            dis = new DataInputStream(bais);
-            sm = new TOMMessage();
-            sm.rExternal(dis);
+            // the content stays a view of data, which is kept as the serialized message
+            sm = view.wrap(ByteBuffer.wrap(data), 0).toMessage();
             sm.serializedMessage = data;
 
             if (signed == 1) {
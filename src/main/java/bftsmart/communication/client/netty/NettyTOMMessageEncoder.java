@@ -85,8 +85,7 @@ public class NettyTOMMessageEncoder extends MessageToByteEncoder<TOMMessage> {
         /* signature */
         if (signatureData != null)
         	buffer.writeBytes(signatureData);
-
-        context.flush();
+        // flushing is left to the writer, so that several messages can share one flush;
     }
 
     byte[] produceMAC(int id, byte[] data, int me) {
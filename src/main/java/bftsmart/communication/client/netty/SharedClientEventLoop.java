@@ -0,0 +1,49 @@
+package bftsmart.communication.client.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 进程内所有客户端代理共享的事件循环组；
+ * <p>
+ *
+ * 每个连接固定绑定在组内的一个事件循环上，因此同一连接上的消息仍然保持时序；
+ * 同一进程中创建大量客户端代理时，线程数量不再随代理数量增长；
+ * <p>
+ *
+ * 采用引用计数，最后一个代理关闭时释放线程；
+ */
+final class SharedClientEventLoop {
+
+	private static final int THREAD_SIZE = Runtime.getRuntime().availableProcessors();
+
+	private static EventLoopGroup group;
+
+	private static int references;
+
+	private SharedClientEventLoop() {
+	}
+
+	/**
+	 * 获取共享的事件循环组，每次获取都要对应一次 {@link #release()}；
+	 */
+	static synchronized EventLoopGroup acquire() {
+		if (group == null || group.isShuttingDown()) {
+			group = new NioEventLoopGroup(THREAD_SIZE, new DefaultThreadFactory("bftsmart-client", true));
+		}
+		references++;
+		return group;
+	}
+
+	static synchronized void release() {
+		if (references <= 0) {
+			return;
+		}
+		references--;
+		if (references == 0 && group != null) {
+			group.shutdownGracefully();
+			group = null;
+		}
+	}
+}
@@ -233,6 +233,24 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 		aggListeners.addListener(listener);
 	}
 
+	@Override
+	public int getReceivingQueueSize() {
+		int size = 0;
+		for (SystemMessageType type : SystemMessageType.values()) {
+			size += messageInQueue.size(type);
+		}
+		return size;
+	}
+
+	@Override
+	public int getSendingQueueSize() {
+		int size = 0;
+		for (MessageConnection conn : connections.values()) {
+			size += conn.getSendingQueueSize();
+		}
+		return size;
+	}
+
 	private synchronized AggregatedListeners getListeners(SystemMessageType messageType) {
 		AggregatedListeners aggListeners = listeners.get(messageType);
 		if (aggListeners == null) {
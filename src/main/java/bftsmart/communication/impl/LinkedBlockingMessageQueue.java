@@ -66,4 +66,16 @@ public class LinkedBlockingMessageQueue implements MessageQueue {
     	}
     	return null;
     }
+
+    @Override
+    public int size(SystemMessageType type) {
+        if (type == SystemMessageType.CONSENSUS) {
+            return consMsgQueue.size();
+        } else if (type == SystemMessageType.HEART) {
+            return heartMsgQueue.size();
+        } else if (type == SystemMessageType.LC) {
+            return lcMsgQueue.size();
+        }
+        return 0;
+    }
 }
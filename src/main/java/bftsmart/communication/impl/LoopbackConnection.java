@@ -68,6 +68,12 @@ public class LoopbackConnection implements MessageConnection {
 	public void clearSendingQueue() {
 	}
 
+	@Override
+	public int getSendingQueueSize() {
+		// 消息直接放入本地的接收队列；
+		return 0;
+	}
+
 	@Override
 	public AsyncFuture<SystemMessage, Void> send(SystemMessage message, boolean retrySending,
 			CompletedCallback<SystemMessage, Void> callback) {
@@ -66,4 +66,11 @@ public interface MessageConnection extends Closeable {
 	 */
 	void clearSendingQueue();
 
+	/**
+	 * 发送队列中尚未发送的消息数量；
+	 * 
+	 * @return
+	 */
+	int getSendingQueueSize();
+
 }
\ No newline at end of file
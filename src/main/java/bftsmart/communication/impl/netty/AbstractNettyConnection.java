@@ -101,6 +101,11 @@ public abstract class AbstractNettyConnection implements MessageConnection {
         outQueue.clear();
     }
 
+    @Override
+    public int getSendingQueueSize() {
+        return outQueue.size();
+    }
+
     @Override
     public synchronized void close() {
         if (!doWork) {
@@ -184,6 +184,11 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 		outQueue.clear();
 	}
 
+	@Override
+	public int getSendingQueueSize() {
+		return outQueue.size();
+	}
+
 	/**
 	 * Used to send packets to the remote server.
 	 */
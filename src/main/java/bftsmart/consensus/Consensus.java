@@ -47,7 +47,7 @@ public class Consensus {
     private TimestampValuePair quorumWrites = null;
     private HashSet<TimestampValuePair> writeSet = new HashSet<TimestampValuePair>();
 
-    private boolean precomputeRolled = false;
+    private volatile boolean precomputeRolled = false;
 
     private boolean precomputed = false;
 
@@ -36,8 +36,8 @@ public class Epoch implements Serializable {
     
     private final int timestamp; // Epochs's timestamp
     private final int me; // Process ID
-    private boolean[] writeSetted;
-    private boolean[] acceptSetted;
+    private VoteTally writeTally; // WRITE votes set in this epoch, counted by value
+    private VoteTally acceptTally; // ACCEPT votes set in this epoch, counted by value
     private byte[][] write; // WRITE values from other processes
     private byte[][] accept; // accepted values from other processes
     
@@ -68,6 +68,8 @@ public class Epoch implements Serializable {
 
     private boolean isRollback = false;
 
+    private transient volatile boolean tentativeRepliesSent = false; // tentative replies of the precompute results were sent
+
     /**
      * Creates a new instance of Epoch for acceptors
      * @param controller
@@ -87,11 +89,8 @@ public class Epoch implements Serializable {
         //int[] acceptors = manager.getAcceptors();
         int n = controller.getCurrentViewN();
 
-        writeSetted = new boolean[n];
-        acceptSetted = new boolean[n];
-
-        Arrays.fill(writeSetted, false);
-        Arrays.fill(acceptSetted, false);
+        writeTally = new VoteTally(n);
+        acceptTally = new VoteTally(n);
 
         if (timestamp == 0) {
             this.write = new byte[n][];
@@ -118,11 +117,8 @@ public class Epoch implements Serializable {
             byte[][] write = new byte[n][];
             byte[][] accept = new byte[n][];
             
-            boolean[] writeSetted = new boolean[n];
-            boolean[] acceptSetted = new boolean[n];
-
-            Arrays.fill(writeSetted, false);
-            Arrays.fill(acceptSetted, false);
+            int[] newPosition = new int[this.write.length];
+            Arrays.fill(newPosition, -1);
         
             for (int pid : lastView.getProcesses()) {
                 
@@ -134,8 +130,7 @@ public class Epoch implements Serializable {
                     write[currentPos] = this.write[lastPos];
                     accept[currentPos] = this.accept[lastPos];
 
-                    writeSetted[currentPos] = this.writeSetted[lastPos];
-                    acceptSetted[currentPos] = this.acceptSetted[lastPos];
+                    newPosition[lastPos] = currentPos;
 
                 }
             }
@@ -143,8 +138,8 @@ public class Epoch implements Serializable {
             this.write = write;
             this.accept = accept;
 
-            this.writeSetted = writeSetted;
-            this.acceptSetted = acceptSetted;
+            this.writeTally.remap(n, newPosition);
+            this.acceptTally.remap(n, newPosition);
 
             lastView = controller.getCurrentView();
             
@@ -305,7 +300,7 @@ public class Epoch implements Serializable {
         int p = this.controller.getCurrentViewPos(acceptor);
         if (p >=0 /*&& !writeSetted[p] && !isFrozen() */) { //it can only be setted once
             write[p] = value;
-            writeSetted[p] = true;
+            writeTally.vote(p, value);
         }
         //******* EDUARDO END **************//
     }
@@ -350,7 +345,7 @@ public class Epoch implements Serializable {
         int p = this.controller.getCurrentViewPos(acceptor);
         if (p >= 0 /*&& !strongSetted[p] && !isFrozen()*/) { //it can only be setted once
             accept[p] = value;
-            acceptSetted[p] = true;
+            acceptTally.vote(p, value);
         }
         //******* EDUARDO END **************//
     }
@@ -361,7 +356,7 @@ public class Epoch implements Serializable {
      * @return Amount of replicas from which this process received the specified value
      */
     public int countWrite(byte[] value) {
-        return count(writeSetted,write, value);
+        return writeTally.count(value);
     }
 
     /**
@@ -370,21 +365,7 @@ public class Epoch implements Serializable {
      * @return Amount of replicas from which this process accepted the specified value
      */
     public int countAccept(byte[] value) {
-        return count(acceptSetted,accept, value);
-    }
-
-    private int settedCount(boolean[] arraySetted) {
-
-        if (arraySetted != null) {
-            int counter = 0;
-            for (int i = 0; i < arraySetted.length; i++) {
-                if (arraySetted[i]) {
-                    counter++;
-                }
-            }
-            return counter;
-        }
-        return 0;
+        return acceptTally.count(value);
     }
 
     public long getProposeTimestamp() {
@@ -395,60 +376,33 @@ public class Epoch implements Serializable {
         this.proposeTimestamp = proposeTimestamp;
     }
 
-    private int settedSameCount(boolean[] arraySetted, byte[][] array) {
-
-        int maxCount = 0;
-        int temp = 0;
-
-        for (int i = 0; i < accept.length; i++) {
-
-            for (int j = 0; j < accept.length; j++) {
-                if (acceptSetted[i] && acceptSetted[j]) {
-                    if (Arrays.equals(accept[i], accept[j])) {
-                        temp++;
-                    }
-                }
-            }
-            if (temp > maxCount) {
-                maxCount = temp;
-            }
-        }
-        return maxCount;
-    }
-
     /**
      * Retrieves the max count of same value
+     * <p>
+     * As it has always been computed, this is the number of ordered pairs of
+     * replicas (each replica paired with itself included) that accepted the
+     * same value, which is never less than the largest number of replicas that
+     * accepted one value. See {@link #maxAcceptCount()} for the latter.
      * @return
      */
     public int maxSameValueCount() {
-        return settedSameCount(acceptSetted, accept);
+        return (int) acceptTally.samePairs();
     }
 
     /**
-     * Retrieves the amount of accept setted
+     * Retrieves the largest number of replicas that accepted the same value
      * @return
      */
-    public int countAcceptSetted() {
-        return settedCount(acceptSetted);
+    public int maxAcceptCount() {
+        return acceptTally.maxCount();
     }
 
     /**
-     * Counts how many times 'value' occurs in 'array'
-     * @param array Array where to count
-     * @param value Value to count
-     * @return Ammount of times that 'value' was find in 'array'
+     * Retrieves the amount of accept setted
+     * @return
      */
-    private int count(boolean[] arraySetted,byte[][] array, byte[] value) {
-        if (value != null) {
-            int counter = 0;
-            for (int i = 0; i < array.length; i++) {
-                if (arraySetted != null && arraySetted[i] && Arrays.equals(value, array[i])) {
-                    counter++;
-                }
-            }
-            return counter;
-        }
-        return 0;
+    public int countAcceptSetted() {
+        return acceptTally.votesCount();
     }
 
     /*************************** DEBUG METHODS *******************************/
@@ -494,11 +448,8 @@ public class Epoch implements Serializable {
 
         int n = controller.getCurrentViewN();
         
-        writeSetted = new boolean[n];
-        acceptSetted = new boolean[n];
-
-        Arrays.fill(writeSetted, false);
-        Arrays.fill(acceptSetted, false);
+        writeTally = new VoteTally(n);
+        acceptTally = new VoteTally(n);
 
         this.write = new byte[n][];
         this.accept = new byte[n][];
@@ -516,4 +467,12 @@ public class Epoch implements Serializable {
     public boolean getRollback() {
         return isRollback;
     }
+
+    public boolean isTentativeRepliesSent() {
+        return tentativeRepliesSent;
+    }
+
+    public void setTentativeRepliesSent(boolean tentativeRepliesSent) {
+        this.tentativeRepliesSent = tentativeRepliesSent;
+    }
 }
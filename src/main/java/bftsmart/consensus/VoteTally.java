@@ -0,0 +1,169 @@
+package bftsmart.consensus;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一个时期（epoch）中 WRITE 或 ACCEPT 投票的增量计数；
+ * <p>
+ *
+ * 每个节点（按视图中的位置）保留最近一次的投票；按值统计投票数量，记录或者替换一次投票以及查询某个值的票数都是 O(1)，
+ * 不再需要在每条消息到达时重新扫描所有节点的投票；
+ */
+public final class VoteTally implements Serializable {
+
+	private static final long serialVersionUID = 4049387245314213155L;
+
+	/**
+	 * 投票值为 null 时使用的键；null 值之间视为相同，但不计入任何值的票数；
+	 */
+	private static final Key NULL_VALUE = new Key(null);
+
+	private Key[] votes;
+
+	private final Map<Key, Integer> counts = new HashMap<>();
+
+	private int votesCount;
+
+	private int maxCount;
+
+	/**
+	 * 投给相同值的有序节点对的数量，即各个值票数的平方和；
+	 */
+	private long samePairs;
+
+	public VoteTally(int n) {
+		this.votes = new Key[n];
+	}
+
+	/**
+	 * 记录节点的投票，替换该节点此前的投票；
+	 *
+	 * @param pos   节点在视图中的位置；
+	 * @param value 投票值；
+	 * @return 投票之后该值的票数；值为 null 时返回 0；
+	 */
+	public int vote(int pos, byte[] value) {
+		Key key = value == null ? NULL_VALUE : new Key(value);
+		Key old = votes[pos];
+		if (old == null) {
+			votesCount++;
+		} else if (old.equals(key)) {
+			votes[pos] = key;
+			return value == null ? 0 : counts.get(key);
+		} else {
+			int count = counts.get(old);
+			samePairs -= 2L * count - 1;
+			if (count == 1) {
+				counts.remove(old);
+			} else {
+				counts.put(old, count - 1);
+			}
+			if (count == maxCount) {
+				maxCount = recomputeMax();
+			}
+		}
+		votes[pos] = key;
+		int count = counts.merge(key, 1, Integer::sum);
+		samePairs += 2L * count - 1;
+		if (count > maxCount && value != null) {
+			maxCount = count;
+		}
+		return value == null ? 0 : count;
+	}
+
+	/**
+	 * 投给指定值的票数；
+	 */
+	public int count(byte[] value) {
+		if (value == null) {
+			return 0;
+		}
+		Integer count = counts.get(new Key(value));
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * 已经投票的节点数量；
+	 */
+	public int votesCount() {
+		return votesCount;
+	}
+
+	/**
+	 * 票数最多的非 null 值的票数；
+	 */
+	public int maxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * 投给相同值的有序节点对的数量（包括节点与自身）；
+	 */
+	public long samePairs() {
+		return samePairs;
+	}
+
+	/**
+	 * 视图变更后按照节点的新位置重新排列投票；不在新视图中的节点的投票被丢弃；
+	 *
+	 * @param n           新视图的节点数量；
+	 * @param newPosition 旧位置到新位置的映射，-1 表示节点已不在视图中；
+	 */
+	public void remap(int n, int[] newPosition) {
+		Key[] old = votes;
+		votes = new Key[n];
+		counts.clear();
+		votesCount = 0;
+		maxCount = 0;
+		samePairs = 0;
+		for (int i = 0; i < old.length; i++) {
+			if (old[i] != null && newPosition[i] >= 0) {
+				vote(newPosition[i], old[i].value);
+			}
+		}
+	}
+
+	private int recomputeMax() {
+		int max = 0;
+		for (Map.Entry<Key, Integer> entry : counts.entrySet()) {
+			if (entry.getKey().value != null && entry.getValue() > max) {
+				max = entry.getValue();
+			}
+		}
+		return max;
+	}
+
+	private static final class Key implements Serializable {
+
+		private static final long serialVersionUID = -2307845926375095133L;
+
+		private final byte[] value;
+
+		private final int hash;
+
+		Key(byte[] value) {
+			this.value = value;
+			this.hash = Arrays.hashCode(value);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && Arrays.equals(value, other.value);
+		}
+	}
+}
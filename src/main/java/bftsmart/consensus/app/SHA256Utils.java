@@ -7,10 +7,13 @@ public class SHA256Utils {
     // The length of SHA256 output is 32 bytes
     private static final int SHA256DIGEST_LENGTH = 256 / 8;
 
+    // SHA256Digest is not thread-safe but resets itself after doFinal, so one instance per thread is enough
+    private static final ThreadLocal<SHA256Digest> DIGESTS = ThreadLocal.withInitial(SHA256Digest::new);
+
     public byte[] hash(byte[] data){
 
         byte[] result = new byte[SHA256DIGEST_LENGTH];
-        SHA256Digest sha256Digest = new SHA256Digest();
+        SHA256Digest sha256Digest = DIGESTS.get();
 
         sha256Digest.update(data,0,data.length);
         sha256Digest.doFinal(result,0);
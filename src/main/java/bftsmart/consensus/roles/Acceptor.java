@@ -18,12 +18,12 @@ package bftsmart.consensus.roles;
 import bftsmart.communication.MacKey;
 import bftsmart.communication.ServerCommunicationSystem;
 import bftsmart.consensus.Consensus;
+import bftsmart.consensus.Decision;
 import bftsmart.consensus.Epoch;
 import bftsmart.consensus.app.BatchAppResult;
 import bftsmart.consensus.app.ComputeCode;
 import bftsmart.consensus.messages.ConsensusMessage;
 import bftsmart.consensus.messages.MessageFactory;
-import bftsmart.reconfiguration.ReconfigureRequest;
 import bftsmart.reconfiguration.ReplicaTopology;
 import bftsmart.reconfiguration.ServerViewController;
 import bftsmart.reconfiguration.views.NodeNetwork;
@@ -68,6 +68,7 @@ public final class Acceptor {
 	private ServerCommunicationSystem communication; // Replicas comunication system
 	private TOMLayer tomLayer; // TOM layer
 	private ReplicaTopology topology;
+	private final TentativeReplier tentativeReplier; // null if tentative replies are disabled
 	// private Cipher cipher;
 //	private Mac mac;
 
@@ -87,6 +88,9 @@ public final class Acceptor {
 		this.me = topology.getStaticConf().getProcessId();
 		this.factory = factory;
 		this.topology = topology;
+		this.tentativeReplier = topology.getStaticConf().isTentativeReplies()
+				? new TentativeReplier(me, communication, topology)
+				: null;
 //		try {
 //			// this.cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
 //			// this.cipher = Cipher.getInstance(ServerConnection.MAC_ALGORITHM);
@@ -168,7 +172,7 @@ public final class Acceptor {
 				Epoch epoch = consensus.getEpoch(latestEpoch, topology);
 				consensus.lock.lock();
 				try {
-					getDefaultExecutor().preComputeRollback(consensus.getId(), epoch.getBatchId());
+					preComputeSuspend(consensus.getId(), epoch);
 				} finally {
 					consensus.lock.unlock();
 				}
@@ -288,11 +292,10 @@ public final class Acceptor {
 			LOGGER.info("(Acceptor.executePropose) I am proc {}, executing propose for cid : {}, epoch timestamp: {}",
 					topology.getStaticConf().getProcessId(), cid, epoch.getTimestamp());
 
-//			long consensusStartTime = System.nanoTime();
+			long proposeReceivedTime = System.nanoTime();
 
 			if (epoch.propValue == null) { // only accept one propose per epoch
 				epoch.propValue = value;
-				epoch.propValueHash = tomLayer.computeHash(value);
 
 				/*** LEADER CHANGE CODE ********/
 				epoch.getConsensus().addWritten(value);
@@ -306,19 +309,22 @@ public final class Acceptor {
 					tomLayer.setInExec(cid);
 				}
 				epoch.deserializedPropValue = tomLayer.checkProposedValue(value, true);
+				// the request digests were computed on admission, so the batch hash only merges them
+				epoch.propValueHash = tomLayer.computeBatchHash(value, epoch.deserializedPropValue);
 				if (epoch.deserializedPropValue != null && epoch.deserializedPropValue.length > 0) {
 					epoch.setProposeTimestamp(epoch.deserializedPropValue[0].timestamp);
 				}
 
 				if (epoch.deserializedPropValue != null && !epoch.isWriteSetted(me)) {
-//					if (epoch.getConsensus().getDecision().firstMessageProposed == null) {
-//						epoch.getConsensus().getDecision().firstMessageProposed = epoch.deserializedPropValue[0];
-//					}
-//					if (epoch.getConsensus().getDecision().firstMessageProposed.consensusStartTime == 0) {
-//						epoch.getConsensus().getDecision().firstMessageProposed.consensusStartTime = consensusStartTime;
-//
-//					}
-//					epoch.getConsensus().getDecision().firstMessageProposed.proposeReceivedTime = System.nanoTime();
+					// the first request of the batch carries the timestamps of the consensus phases
+					Decision decision = epoch.getConsensus().getDecision();
+					if (decision.firstMessageProposed == null && epoch.deserializedPropValue.length > 0) {
+						decision.firstMessageProposed = epoch.deserializedPropValue[0];
+					}
+					TOMMessage firstMessage = decision.firstMessageProposed;
+					if (firstMessage != null) {
+						firstMessage.proposeReceivedTime = proposeReceivedTime;
+					}
 
 //					if (topology.getStaticConf().isBFT()) {
 						LOGGER.debug("(Acceptor.executePropose) sending WRITE for {}", cid);
@@ -329,6 +335,9 @@ public final class Acceptor {
 //                    System.out.println("I am proc " + controller.getStaticConf().getProcessId() + ", send write msg" + ", cid is " + cid);
 						communication.send(this.topology.getCurrentViewOtherAcceptors(),
 								factory.createWrite(cid, epoch.getTimestamp(), epoch.propValueHash));
+						if (firstMessage != null) {
+							firstMessage.writeSentTime = System.nanoTime();
+						}
 
 						LOGGER.debug("(Acceptor.executePropose) WRITE sent for {}", cid);
 
@@ -428,30 +437,10 @@ public final class Acceptor {
 //					if (topology.getStaticConf().isBFT()) {
 
 						DefaultRecoverable defaultExecutor = getDefaultExecutor();
-                        byte[][] commands = new byte[epoch.deserializedPropValue.length][];
-//						List<byte[]> commands = new ArrayList<byte[]>();
-
-						for (int i = 0; i < epoch.deserializedPropValue.length; i++) {
-							// 对于视图ID落后于当前节点视图ID的请求或者Reconfig请求不进行预计算处理
-//							if (ViewIdBackWard(epoch.deserializedPropValue[i])
-//									|| isReconfig(epoch.deserializedPropValue[i])) {
-//								continue;
-//							}
-
-							TOMMessage message = epoch.deserializedPropValue[i];
-							if (isReconfig(message)) {
-								ReconfigureRequest request = (ReconfigureRequest) TOMUtil.getObject(message.getContent());
-								commands[i] = request.getExtendInfo();
-							} else {
-								commands[i] = message.getContent();
-							}
-
-//							epoch.deserializedPrecomputeValue.add(msg);
-
-						}
-
 						LOGGER.info("I am proc {}, start pre compute , cid = {}, epoch = {}", this.topology.getStaticConf().getProcessId(), cid, epoch.getTimestamp());
-						BatchAppResult appHashResult = defaultExecutor.preComputeHash(cid, commands, epoch.getProposeTimestamp());
+						long precomputeStart = System.nanoTime();
+						BatchAppResult appHashResult = defaultExecutor.preComputeHash(cid, epoch.deserializedPropValue, epoch.getProposeTimestamp());
+						tomLayer.getMetrics().recordPrecompute(System.nanoTime() - precomputeStart);
 
 //						byte[] result = MergeByte(epoch.propValue, appHashResult.getAppHashBytes());
 
@@ -488,6 +477,16 @@ public final class Acceptor {
 						int[] targets = this.topology.getCurrentViewOtherAcceptors();
 						communication.send(targets, cm);
 //                    communication.getServersConn().send(targets, cm, true);
+						TOMMessage firstMessage = epoch.getConsensus().getDecision().firstMessageProposed;
+						if (firstMessage != null) {
+							firstMessage.acceptSentTime = System.nanoTime();
+						}
+
+						// the WRITE quorum is reached and the batch is precomputed, let the clients see the results
+						if (tentativeReplier != null
+								&& ComputeCode.valueOf(epoch.getPreComputeRes()) == ComputeCode.SUCCESS) {
+							tentativeReplier.sendTentativeReplies(epoch);
+						}
 
 						epoch.addToProof(cm);
 						computeAccept(cid, epoch, epoch.propAndAppValueHash);
@@ -701,10 +700,10 @@ public final class Acceptor {
 						// maybe storage exception
 						LOGGER.error("I am proc {} , flush storage fail, will rollback!",
 								topology.getStaticConf().getProcessId());
-						getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
+						preComputeRollback(cid, epoch);
 //						updateConsensusSetting(epoch);
-						updatedResp = getDefaultExecutor().updateResponses(epoch.getAsyncResponseLinkedList(),
-								epoch.commonHash, true);
+						updatedResp = getDefaultExecutor().updateResponses(epoch.deserializedPropValue,
+								epoch.getAsyncResponseLinkedList(), epoch.commonHash, true);
 						epoch.setAsyncResponseLinkedList(updatedResp);
 						epoch.setRollback(true);
 						decide(epoch);
@@ -713,7 +712,7 @@ public final class Acceptor {
 						&& (ComputeCode.valueOf(epoch.getPreComputeRes()) == ComputeCode.FAILURE)) {
 					LOGGER.error("I am proc {} , cid {}, precompute fail, will rollback",
 							topology.getStaticConf().getProcessId(), cid);
-					getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
+					preComputeRollback(cid, epoch);
 //					updateConsensusSetting(epoch);
 					epoch.setRollback(true);
 					decide(epoch);
@@ -728,7 +727,7 @@ public final class Acceptor {
 							topology.getStaticConf().getProcessId(), cid, epoch.propAndAppValueHash, value,
 							epoch.getTimestamp());
 					// rollback
-					getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
+					preComputeRollback(cid, epoch);
 					// This round of consensus has been rolled back, mark it
 					tomLayer.execManager.updateConsensus(tomLayer.getInExec());
 
@@ -755,11 +754,11 @@ public final class Acceptor {
 
 				LOGGER.error(
 						"Quorum is not satisfied, node's pre compute hash is inconsistent, will goto pre compute rollback phase!");
-				getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
+				preComputeRollback(cid, epoch);
 //				updateConsensusSetting(epoch);
 
-				updatedResp = getDefaultExecutor().updateResponses(epoch.getAsyncResponseLinkedList(), epoch.commonHash,
-						false);
+				updatedResp = getDefaultExecutor().updateResponses(epoch.deserializedPropValue,
+						epoch.getAsyncResponseLinkedList(), epoch.commonHash, false);
 				epoch.setAsyncResponseLinkedList(updatedResp);
 				epoch.setRollback(true);
 				decide(epoch);
@@ -770,9 +769,31 @@ public final class Acceptor {
 
 	}
 
-	// Reconfig请求
-	private boolean isReconfig(TOMMessage tomMessage) {
-		return tomMessage.getReqType() == TOMMessageType.RECONFIG;
+	/**
+	 * 回滚预计算，并使已经发送的试探性应答失效；
+	 */
+	private void preComputeRollback(int cid, Epoch epoch) {
+		getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
+		invalidateTentativeReplies(epoch);
+	}
+
+	/**
+	 * 因为共识进入新的时期而放弃预计算；启用预计算结果缓存时批次只是挂起，并使已经发送的试探性应答失效；
+	 */
+	private void preComputeSuspend(int cid, Epoch epoch) {
+		getDefaultExecutor().preComputeSuspend(cid, epoch.getBatchId());
+		invalidateTentativeReplies(epoch);
+	}
+
+	/**
+	 * 使指定时期已经发送的试探性应答失效；未开启试探性应答或者没有发送过时不做处理；
+	 *
+	 * @param epoch
+	 */
+	public void invalidateTentativeReplies(Epoch epoch) {
+		if (tentativeReplier != null) {
+			tentativeReplier.invalidateTentativeReplies(epoch);
+		}
 	}
 
 	/**
@@ -781,8 +802,8 @@ public final class Acceptor {
 	 * @param epoch Epoch at which the decision is made
 	 */
 	private void decide(Epoch epoch) {
-//		if (epoch.getConsensus().getDecision().firstMessageProposed != null)
-//			epoch.getConsensus().getDecision().firstMessageProposed.decisionTime = System.nanoTime();
+		if (epoch.getConsensus().getDecision().firstMessageProposed != null)
+			epoch.getConsensus().getDecision().firstMessageProposed.decisionTime = System.nanoTime();
 
 		epoch.getConsensus().decided(epoch, true);
 	}
@@ -0,0 +1,101 @@
+package bftsmart.consensus.roles;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.consensus.Epoch;
+import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+/**
+ * 试探性应答；
+ * <p>
+ *
+ * 预计算完成后（此时已经收到 WRITE 法定数量），把预计算得到的应答以 {@link TOMMessageType#TENTATIVE_REPLY}
+ * 类型立即发送给客户端，比共识决议之后的正式应答提前一个消息延迟；
+ * <p>
+ *
+ * 预计算被回滚时，向已经发送过试探性应答的客户端发送 {@link TOMMessageType#TENTATIVE_INVALIDATION}，
+ * 客户端据此丢弃对应节点的试探性应答；
+ */
+class TentativeReplier {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TentativeReplier.class);
+
+	private final int me;
+
+	private final ServerCommunicationSystem communication;
+
+	private final ReplicaTopology topology;
+
+	TentativeReplier(int me, ServerCommunicationSystem communication, ReplicaTopology topology) {
+		this.me = me;
+		this.communication = communication;
+		this.topology = topology;
+	}
+
+	/**
+	 * 发送指定时期预计算结果的试探性应答；
+	 *
+	 * @param epoch 已完成预计算的时期；
+	 */
+	void sendTentativeReplies(Epoch epoch) {
+		TOMMessage[] requests = epoch.deserializedPropValue;
+		List<byte[]> responses = epoch.getAsyncResponseLinkedList();
+		if (requests == null || responses == null || requests.length != responses.size()) {
+			return;
+		}
+		int viewId = topology.getCurrentViewId();
+		for (int i = 0; i < requests.length; i++) {
+			TOMMessage request = requests[i];
+			if (!isTentative(request, viewId)) {
+				continue;
+			}
+			communication.send(new int[] { request.getSender() }, new TOMMessage(me, request.getSession(),
+					request.getSequence(), request.getOperationId(), responses.get(i), null, viewId,
+					TOMMessageType.TENTATIVE_REPLY));
+		}
+		epoch.setTentativeRepliesSent(true);
+
+		LOGGER.debug("I am proc {}, sent tentative replies for cid {}, epoch {}", me, epoch.getConsensus().getId(),
+				epoch.getTimestamp());
+	}
+
+	/**
+	 * 预计算回滚后，使已经发送的试探性应答失效；
+	 *
+	 * @param epoch 被回滚的时期；
+	 */
+	void invalidateTentativeReplies(Epoch epoch) {
+		if (epoch == null || !epoch.isTentativeRepliesSent()) {
+			return;
+		}
+		epoch.setTentativeRepliesSent(false);
+
+		TOMMessage[] requests = epoch.deserializedPropValue;
+		int viewId = topology.getCurrentViewId();
+		for (TOMMessage request : requests) {
+			// 视图可能已经变化，因此不按视图过滤；客户端会忽略没有对应试探性应答的失效通知；
+			if (request.getReqType() != TOMMessageType.ORDERED_REQUEST) {
+				continue;
+			}
+			communication.send(new int[] { request.getSender() }, new TOMMessage(me, request.getSession(),
+					request.getSequence(), request.getOperationId(), null, null, viewId,
+					TOMMessageType.TENTATIVE_INVALIDATION));
+		}
+
+		LOGGER.info("I am proc {}, invalidated tentative replies for cid {}, epoch {}", me,
+				epoch.getConsensus().getId(), epoch.getTimestamp());
+	}
+
+	/**
+	 * 只有当前视图内的普通有序请求才发送试探性应答；视图落后的请求需要在正式应答中附带新的视图；
+	 */
+	private static boolean isTentative(TOMMessage request, int viewId) {
+		return request.getReqType() == TOMMessageType.ORDERED_REQUEST && request.getViewID() == viewId;
+	}
+}
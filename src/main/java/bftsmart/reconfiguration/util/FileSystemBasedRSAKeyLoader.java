@@ -17,13 +17,21 @@ package bftsmart.reconfiguration.util;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.Serializable;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import bftsmart.tom.util.SignatureScheme;
 
 /**
  * Used to load JCA public and private keys from conf/keys/publickey<id> and
  * conf/keys/privatekey<id>
+ * <p>
+ * Keys are parsed once and kept in memory, since they are requested on the hot
+ * paths of signature generation and verification.
  */
 public class FileSystemBasedRSAKeyLoader implements RsaKeyLoader, Serializable {
 
@@ -53,6 +61,10 @@ public class FileSystemBasedRSAKeyLoader implements RsaKeyLoader, Serializable {
 	
 	private DefaultRSAKeyLoader defRSAKeyLoader;
 
+	private SignatureScheme scheme;
+
+	private transient ConcurrentMap<Integer, PublicKey> pubKeys;
+
 	/** Creates a new instance of RSAKeyLoader */
 	// public RSAKeyLoader(int id, String configHome, boolean defaultKeys) {
 	// this.id = id;
@@ -67,7 +79,12 @@ public class FileSystemBasedRSAKeyLoader implements RsaKeyLoader, Serializable {
 	// }
 
 	public FileSystemBasedRSAKeyLoader(String keystoreHome, boolean defaultKeys) {
+		this(keystoreHome, defaultKeys, SignatureScheme.RSA);
+	}
+
+	public FileSystemBasedRSAKeyLoader(String keystoreHome, boolean defaultKeys, SignatureScheme scheme) {
 		this.defaultKeys = defaultKeys;
+		this.scheme = scheme;
 		this.defRSAKeyLoader = new DefaultRSAKeyLoader();
 		if (keystoreHome.equals("")) {
 			path = "config" + System.getProperty("file.separator") + "keys" + System.getProperty("file.separator");
@@ -88,17 +105,33 @@ public class FileSystemBasedRSAKeyLoader implements RsaKeyLoader, Serializable {
 			return defRSAKeyLoader.loadPublicKey(id);
 		}
 
-		FileReader f = new FileReader(path + "publickey" + id);
+		ConcurrentMap<Integer, PublicKey> cache = pubKeys;
+		if (cache == null) {
+			cache = new ConcurrentHashMap<>();
+			pubKeys = cache;
+		}
+		PublicKey ret = cache.get(id);
+		if (ret == null) {
+			ret = RSAKeyUtils.getPublicKeyFromString(readKey(path + "publickey" + id), scheme);
+			cache.put(id, ret);
+		}
+		return ret;
+	}
+
+	private static String readKey(String file) throws IOException {
+		FileReader f = new FileReader(file);
 		BufferedReader r = new BufferedReader(f);
 		String tmp = "";
-		String key = "";
-		while ((tmp = r.readLine()) != null) {
-			key = key + tmp;
+		StringBuilder key = new StringBuilder();
+		try {
+			while ((tmp = r.readLine()) != null) {
+				key.append(tmp);
+			}
+		} finally {
+			f.close();
+			r.close();
 		}
-		f.close();
-		r.close();
-		PublicKey ret = RSAKeyUtils.getPublicKeyFromString(key);
-		return ret;
+		return key.toString();
 	}
 
 	// /* (non-Javadoc)
@@ -137,16 +170,7 @@ public class FileSystemBasedRSAKeyLoader implements RsaKeyLoader, Serializable {
 		}
 
 		if (priKey == null) {
-			FileReader f = new FileReader(path + "privatekey" + id);
-			BufferedReader r = new BufferedReader(f);
-			String tmp = "";
-			String key = "";
-			while ((tmp = r.readLine()) != null) {
-				key = key + tmp;
-			}
-			f.close();
-			r.close();
-			priKey = RSAKeyUtils.getPrivateKeyFromString(key);
+			priKey = RSAKeyUtils.getPrivateKeyFromString(readKey(path + "privatekey" + id), scheme);
 		}
 		return priKey;
 	}
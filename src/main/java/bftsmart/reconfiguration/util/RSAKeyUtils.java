@@ -2,6 +2,8 @@ package bftsmart.reconfiguration.util;
 
 import org.apache.commons.codec.binary.Base64;
 
+import bftsmart.tom.util.SignatureScheme;
+
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -24,4 +26,16 @@ public class RSAKeyUtils {
 		PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
 		return publicKey;
 	}
+
+	public static PrivateKey getPrivateKeyFromString(String key, SignatureScheme scheme) throws Exception {
+		KeyFactory keyFactory = scheme.newKeyFactory();
+		EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(Base64.decodeBase64(key));
+		return keyFactory.generatePrivate(privateKeySpec);
+	}
+
+	public static PublicKey getPublicKeyFromString(String key, SignatureScheme scheme) throws Exception {
+		KeyFactory keyFactory = scheme.newKeyFactory();
+		EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(Base64.decodeBase64(key));
+		return keyFactory.generatePublic(publicKeySpec);
+	}
 }
@@ -27,6 +27,7 @@ import java.util.StringTokenizer;
 import bftsmart.reconfiguration.views.NodeNetwork;
 import bftsmart.reconfiguration.views.NullNodeNetwork;
 import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.util.SignatureScheme;
 import bftsmart.util.ConsensusUtils;
 
 public class TOMConfiguration implements Serializable, ReplicaConfiguration {
@@ -55,6 +56,7 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	private int clientDatasMaxCount;
 	private long heartBeatTimeout;
 	private long heartBeatPeriod;
+	private double heartBeatPhiThreshold;
 	private int tomPeriod;
 	private int paxosHighMark;
 	private int revivalHighMark;
@@ -70,6 +72,7 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	private long sendRetryInterval;
 	private int sendRetryCount;
 	private RsaKeyLoader rsaLoader;
+	private SignatureScheme signatureScheme = SignatureScheme.RSA;
 	private int debug;
 	private int numNIOThreads;
 	private int useMACs;
@@ -89,9 +92,24 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	private boolean isBFT;
 	private int numRepliers;
 	private int numNettyWorkers;
+	private int numReadThreads;
+	private int readQueueSize;
 	private HostsConfig outerHostConfig;
 	// epoch delay in millisecond, default value: 50
 	private int epochDelay;
+	private boolean tentativeReplies;
+	private boolean leaseReads;
+	private long leaseDuration;
+	private int clientWindow;
+	private boolean replyDigests;
+	private int clientBatchSize;
+	private int clientBatchBytes;
+	private long clientBatchLinger;
+	private boolean leaderDirected;
+	private long leaderDirectedTimeout;
+	private int precomputeCacheSize;
+	private long outOfContextBudget;
+	private boolean metricsJmx;
 
 	public TOMConfiguration(int processId, Properties systemConfigs, HostsConfig hostsConfig) {
 		this.processId = processId;
@@ -100,7 +118,7 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		initSystemConfig(hostsConfig, systemConfigs);
 		initTomConfig(hostsConfig, systemConfigs);
 
-		this.rsaLoader = new DefaultRSAKeyLoader();
+		this.rsaLoader = createKeyLoader();
 	}
 
 	/** Creates a new instance of TOMConfiguration */
@@ -108,7 +126,18 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 			HostsConfig outerHostConfig) {
 		this(processId, systemConfigs, hostConfig);
 		this.outerHostConfig = outerHostConfig;
-		this.rsaLoader = new DefaultRSAKeyLoader();
+	}
+
+	/**
+	 * RSA 方案使用内置的默认密钥；其它签名方案从 config/keys 目录加载对应算法的密钥；
+	 * 
+	 * @return
+	 */
+	private RsaKeyLoader createKeyLoader() {
+		if (signatureScheme == SignatureScheme.RSA) {
+			return new DefaultRSAKeyLoader();
+		}
+		return new FileSystemBasedRSAKeyLoader("", false, signatureScheme);
 	}
 
 	private void initSystemConfig(HostsConfig hosts, Properties configs) {
@@ -271,6 +300,17 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 				}
 			}
 
+			// heartBeatPhiThreshold; 0 表示只使用固定的心跳超时时长；
+			s = (String) configs.remove("system.totalordermulticast.heartBeatPhiThreshold");
+			if (s == null) {
+				heartBeatPhiThreshold = 0;
+			} else {
+				heartBeatPhiThreshold = Double.parseDouble(s);
+				if (heartBeatPhiThreshold < 0) {
+					heartBeatPhiThreshold = 0;
+				}
+			}
+
 			s = (String) configs.remove("system.totalordermulticast.highMark");
 			if (s == null) {
 				paxosHighMark = 10000;
@@ -380,6 +420,9 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 				checkpointPeriod = Integer.parseInt(s);
 			}
 
+			s = (String) configs.remove("system.communication.signatureScheme");
+			signatureScheme = SignatureScheme.of(s);
+
 			s = (String) configs.remove("system.communication.useControlFlow");
 			if (s == null) {
 				useControlFlow = 0;
@@ -482,6 +525,23 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 				numNettyWorkers = Integer.parseInt(s);
 			}
 
+			s = (String) configs.remove("system.numreadthreads");
+			if (s == null) {
+				numReadThreads = 0;
+			} else {
+				numReadThreads = Math.max(0, Integer.parseInt(s));
+			}
+
+			s = (String) configs.remove("system.readqueuesize");
+			if (s == null) {
+				readQueueSize = 10000;
+			} else {
+				readQueueSize = Integer.parseInt(s);
+				if (readQueueSize <= 0) {
+					readQueueSize = 10000;
+				}
+			}
+
 			s = (String) configs.remove("system.epoch.delay");
 			if (s == null) {
 				epochDelay = 50;
@@ -491,6 +551,104 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 					epochDelay = 0;
 				}
 			}
+
+			s = (String) configs.remove("system.totalordermulticast.tentativeReplies");
+			tentativeReplies = (s != null) ? Boolean.parseBoolean(s) : false;
+
+			s = (String) configs.remove("system.totalordermulticast.leaseReads");
+			leaseReads = (s != null) ? Boolean.parseBoolean(s) : false;
+			// BFT 模式下即使有 f+1 个一致的应答也可能来自拜占庭领导者和落后的跟随者，租约读只用于 CFT 模式；
+			leaseReads = leaseReads && !isBFT;
+
+			// leaseDuration; 租约必须长于心跳周期才能连续续期，且短于心跳超时；
+			s = (String) configs.remove("system.totalordermulticast.leaseDuration");
+			if (s == null) {
+				leaseDuration = 2 * heartBeatPeriod;
+			} else {
+				leaseDuration = Long.parseLong(s);
+			}
+			if (leaseDuration <= heartBeatPeriod || leaseDuration >= heartBeatTimeout) {
+				leaseDuration = Math.min(2 * heartBeatPeriod, heartBeatTimeout / 2);
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.clientWindow");
+			if (s == null) {
+				clientWindow = 32;
+			} else {
+				clientWindow = Integer.parseInt(s);
+				if (clientWindow < 1) {
+					clientWindow = 1;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.replyDigests");
+			replyDigests = (s != null) ? Boolean.parseBoolean(s) : false;
+
+			s = (String) configs.remove("system.totalordermulticast.clientBatchSize");
+			if (s == null) {
+				clientBatchSize = 0;
+			} else {
+				clientBatchSize = Integer.parseInt(s);
+				if (clientBatchSize < 0) {
+					clientBatchSize = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.clientBatchBytes");
+			if (s == null) {
+				clientBatchBytes = 64 * 1024;
+			} else {
+				clientBatchBytes = Integer.parseInt(s);
+				if (clientBatchBytes <= 0) {
+					clientBatchBytes = 64 * 1024;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.clientBatchLinger");
+			if (s == null) {
+				clientBatchLinger = 2;
+			} else {
+				clientBatchLinger = Long.parseLong(s);
+				if (clientBatchLinger < 0) {
+					clientBatchLinger = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.leaderDirected");
+			leaderDirected = (s != null) ? Boolean.parseBoolean(s) : false;
+
+			s = (String) configs.remove("system.totalordermulticast.leaderDirectedTimeout");
+			if (s == null) {
+				leaderDirectedTimeout = 2000;
+			} else {
+				leaderDirectedTimeout = Long.parseLong(s);
+				if (leaderDirectedTimeout <= 0) {
+					leaderDirectedTimeout = 2000;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.precomputeCacheSize");
+			if (s == null) {
+				precomputeCacheSize = 0;
+			} else {
+				precomputeCacheSize = Integer.parseInt(s);
+				if (precomputeCacheSize < 0) {
+					precomputeCacheSize = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.outOfContextBudget");
+			if (s == null) {
+				outOfContextBudget = 64L * 1024 * 1024;
+			} else {
+				outOfContextBudget = Long.parseLong(s);
+				if (outOfContextBudget < 0) {
+					outOfContextBudget = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.metrics.jmx");
+			metricsJmx = (s != null) ? Boolean.parseBoolean(s) : false;
 		} catch (Exception e) {
 			e.printStackTrace(System.err);
 		}
@@ -883,6 +1041,15 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		}
 	}
 
+	/**
+	 * The signature scheme used to sign and verify client requests, leader change
+	 * messages and reconfiguration requests
+	 */
+	@Override
+	public SignatureScheme getSignatureScheme() {
+		return signatureScheme;
+	}
+
 	@Override
 	public boolean isBFT() {
 
@@ -899,6 +1066,22 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		return numNettyWorkers;
 	}
 
+	/**
+	 * 执行只读请求的线程数；为 0 时在接收请求的网络线程中直接执行；
+	 */
+	@Override
+	public int getNumReadThreads() {
+		return numReadThreads;
+	}
+
+	/**
+	 * 排队等待执行的只读请求的最大数量；
+	 */
+	@Override
+	public int getReadQueueSize() {
+		return readQueueSize;
+	}
+
 	@Override
 	public HostsConfig getOuterHostConfig() {
 		return outerHostConfig;
@@ -930,4 +1113,116 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	public int getEpochDelay() {
 		return epochDelay;
 	}
+
+	/**
+	 * 是否在预计算完成后立即向客户端发送试探性应答；
+	 */
+	@Override
+	public boolean isTentativeReplies() {
+		return tentativeReplies;
+	}
+
+	/**
+	 * 是否允许持有租约的领导者不经共识直接应答读请求；
+	 */
+	@Override
+	public boolean isLeaseReads() {
+		return leaseReads;
+	}
+
+	/**
+	 * 领导者租约的时长，单位毫秒；
+	 */
+	@Override
+	public long getLeaseDuration() {
+		return leaseDuration;
+	}
+
+	/**
+	 * 客户端可以同时发出的有序请求的数量，即未完成请求的序号窗口；副本暂存窗口内提前到达的请求；
+	 */
+	@Override
+	public int getClientWindow() {
+		return clientWindow;
+	}
+
+	/**
+	 * 客户端的有序请求是否只由一个指定的副本返回完整应答，其它副本只返回应答的摘要；
+	 */
+	@Override
+	public boolean isReplyDigests() {
+		return replyDigests;
+	}
+
+	/**
+	 * 客户端合并到一个有序请求中的最大操作数量；0 表示不启用客户端批处理；
+	 */
+	@Override
+	public int getClientBatchSize() {
+		return clientBatchSize;
+	}
+
+	/**
+	 * 客户端合并到一个有序请求中的操作的最大字节数；
+	 */
+	@Override
+	public int getClientBatchBytes() {
+		return clientBatchBytes;
+	}
+
+	/**
+	 * 客户端等待更多操作合并的最长时间，单位毫秒；
+	 */
+	@Override
+	public long getClientBatchLinger() {
+		return clientBatchLinger;
+	}
+
+	/**
+	 * 客户端是否只把有序请求发送给已知的领导者及其后的 f 个节点；
+	 */
+	@Override
+	public boolean isLeaderDirected() {
+		return leaderDirected;
+	}
+
+	/**
+	 * 只发送给领导者的请求在多长时间内没有得到应答时改为发送给所有节点，单位毫秒；
+	 */
+	@Override
+	public long getLeaderDirectedTimeout() {
+		return leaderDirectedTimeout;
+	}
+
+	/**
+	 * 因为时期变更或者领导者切换而挂起、等待复用的预计算批次的最大数量；0 表示不启用预计算结果缓存；
+	 */
+	@Override
+	public int getPrecomputeCacheSize() {
+		return precomputeCacheSize;
+	}
+
+	/**
+	 * 每个节点可以缓存的超出预期共识消息的字节数；0 表示不限制；
+	 */
+	@Override
+	public long getOutOfContextBudget() {
+		return outOfContextBudget;
+	}
+
+	/**
+	 * 判定领导者失效的 phi 阈值；0 表示不启用 phi 累积故障检测，只使用固定的心跳超时时长；
+	 */
+	@Override
+	public double getHeartBeatPhiThreshold() {
+		return heartBeatPhiThreshold;
+	}
+
+	/**
+	 * 是否把副本的运行指标注册为 JMX MBean；
+	 */
+	@Override
+	public boolean isMetricsJmx() {
+		return metricsJmx;
+	}
 }
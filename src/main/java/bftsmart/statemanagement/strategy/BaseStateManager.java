@@ -23,8 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import bftsmart.statemanagement.TransactionReplayState;
@@ -65,7 +65,7 @@ public abstract class BaseStateManager implements StateManager {
 
     protected boolean appStateOnly;
     protected volatile int waitingCID = -1;
-    protected int lastCID;
+    protected volatile int lastCID;
     protected ApplicationState state;
 
     protected volatile boolean isInitializing = true;
@@ -419,7 +419,7 @@ public abstract class BaseStateManager implements StateManager {
             }
 
             if (lastCID == checkPointFromOtherNode) {
-                if (replayTimer != null) replayTimer.cancel();
+                if (replayTimer != null) replayTimer.cancel(false);
                 getReplayStateHashMap().clear();
                 requestState();
             }
@@ -428,7 +428,7 @@ public abstract class BaseStateManager implements StateManager {
         }
     }
 
-    protected Timer replayTimer = null;
+    protected ScheduledFuture<?> replayTimer = null;
     protected final static long INIT_TIMEOUT = 20000;
     protected long timeout = INIT_TIMEOUT;
 
@@ -443,7 +443,7 @@ public abstract class BaseStateManager implements StateManager {
         tomLayer.getCommunication().send(trRequestMessage, target);
 
         // 交易重放消息的安全保障
-        TimerTask replayTask =  new TimerTask() {
+        Runnable replayTask =  new Runnable() {
             public void run() {
                 if (!doWork) {
                     return;
@@ -454,9 +454,8 @@ public abstract class BaseStateManager implements StateManager {
             }
         };
 
-        replayTimer = new Timer("tx replay timer");
         timeout = timeout * 2;
-        replayTimer.schedule(replayTask,timeout);
+        replayTimer = tomLayer.getScheduler().schedule(replayTask, timeout, TimeUnit.MILLISECONDS);
     }
 
     private int changeValidDataSender() {
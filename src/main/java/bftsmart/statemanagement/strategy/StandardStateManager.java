@@ -31,6 +31,8 @@ import bftsmart.tom.util.TOMUtil;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -42,7 +44,7 @@ public class StandardStateManager extends BaseStateManager {
 
     private int replica;
     private ReentrantLock lockTimer = new ReentrantLock();
-    private Timer stateTimer = null;
+    private ScheduledFuture<?> stateTimer = null;
 
     //private LCManager lcManager;
     private ExecutionManager execManager;
@@ -113,7 +115,7 @@ public class StandardStateManager extends BaseStateManager {
 
         LOGGER.info("(StandardStateManager.requestState) I just sent a request to the other replicas for the state up to CID {}", waitingCID);
 
-        TimerTask stateTask =  new TimerTask() {
+        Runnable stateTask =  new Runnable() {
             public void run() {
                 if (!doWork) {
                     return;
@@ -125,9 +127,8 @@ public class StandardStateManager extends BaseStateManager {
             }
         };
 
-        stateTimer = new Timer("state timer");
         timeout = timeout * 2;
-        stateTimer.schedule(stateTask,timeout);
+        stateTimer = tomLayer.getScheduler().schedule(stateTask, timeout, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -136,7 +137,7 @@ public class StandardStateManager extends BaseStateManager {
         LOGGER.info("(StateManager.stateTimeout) Timeout for the replica that was supposed to send the complete state. Changing desired replica.");
         LOGGER.info("Timeout no timer do estado!");
         if (stateTimer != null)
-        	stateTimer.cancel();
+        	stateTimer.cancel(false);
         changeReplica();
         reset();
         requestState();
@@ -148,10 +149,10 @@ public class StandardStateManager extends BaseStateManager {
         doWork = false;
         isInitializing = true;
         if (stateTimer != null) {
-            stateTimer.cancel();
+            stateTimer.cancel(false);
         }
         if (replayTimer != null) {
-            replayTimer.cancel();
+            replayTimer.cancel(false);
         }
     }
     
@@ -232,7 +233,7 @@ public class StandardStateManager extends BaseStateManager {
 //                if (msg.getSender() == replica && msg.getState().getSerializedState() != null) {
 //                	LOGGER.info("Expected replica sent state. Setting it to state");
 //                    state = msg.getState();
-//                    if (stateTimer != null) stateTimer.cancel();
+//                    if (stateTimer != null) stateTimer.cancel(false);
 //                }
 
                 LOGGER.info("Verifying more than Quorum consistent replies");
@@ -298,7 +299,7 @@ public class StandardStateManager extends BaseStateManager {
                             
                             if (e != null) {
 
-                                hash = tomLayer.computeHash(currentProof.getDecision());
+                                hash = tomLayer.computeBatchHash(currentProof.getDecision());
                                 e.propValueHash = hash;
                                 e.propValue = currentProof.getDecision();
                                 e.deserializedPropValue = tomLayer.checkProposedValue(currentProof.getDecision(), false);
@@ -358,7 +359,7 @@ public class StandardStateManager extends BaseStateManager {
 
 //                        tomLayer.requestsTimer.Enabled(true);
 //                        tomLayer.requestsTimer.startTimer();
-                        if (stateTimer != null) stateTimer.cancel();
+                        if (stateTimer != null) stateTimer.cancel(false);
                         
                         if (appStateOnly) {
                         	appStateOnly = false;
@@ -369,7 +370,7 @@ public class StandardStateManager extends BaseStateManager {
                         waitingCID = -1;
                         reset();
  
-                        if (stateTimer != null) stateTimer.cancel();
+                        if (stateTimer != null) stateTimer.cancel(false);
                         
                         if (appStateOnly) {
                             requestState();
@@ -382,12 +383,12 @@ public class StandardStateManager extends BaseStateManager {
                         reset();
                         requestState();
 
-                        if (stateTimer != null) stateTimer.cancel();
+                        if (stateTimer != null) stateTimer.cancel(false);
                     } else if (haveState == 0 && (topology.getCurrentViewN() - topology.getCurrentViewF()) <= getReplies()) {
 
                         LOGGER.error("(TOMLayer.SMReplyDeliver) Could not obtain the state, retrying");
                         reset();
-                        if (stateTimer != null) stateTimer.cancel();
+                        if (stateTimer != null) stateTimer.cancel(false);
                         waitingCID = -1;
                         //requestState();
                     } else {
@@ -22,8 +22,8 @@ import java.net.UnknownHostException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 import bftsmart.statemanagement.strategy.StandardTRMessage;
@@ -49,7 +49,7 @@ public class DurableStateManager extends BaseStateManager {
 	private ExecutionManager execManager;
 
 	private ReentrantLock lockTimer = new ReentrantLock();
-	private Timer stateTimer = null;
+	private ScheduledFuture<?> stateTimer = null;
 	private final static long INIT_TIMEOUT = 40000;
 	private long timeout = INIT_TIMEOUT;
 
@@ -95,7 +95,7 @@ public class DurableStateManager extends BaseStateManager {
 		LOGGER.info("(TOMLayer.requestState) I just sent a request to the other replicas for the state up to CID {}",
 				waitingCID);
 
-		TimerTask stateTask = new TimerTask() {
+		Runnable stateTask = new Runnable() {
 			public void run() {
 				int[] myself = new int[1];
 				myself[0] = topology.getStaticConf().getProcessId();
@@ -104,9 +104,8 @@ public class DurableStateManager extends BaseStateManager {
 			}
 		};
 
-		stateTimer = new Timer("state timer");
 		timeout = timeout * 2;
-		stateTimer.schedule(stateTask, timeout);
+		stateTimer = tomLayer.getScheduler().schedule(stateTask, timeout, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
@@ -116,7 +115,7 @@ public class DurableStateManager extends BaseStateManager {
 				"(StateManager.stateTimeout) Timeout for the replica that was supposed to send the complete state. Changing desired replica.");
 		LOGGER.info("Timeout no timer do estado!");
 		if (stateTimer != null)
-			stateTimer.cancel();
+			stateTimer.cancel(false);
 		reset();
 		requestState();
 		lockTimer.unlock();
@@ -392,7 +391,7 @@ public class DurableStateManager extends BaseStateManager {
 //						tomLayer.requestsTimer.Enabled(true);
 //						tomLayer.requestsTimer.startTimer();
 						if (stateTimer != null)
-							stateTimer.cancel();
+							stateTimer.cancel(false);
 
 						if (appStateOnly) {
 							appStateOnly = false;
@@ -408,7 +407,7 @@ public class DurableStateManager extends BaseStateManager {
 						reset();
 
 						if (stateTimer != null)
-							stateTimer.cancel();
+							stateTimer.cancel(false);
 
 						if (appStateOnly) {
 							requestState();
@@ -423,7 +422,7 @@ public class DurableStateManager extends BaseStateManager {
 						requestState();
 
 						if (stateTimer != null)
-							stateTimer.cancel();
+							stateTimer.cancel(false);
 					}
 				}
 			}
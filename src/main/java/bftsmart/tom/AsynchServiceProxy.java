@@ -7,14 +7,24 @@ import bftsmart.reconfiguration.views.ViewStorage;
 import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.util.Extractor;
+import bftsmart.tom.util.OperationBatch;
 import bftsmart.tom.util.TOMUtil;
 import org.slf4j.LoggerFactory;
 import utils.net.SSLSecurity;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class is an extension of 'ServiceProxy' that can waits for replies
@@ -31,6 +41,11 @@ public class AsynchServiceProxy extends ServiceProxy {
 	private Map<Integer, RequestContext> requestsContext;
 	private Map<Integer, TOMMessage[]> requestsReplies;
 	private Map<Integer, Integer> requestsAlias;
+	private Semaphore orderedWindow;
+	private ScheduledExecutorService timeoutScheduler;
+	private ScheduledExecutorService batchScheduler;
+	private final Object batchLock = new Object();
+	private OperationBatchBuffer batchBuffer;
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AsynchServiceProxy.class);
 	
 //	/**
@@ -81,6 +96,7 @@ public class AsynchServiceProxy extends ServiceProxy {
 		requestsContext = new ConcurrentHashMap<>();
 		requestsReplies = new ConcurrentHashMap<>();
 		requestsAlias = new ConcurrentHashMap<>();
+		orderedWindow = new Semaphore(getViewManager().getStaticConf().getClientWindow());
 	}
 
 	private View newView(byte[] bytes) {
@@ -114,6 +130,196 @@ public class AsynchServiceProxy extends ServiceProxy {
 		return invokeAsynch(request, targets, replyListener, reqType);
 	}
 
+	/**
+	 * Sends an ordered request without waiting for the previous ones to
+	 * complete. At most 'system.totalordermulticast.clientWindow' requests are
+	 * outstanding at the same time; when the window is full this method blocks
+	 * until an earlier request completes.
+	 *
+	 * The returned future completes with the reply content once a quorum of
+	 * matching replies is received, or exceptionally if the replies do not
+	 * match or no quorum is reached within the invoke timeout.
+	 *
+	 * @param request
+	 *            Request to be ordered
+	 * @return the future reply of the request
+	 */
+	public CompletableFuture<byte[]> invokeOrderedAsync(byte[] request) {
+		return invokeOrderedAsync(request, false);
+	}
+
+	/**
+	 * @param operationBatch true if the request packs several operations, see
+	 *                       {@link TOMMessage#isOperationBatch()}
+	 */
+	private CompletableFuture<byte[]> invokeOrderedAsync(byte[] request, boolean operationBatch) {
+		try {
+			orderedWindow.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			CompletableFuture<byte[]> interrupted = new CompletableFuture<>();
+			interrupted.completeExceptionally(e);
+			return interrupted;
+		}
+
+		PendingOrderedRequest pending = new PendingOrderedRequest();
+		try {
+			int[] targets = getViewManager().getCurrentViewProcesses();
+			int[] sendTargets = getOrderedTargets();
+			int operationId = invokeAsynch(request, targets, sendTargets, new OrderedReplyListener(pending),
+					TOMMessageType.ORDERED_REQUEST, operationBatch);
+			if (sendTargets.length < targets.length) {
+				getTimeoutScheduler().schedule(() -> broadcastDirectedRequest(operationId),
+						getViewManager().getStaticConf().getLeaderDirectedTimeout(), TimeUnit.MILLISECONDS);
+			}
+			pending.started(operationId, getTimeoutScheduler().schedule(
+					() -> pending.finish(null,
+							new TimeoutException("No reply quorum for ordered request[" + operationId + "] in "
+									+ getInvokeTimeout() + " seconds!")),
+					getInvokeTimeout(), TimeUnit.SECONDS));
+		} catch (RuntimeException e) {
+			pending.finish(null, e);
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Re-sends an ordered request that was sent to the leader only to every
+	 * replica, if it is still waiting for its replies.
+	 */
+	private void broadcastDirectedRequest(int operationId) {
+		RequestContext requestContext = requestsContext.get(operationId);
+		if (requestContext == null || requestsAlias.containsKey(operationId)) {
+			return;
+		}
+		LOGGER.info("No reply for ordered request[{}] from the leader, sending it to all replicas", operationId);
+		clearLeaderHint();
+		sendMessageToTargets(requestContext.getRequest(), requestContext.getReqId(), requestContext.getOperationId(),
+				requestContext.getTargets(), TOMMessageType.ORDERED_REQUEST, requestContext.isOperationBatch());
+	}
+
+	/**
+	 * Number of ordered requests sent by {@link #invokeOrderedAsync(byte[])}
+	 * that are not completed yet.
+	 */
+	public int getOutstandingOrderedRequests() {
+		return getViewManager().getStaticConf().getClientWindow() - orderedWindow.availablePermits();
+	}
+
+	/**
+	 * Sends a small ordered operation merged with other concurrent operations
+	 * into one request. The operations are buffered until
+	 * 'system.totalordermulticast.clientBatchSize' operations or
+	 * 'system.totalordermulticast.clientBatchBytes' bytes are pending, or
+	 * 'system.totalordermulticast.clientBatchLinger' milliseconds after the
+	 * first of them; the batch is then sent by
+	 * {@link #invokeOrderedAsync(byte[])}. The replicas execute each operation as
+	 * a separate command and reply with one reply per operation.
+	 *
+	 * If client batching is disabled, the operation is sent on its own.
+	 *
+	 * @param operation
+	 *            Operation to be ordered
+	 * @return the future reply of the operation
+	 */
+	public CompletableFuture<byte[]> invokeOrderedBatched(byte[] operation) {
+		int maxOperations = getViewManager().getStaticConf().getClientBatchSize();
+		if (maxOperations <= 0) {
+			return invokeOrderedAsync(operation);
+		}
+
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		OperationBatchBuffer full = null;
+		synchronized (batchLock) {
+			if (batchBuffer == null) {
+				OperationBatchBuffer buffer = new OperationBatchBuffer();
+				buffer.linger = getBatchScheduler().schedule(() -> flushBatch(buffer),
+						getViewManager().getStaticConf().getClientBatchLinger(), TimeUnit.MILLISECONDS);
+				batchBuffer = buffer;
+			}
+			batchBuffer.add(operation, future);
+			if (batchBuffer.operations.size() >= maxOperations
+					|| batchBuffer.bytes >= getViewManager().getStaticConf().getClientBatchBytes()) {
+				full = batchBuffer;
+				batchBuffer = null;
+				full.linger.cancel(false);
+			}
+		}
+		if (full != null) {
+			sendBatch(full);
+		}
+		return future;
+	}
+
+	private void flushBatch(OperationBatchBuffer buffer) {
+		synchronized (batchLock) {
+			if (batchBuffer != buffer) {
+				// already sent because it was full
+				return;
+			}
+			batchBuffer = null;
+		}
+		sendBatch(buffer);
+	}
+
+	private void sendBatch(OperationBatchBuffer buffer) {
+		invokeOrderedAsync(OperationBatch.pack(buffer.operations), true).whenComplete((reply, error) -> {
+			if (error != null) {
+				buffer.futures.forEach(f -> f.completeExceptionally(error));
+				return;
+			}
+			byte[][] replies = OperationBatch.unpack(reply);
+			if (replies == null || replies.length != buffer.futures.size()) {
+				IllegalStateException mismatch = new IllegalStateException(
+						"The reply doesn't match a batch of " + buffer.futures.size() + " operations!");
+				buffer.futures.forEach(f -> f.completeExceptionally(mismatch));
+				return;
+			}
+			for (int i = 0; i < replies.length; i++) {
+				buffer.futures.get(i).complete(replies[i]);
+			}
+		});
+	}
+
+	private synchronized ScheduledExecutorService getTimeoutScheduler() {
+		if (timeoutScheduler == null) {
+			timeoutScheduler = newScheduler("Asynch-Proxy-Timeout-" + getProcessId());
+		}
+		return timeoutScheduler;
+	}
+
+	/**
+	 * Sends the lingering batches. It is separated from the timeout scheduler,
+	 * because sending blocks while the window of outstanding requests is full.
+	 */
+	private synchronized ScheduledExecutorService getBatchScheduler() {
+		if (batchScheduler == null) {
+			batchScheduler = newScheduler("Asynch-Proxy-Batcher-" + getProcessId());
+		}
+		return batchScheduler;
+	}
+
+	private static ScheduledExecutorService newScheduler(String name) {
+		return Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (timeoutScheduler != null) {
+				timeoutScheduler.shutdownNow();
+			}
+			if (batchScheduler != null) {
+				batchScheduler.shutdownNow();
+			}
+		}
+		super.close();
+	}
+
 	/**
 	 *
 	 * @param requestId
@@ -150,6 +356,17 @@ public class AsynchServiceProxy extends ServiceProxy {
 				return;
 			}
 
+			if (reply.getReqType().isTentative()) {
+				if (requestContext.getRequestType() == TOMMessageType.ORDERED_REQUEST
+						&& requestContext.getReplyListener() != null
+						&& contains(requestContext.getTargets(), reply.getSender())
+						&& reply.getSequence() == requestContext.getReqId()
+						&& !requestsAlias.containsKey(reply.getOperationId())) {
+					requestContext.getReplyListener().tentativeReplyReceived(requestContext, reply);
+				}
+				return;
+			}
+
 			if (contains(requestContext.getTargets(), reply.getSender())
 					&& (reply.getSequence() == requestContext.getReqId())
 					// && (reply.getOperationId() == requestContext.getOperationId())
@@ -182,7 +399,7 @@ public class AsynchServiceProxy extends ServiceProxy {
 
 							if ((replies[i] != null) && (i != pos || getViewManager().getCurrentViewN() == 1)
 									&& (reply.getReqType() != TOMMessageType.ORDERED_REQUEST
-											|| Arrays.equals(replies[i].getContent(), reply.getContent()))) {
+											|| getReplyComparator().compare(replies[i].getContent(), reply.getContent()) == 0)) {
 								sameContent++;
 							}
 						}
@@ -202,7 +419,8 @@ public class AsynchServiceProxy extends ServiceProxy {
 								public void run() {
 
 									int id = invokeAsynch(requestContext.getRequest(), requestContext.getTargets(),
-											requestContext.getReplyListener(), TOMMessageType.ORDERED_REQUEST);
+											requestContext.getTargets(), requestContext.getReplyListener(),
+											TOMMessageType.ORDERED_REQUEST, requestContext.isOperationBatch());
 
 									requestsAlias.put(reply.getOperationId(), id);
 								}
@@ -235,6 +453,19 @@ public class AsynchServiceProxy extends ServiceProxy {
 	 * @return
 	 */
 	private int invokeAsynch(byte[] request, int[] targets, ReplyListener replyListener, TOMMessageType reqType) {
+		return invokeAsynch(request, targets, targets, replyListener, reqType, false);
+	}
+
+	/**
+	 * @param targets
+	 *            replicas whose replies are accepted
+	 * @param sendTargets
+	 *            replicas the request is sent to
+	 * @param operationBatch
+	 *            true if the request packs several operations
+	 */
+	private int invokeAsynch(byte[] request, int[] targets, int[] sendTargets, ReplyListener replyListener,
+			TOMMessageType reqType, boolean operationBatch) {
 
 		LOGGER.debug("Asynchronously sending request to {}", Arrays.toString(targets));
 
@@ -243,7 +474,7 @@ public class AsynchServiceProxy extends ServiceProxy {
 		canSendLock.lock();
 
 		requestContext = new RequestContext(generateRequestId(reqType), generateOperationId(), reqType, targets,
-				System.currentTimeMillis(), replyListener, request);
+				System.currentTimeMillis(), replyListener, request, operationBatch);
 
 		try {
 			LOGGER.debug("Storing request context for {}", requestContext.getOperationId());
@@ -251,7 +482,8 @@ public class AsynchServiceProxy extends ServiceProxy {
 			requestsReplies.put(requestContext.getOperationId(),
 					new TOMMessage[super.getViewManager().getCurrentViewN()]);
 
-			sendMessageToTargets(request, requestContext.getReqId(), requestContext.getOperationId(), targets, reqType);
+			sendMessageToTargets(request, requestContext.getReqId(), requestContext.getOperationId(), sendTargets,
+					reqType, operationBatch);
 
 		} finally {
 			canSendLock.unlock();
@@ -260,6 +492,127 @@ public class AsynchServiceProxy extends ServiceProxy {
 		return requestContext.getOperationId();
 	}
 
+	/**
+	 * Operations waiting to be merged into one request by
+	 * {@link #invokeOrderedBatched(byte[])}.
+	 */
+	private static class OperationBatchBuffer {
+
+		private final List<byte[]> operations = new ArrayList<>();
+
+		private final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+
+		private int bytes;
+
+		private ScheduledFuture<?> linger;
+
+		private void add(byte[] operation, CompletableFuture<byte[]> future) {
+			operations.add(operation);
+			futures.add(future);
+			bytes += operation.length;
+		}
+	}
+
+	/**
+	 * State of a request sent by {@link #invokeOrderedAsync(byte[])}; it is
+	 * finished only once, by the first reply quorum, mismatch or timeout.
+	 */
+	private class PendingOrderedRequest {
+
+		private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+		private int operationId = -1;
+
+		private ScheduledFuture<?> timeout;
+
+		private boolean finished = false;
+
+		private synchronized void started(int operationId, ScheduledFuture<?> timeout) {
+			this.operationId = operationId;
+			this.timeout = timeout;
+			if (finished) {
+				release();
+			}
+		}
+
+		private void finish(byte[] result, Throwable error) {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				finished = true;
+				if (operationId != -1) {
+					release();
+				}
+			}
+			// the window is released before completing, so that callbacks of the
+			// future may issue new requests
+			orderedWindow.release();
+			if (error == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(error);
+			}
+		}
+
+		private void release() {
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			cleanAsynchRequest(operationId);
+		}
+	}
+
+	/**
+	 * Collects the replies of a request sent by
+	 * {@link #invokeOrderedAsync(byte[])} and finishes it when a quorum of them
+	 * match.
+	 */
+	private class OrderedReplyListener implements ReplyListener {
+
+		private final PendingOrderedRequest pending;
+
+		private TOMMessage[] replies;
+
+		private OrderedReplyListener(PendingOrderedRequest pending) {
+			this.pending = pending;
+			this.replies = new TOMMessage[getViewManager().getCurrentViewN()];
+		}
+
+		@Override
+		public void reset() {
+			replies = new TOMMessage[getViewManager().getCurrentViewN()];
+		}
+
+		@Override
+		public void replyReceived(RequestContext context, TOMMessage reply) {
+			int pos = getViewManager().getCurrentViewPos(reply.getSender());
+			if (pos < 0 || pos >= replies.length) {
+				return;
+			}
+			replies[pos] = reply;
+
+			int sameContent = 0;
+			int received = 0;
+			for (TOMMessage r : replies) {
+				if (r != null) {
+					received++;
+					if (getReplyComparator().compare(r.getContent(), reply.getContent()) == 0) {
+						sameContent++;
+					}
+				}
+			}
+
+			if (sameContent >= getReplyQuorum()) {
+				updateLeaderHint(replies);
+				pending.finish(reply.getContent(), null);
+			} else if (received == replies.length) {
+				pending.finish(null, new IllegalStateException(
+						"Replies of ordered request[" + context.getOperationId() + "] do not match!"));
+			}
+		}
+	}
+
 	/**
 	 *
 	 * @param targets
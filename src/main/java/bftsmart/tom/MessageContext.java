@@ -56,6 +56,7 @@ public class MessageContext implements Serializable {
     private final TOMMessage firstInBatch; //to be replaced by a statistics class
     private boolean lastInBatch; // indicates that the command is the last in the batch. Used for logging
     private final boolean noOp;
+    private boolean operationBatch; // the command packs several operations, see OperationBatch
     
     public boolean readOnly = false;
     
@@ -230,6 +231,18 @@ public class MessageContext implements Serializable {
     public boolean isNoOp() {
         return noOp;
     }
+
+    /**
+     * @return true if the command packs several operations sent together by the
+     *         client (see {@link TOMMessage#isOperationBatch()})
+     */
+    public boolean isOperationBatch() {
+        return operationBatch;
+    }
+
+    public void setOperationBatch(boolean operationBatch) {
+        this.operationBatch = operationBatch;
+    }
     
     /**
      * Generates a TOMMessage for its associated requests using the new info that it now supports since the previous commit.
@@ -7,6 +7,7 @@ import java.util.Properties;
 
 import bftsmart.reconfiguration.util.HostsConfig;
 import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.tom.util.SignatureScheme;
 
 public interface ReplicaConfiguration {
 
@@ -177,15 +178,101 @@ public interface ReplicaConfiguration {
 	 */
 	PrivateKey getRSAPrivateKey();
 
+	/**
+	 * The signature scheme used to sign and verify client requests, leader change
+	 * messages and reconfiguration requests
+	 */
+	SignatureScheme getSignatureScheme();
+
 	boolean isBFT();
 
 	int getNumRepliers();
 
 	int getNumNettyWorkers();
 
+	/**
+	 * 执行只读请求的线程数；为 0 时在接收请求的网络线程中直接执行；
+	 */
+	int getNumReadThreads();
+
+	/**
+	 * 排队等待执行的只读请求的最大数量；
+	 */
+	int getReadQueueSize();
+
 	HostsConfig getOuterHostConfig();
 
 	void addHostInfo(int id, String host, int port, int monitorPort, boolean secure, boolean monitorSecure);
 
 	int getEpochDelay();
-}
\ No newline at end of file
+
+	/**
+	 * 是否在预计算完成后立即向客户端发送试探性应答；
+	 */
+	boolean isTentativeReplies();
+
+	/**
+	 * 是否允许持有租约的领导者不经共识直接应答读请求；BFT 模式下总是返回 false；
+	 */
+	boolean isLeaseReads();
+
+	/**
+	 * 领导者租约的时长，单位毫秒；
+	 */
+	long getLeaseDuration();
+
+	/**
+	 * 客户端可以同时发出的有序请求的数量，即未完成请求的序号窗口；副本暂存窗口内提前到达的请求；
+	 */
+	int getClientWindow();
+
+	/**
+	 * 客户端的有序请求是否只由一个指定的副本返回完整应答，其它副本只返回应答的摘要；
+	 */
+	boolean isReplyDigests();
+
+	/**
+	 * 客户端合并到一个有序请求中的最大操作数量；0 表示不启用客户端批处理；
+	 */
+	int getClientBatchSize();
+
+	/**
+	 * 客户端合并到一个有序请求中的操作的最大字节数；
+	 */
+	int getClientBatchBytes();
+
+	/**
+	 * 客户端等待更多操作合并的最长时间，单位毫秒；
+	 */
+	long getClientBatchLinger();
+
+	/**
+	 * 客户端是否只把有序请求发送给已知的领导者及其后的 f 个节点；
+	 */
+	boolean isLeaderDirected();
+
+	/**
+	 * 只发送给领导者的请求在多长时间内没有得到应答时改为发送给所有节点，单位毫秒；
+	 */
+	long getLeaderDirectedTimeout();
+
+	/**
+	 * 因为时期变更或者领导者切换而挂起、等待复用的预计算批次的最大数量；0 表示不启用预计算结果缓存；
+	 */
+	int getPrecomputeCacheSize();
+
+	/**
+	 * 每个节点可以缓存的超出预期共识消息的字节数；0 表示不限制；
+	 */
+	long getOutOfContextBudget();
+
+	/**
+	 * 判定领导者失效的 phi 阈值；0 表示不启用 phi 累积故障检测，只使用固定的心跳超时时长；
+	 */
+	double getHeartBeatPhiThreshold();
+
+	/**
+	 * 是否把副本的运行指标注册为 JMX MBean；
+	 */
+	boolean isMetricsJmx();
+}
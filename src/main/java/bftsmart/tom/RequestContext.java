@@ -15,10 +15,16 @@ public final class RequestContext{
 	private final long sendingTime;
 	private final ReplyListener replyListener;
         private final byte[] request;
+	private final boolean operationBatch;
         
 
 	public RequestContext(int reqId, int operationId, TOMMessageType requestType, int [] targets, 
 			long sendingTime, ReplyListener replyListener, byte[] request) {
+		this(reqId, operationId, requestType, targets, sendingTime, replyListener, request, false);
+	}
+
+	public RequestContext(int reqId, int operationId, TOMMessageType requestType, int [] targets,
+			long sendingTime, ReplyListener replyListener, byte[] request, boolean operationBatch) {
 		this.reqId = reqId;
 		this.operationId = operationId;
 		this.requestType = requestType;
@@ -26,6 +32,7 @@ public final class RequestContext{
 		this.sendingTime = sendingTime;
 		this.replyListener = replyListener;
                 this.request = request;
+		this.operationBatch = operationBatch;
 	}
         
 	public final int getReqId() {
@@ -49,5 +56,11 @@ public final class RequestContext{
         public byte [] getRequest() {
 		return request;
 	}
+	/**
+	 * @return true if the request packs several operations, see
+	 *         {@link bftsmart.tom.core.messages.TOMMessage#isOperationBatch()}
+	 */
+	public boolean isOperationBatch() {
+		return operationBatch;
+	}
 }
-
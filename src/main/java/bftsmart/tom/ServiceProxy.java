@@ -15,6 +15,8 @@ limitations under the License.
  */
 package bftsmart.tom;
 
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.reconfiguration.ClientViewController;
 import bftsmart.reconfiguration.ReconfigureReply;
 import bftsmart.reconfiguration.util.TOMConfiguration;
 import bftsmart.reconfiguration.views.View;
@@ -28,9 +30,12 @@ import utils.codec.Base58Utils;
 import utils.exception.ViewObsoleteException;
 import utils.net.SSLSecurity;
 
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +57,9 @@ public class ServiceProxy extends TOMSender {
 	private TOMMessageType requestType;
 	private int replyQuorum = 0; // size of the reply quorum
 	private TOMMessage replies[] = null; // Replies from replicas are stored here
+	private TOMMessage tentativeReplies[] = null; // Tentative replies (sent after precompute) are stored here
+	private boolean rejectedReads[] = null; // Replicas that rejected the read-only request being waited for
+	private int rejectedReadCount = 0; // Number of replicas that rejected the read-only request
 	private int receivedReplies = 0; // Number of received replies
 	private TOMMessage response = null; // Reply delivered to the application
 	private int invokeTimeout = 150;
@@ -60,14 +68,31 @@ public class ServiceProxy extends TOMSender {
 	private Random rand = new Random(System.currentTimeMillis());
 	private int replyServer;
 	private HashResponseController hashResponseController;
+	private DigestResponseController digestResponseController;
+	private TOMMessage directedRequest; // ordered request sent to the leader only, see TOMulticastOrdered
 	private int invokeUnorderedHashedTimeout = 10;
 	private boolean viewObsolete = false;
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ServiceProxy.class);
 
 	public ServiceProxy(TOMConfiguration config, ViewStorage viewStorage, Comparator<byte[]> replyComparator, Extractor replyExtractor, SSLSecurity sslSecurity) {
 		init(config, viewStorage, sslSecurity);
+		setup(replyComparator, replyExtractor);
+	}
+
+	/**
+	 * Creates a proxy over the given view controller and client side
+	 * communication system.
+	 */
+	protected ServiceProxy(ClientViewController viewController, CommunicationSystemClientSide cs,
+			Comparator<byte[]> replyComparator, Extractor replyExtractor) {
+		init(viewController, cs);
+		setup(replyComparator, replyExtractor);
+	}
 
+	private void setup(Comparator<byte[]> replyComparator, Extractor replyExtractor) {
 		replies = new TOMMessage[getViewManager().getCurrentViewN()];
+		tentativeReplies = new TOMMessage[getViewManager().getCurrentViewN()];
+		rejectedReads = new boolean[getViewManager().getCurrentViewN()];
 
 		comparator = (replyComparator != null) ? replyComparator : new Comparator<byte[]>() {
 			@Override
@@ -134,6 +159,29 @@ public class ServiceProxy extends TOMSender {
 		return invoke(request, TOMMessageType.UNORDERED_HASHED_REQUEST);
 	}
 
+	/**
+	 * Sends a read that is answered by the leader without running consensus,
+	 * while the leader holds a lease granted by a quorum of replicas. Only the
+	 * reply of the replica that reports itself as the leader, and that agrees
+	 * with the leader known from previous replies, is accepted. If the replicas
+	 * answer without such a reply (e.g. no replica holds a lease), or no reply
+	 * arrives in time, the read is invoked again as an ordered request.
+	 * <p>
+	 * In BFT mode the reply of a single leader cannot be trusted (a faulty
+	 * leader and a lagging follower could agree on a stale state), so the read
+	 * is always ordered.
+	 *
+	 * @param request
+	 *            Request to be sent
+	 * @return The reply of the leader, or of the replicas if the read was ordered
+	 */
+	public byte[] invokeLeaseRead(byte[] request) {
+		if (getViewManager().getStaticConf().isBFT()) {
+			return invoke(request, TOMMessageType.ORDERED_REQUEST);
+		}
+		return invoke(request, TOMMessageType.LEASE_READ_REQUEST);
+	}
+
 	/**
 	 * This method sends a request to the replicas, and returns the related reply.
 	 * If the servers take more than invokeTimeout seconds the method returns null.
@@ -152,6 +200,9 @@ public class ServiceProxy extends TOMSender {
 		try {
 			// Clean all statefull data to prepare for receiving next replies
 			Arrays.fill(replies, null);
+			Arrays.fill(tentativeReplies, null);
+			Arrays.fill(rejectedReads, false);
+			rejectedReadCount = 0;
 			receivedReplies = 0;
 			response = null;
 			replyQuorum = getReplyQuorum();
@@ -163,6 +214,8 @@ public class ServiceProxy extends TOMSender {
 
 			replyServer = -1;
 			hashResponseController = null;
+			digestResponseController = null;
+			directedRequest = null;
 
 			LOGGER.info("Before Sending request {} with reqId {}, operationId {}, clientId={}", reqType, reqId, operationId, getProcessId());
 
@@ -179,6 +232,25 @@ public class ServiceProxy extends TOMSender {
 				sm.setReplyServer(replyServer);
 
 				TOMulticast(sm);
+			} else if (requestType == TOMMessageType.ORDERED_REQUEST
+					&& getViewManager().getStaticConf().isReplyDigests() && getViewManager().getCurrentViewN() > 1) {
+
+				replyServer = getRandomlyServerId();
+				LOGGER.debug("Ordered request {} designates replica {} to send the full reply", reqId, replyServer);
+
+				digestResponseController = new DigestResponseController(request,
+						getViewManager().getCurrentViewPos(replyServer), getViewManager().getCurrentViewN());
+
+				TOMMessage sm = new TOMMessage(getProcessId(), getSession(), reqId, operationId, request, null,
+						getViewManager().getCurrentViewId(), requestType);
+				sm.setReplyServer(replyServer);
+
+				directedRequest = TOMulticastOrdered(sm) ? sm : null;
+			} else if (requestType == TOMMessageType.ORDERED_REQUEST) {
+				TOMMessage sm = new TOMMessage(getProcessId(), getSession(), reqId, operationId, request, null,
+						getViewManager().getCurrentViewId(), requestType);
+
+				directedRequest = TOMulticastOrdered(sm) ? sm : null;
 			} else {
 				TOMulticast(request, reqId, operationId, reqType);
 			}
@@ -196,8 +268,30 @@ public class ServiceProxy extends TOMSender {
 						LOGGER.debug("######## UNORDERED HASHED REQUEST TIMOUT ########");
 						return invoke(request, TOMMessageType.ORDERED_REQUEST);
 					}
+				} else if (reqType == TOMMessageType.LEASE_READ_REQUEST) {
+					if (!this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS) || response == null) {
+						LOGGER.debug("Lease read with reqId {} was not answered, invoking it as ordered request", reqId);
+						return invoke(request, TOMMessageType.ORDERED_REQUEST);
+					}
 				} else {
-					if (!this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS)) {
+					boolean replied;
+					if (directedRequest != null) {
+						replied = this.sm.tryAcquire(Math.min(getViewManager().getStaticConf().getLeaderDirectedTimeout(),
+								TimeUnit.SECONDS.toMillis(invokeTimeout)), TimeUnit.MILLISECONDS);
+						if (!replied) {
+							// the leader may have changed or be faulty, widen to every replica
+							LOGGER.info("No reply for reqId {} from the leader, sending it to all replicas", reqId);
+							clearLeaderHint();
+							TOMulticast(directedRequest);
+							replied = this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS);
+						}
+					} else {
+						replied = this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS);
+					}
+					if (!replied && requestFullReplies()) {
+						replied = this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS);
+					}
+					if (!replied) {
 						LOGGER.error("###################TIMEOUT#######################");
 						LOGGER.error("Reply timeout for reqId is {}", reqId);
 						LOGGER.error("Process id {} // req id {} // TIMEOUT // ", getProcessId(), reqId);
@@ -215,6 +309,13 @@ public class ServiceProxy extends TOMSender {
 
 			LOGGER.debug("Response extracted {}", response);
 
+			if (response == null && rejectedReadCount > 0) {
+				// the replicas were too busy to execute the read-only request
+				LOGGER.info("Read-only request rejected by {} replicas, invoking it as ordered request",
+						rejectedReadCount);
+				return invoke(request, TOMMessageType.ORDERED_REQUEST);
+			}
+
 			byte[] ret = null;
 
 			if (response == null) {
@@ -237,6 +338,7 @@ public class ServiceProxy extends TOMSender {
 				// ******* EDUARDO BEGIN **************//
 				if (reqType == TOMMessageType.ORDERED_REQUEST) {
 					// Reply to a normal request!
+					updateLeaderHint(replies);
 					if (response.getViewID() == getViewManager().getCurrentViewId()) {
 						ret = response.getContent(); // return the response
 					} else {// if(response.getViewID() > getViewManager().getCurrentViewId())
@@ -252,7 +354,8 @@ public class ServiceProxy extends TOMSender {
 
 					}
 				} else if (reqType == TOMMessageType.UNORDERED_REQUEST
-						|| reqType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
+						|| reqType == TOMMessageType.UNORDERED_HASHED_REQUEST
+						|| reqType == TOMMessageType.LEASE_READ_REQUEST) {
 					ret = response.getContent(); // return the response
 					if (response.getViewID() > getViewManager().getCurrentViewId()) {
 						Object r = TOMUtil.getObject(response.getContent());
@@ -312,6 +415,8 @@ public class ServiceProxy extends TOMSender {
 		getViewManager().reconfigureTo(v);
 		getViewManager().getViewStore().storeView(v);
 		replies = new TOMMessage[getViewManager().getCurrentViewN()];
+		tentativeReplies = new TOMMessage[getViewManager().getCurrentViewN()];
+		rejectedReads = new boolean[getViewManager().getCurrentViewN()];
 		getCommunicationSystem().updateConnections();
 	}
 	// ******* EDUARDO END **************//
@@ -341,6 +446,30 @@ public class ServiceProxy extends TOMSender {
 				return;
 			}
 
+			if (reply.getSequence() == reqId && requestType == TOMMessageType.ORDERED_REQUEST
+					&& reply.getReqType().isTentative()) {
+				tentativeReplyReceived(pos, reply);
+				return;
+			}
+
+			if (reply.getSequence() == reqId && requestType == TOMMessageType.LEASE_READ_REQUEST) {
+				leaseReadReplyReceived(pos, reply);
+				return;
+			}
+
+			if (reply.getSequence() == reqId && reply.getReqType() == TOMMessageType.READ_REJECTED
+					&& (requestType == TOMMessageType.UNORDERED_REQUEST
+							|| requestType == TOMMessageType.UNORDERED_HASHED_REQUEST)) {
+				readRejected(pos, reply);
+				return;
+			}
+
+			if (reply.getSequence() == reqId && digestResponseController != null
+					&& (reply.getReqType() == requestType || reply.getReqType() == TOMMessageType.REPLY_DIGEST)) {
+				digestReplyReceived(pos, reply);
+				return;
+			}
+
 			int sameContent = 1;
 			if (reply.getSequence() == reqId && reply.getReqType() == requestType) {
 
@@ -383,6 +512,11 @@ public class ServiceProxy extends TOMSender {
 							}
 						}
 					}
+
+					// final replies also count for the tentative quorum
+					if (requestType == TOMMessageType.ORDERED_REQUEST && checkTentativeQuorum(reply)) {
+						return;
+					}
 				}
 
 				if (response == null) {
@@ -429,6 +563,212 @@ public class ServiceProxy extends TOMSender {
 		}
 	}
 
+	/**
+	 * Handles a full or digest reply of the ordered request being waited for,
+	 * when a designated replica sends the full reply. Must be called while
+	 * holding canReceiveLock.
+	 */
+	private void digestReplyReceived(int pos, TOMMessage reply) {
+		if (this.getViewManager().getCurrentView().getId() < reply.getViewID()) {
+			viewObsolete = true;
+		}
+		if (replies[pos] == null) {
+			receivedReplies++;
+		}
+		replies[pos] = reply;
+
+		TOMMessage accepted = digestResponseController.getResponse(pos, reply);
+		if (accepted != null) {
+			response = accepted;
+			reqId = -1;
+			viewObsolete = false;
+			this.sm.release(); // resumes the thread that is executing the "invoke" method
+			return;
+		}
+
+		if (digestResponseController.isDesignatedMismatched()) {
+			// the designated replica contradicts a quorum of digests
+			requestFullReplies();
+		} else if (receivedReplies == getViewManager().getCurrentViewN()) {
+			if (!digestResponseController.hasQuorumDigest()) {
+				// no reply quorum is possible any more
+				reqId = -1;
+				viewObsolete = false;
+				this.sm.release(); // resumes the thread that is executing the "invoke" method
+			} else {
+				requestFullReplies();
+			}
+		}
+	}
+
+	/**
+	 * Asks every replica for the full reply of the ordered request being waited
+	 * for, by re-sending it without a designated replica. The replicas answer
+	 * it from their reply cache, the request is not executed again.
+	 *
+	 * @return true if the full replies were requested by this call
+	 */
+	private boolean requestFullReplies() {
+		canReceiveLock.lock();
+		try {
+			if (reqId == -1 || digestResponseController == null || digestResponseController.fullRepliesRequested) {
+				return false;
+			}
+			digestResponseController.fullRepliesRequested = true;
+
+			LOGGER.info("Designated replica {} did not send a valid reply for reqId {}, asking all replicas for it",
+					replyServer, reqId);
+			TOMulticast(digestResponseController.request, reqId, operationId, TOMMessageType.ORDERED_REQUEST);
+			return true;
+		} finally {
+			canReceiveLock.unlock();
+		}
+	}
+
+	/**
+	 * Handles a tentative reply or invalidation of the ordered request being
+	 * waited for. Must be called while holding canReceiveLock.
+	 */
+	private void tentativeReplyReceived(int pos, TOMMessage reply) {
+		if (reply.getReqType() == TOMMessageType.TENTATIVE_INVALIDATION) {
+			LOGGER.info("Tentative reply from {} with reqId {} invalidated", reply.getSender(), reply.getSequence());
+			tentativeReplies[pos] = null;
+			return;
+		}
+		tentativeReplies[pos] = reply;
+		checkTentativeQuorum(reply);
+	}
+
+	/**
+	 * Handles a reply or a rejection of the lease read being waited for, and
+	 * accepts the reply of the leader once it is trusted (see
+	 * {@link #acceptLeaseRead(TOMMessage)}). The invoking thread is also
+	 * resumed, without response, when every replica answered and no reply was
+	 * accepted. Must be called while holding canReceiveLock.
+	 */
+	private void leaseReadReplyReceived(int pos, TOMMessage reply) {
+		if (reply.getReqType() != TOMMessageType.LEASE_READ_REQUEST
+				&& reply.getReqType() != TOMMessageType.LEASE_READ_REJECTED) {
+			return;
+		}
+		if (replies[pos] == null) {
+			receivedReplies++;
+		}
+		replies[pos] = reply;
+		if (reply.getReqType() == TOMMessageType.LEASE_READ_REQUEST) {
+			TOMMessage accepted = acceptLeaseRead(reply);
+			if (accepted != null) {
+				LOGGER.debug("Lease read with reqId {} answered by {}", reqId, accepted.getSender());
+				response = accepted;
+				reqId = -1;
+				this.sm.release(); // resumes the thread that is executing the "invoke" method
+				return;
+			}
+		}
+		if (receivedReplies == getViewManager().getCurrentViewN()) {
+			LOGGER.debug("Lease read with reqId {} was not answered by a trusted leader", reqId);
+			reqId = -1;
+			this.sm.release(); // resumes the thread that is executing the "invoke" method
+		}
+	}
+
+	/**
+	 * Returns the reply of the leader reported by the given lease read reply,
+	 * if it can be trusted: the leader must have answered itself, and must be
+	 * the leader known from previous replies, if any. Replies are never trusted
+	 * in BFT mode. Must be called while holding canReceiveLock.
+	 *
+	 * @return the reply of the leader, or null if it is not trusted (yet)
+	 */
+	private TOMMessage acceptLeaseRead(TOMMessage reply) {
+		if (getViewManager().getStaticConf().isBFT()) {
+			return null;
+		}
+		int leader = reply.getLeader();
+		int knownLeader = getLeaderHint();
+		if (knownLeader >= 0 && leader != knownLeader) {
+			return null;
+		}
+		int leaderPos = getViewManager().getCurrentViewPos(leader);
+		if (leaderPos < 0 || !isLeaseRead(replies[leaderPos], leader)) {
+			return null;
+		}
+		return replies[leaderPos];
+	}
+
+	private static boolean isLeaseRead(TOMMessage reply, int leader) {
+		return reply != null && reply.getReqType() == TOMMessageType.LEASE_READ_REQUEST
+				&& reply.getLeader() == leader;
+	}
+
+	/**
+	 * Handles the rejection of the read-only request being waited for by a
+	 * replica whose read-only queue is full. Once so many replicas rejected it
+	 * that the others cannot form a reply quorum, the invoking thread is
+	 * resumed without response, and the request is invoked again as an ordered
+	 * request. Must be called while holding canReceiveLock.
+	 */
+	private void readRejected(int pos, TOMMessage reply) {
+		if (rejectedReads[pos]) {
+			return;
+		}
+		rejectedReads[pos] = true;
+		rejectedReadCount++;
+		LOGGER.debug("Read-only request with reqId {} rejected by {}", reqId, reply.getSender());
+		if (getViewManager().getCurrentViewN() - rejectedReadCount < replyQuorum) {
+			reqId = -1;
+			this.sm.release(); // resumes the thread that is executing the "invoke" method
+		}
+	}
+
+	/**
+	 * Accepts the given reply if a tentative quorum of replicas replied (finally
+	 * or tentatively) with the same content. Must be called while holding
+	 * canReceiveLock.
+	 *
+	 * @return true if the response was accepted
+	 */
+	private boolean checkTentativeQuorum(TOMMessage reply) {
+		int sameContent = 0;
+		for (int i = 0; i < replies.length; i++) {
+			TOMMessage r = replies[i] != null ? replies[i] : tentativeReplies[i];
+			if (r != null && comparator.compare(r.getContent(), reply.getContent()) == 0) {
+				sameContent++;
+			}
+		}
+		if (sameContent < getTentativeReplyQuorum()) {
+			return false;
+		}
+		LOGGER.debug("Accepting tentative result of reqId {} with {} matching replies", reqId, sameContent);
+		response = reply;
+		reqId = -1;
+		viewObsolete = false;
+		this.sm.release(); // resumes the thread that is executing the "invoke" method
+		return true;
+	}
+
+	/**
+	 * The number of matching tentative replies needed to accept a result before
+	 * it is decided. It is larger than the reply quorum, so that the accepted
+	 * result was precomputed by a quorum of replicas that intersects every
+	 * other quorum in a correct replica.
+	 */
+	protected int getTentativeReplyQuorum() {
+		int n = getViewManager().getCurrentViewN();
+		if (getViewManager().getStaticConf().isBFT()) {
+			return (n + getViewManager().getCurrentViewF()) / 2 + 1;
+		} else {
+			return n / 2 + 1;
+		}
+	}
+
+	/**
+	 * The comparator used to decide whether two replies have the same content.
+	 */
+	protected Comparator<byte[]> getReplyComparator() {
+		return comparator;
+	}
+
 	protected int getReplyQuorum() {
 		if (getViewManager().getStaticConf().isBFT()) {
 //			return (int) Math.ceil((getViewManager().getCurrentViewN() + getViewManager().getCurrentViewF()) / 2) + 1;
@@ -445,6 +785,79 @@ public class ServiceProxy extends TOMSender {
 		return super.getViewManager().getCurrentViewProcesses()[pos];
 	}
 
+	/**
+	 * Votes on the digests of the replies of an ordered request whose full reply
+	 * is sent by a designated replica. Each reply is accounted in constant time,
+	 * by the count of its digest.
+	 */
+	private class DigestResponseController {
+		private final byte[] request;
+		private final int replyServerPos;
+		private final byte[][] digests;
+		private final TOMMessage[] fullReplies;
+		private final Map<ByteBuffer, Integer> votes = new HashMap<>();
+		private byte[] quorumDigest;
+		private boolean fullRepliesRequested;
+
+		public DigestResponseController(byte[] request, int replyServerPos, int length) {
+			this.request = request;
+			this.replyServerPos = replyServerPos;
+			this.digests = new byte[length][];
+			this.fullReplies = new TOMMessage[length];
+		}
+
+		public TOMMessage getResponse(int pos, TOMMessage reply) {
+			byte[] digest;
+			if (reply.getReqType() == TOMMessageType.REPLY_DIGEST) {
+				digest = reply.getContent();
+			} else {
+				try {
+					digest = TOMUtil.computeHash(reply.getContent() == null ? new byte[0] : reply.getContent());
+				} catch (NoSuchAlgorithmException e) {
+					LOGGER.error("hash exception", e);
+					return null;
+				}
+				fullReplies[pos] = reply;
+			}
+			if (digest == null) {
+				return null;
+			}
+
+			if (digests[pos] == null || !Arrays.equals(digests[pos], digest)) {
+				if (digests[pos] != null) {
+					votes.merge(ByteBuffer.wrap(digests[pos]), -1, Integer::sum);
+				}
+				digests[pos] = digest;
+				int count = votes.merge(ByteBuffer.wrap(digest), 1, Integer::sum);
+				if (count >= replyQuorum) {
+					quorumDigest = digest;
+				}
+			}
+
+			if (quorumDigest == null) {
+				return null;
+			}
+			if (fullReplies[replyServerPos] != null && Arrays.equals(digests[replyServerPos], quorumDigest)) {
+				return fullReplies[replyServerPos];
+			}
+			for (int i = 0; i < fullReplies.length; i++) {
+				if (fullReplies[i] != null && Arrays.equals(digests[i], quorumDigest)) {
+					return fullReplies[i];
+				}
+			}
+			return null;
+		}
+
+		public boolean hasQuorumDigest() {
+			return quorumDigest != null;
+		}
+
+		public boolean isDesignatedMismatched() {
+			return quorumDigest != null && digests[replyServerPos] != null
+					&& !Arrays.equals(digests[replyServerPos], quorumDigest);
+		}
+	}
+
 	private class HashResponseController {
 		private TOMMessage reply;
 		private byte[][] hashReplies;
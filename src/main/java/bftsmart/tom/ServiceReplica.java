@@ -42,10 +42,13 @@ import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.leaderchange.CertifiedDecision;
 import bftsmart.tom.server.Executable;
 import bftsmart.tom.server.FIFOExecutable;
+import bftsmart.tom.server.ParallelBatchExecutable;
+import bftsmart.tom.server.ParallelBatchExecutor;
 import bftsmart.tom.server.Recoverable;
 import bftsmart.tom.server.Replier;
 import bftsmart.tom.server.RequestVerifier;
 import bftsmart.tom.server.SingleExecutable;
+import bftsmart.tom.server.defaultservices.DefaultRecoverable;
 import bftsmart.tom.server.defaultservices.DefaultReplier;
 import bftsmart.tom.util.ShutdownHookThread;
 import bftsmart.tom.util.TOMUtil;
@@ -93,6 +96,7 @@ public class ServiceReplica {
 	private ReentrantLock waitTTPJoinMsgLock = new ReentrantLock();
 	private Condition canProceed = waitTTPJoinMsgLock.newCondition();
 	private final Executable executor;
+	private volatile ParallelBatchExecutor parallelExecutor;
 	private Recoverable recoverer = null;
 //	private TOMLayer tomLayer = null;
 	private volatile boolean tomStackCreated = false;
@@ -156,6 +160,7 @@ public class ServiceReplica {
 		this.realmName = realName;
 		this.serverViewController = viewController;
 		this.executor = executor;
+		setParallelExecutor(createParallelExecutor(executor));
 		this.recoverer = recoverer;
 		this.replier = (replier != null ? replier : new DefaultReplier());
 		this.verifier = verifier;
@@ -341,6 +346,7 @@ public class ServiceReplica {
 		// Generate the messages to send back to the clients
 		message.reply = new TOMMessage(id, message.getSession(), message.getSequence(), message.getOperationId(),
 				response, null, serverViewController.getCurrentViewId(), message.getReqType());
+		message.reply.setLeader(currentLeader());
 
 		if (serverViewController.getStaticConf().getNumRepliers() > 0) {
 			repMan.send(message);
@@ -363,6 +369,10 @@ public class ServiceReplica {
 					replicaCtx = null;
 					tomStackCreated = false;
 				}
+				if (repMan != null) {
+					repMan.shutdown();
+				}
+				shutdownParallelExecutor();
 			}
 		};
 		t.start();
@@ -372,6 +382,38 @@ public class ServiceReplica {
 		}
 	}
 
+	/**
+	 * Creates the executor of parallel batches, or returns null if the executable
+	 * does not support them
+	 */
+	private static ParallelBatchExecutor createParallelExecutor(Executable executor) {
+		// batch executables keep executing the whole batch by themselves, unless
+		// they run it through DefaultRecoverable.executeParallel
+		return (executor instanceof ParallelBatchExecutable
+				&& (!(executor instanceof PreComputeBatchExecutable) || executor instanceof DefaultRecoverable))
+						? new ParallelBatchExecutor()
+						: null;
+	}
+
+	/**
+	 * Sets the executor of parallel batches, which is also shared with a
+	 * DefaultRecoverable executable so that the replica owns its only instance
+	 */
+	private void setParallelExecutor(ParallelBatchExecutor batchExecutor) {
+		parallelExecutor = batchExecutor;
+		if (executor instanceof DefaultRecoverable) {
+			((DefaultRecoverable) executor).setParallelExecutor(batchExecutor);
+		}
+	}
+
+	private void shutdownParallelExecutor() {
+		ParallelBatchExecutor current = parallelExecutor;
+		if (current != null) {
+			setParallelExecutor(null);
+			current.shutdown();
+		}
+	}
+
 	public void restart() {
 		Thread t = new Thread() {
 
@@ -379,10 +421,12 @@ public class ServiceReplica {
 			public void run() {
 				if (replicaCtx != null) {
 					replicaCtx.shutdown();
+					shutdownParallelExecutor();
 
 					tomStackCreated = false;
 					replicaCtx = null;
 					cs = null;
+					setParallelExecutor(createParallelExecutor(executor));
 
 					init();
 
@@ -402,6 +446,7 @@ public class ServiceReplica {
 		int consensusCount = 0;
 		List<TOMMessage> toBatch = new ArrayList<>();
 		List<MessageContext> msgCtxts = new ArrayList<>();
+		List<MessageContextPair> parallelBatch = new ArrayList<>();
 		boolean noop = true;
 
 		for (TOMMessage[] requestsFromConsensus : requests) {
@@ -428,6 +473,7 @@ public class ServiceReplica {
 								firstRequest.timestamp, request.numOfNonces, request.seed, regencies[consensusCount],
 								leaders[consensusCount], consId[consensusCount],
 								cDecs[consensusCount].getConsMessages(), firstRequest, false);
+						msgCtx.setOperationBatch(request.isOperationBatch());
 
 						if (requestCount + 1 == requestsFromConsensus.length) {
 
@@ -454,6 +500,17 @@ public class ServiceReplica {
 							if (request.getReqType() == TOMMessageType.RECONFIG) {
 								serverViewController.enqueueUpdate(request);
 							}
+						} else if (parallelExecutor != null) {
+
+							LOGGER.debug(
+									"(ServiceReplica.receiveMessages) Batching request from {} for ParallelBatchExecutable",
+									request.getSender());
+
+							if (this.recoverer != null)
+								this.recoverer.Op(msgCtx.getConsensusId(), request.getContent(), msgCtx);
+
+							// the requests of this consensus are executed together, see executeParallelBatch
+							parallelBatch.add(new MessageContextPair(request, msgCtx));
 						} else if (executor instanceof FIFOExecutable) {
 
 							LOGGER.debug(
@@ -477,9 +534,7 @@ public class ServiceReplica {
 									msgCtx, request.getSender(), request.getOperationId());
 
 							// Generate the messages to send back to the clients
-							request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-									request.getOperationId(), response, null, serverViewController.getCurrentViewId(),
-									request.getReqType());
+							request.reply = createReply(request, response, null);
 							LOGGER.debug("(ServiceReplica.receiveMessages) sending reply to {}", request.getSender());
 							replier.manageReply(request, msgCtx);
 						} else if (executor instanceof SingleExecutable) {
@@ -505,9 +560,7 @@ public class ServiceReplica {
 									msgCtx);
 
 							// Generate the messages to send back to the clients
-							request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-									request.getOperationId(), response, null, serverViewController.getCurrentViewId(),
-									request.getReqType());
+							request.reply = createReply(request, response, null);
 							LOGGER.debug("(ServiceReplica.receiveMessages) sending reply to {}", request.getSender());
 							replier.manageReply(request, msgCtx);
 						} else {
@@ -566,6 +619,11 @@ public class ServiceReplica {
 				requestCount++;
 			} // End of : for (TOMMessage request : requestsFromConsensus);
 
+			if (!parallelBatch.isEmpty()) {
+				executeParallelBatch(parallelBatch);
+				parallelBatch.clear();
+			}
+
 			// This happens when a consensus finishes but there are no requests to deliver
 			// to the application. This can happen if a reconfiguration is issued and is the
 			// only
@@ -677,6 +735,9 @@ public class ServiceReplica {
 				return;
 			}
 			// Send the replies back to the client
+			List<TOMMessage> managedReplies = serverViewController.getStaticConf().getNumRepliers() > 0
+					? new ArrayList<>(toBatch.size())
+					: null;
 			for (int index = 0; index < toBatch.size(); index++) {
 				TOMMessage request = toBatch.get(index);
 				if (request.getReqType() == TOMMessageType.RECONFIG) {
@@ -715,21 +776,18 @@ public class ServiceReplica {
 					LOGGER.info("I am proc {}, view = {}, reply View = {}",
 							this.serverViewController.getStaticConf().getProcessId(), view, replyView);
 
-					request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-							request.getOperationId(), asyncResponseLinkedList.get(index), TOMUtil.getBytes(replyView),
-							serverViewController.getCurrentViewId(), request.getReqType());
+					request.reply = createReply(request, asyncResponseLinkedList.get(index),
+							TOMUtil.getBytes(replyView));
 
 				} else {
-					request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-							request.getOperationId(), asyncResponseLinkedList.get(index), null,
-							serverViewController.getCurrentViewId(), request.getReqType());
+					request.reply = createReply(request, asyncResponseLinkedList.get(index), null);
 				}
 
 				if (serverViewController.getStaticConf().getNumRepliers() > 0) {
 					LOGGER.debug(
 							"(ServiceReplica.receiveMessages) sending reply to {} with sequence number {} and operation ID {} via ReplyManager",
 							request.getSender(), request.getSequence(), request.getOperationId());
-					repMan.send(request);
+					managedReplies.add(request);
 				} else {
 					LOGGER.debug(
 							"(ServiceReplica.receiveMessages) sending reply to {} with sequence number {} and operation ID {}",
@@ -738,12 +796,82 @@ public class ServiceReplica {
 					// cs.send(new int[]{request.getSender()}, request.reply);
 				}
 			}
+			// the replies of the whole decision are handed to the reply threads at once;
+			if (managedReplies != null && !managedReplies.isEmpty()) {
+				repMan.send(managedReplies);
+			}
 
 			// DEBUG
 			LOGGER.debug("BATCHEXECUTOR END");
 		} // End of: if (executor instanceof PreComputeBatchExecutable && numRequests > 0)
 	}
 
+	/**
+	 * Creates the reply of an ordered request. If the client designated another
+	 * replica to send the full reply, this replica only sends the digest of the
+	 * response; the full reply is kept with the request, so that the client can
+	 * still fetch it when the designated replica does not answer correctly.
+	 */
+	private TOMMessage createReply(TOMMessage request, byte[] response, byte[] viewContent) {
+		TOMMessage reply = new TOMMessage(id, request.getSession(), request.getSequence(), request.getOperationId(),
+				response, viewContent, serverViewController.getCurrentViewId(), request.getReqType());
+		reply.setLeader(currentLeader());
+		if (request.getReqType() != TOMMessageType.ORDERED_REQUEST || request.getReplyServer() < 0
+				|| request.getReplyServer() == id) {
+			return reply;
+		}
+		try {
+			byte[] digest = TOMUtil.computeHash(response == null ? new byte[0] : response);
+			request.fullReply = reply;
+			TOMMessage digestReply = new TOMMessage(id, request.getSession(), request.getSequence(),
+					request.getOperationId(), digest, null, serverViewController.getCurrentViewId(),
+					TOMMessageType.REPLY_DIGEST);
+			digestReply.setLeader(reply.getLeader());
+			return digestReply;
+		} catch (NoSuchAlgorithmException e) {
+			LOGGER.error("Error occurred while computing the reply digest, send the full reply instead!", e);
+			return reply;
+		}
+	}
+
+	/**
+	 * The leader known by this replica, reported to the clients in the replies.
+	 */
+	private int currentLeader() {
+		ReplicaContext ctx = replicaCtx;
+		return ctx == null ? -1 : ctx.getTOMLayer().getExecManager().getCurrentLeader();
+	}
+
+	/**
+	 * Executes the requests decided in one consensus through the
+	 * ParallelBatchExecutable interface, and replies to the clients in the order
+	 * of the requests.
+	 *
+	 * @param batch the requests and their contexts, in decision order
+	 */
+	private void executeParallelBatch(List<MessageContextPair> batch) {
+		ParallelBatchExecutor batchExecutor = parallelExecutor;
+		if (batchExecutor == null) {
+			// the replica has been killed
+			return;
+		}
+		byte[][] commands = new byte[batch.size()][];
+		MessageContext[] msgCtxs = new MessageContext[batch.size()];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = batch.get(i).message.getContent();
+			msgCtxs[i] = batch.get(i).msgCtx;
+		}
+
+		byte[][] responses = batchExecutor.execute((ParallelBatchExecutable) executor, commands, msgCtxs);
+
+		for (int i = 0; i < responses.length; i++) {
+			TOMMessage request = batch.get(i).message;
+			request.reply = createReply(request, responses[i], null);
+			LOGGER.debug("(ServiceReplica.executeParallelBatch) sending reply to {}", request.getSender());
+			replier.manageReply(request, msgCtxs[i]);
+		}
+	}
+
 	/**
 	 * This method initializes the object
 	 *
@@ -795,6 +923,10 @@ public class ServiceReplica {
 		}
 		LOGGER.info("I am proc {}, start Tomlayer!", currentProcessId);
 
+		if (svc.getStaticConf().isMetricsJmx()) {
+			tomLayer.getMetrics().registerMBean(realName, currentProcessId);
+		}
+
 		// TODO:
 		tomLayer.start(); // start the layer execution
 
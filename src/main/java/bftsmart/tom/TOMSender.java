@@ -47,6 +47,7 @@ public abstract class TOMSender implements ReplyReceiver, Closeable, AutoCloseab
 	private Lock lock = new ReentrantLock(); // lock to manage concurrent access to this object by other threads
 	private boolean useSignatures = false;
 	private AtomicInteger opCounter = new AtomicInteger(0);
+	private volatile LeaderHint leaderHint; // leader reported by the replies, see getOrderedTargets()
 
 	/**
 	 * Creates a new instance of TOMulticastSender
@@ -71,12 +72,18 @@ public abstract class TOMSender implements ReplyReceiver, Closeable, AutoCloseab
 	}
 
 	public void init(TOMConfiguration config, ViewStorage viewStorage, SSLSecurity sslSecurity) {
-		this.viewController = new ClientViewController(config, viewStorage);
-		startsCS(viewController.getStaticConf().getProcessId(), sslSecurity);
+		ClientViewController viewController = new ClientViewController(config, viewStorage);
+		init(viewController, CommunicationSystemClientSideFactory.getCommunicationSystemClientSide(
+				viewController.getStaticConf().getProcessId(), viewController, sslSecurity));
 	}
 
-	private void startsCS(int clientId, SSLSecurity sslSecurity) {
-		this.cs = CommunicationSystemClientSideFactory.getCommunicationSystemClientSide(clientId, this.viewController, sslSecurity);
+	/**
+	 * Initializes this sender with the given view controller and client side
+	 * communication system.
+	 */
+	protected void init(ClientViewController viewController, CommunicationSystemClientSide cs) {
+		this.viewController = viewController;
+		this.cs = cs;
 		this.cs.setReplyReceiver(this); // This object itself shall be a reply receiver
 		this.me = this.viewController.getStaticConf().getProcessId();
 		this.useSignatures = this.viewController.getStaticConf().isUseSignatures();
@@ -117,16 +124,134 @@ public abstract class TOMSender implements ReplyReceiver, Closeable, AutoCloseab
 	}
 
 
+	/**
+	 * Sends an ordered request to the replicas returned by
+	 * {@link #getOrderedTargets()}.
+	 *
+	 * @return true if the request was not sent to every replica of the view
+	 */
+	public boolean TOMulticastOrdered(TOMMessage sm) {
+		int[] targets = getOrderedTargets();
+		cs.send(useSignatures, targets, sm);
+		return targets.length < this.viewController.getCurrentViewN();
+	}
+
+	/**
+	 * The replicas an ordered request is sent to. With leader-directed
+	 * submission ('system.totalordermulticast.leaderDirected') they are the
+	 * leader reported by f+1 replies of the last completed request and the f
+	 * replicas that follow it in the view, so that at least one correct replica
+	 * watches the request and forwards it to the current leader when its
+	 * request timer expires (the hint may be stale after a leader change).
+	 * Otherwise, while no leader is known, or after the view changed since the
+	 * leader was reported, they are all the replicas of the view.
+	 */
+	protected int[] getOrderedTargets() {
+		int[] processes = viewController.getCurrentViewProcesses();
+		LeaderHint hint = leaderHint;
+		if (hint == null || !viewController.getStaticConf().isLeaderDirected()) {
+			return processes;
+		}
+		if (hint.viewId != viewController.getCurrentViewId()) {
+			clearLeaderHint();
+			return processes;
+		}
+		int pos = viewController.getCurrentViewPos(hint.leader);
+		int count = Math.min(processes.length, viewController.getCurrentViewF() + 1);
+		if (pos < 0 || count == processes.length) {
+			return processes;
+		}
+		int[] targets = new int[count];
+		for (int i = 0; i < count; i++) {
+			targets[i] = processes[(pos + i) % processes.length];
+		}
+		return targets;
+	}
+
+	/**
+	 * Records the leader reported by the replies of a completed request, if at
+	 * least f+1 of them report the same leader, so that a single faulty replica
+	 * cannot redirect the requests of this client. Otherwise the known leader
+	 * is kept.
+	 *
+	 * @param replies the replies received for the request, indexed by the
+	 *                position of their senders in the current view; may
+	 *                contain null
+	 */
+	protected void updateLeaderHint(TOMMessage[] replies) {
+		int quorum = viewController.getCurrentViewF() + 1;
+		for (int i = 0; i < replies.length; i++) {
+			if (replies[i] == null || replies[i].getLeader() < 0) {
+				continue;
+			}
+			int leader = replies[i].getLeader();
+			int count = 1;
+			for (int j = i + 1; j < replies.length; j++) {
+				if (replies[j] != null && replies[j].getLeader() == leader) {
+					count++;
+				}
+			}
+			if (count >= quorum) {
+				leaderHint = new LeaderHint(leader, viewController.getCurrentViewId());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The leader reported by f+1 replies of a completed request, see
+	 * {@link #updateLeaderHint(TOMMessage[])}.
+	 *
+	 * @return the known leader, or -1 if no leader is known in the current view
+	 */
+	protected int getLeaderHint() {
+		LeaderHint hint = leaderHint;
+		return hint == null || hint.viewId != viewController.getCurrentViewId() ? -1 : hint.leader;
+	}
+
+	/**
+	 * Forgets the known leader, so that the next requests are sent to every
+	 * replica until the replies report the leader again.
+	 */
+	protected void clearLeaderHint() {
+		leaderHint = null;
+	}
+
 	public void sendMessageToTargets(byte[] m, int reqId, int operationId, int[] targets, TOMMessageType type) {
+		sendMessageToTargets(m, reqId, operationId, targets, type, false);
+	}
+
+	/**
+	 * @param operationBatch true if m packs several operations, see
+	 *                       {@link TOMMessage#isOperationBatch()}
+	 */
+	protected void sendMessageToTargets(byte[] m, int reqId, int operationId, int[] targets, TOMMessageType type,
+			boolean operationBatch) {
 		// remove TTP;
 //		if(this.getViewManager().getStaticConf().isTheTTP()) {
 //			type = TOMMessageType.ASK_STATUS;
 //		}
-		cs.send(useSignatures, targets,
-				new TOMMessage(me, session, reqId, operationId, m, null, viewController.getCurrentViewId(), type));
+		TOMMessage sm = new TOMMessage(me, session, reqId, operationId, m, null, viewController.getCurrentViewId(), type);
+		sm.setOperationBatch(operationBatch);
+		cs.send(useSignatures, targets, sm);
 	}
 
 	public int getSession(){
 		return session;
 	}
+
+	/**
+	 * A leader reported by the replies, and the view it was reported in.
+	 */
+	private static final class LeaderHint {
+
+		private final int leader;
+
+		private final int viewId;
+
+		private LeaderHint(int leader, int viewId) {
+			this.leader = leader;
+			this.viewId = viewId;
+		}
+	}
 }
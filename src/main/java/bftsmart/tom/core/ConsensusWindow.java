@@ -0,0 +1,147 @@
+package bftsmart.tom.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import bftsmart.consensus.Consensus;
+
+/**
+ * 共识实例窗口；
+ * <p>
+ *
+ * 活跃的共识 ID 总是落在 [lastExec - 3, lastExec + highMark] 范围内，因此用一个固定大小的环形数组保存共识实例，
+ * 按 cid 对窗口大小取模定位槽位；查找不需要加锁，只有创建和移除实例时才对槽位所在的分段加锁；
+ * <p>
+ *
+ * 槽位已被其它共识占用时（例如状态传输期间出现了超出窗口的 cid），实例保存在溢出表中，查找时一并检查；
+ */
+public final class ConsensusWindow {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final int mask;
+
+	private final AtomicReferenceArray<Consensus> slots;
+
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private final Map<Integer, Consensus> overflow = new ConcurrentHashMap<>();
+
+	private final IntFunction<Consensus> factory;
+
+	/**
+	 * @param window  窗口的最小大小，实际大小取不小于该值的 2 的幂；
+	 * @param factory 创建共识实例；
+	 */
+	public ConsensusWindow(int window, IntFunction<Consensus> factory) {
+		int size = Integer.highestOneBit(Math.max(window, LOCK_STRIPES) - 1) << 1;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.factory = factory;
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * 窗口大小；
+	 */
+	public int size() {
+		return slots.length();
+	}
+
+	/**
+	 * 返回指定的共识实例；不存在时返回 null；
+	 */
+	public Consensus get(int cid) {
+		Consensus consensus = slots.get(cid & mask);
+		if (consensus != null && consensus.getId() == cid) {
+			return consensus;
+		}
+		return overflow.isEmpty() ? null : overflow.get(cid);
+	}
+
+	/**
+	 * 返回指定的共识实例；不存在时创建；
+	 */
+	public Consensus getOrCreate(int cid) {
+		Consensus consensus = get(cid);
+		if (consensus != null) {
+			return consensus;
+		}
+		int slot = cid & mask;
+		synchronized (lock(slot)) {
+			consensus = get(cid);
+			if (consensus == null) {
+				consensus = factory.apply(cid);
+				if (slots.get(slot) == null) {
+					slots.set(slot, consensus);
+				} else {
+					overflow.put(cid, consensus);
+				}
+			}
+			return consensus;
+		}
+	}
+
+	/**
+	 * 移除指定的共识实例；
+	 *
+	 * @return 被移除的实例；不存在时返回 null；
+	 */
+	public Consensus remove(int cid) {
+		int slot = cid & mask;
+		synchronized (lock(slot)) {
+			Consensus consensus = slots.get(slot);
+			if (consensus != null && consensus.getId() == cid) {
+				slots.set(slot, null);
+				return consensus;
+			}
+			return overflow.isEmpty() ? null : overflow.remove(cid);
+		}
+	}
+
+	/**
+	 * 移除 cid 在 [fromCid, toCid) 范围内的共识实例；
+	 */
+	public void removeRange(int fromCid, int toCid) {
+		if (fromCid >= toCid) {
+			return;
+		}
+		if ((long) toCid - fromCid >= slots.length()) {
+			for (int slot = 0; slot < slots.length(); slot++) {
+				Consensus consensus = slots.get(slot);
+				if (consensus != null && consensus.getId() >= fromCid && consensus.getId() < toCid) {
+					remove(consensus.getId());
+				}
+			}
+		} else {
+			for (int cid = fromCid; cid < toCid; cid++) {
+				Consensus consensus = slots.get(cid & mask);
+				if (consensus != null && consensus.getId() == cid) {
+					remove(cid);
+				}
+			}
+		}
+		if (!overflow.isEmpty()) {
+			for (Integer cid : overflow.keySet()) {
+				if (cid >= fromCid && cid < toCid) {
+					remove(cid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 因为槽位冲突而保存在溢出表中的实例数量；
+	 */
+	public int getOverflowCount() {
+		return overflow.size();
+	}
+
+	private Object lock(int slot) {
+		return locks[slot & (LOCK_STRIPES - 1)];
+	}
+}
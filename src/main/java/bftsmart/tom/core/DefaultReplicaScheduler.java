@@ -0,0 +1,85 @@
+package bftsmart.tom.core;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于 {@link ScheduledThreadPoolExecutor} 的副本调度器；
+ * <p>
+ *
+ * 使用少量的守护线程执行所有定时任务；被取消的任务立即从队列中移除，频繁地启动和停止定时器不会在队列中累积；
+ */
+public class DefaultReplicaScheduler implements ReplicaScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultReplicaScheduler.class);
+
+	/**
+	 * 默认的调度线程数量；
+	 */
+	public static final int DEFAULT_THREADS = 2;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	public DefaultReplicaScheduler(int processId) {
+		this(processId, DEFAULT_THREADS);
+	}
+
+	public DefaultReplicaScheduler(int processId, int threads) {
+		this("Replica-Scheduler", processId, threads);
+	}
+
+	/**
+	 * @param name      调度线程名称的前缀；
+	 * @param processId 副本的 Id；
+	 * @param threads   调度线程数量；
+	 */
+	public DefaultReplicaScheduler(String name, int processId, int threads) {
+		AtomicInteger index = new AtomicInteger();
+		this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+			Thread thread = new Thread(r, name + "-" + processId + "-" + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.DiscardPolicy());
+		this.executor.setRemoveOnCancelPolicy(true);
+		this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return executor.schedule(guard(task), delay, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+		return executor.scheduleWithFixedDelay(guard(task), initialDelay, delay, unit);
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * 当前排队等待执行的任务数量；
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	private static Runnable guard(Runnable task) {
+		return () -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				LOGGER.error("Error occurred while running scheduled task! --" + e.getMessage(), e);
+			}
+		};
+	}
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 //import bftsmart.tom.util.Logger;
 
@@ -53,6 +54,20 @@ public final class DeliveryThread extends Thread {
 	private final Lock decidedLock = new ReentrantLock();
 	private final Condition notEmptyQueue = decidedLock.newCondition();
 
+	/**
+	 * The last consensus whose decision was queued for delivery; it is updated
+	 * before the last executed consensus of the TOM layer
+	 */
+	private volatile int lastQueued = -1;
+	/**
+	 * The last consensus whose decision was delivered to the application
+	 */
+	private int lastDelivered = -1;
+	/**
+	 * Lease reads waiting for the delivery of a consensus; guarded by itself
+	 */
+	private final List<PendingLeaseRead> pendingLeaseReads = new ArrayList<>();
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(DeliveryThread.class);
 
 	/**
@@ -82,6 +97,13 @@ public final class DeliveryThread extends Thread {
 		return receiver;
 	}
 
+	/**
+	 * @return the number of decisions waiting to be delivered
+	 */
+	public int getDecidedQueueSize() {
+		return decided.size();
+	}
+
 	/**
 	 * Invoked by the TOM layer, to deliver a decision
 	 * 
@@ -93,10 +115,17 @@ public final class DeliveryThread extends Thread {
 //            LOGGER.debug("(DeliveryThread.delivery) Decision from consensus {} does not contain good reconfiguration", dec.getConsensusId());
 		// set this decision as the last one from this replica
 
+		if (dec.getConsensusId() > lastQueued) {
+			lastQueued = dec.getConsensusId();
+		}
+
 		// 此轮共识是否发生过回滚
 		if (dec.getRollback()) {
 			this.tomLayer.getExecManager().removeSingleConsensus(dec.getConsensusId());
 			tomLayer.setInExec(-1);
+			// the reads waiting for this consensus would observe writes that never happened
+			final int rolledBack = dec.getConsensusId();
+			rejectLeaseReads(read -> read.targetCid >= rolledBack);
 		} else {
 			tomLayer.setLastExec(dec.getConsensusId());
 			tomLayer.setInExec(-1);
@@ -186,6 +215,8 @@ public final class DeliveryThread extends Thread {
 		LOGGER.debug("Current decided size {}", decided.size());
 		decided.clear();
 
+		leaseReadsReady(lastCID);
+
 		LOGGER.debug("(DeliveryThread.update) All finished up to {}", lastCID);
 	}
 
@@ -230,6 +261,7 @@ public final class DeliveryThread extends Thread {
 					CertifiedDecision[] cDecs;
 					cDecs = new CertifiedDecision[requests.length];
 					int count = 0;
+					long dequeueTime = System.nanoTime();
 					for (Decision d : decisions) {
 						requests[count] = extractMessagesFromDecision(d);
 						consensusIds[count] = d.getConsensusId();
@@ -245,6 +277,7 @@ public final class DeliveryThread extends Thread {
 						cDecs[count] = cDec;
 
 						// cons.firstMessageProposed contains the performance counters
+						TOMMessage firstMessage = null;
 						if (requests[count][0].equals(d.firstMessageProposed)) {
 							long time = requests[count][0].timestamp;
 							long seed = requests[count][0].seed;
@@ -253,7 +286,9 @@ public final class DeliveryThread extends Thread {
 							requests[count][0].timestamp = time;
 							requests[count][0].seed = seed;
 							requests[count][0].numOfNonces = numOfNonces;
+							firstMessage = d.firstMessageProposed;
 						}
+						tomLayer.getMetrics().recordDecision(requests[count].length, firstMessage, dequeueTime);
 
 						count++;
 					}
@@ -261,8 +296,10 @@ public final class DeliveryThread extends Thread {
 					Decision lastDecision = decisions.get(decisions.size() - 1);
 
 					if (requests != null && requests.length > 0) {
+						long executionStart = System.nanoTime();
 						deliverMessages(consensusIds, regenciesIds, leadersIds, cDecs, requests,
 								asyncResponseLinkedList, lastDecision.getRollback());
+						tomLayer.getMetrics().recordExecution(System.nanoTime() - executionStart);
 
 						// ******* EDUARDO BEGIN ***********//
 						if (controller.hasUpdates()) {
@@ -283,6 +320,9 @@ public final class DeliveryThread extends Thread {
 					// TODO: Is this part necessary? If it is, can we put it
 					// inside setLastExec
 					int cid = lastDecision.getConsensusId();
+					if (!lastDecision.getRollback()) {
+						leaseReadsReady(cid);
+					}
 					if (cid > 2) {
 						int stableConsensus = cid - 3;
 
@@ -323,7 +363,22 @@ public final class DeliveryThread extends Thread {
 	}
 
 	protected void deliverUnordered(TOMMessage request, int regency) {
+		ReadOnlyExecutor readOnlyExecutor = tomLayer.getReadOnlyExecutor();
+		if (readOnlyExecutor == null) {
+			executeUnordered(request, regency);
+			return;
+		}
+		// the client is told at once, so that it falls back to an ordered request instead of waiting for its timeout
+		if (!readOnlyExecutor.submit(request.getSender(), () -> executeUnordered(request, regency),
+				() -> tomLayer.rejectReadOnly(request))) {
+			LOGGER.warn(
+					"(DeliveryThread.deliverUnordered) Read-only queue is full, rejecting request {} of client {} --[QueueDepth={}][Rejected={}]",
+					request.getSequence(), request.getSender(), readOnlyExecutor.getQueueDepth(),
+					readOnlyExecutor.getRejectedCount());
+		}
+	}
 
+	private void executeUnordered(TOMMessage request, int regency) {
 		MessageContext msgCtx = new MessageContext(request.getSender(), request.getViewID(), request.getReqType(),
 				request.getSession(), request.getSequence(), request.getOperationId(), request.getReplyServer(),
 				request.serializedMessageSignature, System.currentTimeMillis(), 0, 0, regency, -1, -1, null, null,
@@ -334,6 +389,113 @@ public final class DeliveryThread extends Thread {
 		receiver.receiveReadonlyMessage(request, msgCtx);
 	}
 
+	/**
+	 * Delivers a lease read once the given consensus has been delivered to the
+	 * application, so that the read observes every write completed before it
+	 *
+	 * @param request   the lease read
+	 * @param regency   the regency in which the read was received
+	 * @param targetCid the consensus the read has to wait for
+	 */
+	protected void deliverLeaseRead(TOMMessage request, int regency, int targetCid) {
+		synchronized (pendingLeaseReads) {
+			// a consensus executed outside this thread (log replay, state transfer) was
+			// never queued, and it is already applied when it becomes the last executed
+			boolean applied = targetCid <= lastDelivered
+					|| (targetCid > lastQueued && targetCid <= tomLayer.getLastExec());
+			if (!applied) {
+				pendingLeaseReads.add(new PendingLeaseRead(request, regency, targetCid));
+				return;
+			}
+		}
+		serveLeaseRead(request, regency);
+	}
+
+	private void leaseReadsReady(int cid) {
+		List<PendingLeaseRead> ready = null;
+		synchronized (pendingLeaseReads) {
+			if (cid > lastDelivered) {
+				lastDelivered = cid;
+			}
+			for (int i = pendingLeaseReads.size() - 1; i >= 0; i--) {
+				PendingLeaseRead read = pendingLeaseReads.get(i);
+				if (read.targetCid <= lastDelivered) {
+					if (ready == null) {
+						ready = new ArrayList<>();
+					}
+					ready.add(read);
+					pendingLeaseReads.remove(i);
+				}
+			}
+		}
+		if (ready != null) {
+			for (int i = ready.size() - 1; i >= 0; i--) {
+				serveLeaseRead(ready.get(i).request, ready.get(i).regency);
+			}
+		}
+	}
+
+	/**
+	 * Rejects the lease reads received in another regency than the given one,
+	 * since the consensus they wait for may never be delivered. Called once a
+	 * new regency is installed
+	 *
+	 * @param regency the new regency
+	 */
+	protected void regencyChanged(int regency) {
+		rejectLeaseReads(read -> read.regency != regency);
+	}
+
+	/**
+	 * Rejects the pending lease reads that match the given condition
+	 */
+	private void rejectLeaseReads(Predicate<PendingLeaseRead> stale) {
+		List<PendingLeaseRead> rejected = null;
+		synchronized (pendingLeaseReads) {
+			for (int i = pendingLeaseReads.size() - 1; i >= 0; i--) {
+				PendingLeaseRead read = pendingLeaseReads.get(i);
+				if (stale.test(read)) {
+					if (rejected == null) {
+						rejected = new ArrayList<>();
+					}
+					rejected.add(read);
+					pendingLeaseReads.remove(i);
+				}
+			}
+		}
+		if (rejected != null) {
+			LOGGER.debug("(DeliveryThread.rejectLeaseReads) Rejecting {} pending lease reads", rejected.size());
+			for (PendingLeaseRead read : rejected) {
+				tomLayer.rejectLeaseRead(read.request);
+			}
+		}
+	}
+
+	private void serveLeaseRead(TOMMessage request, int regency) {
+		// the lease may have expired while the read was waiting
+		if (regency != tomLayer.getSynchronizer().getLCManager().getLastReg()
+				|| !tomLayer.heartBeatTimer.isLeaseHeld()) {
+			tomLayer.rejectLeaseRead(request);
+			return;
+		}
+		deliverUnordered(request, regency);
+	}
+
+	private static class PendingLeaseRead {
+
+		final TOMMessage request;
+
+		final int regency;
+
+		final int targetCid;
+
+		PendingLeaseRead(TOMMessage request, int regency, int targetCid) {
+			this.request = request;
+			this.regency = regency;
+			this.targetCid = targetCid;
+		}
+	}
+
 	private void deliverMessages(int consId[], int regencies[], int leaders[], CertifiedDecision[] cDecs,
                                  TOMMessage[][] requests, List<byte[]> asyncResponseLinkedList, boolean isRollback) {
 		receiver.receiveMessages(consId, regencies, leaders, cDecs, requests, asyncResponseLinkedList, isRollback);
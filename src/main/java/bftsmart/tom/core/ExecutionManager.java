@@ -47,12 +47,12 @@ public final class ExecutionManager {
     //private int[] acceptors; // Process ID's of all replicas, including this one
     //private int[] otherAcceptors; // Process ID's of all replicas, except this one
     //******* EDUARDO END **************//
-    private Map<Integer, Consensus> consensuses = new TreeMap<Integer, Consensus>(); // Consensuses
-    private ReentrantLock consensusesLock = new ReentrantLock(); //lock for consensuses table
-    // Paxos messages that were out of context (that didn't belong to the consensus that was/is is progress
-    private Map<Integer, List<ConsensusMessage>> outOfContext = new HashMap<Integer, List<ConsensusMessage>>();
-    // Proposes that were out of context (that belonged to future consensuses, and not the one running at the time)
-    private Map<Integer, ConsensusMessage> outOfContextProposes = new HashMap<Integer, ConsensusMessage>();
+    // 已经移除的共识实例之后保留的实例数量（参见 DeliveryThread 中的 stableConsensus）
+    private static final int STABLE_CONSENSUS_LAG = 8;
+    private final ConsensusWindow consensuses; // Consensuses, indexed by cid modulo the window size
+    // Paxos messages and proposes that were out of context (that didn't belong to the consensus that was/is is progress),
+    // indexed by consensus id and bounded by a byte budget for each sender
+    private final OutOfContextBuffer outOfContext;
     private ReentrantLock outOfContextLock = new ReentrantLock(); //lock for out of context
     private boolean stopped = false; // Is the execution manager stopped?
     // When the execution manager is stopped, incoming paxos messages are stored here
@@ -99,6 +99,10 @@ public final class ExecutionManager {
         this.timeoutHighMark = this.topology.getStaticConf().getTimeoutHighMark();
         /******************************************************************/
         //******* EDUARDO END **************//
+
+        int window = Math.max(paxosHighMark, Math.max(revivalHighMark, timeoutHighMark)) + STABLE_CONSENSUS_LAG;
+        this.consensuses = new ConsensusWindow(window, cid -> new Consensus(this, new Decision(cid)));
+        this.outOfContext = new OutOfContextBuffer(this.topology.getStaticConf().getOutOfContextBudget());
         
         // Get initial leader
         if (topology.getCurrentViewProcesses().length > 0)
@@ -112,6 +116,10 @@ public final class ExecutionManager {
      */
     public void setNewLeader (int leader) {
             this.currentLeader = leader;
+            // the lease reads of the previous regency will not be served any more
+            if (tomLayer != null && tomLayer.getDeliveryThread() != null) {
+                tomLayer.getDeliveryThread().regencyChanged(tomLayer.getSynchronizer().getLCManager().getLastReg());
+            }
     }
 
     /**
@@ -327,7 +335,7 @@ public final class ExecutionManager {
     public boolean receivedOutOfContextPropose(int cid) {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        boolean result = outOfContextProposes.get(cid) != null;
+        boolean result = outOfContext.hasPropose(cid);
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
 
@@ -342,7 +350,7 @@ public final class ExecutionManager {
     public boolean receivedOutOfContextWriteAndAccept(int cid) {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        boolean result = outOfContext.get(cid) != null;
+        boolean result = outOfContext.hasMessages(cid);
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
 
@@ -357,14 +365,11 @@ public final class ExecutionManager {
      */
     public void removeSingleConsensus(int id) {
 
-        consensusesLock.lock();
         consensuses.remove(id);
-        consensusesLock.unlock();
 
         outOfContextLock.lock();
 
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        outOfContextProposes.remove(id);
         outOfContext.remove(id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
@@ -378,20 +383,14 @@ public final class ExecutionManager {
      * @return The consensus that was removed
      */
     public Consensus removeConsensus(int id) {
-        consensusesLock.lock();
-        /******* BEGIN CONSENSUS CRITICAL SECTION *******/
         Consensus consensus = consensuses.remove(id);
 
         // Addition to fix memory leak
-        for (int i = lastRemovedCID; i < id; i++) consensuses.remove(i);
+        consensuses.removeRange(lastRemovedCID, id);
         lastRemovedCID = id;
-        
-        /******* END CONSENSUS CRITICAL SECTION *******/
-        consensusesLock.unlock();
 
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        outOfContextProposes.remove(id);
         outOfContext.remove(id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
@@ -405,21 +404,7 @@ public final class ExecutionManager {
 
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        Integer[] keys = new Integer[outOfContextProposes.keySet().size()];
-        outOfContextProposes.keySet().toArray(keys);
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i] <= id) {
-                outOfContextProposes.remove(keys[i]);
-            }
-        }
-
-        keys = new Integer[outOfContext.keySet().size()];
-        outOfContext.keySet().toArray(keys);
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i] <= id) {
-                outOfContext.remove(keys[i]);
-            }
-        }
+        outOfContext.removeUpTo(id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
@@ -433,25 +418,8 @@ public final class ExecutionManager {
      * @return The consensus specified
      */
     public Consensus getConsensus(int cid) {
-        consensusesLock.lock();
-        /******* BEGIN CONSENSUS CRITICAL SECTION *******/
-        
-        Consensus consensus = consensuses.get(cid);
-
-        if (consensus == null) {//there is no consensus created with the given cid
-            //let's create one...
-            Decision dec = new Decision(cid);
-
-            consensus = new Consensus(this, dec);
-
-            //...and add it to the consensuses table
-            consensuses.put(cid, consensus);
-        }
-
-        /******* END CONSENSUS CRITICAL SECTION *******/
-        consensusesLock.unlock();
-
-        return consensus;
+        // if there is no consensus created with the given cid, the window creates one
+        return consensuses.getOrCreate(cid);
     }
 
     /**
@@ -461,38 +429,28 @@ public final class ExecutionManager {
      * @return void
      */
     public void updateConsensus(int cid) {
-        consensusesLock.lock();
-
-       Consensus consensus =  consensuses.get(cid);
-
-       consensus.setPrecomputeRolled();
-
-       consensuses.remove(cid);
-
-       consensuses.put(cid, consensus);
-
-       consensusesLock.unlock();
-
+        consensuses.get(cid).setPrecomputeRolled();
     }
 
     public boolean isDecidable(int cid) {
         if (receivedOutOfContextPropose(cid)) {
             Consensus cons = getConsensus(cid);
-            ConsensusMessage prop = outOfContextProposes.get(cons.getId());
+            ConsensusMessage prop = outOfContext.getPropose(cons.getId());
+            if (prop == null) {
+                return false;
+            }
             Epoch epoch = cons.getEpoch(prop.getEpoch(), topology);
-            byte[] propHash = tomLayer.computeHash(prop.getValue());
-            List<ConsensusMessage> msgs = outOfContext.get(cid);
+            byte[] propHash = tomLayer.computeBatchHash(prop.getValue());
+            List<ConsensusMessage> msgs = outOfContext.getMessages(cid);
             int countWrites = 0;
             int countAccepts = 0;
-            if (msgs != null) {
-                for (ConsensusMessage msg : msgs) {
-                    // 对于Accept类型的共识消息，需要通过getOrigPropValue取到预计算之前的提议值hash
-                    if (msg.getEpoch() == epoch.getTimestamp() &&
-                            (Arrays.equals(propHash, msg.getValue()) || Arrays.equals(propHash, msg.getOrigPropValue()))) {
-                        
-                        if (msg.getType() == MessageFactory.WRITE) countWrites++;
-                        else if (msg.getType() == MessageFactory.ACCEPT) countAccepts++;
-                    }
+            for (ConsensusMessage msg : msgs) {
+                // 对于Accept类型的共识消息，需要通过getOrigPropValue取到预计算之前的提议值hash
+                if (msg.getEpoch() == epoch.getTimestamp() &&
+                        (Arrays.equals(propHash, msg.getValue()) || Arrays.equals(propHash, msg.getOrigPropValue()))) {
+                    
+                    if (msg.getType() == MessageFactory.WRITE) countWrites++;
+                    else if (msg.getType() == MessageFactory.ACCEPT) countAccepts++;
                 }
             }
             if(topology.getStaticConf().isBFT()){
@@ -508,7 +466,7 @@ public final class ExecutionManager {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
         
-        ConsensusMessage prop = outOfContextProposes.remove(consensus.getId());
+        ConsensusMessage prop = outOfContext.takePropose(consensus.getId());
         if (prop != null) {
             LOGGER.debug("(ExecutionManager.processOutOfContextPropose) {} Processing out of context propose", consensus.getId());
             acceptor.processMessage(prop);
@@ -533,7 +491,7 @@ public final class ExecutionManager {
 
             LOGGER.info("[ExecutionManager] processOutOfContext start!");
             //then we have to put the pending paxos messages
-            List<ConsensusMessage> messages = outOfContext.remove(consensus.getId());
+            List<ConsensusMessage> messages = outOfContext.takeMessages(consensus.getId());
 
             // 处于同一轮共识中的消息，保证write的处理先于accept;
             // order start
@@ -589,30 +547,9 @@ public final class ExecutionManager {
         try {
             outOfContextLock.lock();
             /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-            if (m.getType() == MessageFactory.PROPOSE) {
-                LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-                outOfContextProposes.put(m.getNumber(), m);
-            } else {
-                List<ConsensusMessage> messages = outOfContext.get(m.getNumber());
-                if (messages == null) {
-                    messages = new LinkedList<ConsensusMessage>();
-                    outOfContext.put(m.getNumber(), messages);
-//                    LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-//                    messages.add(m);
-                }
-//                else {
-//                    for (ConsensusMessage consensusMessage : messages) {
-//                        // 过滤掉无效的消息：write ,accept消息，如果来自同一轮共识，且属于同一个节点来源，只保留时间戳最新的
-//                        if ((m.getSender() == consensusMessage.getSender()) && m.getEpoch() >= consensusMessage.getEpoch()) {
-//                            LOGGER.debug("(ExecutionManager.addOutOfContextMessage) removing {}", m);
-//                            messages.remove(consensusMessage);
-//                            LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-//                            messages.add(m);
-//                        }
-//                    }
-//                }
-                LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-                messages.add(m);
+            LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
+            if (!outOfContext.add(m)) {
+                LOGGER.debug("(ExecutionManager.addOutOfContextMessage) buffer budget of proc {} exhausted, dropped {}", m.getSender(), m);
             }
 
             /******* END OUTOFCONTEXT CRITICAL SECTION *******/
@@ -628,21 +565,26 @@ public final class ExecutionManager {
         try {
             outOfContextLock.lock();
 
-            for (int cid = fromCid; cid < toCid; cid++) {
-                outOfContext.remove(cid);
-                outOfContextProposes.remove(cid);
-            }
+            outOfContext.removeRange(fromCid, toCid);
         } finally {
             outOfContextLock.unlock();
         }
     }
 
+    /**
+     * Returns the buffer of out of context messages, for monitoring purposes
+     * @return The buffer of out of context messages
+     */
+    public OutOfContextBuffer getOutOfContextBuffer() {
+        return outOfContext;
+    }
+
     @Override
     public String toString() {
         return stoppedMsgs.toString();
     }
 
-    // 避免重复预计算
+    // 避免重复预计算；启用预计算结果缓存时批次只是挂起，重新提议相同的值时复用预计算结果
     public void preComputeRollback(Consensus cons) {
         if (cons != null && cons.getPrecomputed() && !cons.getPrecomputeCommited()) {
 
@@ -651,7 +593,8 @@ public final class ExecutionManager {
 					for (Epoch epoch : cons.getEpochs().values()) {
 					    if (epoch != null && epoch.getBatchId() != null ) {
                             LOGGER.info("I am proc {}, pre compute rollback occur!, cid = {}, epoch = {}", topology.getStaticConf().getProcessId(), cons.getId(), epoch.getTimestamp());
-                            defaultRecoverable.preComputeRollback(cons.getId(), epoch.getBatchId());
+                            defaultRecoverable.preComputeSuspend(cons.getId(), epoch.getBatchId());
+                            getAcceptor().invalidateTentativeReplies(epoch);
                         }
                     }
                     cons.setPrecomputed(false);
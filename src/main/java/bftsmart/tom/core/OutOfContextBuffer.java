@@ -0,0 +1,341 @@
+package bftsmart.tom.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+
+/**
+ * 超出预期（out of context）的共识消息缓存；
+ * <p>
+ *
+ * 消息按照共识 ID 索引，处理下一个共识的消息只涉及该共识自己的消息；每个共识只保留最新的一条 PROPOSE 消息，
+ * WRITE 和 ACCEPT 消息按照到达顺序保存；
+ * <p>
+ *
+ * 每个发送方缓存的字节数不超过预算；超出预算时优先丢弃该发送方共识 ID 最大（离当前共识最远）的消息，
+ * 如果新消息本身就是最远的，则丢弃新消息；被丢弃的共识由状态传输补齐；预算为 0 时不限制；
+ */
+public final class OutOfContextBuffer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OutOfContextBuffer.class);
+
+	/**
+	 * 估算消息大小时每条消息的固定开销（字节）；
+	 */
+	private static final int MESSAGE_OVERHEAD = 64;
+
+	private final long peerBudget;
+
+	private final NavigableMap<Integer, Bucket> buckets = new TreeMap<>();
+
+	private final Map<Integer, PeerUsage> peers = new HashMap<>();
+
+	private long bufferedBytes;
+
+	private int bufferedMessages;
+
+	private long droppedMessages;
+
+	private long droppedBytes;
+
+	/**
+	 * @param peerBudget 每个发送方可以缓存的字节数；0 表示不限制；
+	 */
+	public OutOfContextBuffer(long peerBudget) {
+		this.peerBudget = peerBudget;
+	}
+
+	/**
+	 * 缓存消息；
+	 *
+	 * @return 消息被缓存时返回 true；超出发送方的预算而丢弃时返回 false；
+	 */
+	public synchronized boolean add(ConsensusMessage msg) {
+		int size = sizeOf(msg);
+		int cid = msg.getNumber();
+		if (peerBudget > 0) {
+			while (getBufferedBytes(msg.getSender()) + size > peerBudget) {
+				PeerUsage usage = peers.get(msg.getSender());
+				Integer farthest = usage == null ? null : usage.cids.lastKey();
+				if (farthest == null || farthest <= cid) {
+					drop(1, size);
+					LOGGER.debug("Drop out of context message[{}] of cid[{}] from proc[{}], the buffer budget is exhausted!",
+							msg.getType(), cid, msg.getSender());
+					return false;
+				}
+				evict(msg.getSender(), farthest);
+			}
+		}
+
+		Bucket bucket = buckets.computeIfAbsent(cid, k -> new Bucket());
+		if (msg.getType() == MessageFactory.PROPOSE) {
+			if (bucket.propose != null) {
+				release(bucket.propose);
+			}
+			bucket.propose = msg;
+		} else {
+			bucket.messages.add(msg);
+		}
+		PeerUsage usage = peers.computeIfAbsent(msg.getSender(), k -> new PeerUsage());
+		usage.bytes += size;
+		usage.cids.merge(cid, 1, Integer::sum);
+		bufferedBytes += size;
+		bufferedMessages++;
+		return true;
+	}
+
+	/**
+	 * 是否缓存了指定共识的 PROPOSE 消息；
+	 */
+	public synchronized boolean hasPropose(int cid) {
+		Bucket bucket = buckets.get(cid);
+		return bucket != null && bucket.propose != null;
+	}
+
+	/**
+	 * 是否缓存了指定共识的 WRITE 或 ACCEPT 消息；
+	 */
+	public synchronized boolean hasMessages(int cid) {
+		Bucket bucket = buckets.get(cid);
+		return bucket != null && !bucket.messages.isEmpty();
+	}
+
+	/**
+	 * 返回指定共识的 PROPOSE 消息，不从缓存中移除；
+	 */
+	public synchronized ConsensusMessage getPropose(int cid) {
+		Bucket bucket = buckets.get(cid);
+		return bucket == null ? null : bucket.propose;
+	}
+
+	/**
+	 * 返回指定共识的 WRITE 和 ACCEPT 消息的副本，不从缓存中移除；
+	 */
+	public synchronized List<ConsensusMessage> getMessages(int cid) {
+		Bucket bucket = buckets.get(cid);
+		return bucket == null ? Collections.emptyList() : new ArrayList<>(bucket.messages);
+	}
+
+	/**
+	 * 取出指定共识的 PROPOSE 消息；
+	 */
+	public synchronized ConsensusMessage takePropose(int cid) {
+		Bucket bucket = buckets.get(cid);
+		if (bucket == null || bucket.propose == null) {
+			return null;
+		}
+		ConsensusMessage propose = bucket.propose;
+		bucket.propose = null;
+		release(propose);
+		removeIfEmpty(cid, bucket);
+		return propose;
+	}
+
+	/**
+	 * 取出指定共识的 WRITE 和 ACCEPT 消息，按照到达顺序排列；
+	 */
+	public synchronized List<ConsensusMessage> takeMessages(int cid) {
+		Bucket bucket = buckets.get(cid);
+		if (bucket == null || bucket.messages.isEmpty()) {
+			return null;
+		}
+		List<ConsensusMessage> messages = bucket.messages;
+		bucket.messages = new ArrayList<>(0);
+		for (ConsensusMessage msg : messages) {
+			release(msg);
+		}
+		removeIfEmpty(cid, bucket);
+		return messages;
+	}
+
+	/**
+	 * 移除指定共识的全部消息；
+	 */
+	public synchronized void remove(int cid) {
+		Bucket bucket = buckets.remove(cid);
+		if (bucket != null) {
+			releaseAll(bucket);
+		}
+	}
+
+	/**
+	 * 移除共识 ID 在 [fromCid, toCid) 范围内的全部消息；
+	 */
+	public synchronized void removeRange(int fromCid, int toCid) {
+		if (fromCid >= toCid) {
+			return;
+		}
+		Iterator<Bucket> iterator = buckets.subMap(fromCid, true, toCid, false).values().iterator();
+		while (iterator.hasNext()) {
+			releaseAll(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * 移除共识 ID 不大于指定值的全部消息；
+	 */
+	public synchronized void removeUpTo(int cid) {
+		Iterator<Bucket> iterator = buckets.headMap(cid, true).values().iterator();
+		while (iterator.hasNext()) {
+			releaseAll(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * 当前缓存的字节数（估算值）；
+	 */
+	public synchronized long getBufferedBytes() {
+		return bufferedBytes;
+	}
+
+	/**
+	 * 指定发送方当前缓存的字节数（估算值）；
+	 */
+	public synchronized long getBufferedBytes(int sender) {
+		PeerUsage usage = peers.get(sender);
+		return usage == null ? 0 : usage.bytes;
+	}
+
+	/**
+	 * 当前缓存的消息数量；
+	 */
+	public synchronized int getBufferedMessages() {
+		return bufferedMessages;
+	}
+
+	/**
+	 * 因为超出预算而丢弃的消息数量；
+	 */
+	public synchronized long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	/**
+	 * 因为超出预算而丢弃的字节数（估算值）；
+	 */
+	public synchronized long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OutOfContextBuffer[cids=" + buckets.size() + ", messages=" + bufferedMessages + ", bytes="
+				+ bufferedBytes + ", dropped=" + droppedMessages + "]";
+	}
+
+	/**
+	 * 丢弃发送方在指定共识中的全部消息；
+	 */
+	private void evict(int sender, int cid) {
+		Bucket bucket = buckets.get(cid);
+		if (bucket == null) {
+			return;
+		}
+		int count = 0;
+		long bytes = 0;
+		if (bucket.propose != null && bucket.propose.getSender() == sender) {
+			bytes += release(bucket.propose);
+			bucket.propose = null;
+			count++;
+		}
+		Iterator<ConsensusMessage> iterator = bucket.messages.iterator();
+		while (iterator.hasNext()) {
+			ConsensusMessage msg = iterator.next();
+			if (msg.getSender() == sender) {
+				bytes += release(msg);
+				iterator.remove();
+				count++;
+			}
+		}
+		drop(count, bytes);
+		removeIfEmpty(cid, bucket);
+		LOGGER.debug("Evict {} out of context messages of cid[{}] from proc[{}], the buffer budget is exhausted!", count,
+				cid, sender);
+	}
+
+	private void drop(int count, long bytes) {
+		droppedMessages += count;
+		droppedBytes += bytes;
+	}
+
+	private void releaseAll(Bucket bucket) {
+		if (bucket.propose != null) {
+			release(bucket.propose);
+		}
+		for (ConsensusMessage msg : bucket.messages) {
+			release(msg);
+		}
+	}
+
+	private int release(ConsensusMessage msg) {
+		int size = sizeOf(msg);
+		PeerUsage usage = peers.get(msg.getSender());
+		if (usage != null) {
+			usage.bytes -= size;
+			Integer count = usage.cids.get(msg.getNumber());
+			if (count != null) {
+				if (count <= 1) {
+					usage.cids.remove(msg.getNumber());
+				} else {
+					usage.cids.put(msg.getNumber(), count - 1);
+				}
+			}
+			if (usage.cids.isEmpty()) {
+				peers.remove(msg.getSender());
+			}
+		}
+		bufferedBytes -= size;
+		bufferedMessages--;
+		return size;
+	}
+
+	private void removeIfEmpty(int cid, Bucket bucket) {
+		if (bucket.propose == null && bucket.messages.isEmpty()) {
+			buckets.remove(cid);
+		}
+	}
+
+	private static int sizeOf(ConsensusMessage msg) {
+		int size = MESSAGE_OVERHEAD;
+		if (msg.getValue() != null) {
+			size += msg.getValue().length;
+		}
+		if (msg.getOrigPropValue() != null) {
+			size += msg.getOrigPropValue().length;
+		}
+		if (msg.getProof() instanceof byte[]) {
+			size += ((byte[]) msg.getProof()).length;
+		}
+		return size;
+	}
+
+	private static class Bucket {
+
+		ConsensusMessage propose;
+
+		List<ConsensusMessage> messages = new ArrayList<>(4);
+	}
+
+	private static class PeerUsage {
+
+		long bytes;
+
+		/**
+		 * 共识 ID 到该发送方在此共识中缓存的消息数量；
+		 */
+		final NavigableMap<Integer, Integer> cids = new TreeMap<>();
+	}
+}
@@ -0,0 +1,221 @@
+package bftsmart.tom.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 只读请求执行器；
+ * <p>
+ *
+ * 以固定数量的工作线程执行只读请求，使只读请求的执行不占用网络 I/O 线程，也不影响有序请求的接收；
+ * <p>
+ *
+ * 公平性：每个客户端有独立的队列，工作线程在有待执行请求的客户端之间轮转，每次只取一个请求；同一客户端的请求依次执行，保持先进先出；
+ * <p>
+ *
+ * 容量：所有客户端排队的请求总数不超过指定容量，超过时拒绝提交，并由提交者通知客户端，避免客户端一直等到超时；
+ */
+public class ReadOnlyExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReadOnlyExecutor.class);
+
+	private final int capacity;
+
+	private final Thread[] workers;
+
+	/**
+	 * 客户端 Id 到其请求队列；只包含有排队请求或者正在执行请求的客户端；
+	 */
+	private final Map<Integer, ClientQueue> clientQueues = new HashMap<>();
+
+	/**
+	 * 有排队请求且当前没有请求在执行的客户端，按轮转顺序排列；
+	 */
+	private final ArrayDeque<ClientQueue> readyClients = new ArrayDeque<>();
+
+	private int queueDepth;
+
+	private int maxQueueDepth;
+
+	private final AtomicLong executedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private volatile boolean running = true;
+
+	public ReadOnlyExecutor(int threads, int capacity) {
+		this.capacity = capacity;
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::work, "Read-Only-Executor-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * 提交客户端的只读请求；
+	 *
+	 * @param clientId 客户端 Id；
+	 * @param task     执行只读请求的任务；
+	 * @return 提交成功返回 true；执行器已关闭或者队列已满时返回 false；
+	 */
+	public boolean submit(int clientId, Runnable task) {
+		return submit(clientId, task, null);
+	}
+
+	/**
+	 * 提交客户端的只读请求；被拒绝时在提交线程中执行 rejection；
+	 *
+	 * @param clientId  客户端 Id；
+	 * @param task      执行只读请求的任务；
+	 * @param rejection 请求被拒绝时执行的任务，例如向客户端发送拒绝应答；可以为 null；
+	 * @return 提交成功返回 true；执行器已关闭或者队列已满时返回 false；
+	 */
+	public boolean submit(int clientId, Runnable task, Runnable rejection) {
+		if (!enqueue(clientId, task)) {
+			if (rejection != null) {
+				rejection.run();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private boolean enqueue(int clientId, Runnable task) {
+		synchronized (clientQueues) {
+			if (!running || queueDepth >= capacity) {
+				rejectedCount.incrementAndGet();
+				return false;
+			}
+			ClientQueue queue = clientQueues.get(clientId);
+			if (queue == null) {
+				queue = new ClientQueue(clientId);
+				clientQueues.put(clientId, queue);
+			}
+			queue.tasks.add(task);
+			if (!queue.scheduled) {
+				queue.scheduled = true;
+				readyClients.add(queue);
+				clientQueues.notify();
+			}
+			queueDepth++;
+			if (queueDepth > maxQueueDepth) {
+				maxQueueDepth = queueDepth;
+			}
+			return true;
+		}
+	}
+
+	private void work() {
+		while (running) {
+			ClientQueue queue;
+			Runnable task;
+			synchronized (clientQueues) {
+				while (running && readyClients.isEmpty()) {
+					try {
+						clientQueues.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				queue = readyClients.poll();
+				task = queue.tasks.poll();
+				queueDepth--;
+			}
+
+			try {
+				task.run();
+			} catch (Throwable e) {
+				LOGGER.error("Error occurred while executing read-only request of client[" + queue.clientId + "]! --"
+						+ e.getMessage(), e);
+			}
+			executedCount.incrementAndGet();
+
+			synchronized (clientQueues) {
+				if (queue.tasks.isEmpty()) {
+					queue.scheduled = false;
+					clientQueues.remove(queue.clientId);
+				} else {
+					// 轮转到队尾，让其它客户端的请求先执行；
+					readyClients.add(queue);
+					clientQueues.notify();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 当前排队等待执行的只读请求总数；
+	 */
+	public int getQueueDepth() {
+		synchronized (clientQueues) {
+			return queueDepth;
+		}
+	}
+
+	/**
+	 * 排队等待执行的只读请求总数的历史最大值；
+	 */
+	public int getMaxQueueDepth() {
+		synchronized (clientQueues) {
+			return maxQueueDepth;
+		}
+	}
+
+	/**
+	 * 当前有排队请求或者正在执行请求的客户端数量；
+	 */
+	public int getActiveClients() {
+		synchronized (clientQueues) {
+			return clientQueues.size();
+		}
+	}
+
+	/**
+	 * 已经执行的只读请求总数；
+	 */
+	public long getExecutedCount() {
+		return executedCount.get();
+	}
+
+	/**
+	 * 因队列已满或者已关闭而被拒绝的只读请求总数；
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public void shutdown() {
+		synchronized (clientQueues) {
+			running = false;
+			clientQueues.notifyAll();
+		}
+		LOGGER.info("Read-only executor stopped. --[Executed={}][Rejected={}][MaxQueueDepth={}]",
+				executedCount.get(), rejectedCount.get(), getMaxQueueDepth());
+	}
+
+	private static class ClientQueue {
+
+		final int clientId;
+
+		final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+		/**
+		 * 是否在轮转队列中或者正在执行；
+		 */
+		boolean scheduled;
+
+		ClientQueue(int clientId) {
+			this.clientId = clientId;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package bftsmart.tom.core;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 副本的定时任务调度器；
+ * <p>
+ *
+ * 一个副本中的定时器（请求超时检查、STOP 重发、领导者超时和确认、视图同步、客户端数据清理、状态传输和交易重放超时等）共享同一个调度器，
+ * 各个组件通过取消返回的 {@link ScheduledFuture} 来停止自己的任务，而不是关闭调度器；
+ * 心跳的发送和检查使用单独的调度器，不会因为其它任务（例如触发领导者切换）耗时较长而延迟；
+ * <p>
+ *
+ * 任务应当尽快返回，不应在调度线程中阻塞等待其它定时任务；
+ */
+public interface ReplicaScheduler {
+
+	/**
+	 * 在指定的延迟之后执行一次任务；
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+	/**
+	 * 在指定的延迟之后开始周期性地执行任务，每次执行结束后间隔指定的时长再执行下一次；
+	 * <p>
+	 * 任务抛出的异常只记录日志，不会终止后续的执行；
+	 */
+	ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit);
+
+	/**
+	 * 关闭调度器，取消所有尚未执行的任务；关闭之后提交的任务被忽略；
+	 */
+	void shutdown();
+
+}
@@ -7,75 +7,258 @@ package bftsmart.tom.core;
 import bftsmart.communication.ServerCommunicationSystem;
 import bftsmart.tom.core.messages.TOMMessage;
 
-import java.util.LinkedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
+ * 应答发送管理器；
+ * <p>
+ *
+ * 同一客户端的应答总是由同一个应答线程发送，保持应答顺序；应答线程每次取出队列中所有待发送的应答，
+ * 通过 {@link bftsmart.communication.client.ClientCommunicationServerSide#sendReplies(List)} 一起写出，
+ * 同一连接上的应答只 flush 一次；
+ * <p>
+ *
+ * 统计交付线程把应答交给应答线程的等待时间（handoff），以及从副本收到请求到写出应答的时间（reply latency），
+ * 并定期输出到日志；
  *
  * @author snake
  */
 public class ReplyManager {
-    
-    private LinkedList<ReplyThread> threads;
-    private int iteration;
-    
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplyManager.class);
+
+    /**
+     * 输出统计信息的间隔（毫秒）；
+     */
+    private static final long REPORT_INTERVAL = 60000;
+
+    private final ReplyThread[] threads;
+
+    private final AtomicLong replies = new AtomicLong();
+
+    private final AtomicLong flushes = new AtomicLong();
+
+    private final AtomicLong handoffNanos = new AtomicLong();
+
+    private final AtomicLong maxHandoffNanos = new AtomicLong();
+
+    private final AtomicLong replyLatencyMillis = new AtomicLong();
+
+    private final AtomicLong maxReplyLatencyMillis = new AtomicLong();
+
+    private volatile long lastReport = System.currentTimeMillis();
+
     public ReplyManager(int numThreads, ServerCommunicationSystem cs) {
-        
-        this.threads = new LinkedList();
-        this.iteration = 0;
-        
+
+        this.threads = new ReplyThread[numThreads];
+
         for (int i = 0; i < numThreads; i++) {
-            this.threads.add(new ReplyThread(cs));
+            this.threads[i] = new ReplyThread(this, cs, i);
         }
-        
+
         for (ReplyThread t : threads)
             t.start();
     }
-    
+
     public void send (TOMMessage msg) {
+        send(Collections.singletonList(msg));
+    }
+
+    /**
+     * 发送一次决议中各个请求的应答；
+     *
+     * @param requests 已经设置了应答（{@link TOMMessage#reply}）的请求；
+     */
+    public void send(List<TOMMessage> requests) {
+        if (threads.length == 1) {
+            threads[0].send(new ReplyBatch(requests));
+            return;
+        }
+        List<TOMMessage>[] partitions = partition(requests);
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] != null) {
+                threads[i].send(new ReplyBatch(partitions[i]));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TOMMessage>[] partition(List<TOMMessage> requests) {
+        List<TOMMessage>[] partitions = new List[threads.length];
+        for (TOMMessage request : requests) {
+            int index = Math.floorMod(request.getSender(), threads.length);
+            if (partitions[index] == null) {
+                partitions[index] = new ArrayList<>();
+            }
+            partitions[index].add(request);
+        }
+        return partitions;
+    }
+
+    public void shutdown() {
+        for (ReplyThread t : threads) {
+            t.shutdown();
+        }
+        report();
+    }
+
+    /**
+     * 已经发送的应答数量；
+     */
+    public long getRepliesCount() {
+        return replies.get();
+    }
+
+    /**
+     * 写出应答的 flush 次数；与应答数量相比可以看出合并写出的效果；
+     */
+    public long getFlushesCount() {
+        return flushes.get();
+    }
 
-        iteration++;
-        threads.get((iteration % threads.size())).send(msg);
+    /**
+     * 应答从交付线程提交到被应答线程取出的平均等待时间（纳秒）；
+     */
+    public long getAverageHandoffNanos() {
+        long count = replies.get();
+        return count == 0 ? 0 : handoffNanos.get() / count;
+    }
+
+    public long getMaxHandoffNanos() {
+        return maxHandoffNanos.get();
+    }
+
+    /**
+     * 从副本收到请求到写出应答的平均时间（毫秒）；
+     */
+    public long getAverageReplyLatencyMillis() {
+        long count = replies.get();
+        return count == 0 ? 0 : replyLatencyMillis.get() / count;
+    }
+
+    public long getMaxReplyLatencyMillis() {
+        return maxReplyLatencyMillis.get();
+    }
+
+    void sent(List<ReplyBatch> batches, int count, long now) {
+        long nowMillis = System.currentTimeMillis();
+        for (ReplyBatch batch : batches) {
+            long handoff = now - batch.handoffTime;
+            handoffNanos.addAndGet(handoff * batch.requests.size());
+            updateMax(maxHandoffNanos, handoff);
+            for (TOMMessage request : batch.requests) {
+                if (request.receptionTime > 0) {
+                    long latency = nowMillis - request.receptionTime;
+                    replyLatencyMillis.addAndGet(latency);
+                    updateMax(maxReplyLatencyMillis, latency);
+                }
+            }
+        }
+        replies.addAndGet(count);
+        flushes.incrementAndGet();
+
+        if (nowMillis - lastReport >= REPORT_INTERVAL) {
+            lastReport = nowMillis;
+            report();
+        }
+    }
 
+    private void report() {
+        LOGGER.info(
+                "Reply statistics --[Replies={}][Flushes={}][AvgHandoff={}us][MaxHandoff={}us][AvgReplyLatency={}ms][MaxReplyLatency={}ms]",
+                replies.get(), flushes.get(), getAverageHandoffNanos() / 1000, maxHandoffNanos.get() / 1000,
+                getAverageReplyLatencyMillis(), maxReplyLatencyMillis.get());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+}
+
+/**
+ * 交付线程一次提交给应答线程的应答；
+ */
+class ReplyBatch {
+
+    final List<TOMMessage> requests;
+
+    final long handoffTime = System.nanoTime();
+
+    ReplyBatch(List<TOMMessage> requests) {
+        this.requests = requests;
     }
 }
 
 class ReplyThread extends Thread {
-    
+
     private static final long POOL_TIME = 5000;
-    
-    private LinkedBlockingQueue<TOMMessage> replies;
+
+    private final ReplyManager manager;
+    private LinkedBlockingQueue<ReplyBatch> replies;
     private ServerCommunicationSystem cs = null;
-    
-    ReplyThread(ServerCommunicationSystem cs) {
+    private volatile boolean running = true;
+
+    ReplyThread(ReplyManager manager, ServerCommunicationSystem cs, int index) {
+        super("Reply-Thread-" + index);
+        setDaemon(true);
+        this.manager = manager;
         this.cs = cs;
-        this.replies = new LinkedBlockingQueue<TOMMessage>();
+        this.replies = new LinkedBlockingQueue<ReplyBatch>();
+    }
+
+    void send(ReplyBatch batch) {
+        replies.add(batch);
     }
-    
-    void send(TOMMessage msg) {
-        replies.add(msg);
+
+    void shutdown() {
+        running = false;
+        interrupt();
     }
-    
+
     public void run() {
 
-        TOMMessage msg;
+        List<ReplyBatch> batches = new ArrayList<>();
+        List<TOMMessage> requests = new ArrayList<>();
 
-        while (true) {
+        while (running) {
 
             try {
-                msg = replies.poll(POOL_TIME, TimeUnit.MILLISECONDS);
-                if (msg == null) {
+                ReplyBatch batch = replies.poll(POOL_TIME, TimeUnit.MILLISECONDS);
+                if (batch == null) {
 
                     continue; //go back to the start of the loop
                 }
-                cs.getClientCommunication().send(new int[] {msg.getSender()}, msg.reply, false);
+                batches.add(batch);
+                replies.drainTo(batches);
+                long now = System.nanoTime();
+                for (ReplyBatch b : batches) {
+                    requests.addAll(b.requests);
+                }
+                cs.getClientCommunication().sendReplies(requests);
+                manager.sent(batches, requests.size(), now);
             } catch (InterruptedException ex) {
-                ex.printStackTrace();
+                if (running) {
+                    ex.printStackTrace();
+                }
+            } catch (RuntimeException ex) {
+                LoggerFactory.getLogger(ReplyThread.class).error("Error occurred while sending replies! --" + ex.getMessage(), ex);
+            } finally {
+                batches.clear();
+                requests.clear();
             }
 
         }
 
     }
-}
\ No newline at end of file
+}
@@ -178,6 +178,8 @@ public class Synchronizer {
 
 	public void sendSTOP_APPEND(LeaderRegencyPropose regencyPropose) {
 		// 发送 STOP_APPEND 消息；
+		// 不再向之前执政期的领导者授予租约；
+		tom.heartBeatTimer.revokeLease(regencyPropose.getRegency().getId());
 		try {
 			byte[] payload = makeTomMessageReplyBatch(regencyPropose.getRegency().getId());
 			LCMessage msgSTOP_APPEND = LCMessage.createSTOP_APPEND(this.controller.getStaticConf().getProcessId(),
@@ -198,6 +200,8 @@ public class Synchronizer {
 
 	public void sendSTOP(LeaderRegencyPropose regencyPropose) {
 		int proposedNewRegency = regencyPropose.getRegency().getId();
+		// 不再向之前执政期的领导者授予租约；
+		tom.heartBeatTimer.revokeLease(proposedNewRegency);
 
 		try {
 			byte[] payload = makeTomMessageReplyBatch(proposedNewRegency);
@@ -430,7 +434,7 @@ public class Synchronizer {
 
 			// Is the predicate "sound" true? Is the certificate for LastCID valid?
 			if (lcManager.sound(lcManager.selectCollects(regency, currentCID))
-					&& (!controller.getStaticConf().isBFT() || lcManager.hasValidProof(lastHighestCID))) {
+					&& (!controller.getStaticConf().isBFT() || lcManager.hasValidProof(lastHighestCID, regency))) {
 				LOGGER.info("(Synchronizer.processSYNC) [{}] -> I am proc {}, sound succ , I will finalise",
 						this.execManager.getTOMLayer().getRealName(), controller.getStaticConf().getProcessId());
 				finalise(regency, lastHighestCID, signedCollects, propose, batchSize, false);
@@ -837,7 +841,7 @@ public class Synchronizer {
 						LOGGER.error("No propose for cid {}", last);
 					} else {
 						LOGGER.error("Propose hash for cid {} : {}", last,
-								Base64.encodeBase64String(tom.computeHash(cons.getDecisionEpoch().propValue)));
+								Base64.encodeBase64String(tom.computeBatchHash(cons.getDecisionEpoch().propValue)));
 					}
 				}
 				// maybe occur null pointer exception
@@ -978,7 +982,7 @@ public class Synchronizer {
 							LOGGER.error("No propose for cid {}", last);
 						} else {
 							LOGGER.error("Propose hash for cid {} : {}", last,
-									Base64.encodeBase64String(tom.computeHash(cons.getDecisionEpoch().propValue)));
+									Base64.encodeBase64String(tom.computeBatchHash(cons.getDecisionEpoch().propValue)));
 						}
 					}
 				}
@@ -1482,7 +1486,7 @@ public class Synchronizer {
 			e.clear();
 		}
 
-		byte[] hash = tom.computeHash(tempLastHighestCID.getDecision());
+		byte[] hash = tom.computeBatchHash(tempLastHighestCID.getDecision());
 		e.propValueHash = hash;
 		e.propValue = tempLastHighestCID.getDecision();
 
@@ -1587,7 +1591,7 @@ public class Synchronizer {
 					this.execManager.getTOMLayer().getRealName(), controller.getStaticConf().getProcessId(),
 					lastHighestCID.getCID());
 
-			byte[] hash = tom.computeHash(lastHighestCID.getDecision());
+			byte[] hash = tom.computeBatchHash(lastHighestCID.getDecision());
 			e.propValueHash = hash;
 			e.propValue = lastHighestCID.getDecision();
 			e.deserializedPropValue = tom.checkProposedValue(lastHighestCID.getDecision(), false);
@@ -1735,7 +1739,7 @@ public class Synchronizer {
 			cons.addWritten(tmpval);
 			/*************************************/
 
-			byte[] hash = tom.computeHash(tmpval);
+			byte[] hash = tom.computeBatchHash(tmpval);
 			e.propValueHash = hash;
 			e.propValue = tmpval;
 
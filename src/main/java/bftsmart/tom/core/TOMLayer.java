@@ -16,14 +16,10 @@
  */
 package bftsmart.tom.core;
 
-import java.io.IOException;
 import java.io.Serializable;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.Signature;
-import java.security.SignatureException;
 import java.security.SignedObject;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -49,11 +45,14 @@ import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.leaderchange.ClientDatasMonitorTimer;
 import bftsmart.tom.leaderchange.HeartBeatTimer;
 import bftsmart.tom.leaderchange.RequestsTimer;
+import bftsmart.tom.metrics.ReplicaMetrics;
 import bftsmart.tom.server.Recoverable;
 import bftsmart.tom.server.RequestVerifier;
 import bftsmart.tom.server.defaultservices.DefaultRecoverable;
 import bftsmart.tom.util.BatchBuilder;
+import bftsmart.tom.util.BatchDigest;
 import bftsmart.tom.util.BatchReader;
+import bftsmart.tom.util.TOMUtil;
 
 /**
  * This class implements the state machine replication protocol described in
@@ -83,6 +82,21 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 	private volatile boolean isLeaderConfirmed = false;
 
+	/**
+	 * Runs the scheduled tasks of all timers of this replica except heartbeats
+	 */
+	private final ReplicaScheduler scheduler;
+
+	/**
+	 * Runs only the heartbeat broadcasting and checking tasks
+	 */
+	private final ReplicaScheduler heartBeatScheduler;
+
+	/**
+	 * Batch sizes, per-phase latencies and queue depths of this replica
+	 */
+	private final ReplicaMetrics metrics = new ReplicaMetrics();
+
 	/**
 	 * Manage timers for pending requests
 	 */
@@ -94,6 +108,12 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 	// Monitor timer for client datas and clear too old datas;
 	public ClientDatasMonitorTimer clientDatasMonitorTimer;
+
+	/**
+	 * Executes read-only requests outside the network threads; null if they are
+	 * executed inline
+	 */
+	private final ReadOnlyExecutor readOnlyExecutor;
 	/**
 	 * Store requests received but still not ordered
 	 */
@@ -101,13 +121,10 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	/**
 	 * The id of the consensus being executed (or -1 if there is none)
 	 */
-	private int inExecution = -1;
-	private int lastExecuted = -1;
+	private volatile int inExecution = -1;
+	private volatile int lastExecuted = -1;
 
 	public SHA256Utils md = new SHA256Utils();
-	private Signature engine;
-
-	private ReentrantLock hashLock = new ReentrantLock();
 
 	// the next two are used to generate non-deterministic data in a deterministic
 	// way (by the leader)
@@ -152,6 +169,9 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		this.acceptor = a;
 		this.communication = cs;
 		this.controller = controller;
+		this.scheduler = new DefaultReplicaScheduler(this.controller.getStaticConf().getProcessId());
+		this.heartBeatScheduler = new DefaultReplicaScheduler("HeartBeat-Scheduler",
+				this.controller.getStaticConf().getProcessId(), 1);
 		this.requestsTimer = new RequestsTimer(this, communication, this.controller); // Create requests timers manager
 																						// (a thread)
 		this.heartBeatTimer = new HeartBeatTimer(this);
@@ -168,31 +188,36 @@ public class TOMLayer extends Thread implements RequestReceiver {
 //            e.printStackTrace(System.out);
 //        }
 
-		try {
-			this.engine = Signature.getInstance("SHA1withRSA");
-		} catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
-
 		this.prk = this.controller.getStaticConf().getRSAPrivateKey();
+		int readThreads = this.controller.getStaticConf().getNumReadThreads();
+		this.readOnlyExecutor = readThreads > 0
+				? new ReadOnlyExecutor(readThreads, this.controller.getStaticConf().getReadQueueSize())
+				: null;
 		this.dt = new DeliveryThread(this, receiver, recoverer, this.controller); // Create delivery thread
 		this.dt.start();
 		this.stateManager = recoverer.getStateManager();
 		stateManager.init(this, dt);
 
-		this.verifier = (verifier != null) ? verifier : new RequestVerifier() {
-			@Override
-			public boolean isValidRequest(byte[] request) {
-				return true; // By default, never validate requests
-			}
-		};
+		this.verifier = (verifier != null) ? verifier : RequestVerifier.ACCEPT_ALL; // By default, never validate requests
 
 		// I have a verifier, now create clients manager
 		this.clientsManager = new ClientsManager(this.controller, requestsTimer, this.verifier);
 
-		this.clientDatasMonitorTimer = new ClientDatasMonitorTimer(this.controller, requestsTimer, clientsManager);
+		this.clientDatasMonitorTimer = new ClientDatasMonitorTimer(this.controller, requestsTimer, clientsManager,
+				scheduler);
 
 		this.syncher = new Synchronizer(this); // create synchronizer
+
+		registerGauges();
+	}
+
+	private void registerGauges() {
+		metrics.registerGauge(ReplicaMetrics.QUEUE_IN,
+				() -> communication.getServersCommunication().getReceivingQueueSize());
+		metrics.registerGauge(ReplicaMetrics.QUEUE_OUT,
+				() -> communication.getServersCommunication().getSendingQueueSize());
+		metrics.registerGauge(ReplicaMetrics.REQUESTS_PENDING, () -> clientsManager.getClientDatasTotal());
+		metrics.registerGauge(ReplicaMetrics.DELIVERY_BACKLOG, () -> dt.getDecidedQueueSize());
 	}
 
 	public boolean isRunning() {
@@ -210,23 +235,36 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 * @return Hash for the specified TOM message
 	 */
 	public final byte[] computeHash(byte[] data) {
-		byte[] ret = null;
-		hashLock.lock();
-		try {
-			ret = md.hash(data);
-		} finally {
-			hashLock.unlock();
-		}
+		return md.hash(data);
+	}
+
+	/**
+	 * Computes the hash of a value proposed for consensus, i.e., the Merkle
+	 * root based batch digest (see {@link BatchDigest})
+	 *
+	 * @param value The proposed value
+	 * @return Hash for the specified value
+	 */
+	public final byte[] computeBatchHash(byte[] value) {
+		return computeBatchHash(value, null);
+	}
 
-		return ret;
+	/**
+	 * Computes the hash of a value proposed for consensus, reusing the digests
+	 * already computed for the requests deserialized from it
+	 *
+	 * @param value    The proposed value
+	 * @param requests The requests deserialized from the value, can be null
+	 * @return Hash for the specified value
+	 */
+	public final byte[] computeBatchHash(byte[] value, TOMMessage[] requests) {
+		boolean useSignatures = controller.getStaticConf().isUseSignatures();
+		return BatchDigest.batchHash(value, useSignatures,
+				useSignatures ? TOMUtil.getSignatureSize(controller) : 0, requests);
 	}
 
 	public SignedObject sign(Serializable obj) {
-		try {
-			return new SignedObject(obj, prk, engine);
-		} catch (InvalidKeyException | SignatureException | IOException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		return TOMUtil.signObject(prk, obj);
 	}
 
 	/**
@@ -237,12 +275,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 * @return True if the signature is valid, false otherwise
 	 */
 	public boolean verifySignature(SignedObject so, int sender) {
-		try {
-			return so.verify(controller.getStaticConf().getRSAPublicKey(sender), engine);
-		} catch (InvalidKeyException | SignatureException e) {
-			LOGGER.warn("Invalid key or signature! --" + e.getMessage(), e);
-		}
-		return false;
+		return TOMUtil.verifySignedObject(controller.getStaticConf().getRSAPublicKey(sender), so);
 	}
 
 	/**
@@ -324,6 +357,11 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		if (!doWork)
 			return;
 
+		if (msg.getReqType() == TOMMessageType.LEASE_READ_REQUEST) {
+			leaseReadReceived(msg);
+			return;
+		}
+
 		// check if this request is valid and add it to the client' pending requests
 		// list
 		boolean readOnly = (msg.getReqType() == TOMMessageType.UNORDERED_REQUEST
@@ -348,6 +386,57 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		}
 	}
 
+	/**
+	 * 处理租约读请求；
+	 * <p>
+	 * 只有持有有效租约的领导者应答租约读；读请求在已提议的最新共识执行完成之后执行，从而包含所有已完成的写操作；
+	 * <p>
+	 * 其它节点，或者租约已经过期的领导者，以 {@link TOMMessageType#LEASE_READ_REJECTED} 拒绝，客户端据此改为有序请求；
+	 *
+	 * @param msg
+	 */
+	private void leaseReadReceived(TOMMessage msg) {
+		if (isRetrievingState() || !heartBeatTimer.isLeaseHeld()) {
+			rejectLeaseRead(msg);
+			return;
+		}
+		// 任何已经决议的共识都不会超过领导者正在执行的共识；先读 inExecution，再读 lastExecuted；
+		int inExec = getInExec();
+		int targetCid = inExec != -1 ? inExec : getLastExec();
+
+		LOGGER.debug("(TOMLayer.leaseReadReceived) Received lease read from client {} with sequence number {}, serving after cid {}",
+				msg.getSender(), msg.getSequence(), targetCid);
+
+		dt.deliverLeaseRead(msg, syncher.getLCManager().getLastReg(), targetCid);
+	}
+
+	/**
+	 * 拒绝租约读请求；
+	 *
+	 * @param msg
+	 */
+	void rejectLeaseRead(TOMMessage msg) {
+		communication.send(new int[] { msg.getSender() },
+				new TOMMessage(getCurrentProcessId(), msg.getSession(), msg.getSequence(), msg.getOperationId(), null,
+						null, controller.getCurrentViewId(), TOMMessageType.LEASE_READ_REJECTED));
+	}
+
+	/**
+	 * 只读请求的队列已满时拒绝只读请求；租约读以 {@link TOMMessageType#LEASE_READ_REJECTED} 拒绝，其它只读请求以
+	 * {@link TOMMessageType#READ_REJECTED} 拒绝，客户端据此改为有序请求；
+	 *
+	 * @param msg
+	 */
+	void rejectReadOnly(TOMMessage msg) {
+		if (msg.getReqType() == TOMMessageType.LEASE_READ_REQUEST) {
+			rejectLeaseRead(msg);
+			return;
+		}
+		communication.send(new int[] { msg.getSender() },
+				new TOMMessage(getCurrentProcessId(), msg.getSession(), msg.getSequence(), msg.getOperationId(), null,
+						null, controller.getCurrentViewId(), TOMMessageType.READ_REJECTED));
+	}
+
 	private DefaultRecoverable getDefaultExecutor() {
 		return (DefaultRecoverable) getDeliveryThread().getReceiver().getExecutor();
 	}
@@ -385,6 +474,11 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		if (dec.getConsensusId() > -1) { // if this is from the leader change, it doesnt matter
 			dec.firstMessageProposed = pendingRequests.getFirst();
 			dec.firstMessageProposed.consensusStartTime = System.nanoTime();
+			// the request may have been proposed before, clear the timestamps of that consensus
+			dec.firstMessageProposed.proposeReceivedTime = 0;
+			dec.firstMessageProposed.writeSentTime = 0;
+			dec.firstMessageProposed.acceptSentTime = 0;
+			dec.firstMessageProposed.decisionTime = 0;
 		}
 		dec.batchSize = numberOfMessages;
 
@@ -537,6 +631,23 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		LOGGER.info("(TOMLayer.run) I am proc {}, I can try to propose.",
 				this.controller.getStaticConf().getProcessId());
 
+		// 启用租约读时，新领导者在前任领导者的租约过期之前不提议；
+		// 期间新的请求或者关闭都会唤醒提议线程，之后重新检查领导者身份和剩余的等待时间；
+		long proposeWait = heartBeatTimer.remainingProposeWait();
+		if (proposeWait > 0) {
+			LOGGER.info("I am proc {}, deferring proposals {} ms until the lease of the previous leader expires",
+					this.controller.getStaticConf().getProcessId(), TimeUnit.NANOSECONDS.toMillis(proposeWait));
+			messagesLock.lock();
+			try {
+				haveMessages.awaitNanos(proposeWait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				messagesLock.unlock();
+			}
+			return;
+		}
+
 		if ((execManager.getCurrentLeader() == controller.getCurrentProcessId()) && // I'm the leader
 				(clientsManager.havePendingRequests()) && // there are messages to be ordered
 				(getInExec() == -1)) { // there is no consensus in execution
@@ -556,9 +667,9 @@ public class TOMLayer extends Thread implements RequestReceiver {
 				Consensus consensus = execManager.getConsensus(dec.getConsensusId());
 				Epoch epoch = consensus.getEpoch(0, controller);
 				epoch.propValue = value;
-				epoch.propValueHash = computeHash(value);
 				epoch.getConsensus().addWritten(value);
 				epoch.deserializedPropValue = checkProposedValue(value, true);
+				epoch.propValueHash = computeBatchHash(value, epoch.deserializedPropValue);
 				epoch.getConsensus().getDecision().firstMessageProposed = epoch.deserializedPropValue[0];
 				dec.setDecisionEpoch(epoch);
 
@@ -572,6 +683,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 				LOGGER.debug("Propose new consensus by leader! --[Leader={}][ConsensusId={}]",
 						controller.getCurrentProcessId(), consensus.getId());
 				execManager.getProposer().startConsensus(consensus.getId(), value);
+				heartBeatTimer.consensusProposed();
 			}
 
 			if(controller.getStaticConf().getEpochDelay() > 0) {
@@ -624,9 +736,11 @@ public class TOMLayer extends Thread implements RequestReceiver {
 			// enforce the "external validity" property, i.e, verify if the
 			// requests are valid in accordance to the application semantics
 			// and not an erroneous requests sent by a Byzantine leader.
-			for (TOMMessage r : requests) {
-				if (controller.getStaticConf().isBFT() && !verifier.isValidRequest(r.getContent()))
-					return null;
+			if (controller.getStaticConf().isBFT() && verifier != RequestVerifier.ACCEPT_ALL) {
+				for (TOMMessage r : requests) {
+					if (!verifier.isValidRequest(r.getContent()))
+						return null;
+				}
 			}
 
 			if (addToClientManager) {
@@ -730,6 +844,29 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		return execManager;
 	}
 
+	/**
+	 * @return the scheduler shared by the timers of this replica
+	 */
+	public ReplicaScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @return the scheduler dedicated to sending and checking heartbeats, so
+	 *         that slow timer tasks (e.g. triggering a leader change) never
+	 *         delay them
+	 */
+	public ReplicaScheduler getHeartBeatScheduler() {
+		return heartBeatScheduler;
+	}
+
+	/**
+	 * @return the metrics of this replica
+	 */
+	public ReplicaMetrics getMetrics() {
+		return metrics;
+	}
+
 	public void shutdown() {
 		if (!doWork) {
 			// 已经关闭，不必重复执行；
@@ -766,9 +903,23 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		}
 		if (this.dt != null)
 			this.dt.shutdown();
+		if (this.readOnlyExecutor != null)
+			this.readOnlyExecutor.shutdown();
 		if (this.communication != null)
 			this.communication.shutdown();
+		// 最后关闭调度器，取消所有剩余的定时任务；
+		this.scheduler.shutdown();
+		this.heartBeatScheduler.shutdown();
+		this.metrics.unregisterMBean();
+
+	}
 
+	/**
+	 * @return the executor of read-only requests, or null if they are executed
+	 *         inline
+	 */
+	public ReadOnlyExecutor getReadOnlyExecutor() {
+		return readOnlyExecutor;
 	}
 
 	public HeartBeatTimer getHeartBeatTimer() {
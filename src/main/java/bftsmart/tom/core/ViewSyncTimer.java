@@ -8,8 +8,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -30,7 +29,7 @@ public class ViewSyncTimer {
 
     private static final long SEND_DELAY = 5000L;
 
-    private final ScheduledExecutorService sendThreadPool = Executors.newSingleThreadScheduledExecutor();
+    private volatile ScheduledFuture<?> sendFuture;
 
     private final Lock lock = new ReentrantLock();
 
@@ -43,8 +42,11 @@ public class ViewSyncTimer {
         this.processId = tomLayer.controller.getStaticConf().getProcessId();
     }
 
-    public void start() {
-        sendThreadPool.scheduleWithFixedDelay(() -> {
+    public synchronized void start() {
+        if (sendFuture != null) {
+            return;
+        }
+        sendFuture = tomLayer.getScheduler().scheduleWithFixedDelay(() -> {
             lock.lock();
             try {
                 View view = tomLayer.controller.getCurrentView();
@@ -61,8 +63,11 @@ public class ViewSyncTimer {
         }, SEND_DELAY, SEND_PERIOD, TimeUnit.MILLISECONDS);
     }
 
-    public void shutdown() {
-        sendThreadPool.shutdownNow();
+    public synchronized void shutdown() {
+        if (sendFuture != null) {
+            sendFuture.cancel(false);
+            sendFuture = null;
+        }
     }
 
     /**
@@ -47,8 +47,9 @@ public final class ForwardedMessage extends SystemMessage {
     public void writeExternal(ObjectOutput out) throws IOException {
         super.writeExternal(out);
 
-        out.writeInt(request.serializedMessage.length);
-        out.write(request.serializedMessage);
+        byte[] serReq = request.getSerializedMessage();
+        out.writeInt(serReq.length);
+        out.write(serReq);
         out.writeBoolean(request.signed);
 
         if (request.signed) {
@@ -18,14 +18,11 @@ package bftsmart.tom.core.messages;
 import bftsmart.communication.SystemMessage;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a total ordered message
@@ -45,7 +42,10 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	private int sequence;
 	private int operationId; // Sequence number defined by the client
 
-	private byte[] content = null; // Content of the message
+	private volatile byte[] content = null; // Content of the message
+
+	// read-only view of the content inside the batch the message was read from; the content is copied on demand
+	private transient ByteBuffer contentView = null;
 
 	private byte[] viewContent = null; // Content of the view
 
@@ -71,6 +71,10 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	public transient byte[] serializedMessage = null;
 	public transient byte[] serializedMessageSignature = null;
 	public transient byte[] serializedMessageMAC = null;
+	// digest of serializedMessage and its signature, computed once when the request is admitted (see BatchDigest)
+	public transient byte[] serializedMessageDigest = null;
+	// read-only view of the serialized message inside the batch it was read from; copied on demand
+	private transient ByteBuffer serializedView = null;
 
 	//for benchmarking purposes
 	public transient long consensusStartTime = 0; //time the consensus is created
@@ -83,10 +87,22 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 
 	//the reply associated with this message
 	public transient TOMMessage reply = null;
+	//the full reply when 'reply' only carries its digest (another replica is the designated replier)
+	public transient TOMMessage fullReply = null;
 	public transient boolean alreadyProposed = false;
 	
 	private int replyServer = -1;
 
+	private int leader = -1; // in replies, the leader known by the replica that sent it
+
+	private int flags = 0; // in requests, see FLAG_OPERATION_BATCH
+
+	/**
+	 * Marks a request whose content packs several operations, see
+	 * {@link bftsmart.tom.util.OperationBatch}.
+	 */
+	public static final int FLAG_OPERATION_BATCH = 1;
+
 	public TOMMessage() {
 	}
 
@@ -174,9 +190,83 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	 * @return The content of the message
 	 */
 	public byte[] getContent() {
+		byte[] c = content;
+		if (c == null && contentView != null) {
+			c = copyContent();
+		}
+		return c;
+	}
+
+	private synchronized byte[] copyContent() {
+		if (content == null) {
+			byte[] c = new byte[contentView.remaining()];
+			contentView.duplicate().get(c);
+			content = c;
+		}
 		return content;
 	}
 
+	/**
+	 * Retrieves the content of the message as a read-only buffer. For requests
+	 * read from a batch with {@link #rExternalView(ByteBuffer)}, the buffer is a
+	 * view into the batch and the content is never copied.
+	 *
+	 * @return The content of the message, or null if it has no content
+	 */
+	public ByteBuffer getContentView() {
+		if (contentView != null) {
+			return contentView.duplicate();
+		}
+		byte[] c = content;
+		return c == null ? null : ByteBuffer.wrap(c).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Retrieves the bytes received from the client. For requests read from a
+	 * batch (see {@link TOMMessageView#toMessage()}), they are copied out of the
+	 * batch on the first call.
+	 *
+	 * @return The serialized message, or null if it is not known
+	 */
+	public synchronized byte[] getSerializedMessage() {
+		if (serializedMessage == null && serializedView != null) {
+			byte[] bytes = new byte[serializedView.remaining()];
+			serializedView.duplicate().get(bytes);
+			serializedMessage = bytes;
+		}
+		return serializedMessage;
+	}
+
+	/**
+	 * Retrieves the bytes received from the client as a read-only buffer,
+	 * without copying them.
+	 *
+	 * @return The serialized message, or null if it is not known
+	 */
+	public synchronized ByteBuffer getSerializedView() {
+		if (serializedMessage != null) {
+			return ByteBuffer.wrap(serializedMessage).asReadOnlyBuffer();
+		}
+		return serializedView == null ? null : serializedView.duplicate();
+	}
+
+	/**
+	 * Sets the bytes received from the client as a view of the buffer they
+	 * were read from. The buffer must not be modified afterwards.
+	 */
+	synchronized void setSerializedView(ByteBuffer view) {
+		serializedMessage = null;
+		serializedView = view.asReadOnlyBuffer();
+	}
+
+	private int getContentLength() {
+		if (contentView != null) {
+			return contentView.remaining();
+		}
+		byte[] c = content;
+		return c == null ? -1 : c.length;
+	}
+
 	public byte[] getViewContent() {
 		return viewContent;
 	}
@@ -225,7 +315,10 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 		out.writeInt(sequence);
 		out.writeInt(operationId);
 		out.writeInt(replyServer);
+		out.writeInt(leader);
+		out.writeInt(flags);
 		
+		byte[] content = getContent();
 		if (content == null) {
 			out.writeInt(-1);
 		} else {
@@ -240,6 +333,128 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 		}
 	}
 
+	/**
+	 * The fixed part of the serialized form: nine header fields and the two
+	 * length prefixes.
+	 */
+	public static final int SERIALIZED_HEADER_LENGTH = 44;
+
+	/**
+	 * The number of bytes written by {@link #wExternal(DataOutput)} for this
+	 * message.
+	 */
+	public int getSerializedLength() {
+		return SERIALIZED_HEADER_LENGTH + Math.max(getContentLength(), 0)
+				+ (viewContent == null ? 0 : viewContent.length);
+	}
+
+	/**
+	 * Writes the same bytes as {@link #wExternal(DataOutput)} straight into a
+	 * buffer, without intermediate streams.
+	 */
+	public void wExternal(ByteBuffer out) {
+		out.putInt(sender);
+		out.putInt(viewID);
+		out.putInt(type.toInt());
+		out.putInt(session);
+		out.putInt(sequence);
+		out.putInt(operationId);
+		out.putInt(replyServer);
+		out.putInt(leader);
+		out.putInt(flags);
+
+		if (contentView != null) {
+			out.putInt(contentView.remaining());
+			out.put(contentView.duplicate());
+		} else if (content == null) {
+			out.putInt(-1);
+		} else {
+			out.putInt(content.length);
+			out.put(content);
+		}
+		if (viewContent == null) {
+			out.putInt(-1);
+		} else {
+			out.putInt(viewContent.length);
+			out.put(viewContent);
+		}
+	}
+
+	/**
+	 * Reads a message written by {@link #wExternal(DataOutput)} straight from a
+	 * buffer, starting at its position. The header fields are read in place;
+	 * only the contents are copied.
+	 */
+	public void rExternal(ByteBuffer in) throws IOException {
+		read(in, true);
+	}
+
+	/**
+	 * Like {@link #rExternal(ByteBuffer)}, but the content is not copied: it
+	 * stays a read-only view of the buffer (see {@link #getContentView()}) and is
+	 * copied only if {@link #getContent()} is called. The buffer must not be
+	 * modified afterwards.
+	 */
+	public void rExternalView(ByteBuffer in) throws IOException {
+		read(in, false);
+	}
+
+	private void read(ByteBuffer in, boolean copyContent) throws IOException {
+		if (in.remaining() < SERIALIZED_HEADER_LENGTH) {
+			throw new IOException("Truncated message header!");
+		}
+		sender = in.getInt();
+		viewID = in.getInt();
+		type = TOMMessageType.fromInt(in.getInt());
+		session = in.getInt();
+		sequence = in.getInt();
+		operationId = in.getInt();
+		replyServer = in.getInt();
+		leader = in.getInt();
+		flags = in.getInt();
+
+		if (copyContent) {
+			content = readBytes(in);
+			contentView = null;
+		} else {
+			content = null;
+			contentView = readView(in);
+		}
+		if (in.remaining() < 4) {
+			throw new IOException("Truncated message!");
+		}
+		viewContent = readBytes(in);
+
+		buildId();
+	}
+
+	private static ByteBuffer readView(ByteBuffer in) throws IOException {
+		int length = in.getInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > in.remaining()) {
+			throw new IOException("Invalid length [" + length + "] of message content!");
+		}
+		ByteBuffer view = in.slice();
+		view.limit(length);
+		in.position(in.position() + length);
+		return view.asReadOnlyBuffer();
+	}
+
+	private static byte[] readBytes(ByteBuffer in) throws IOException {
+		int length = in.getInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > in.remaining()) {
+			throw new IOException("Invalid length [" + length + "] of message content!");
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return bytes;
+	}
+
 	public void rExternal(DataInput in) throws IOException, ClassNotFoundException {
 		sender = in.readInt();
 		viewID = in.readInt();
@@ -248,6 +463,9 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 		sequence = in.readInt();
 		operationId = in.readInt();
 		replyServer = in.readInt();
+		leader = in.readInt();
+		flags = in.readInt();
+		contentView = null;
 		
 		int toRead = in.readInt();
 		if (toRead != -1) {
@@ -286,23 +504,15 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	 }
 
 	 public static byte[] messageToBytes(TOMMessage m) {
-		 ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		 DataOutputStream dos = new DataOutputStream(baos);
-		 try{
-			 m.wExternal(dos);
-			 dos.flush();
-		 }catch(Exception e) {
-		 }
-		 return baos.toByteArray();
+		 byte[] bytes = new byte[m.getSerializedLength()];
+		 m.wExternal(ByteBuffer.wrap(bytes));
+		 return bytes;
 	 }
 
 	 public static TOMMessage bytesToMessage(byte[] b) {
-		 ByteArrayInputStream bais = new ByteArrayInputStream(b);
-		 DataInputStream dis = new DataInputStream(bais);
-
 		 TOMMessage m = new TOMMessage();
 		 try{
-			 m.rExternal(dis);
+			 m.rExternal(ByteBuffer.wrap(b));
 		 }catch(Exception e) {
 			 LOGGER.error("error on bytesToMessage {}", e);
 			 return null;
@@ -358,4 +568,32 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	public void setReplyServer(int replyServer) {
 		this.replyServer = replyServer;
 	}
+
+
+	/**
+	 * The leader known by the replica that sent this reply, which lets the
+	 * clients send their requests to the leader only; -1 if unknown.
+	 */
+	public int getLeader() {
+		return leader;
+	}
+
+
+	public void setLeader(int leader) {
+		this.leader = leader;
+	}
+
+	/**
+	 * Whether the content of this request packs several operations that the
+	 * replicas execute as separate commands, see
+	 * {@link bftsmart.tom.util.OperationBatch}.
+	 */
+	public boolean isOperationBatch() {
+		return (flags & FLAG_OPERATION_BATCH) != 0;
+	}
+
+
+	public void setOperationBatch(boolean operationBatch) {
+		flags = operationBatch ? flags | FLAG_OPERATION_BATCH : flags & ~FLAG_OPERATION_BATCH;
+	}
 }
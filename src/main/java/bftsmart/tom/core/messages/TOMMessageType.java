@@ -27,7 +27,13 @@ public enum TOMMessageType {
     RECONFIG, //3
     ASK_STATUS, // 4
     STATUS_REPLY,// 5
-    UNORDERED_HASHED_REQUEST; //6
+    UNORDERED_HASHED_REQUEST, //6
+    TENTATIVE_REPLY, //7 reply of a precomputed but not yet decided request
+    TENTATIVE_INVALIDATION, //8 the tentative reply of a request was rolled back
+    LEASE_READ_REQUEST, //9 read answered by the leader while it holds a lease
+    LEASE_READ_REJECTED, //10 the replica is not the leader or its lease expired
+    REPLY_DIGEST, //11 digest of the reply of an ordered request, sent by the replicas other than its designated replier
+    READ_REJECTED; //12 the replica is too busy to execute a read-only request
     
     public int toInt() {
         switch(this) {
@@ -38,6 +44,12 @@ public enum TOMMessageType {
             case ASK_STATUS: return 4;
             case STATUS_REPLY: return 5;
             case UNORDERED_HASHED_REQUEST: return 6;
+            case TENTATIVE_REPLY: return 7;
+            case TENTATIVE_INVALIDATION: return 8;
+            case LEASE_READ_REQUEST: return 9;
+            case LEASE_READ_REJECTED: return 10;
+            case REPLY_DIGEST: return 11;
+            case READ_REJECTED: return 12;
             default: return -1;
         }
     }
@@ -51,7 +63,17 @@ public enum TOMMessageType {
             case 4: return ASK_STATUS;
             case 5: return STATUS_REPLY;
             case 6: return UNORDERED_HASHED_REQUEST;
+            case 7: return TENTATIVE_REPLY;
+            case 8: return TENTATIVE_INVALIDATION;
+            case 9: return LEASE_READ_REQUEST;
+            case 10: return LEASE_READ_REJECTED;
+            case 11: return REPLY_DIGEST;
+            case 12: return READ_REJECTED;
             default: return RECONFIG;
         }            
     }
+
+    public boolean isTentative() {
+        return this == TENTATIVE_REPLY || this == TENTATIVE_INVALIDATION;
+    }
 }
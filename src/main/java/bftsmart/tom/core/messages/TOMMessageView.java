@@ -0,0 +1,165 @@
+package bftsmart.tom.core.messages;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable, read-only view of a serialized {@link TOMMessage}.
+ * <p>
+ * The header fields are read in place from the underlying buffer, and the
+ * contents are exposed as slices of it, so inspecting a message allocates
+ * nothing beyond the slices that are asked for. One view can be moved over
+ * many messages with {@link #wrap(ByteBuffer, int)}; it is not thread safe.
+ * Requests are decoded through it both from the network and from batches.
+ */
+public final class TOMMessageView {
+
+	private static final int SENDER = 0;
+	private static final int VIEW_ID = 4;
+	private static final int TYPE = 8;
+	private static final int SESSION = 12;
+	private static final int SEQUENCE = 16;
+	private static final int OPERATION_ID = 20;
+	private static final int REPLY_SERVER = 24;
+	private static final int LEADER = 28;
+	private static final int FLAGS = 32;
+	private static final int CONTENT_LENGTH = 36;
+
+	private ByteBuffer buffer;
+
+	private int offset;
+
+	private int contentLength;
+
+	private int viewContentLength;
+
+	/**
+	 * Moves the view over the message serialized at the given absolute offset
+	 * of the buffer.
+	 *
+	 * @throws IOException if the message does not fit in the buffer
+	 */
+	public TOMMessageView wrap(ByteBuffer buffer, int offset) throws IOException {
+		if (offset < 0 || buffer.limit() - offset < TOMMessage.SERIALIZED_HEADER_LENGTH) {
+			throw new IOException("Truncated message header!");
+		}
+		int contentLength = buffer.getInt(offset + CONTENT_LENGTH);
+		int viewLengthIndex = offset + CONTENT_LENGTH + 4 + Math.max(contentLength, 0);
+		if (contentLength < -1 || viewLengthIndex + 4 > buffer.limit()) {
+			throw new IOException("Invalid length [" + contentLength + "] of message content!");
+		}
+		int viewContentLength = buffer.getInt(viewLengthIndex);
+		if (viewContentLength < -1 || viewLengthIndex + 4 + Math.max(viewContentLength, 0) > buffer.limit()) {
+			throw new IOException("Invalid length [" + viewContentLength + "] of view content!");
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.contentLength = contentLength;
+		this.viewContentLength = viewContentLength;
+		return this;
+	}
+
+	public int getSender() {
+		return buffer.getInt(offset + SENDER);
+	}
+
+	public int getViewID() {
+		return buffer.getInt(offset + VIEW_ID);
+	}
+
+	public TOMMessageType getReqType() {
+		return TOMMessageType.fromInt(buffer.getInt(offset + TYPE));
+	}
+
+	public int getSession() {
+		return buffer.getInt(offset + SESSION);
+	}
+
+	public int getSequence() {
+		return buffer.getInt(offset + SEQUENCE);
+	}
+
+	public int getOperationId() {
+		return buffer.getInt(offset + OPERATION_ID);
+	}
+
+	public int getReplyServer() {
+		return buffer.getInt(offset + REPLY_SERVER);
+	}
+
+	public int getLeader() {
+		return buffer.getInt(offset + LEADER);
+	}
+
+	public boolean isOperationBatch() {
+		return (buffer.getInt(offset + FLAGS) & TOMMessage.FLAG_OPERATION_BATCH) != 0;
+	}
+
+	/**
+	 * The length of the content; -1 if the message has no content.
+	 */
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * The absolute offset of the content in the underlying buffer.
+	 */
+	public int getContentOffset() {
+		return offset + CONTENT_LENGTH + 4;
+	}
+
+	/**
+	 * The content as a slice of the underlying buffer; null if the message has
+	 * no content.
+	 */
+	public ByteBuffer getContent() {
+		return contentLength < 0 ? null : slice(getContentOffset(), contentLength);
+	}
+
+	/**
+	 * The length of the view content; -1 if the message has no view content.
+	 */
+	public int getViewContentLength() {
+		return viewContentLength;
+	}
+
+	/**
+	 * The view content as a slice of the underlying buffer; null if the message
+	 * has no view content.
+	 */
+	public ByteBuffer getViewContent() {
+		return viewContentLength < 0 ? null : slice(getContentOffset() + Math.max(contentLength, 0) + 4, viewContentLength);
+	}
+
+	/**
+	 * The number of bytes of the serialized message.
+	 */
+	public int getSerializedLength() {
+		return TOMMessage.SERIALIZED_HEADER_LENGTH + Math.max(contentLength, 0) + Math.max(viewContentLength, 0);
+	}
+
+	/**
+	 * Creates a {@link TOMMessage} over the viewed message. Its content and its
+	 * serialized bytes stay views of the underlying buffer, and are copied only
+	 * if {@link TOMMessage#getContent()} or
+	 * {@link TOMMessage#getSerializedMessage()} is called; the buffer must not
+	 * be modified afterwards.
+	 */
+	public TOMMessage toMessage() throws IOException {
+		ByteBuffer in = buffer.duplicate();
+		in.limit(offset + getSerializedLength());
+		in.position(offset);
+		TOMMessage message = new TOMMessage();
+		message.setSerializedView(in);
+		message.rExternalView(in);
+		return message;
+	}
+
+	private ByteBuffer slice(int from, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.limit(from + length);
+		duplicate.position(from);
+		return duplicate.slice();
+	}
+}
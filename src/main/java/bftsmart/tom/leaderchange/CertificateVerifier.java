@@ -0,0 +1,176 @@
+package bftsmart.tom.leaderchange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 领导者切换过程中的证书验证器；
+ * <p>
+ *
+ * 选举新领导者时需要验证各个节点签名的 COLLECT 数据以及最近一次决议的证明（每个证明包含法定数量的签名），
+ * 节点数量较多时逐个验证签名的耗时会远大于网络往返的时间；验证器把一组相互独立的检查分配到工作线程上并行执行，调用线程也参与执行；
+ * <p>
+ *
+ * 验证结果按照（发送者，执政期）缓存，同一执政期内对同一对象的重复验证直接返回缓存的结果；缓存按照对象的引用区分，
+ * 因此发送者换用其它内容不会得到之前的结果；执政期结束后调用 {@link #removeUpTo(int)} 清除；
+ * <p>
+ *
+ * 工作线程只在领导者切换期间存在，空闲一段时间后自动退出；
+ */
+public final class CertificateVerifier {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CertificateVerifier.class);
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * （发送者，执政期）到该发送者在该执政期中被验证过的对象及其结果；
+	 */
+	private final Map<Long, Map<Object, Object>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param threads 工作线程的数量；不大于 1 时在调用线程中依次执行；
+	 */
+	public CertificateVerifier(int threads) {
+		if (threads > 1) {
+			AtomicInteger index = new AtomicInteger();
+			this.workers = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), r -> {
+						Thread thread = new Thread(r, "LC-Verifier-" + index.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					});
+			this.workers.allowCoreThreadTimeOut(true);
+		} else {
+			this.workers = null;
+		}
+	}
+
+	/**
+	 * 并行执行一组相互独立的检查；检查抛出的异常视为检查不通过；
+	 * <p>
+	 * 检查中不应再调用验证器的方法，否则可能因为工作线程耗尽而等待；
+	 *
+	 * @return 各个检查的结果，与检查的顺序相同；
+	 */
+	public boolean[] verifyAll(List<BooleanSupplier> checks) {
+		boolean[] results = new boolean[checks.size()];
+		if (workers == null || checks.size() < 2) {
+			for (int i = 0; i < results.length; i++) {
+				results[i] = check(checks.get(i));
+			}
+			return results;
+		}
+
+		List<Future<Boolean>> futures = new ArrayList<>(checks.size() - 1);
+		for (int i = 1; i < checks.size(); i++) {
+			BooleanSupplier check = checks.get(i);
+			futures.add(workers.submit(() -> check(check)));
+		}
+		results[0] = check(checks.get(0));
+
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			Future<Boolean> future = futures.get(i);
+			while (true) {
+				try {
+					results[i + 1] = future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					LOGGER.error("Error occurred while verifying certificate! --" + e.getMessage(), e);
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return results;
+	}
+
+	/**
+	 * 返回缓存的验证结果；同一个对象没有被验证过时执行验证并缓存结果；
+	 *
+	 * @param sender   发送者；
+	 * @param regency  执政期；
+	 * @param source   被验证的对象；
+	 * @param verifier 执行验证；
+	 * @return 验证结果；
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T cached(int sender, int regency, Object source, Supplier<T> verifier) {
+		Map<Object, Object> results = cache.computeIfAbsent(key(sender, regency),
+				k -> Collections.synchronizedMap(new IdentityHashMap<>()));
+		if (results.containsKey(source)) {
+			return (T) results.get(source);
+		}
+		T result = verifier.get();
+		results.put(source, result);
+		return result;
+	}
+
+	/**
+	 * 清除执政期不大于指定值的缓存；
+	 */
+	public void removeUpTo(int regency) {
+		Iterator<Long> iterator = cache.keySet().iterator();
+		while (iterator.hasNext()) {
+			if ((int) (iterator.next() >> 32) <= regency) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * 缓存的验证结果数量；
+	 */
+	public int getCachedCount() {
+		int count = 0;
+		for (Map<Object, Object> results : cache.values()) {
+			count += results.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 关闭工作线程；
+	 */
+	public void shutdown() {
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	private static boolean check(BooleanSupplier check) {
+		try {
+			return check.getAsBoolean();
+		} catch (RuntimeException e) {
+			LOGGER.error("Error occurred while verifying certificate! --" + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	private static Long key(int sender, int regency) {
+		return ((long) regency << 32) | (sender & 0xFFFFFFFFL);
+	}
+}
@@ -2,9 +2,10 @@ package bftsmart.tom.leaderchange;
 
 import bftsmart.clientsmanagement.ClientsManager;
 import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.core.ReplicaScheduler;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ClientDatasMonitorTimer {
 
@@ -16,12 +17,14 @@ public class ClientDatasMonitorTimer {
 
     private long clientDatasMaxCount;
 
-    private Timer timer = new Timer("client datas monitor timer");
+    private final ReplicaScheduler scheduler;
 
-    private ClientDataMonitorTimerTask clientDataMonitorTimerTask = null;
+    private ScheduledFuture<?> clientDataMonitorTimerTask = null;
 
 
-    public ClientDatasMonitorTimer(ViewTopology controller, RequestsTimer requestsTimer, ClientsManager clientsManager) {
+    public ClientDatasMonitorTimer(ViewTopology controller, RequestsTimer requestsTimer, ClientsManager clientsManager,
+            ReplicaScheduler scheduler) {
+        this.scheduler = scheduler;
         this.controller = controller;
         this.requestsTimer = requestsTimer;
         this.clientsManager = clientsManager;
@@ -30,18 +33,18 @@ public class ClientDatasMonitorTimer {
         startTimer();
     }
 
-    public void startTimer() {
+    public synchronized void startTimer() {
         if (clientDataMonitorTimerTask == null) {
 
-            clientDataMonitorTimerTask = new ClientDataMonitorTimerTask(clientsManager, controller);
-            timer.schedule(clientDataMonitorTimerTask, timeout);
+            clientDataMonitorTimerTask = scheduler.scheduleWithFixedDelay(
+                    new ClientDataMonitorTimerTask(clientsManager, controller), timeout, timeout, TimeUnit.MILLISECONDS);
 
         }
     }
 
-    public void stopTimer() {
+    public synchronized void stopTimer() {
         if (clientDataMonitorTimerTask != null) {
-            clientDataMonitorTimerTask.cancel();
+            clientDataMonitorTimerTask.cancel(false);
             clientDataMonitorTimerTask = null;
         }
     }
@@ -50,7 +53,7 @@ public class ClientDatasMonitorTimer {
         stopTimer();
     }
 
-    class ClientDataMonitorTimerTask extends TimerTask {
+    class ClientDataMonitorTimerTask implements Runnable {
 
        private ClientsManager clientsManager;
        private ViewTopology controller;
@@ -63,15 +66,13 @@ public class ClientDatasMonitorTimer {
 
         @Override
         /**
-         * This is the code for the TimerTask. It clears obsolete datas.
+         * This is the code for the scheduled task. It clears obsolete datas.
          */
         public void run() {
 
             if (this.clientsManager.getClientDatasTotal() > clientDatasMaxCount) {
                 this.clientsManager.clearObsoleteRequests();
             }
-            stopTimer();
-            startTimer();
 //            System.out.println("I am proc " + this.controller.getStaticConf().getProcessId() + " , there was nothing to do , now is " + System.currentTimeMillis());
         }
     }
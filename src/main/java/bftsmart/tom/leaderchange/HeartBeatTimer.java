@@ -1,19 +1,18 @@
 package bftsmart.tom.leaderchange;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import bftsmart.consensus.messages.ConsensusMessage;
 import bftsmart.reconfiguration.views.View;
 import bftsmart.tom.core.TOMLayer;
 
@@ -45,9 +44,19 @@ public class HeartBeatTimer {
 
 	private static final long NORMAL_DELAY = 2000;
 
-	private ScheduledExecutorService leaderTimer;
+	/**
+	 * phi 累积故障检测器为每个节点保留的到达间隔的数量；
+	 */
+	private static final int PHI_WINDOW_SIZE = 100;
 
-	private ScheduledExecutorService followerTimer;
+	/**
+	 * 领导者持续发送共识消息时，显式心跳最多被省略的心跳周期数；显式心跳携带执政期，用于让落后的节点及时发现执政期不一致；
+	 */
+	private static final int MAX_SUPPRESSED_PERIODS = 5;
+
+	private ScheduledFuture<?> leaderTimer;
+
+	private ScheduledFuture<?> followerTimer;
 
 //	private ScheduledExecutorService leaderChangeStartThread = Executors.newSingleThreadScheduledExecutor();
 
@@ -78,8 +87,33 @@ public class HeartBeatTimer {
 
 	private volatile boolean actived = false;
 
+	/**
+	 * 作为领导者最近一次发起共识提议的时间；
+	 */
+	private volatile long lastProposeTime;
+
+	/**
+	 * 作为领导者最近一次广播显式心跳的时间；
+	 */
+	private volatile long lastHeartBeatSentTime;
+
+	/**
+	 * 领导者租约；未启用租约读时为 null；
+	 */
+	private final LeaderLease leaderLease;
+
+	/**
+	 * 领导者的 phi 累积故障检测器；未启用时为 null，只使用固定的心跳超时时长；
+	 */
+	private final PhiAccrualFailureDetector failureDetector;
+
 	public HeartBeatTimer(TOMLayer tomLayer) {
 		this.tomLayer = tomLayer;
+		this.leaderLease = tomLayer.controller.getStaticConf().isLeaseReads()
+				? new LeaderLease(tomLayer.controller.getStaticConf().getLeaseDuration())
+				: null;
+		this.failureDetector = createFailureDetector(tomLayer.controller.getStaticConf().getHeartBeatPhiThreshold(),
+				tomLayer.controller.getStaticConf().getHeartBeatPeriod());
 		this.heartBeatting = new HeartBeating(new LeaderRegency(0, -1),
 				tomLayer.controller.getStaticConf().getProcessId(), System.currentTimeMillis());
 
@@ -88,6 +122,20 @@ public class HeartBeatTimer {
 		confirmLeaderRegency(INIT_LEADER_CONFIRM_DELAY, INIT_LEADER_CONFIRM_TIMEOUT);
 	}
 
+	/**
+	 * 创建领导者的故障检测器；
+	 * <p>
+	 * 领导者即使没有共识消息可发也会在每个心跳周期内发出心跳，因此以心跳周期作为可接受的停顿时长和首次的预估间隔，
+	 * 标准差的下限取心跳周期的十分之一；
+	 */
+	private static PhiAccrualFailureDetector createFailureDetector(double threshold, long heartBeatPeriod) {
+		if (threshold <= 0) {
+			return null;
+		}
+		return new PhiAccrualFailureDetector(threshold, PHI_WINDOW_SIZE, heartBeatPeriod / 10, heartBeatPeriod,
+				heartBeatPeriod);
+	}
+
 	private int getCurrentProcessId() {
 		return tomLayer.controller.getStaticConf().getProcessId();
 	}
@@ -106,17 +154,15 @@ public class HeartBeatTimer {
 	public synchronized void restartformlc() {
 		stopAll();
 		if (leaderTimer == null) {
-			leaderTimer = Executors.newSingleThreadScheduledExecutor();
-			leaderTimer.scheduleWithFixedDelay(new LeaderHeartbeatBroadcastingTask(this), NORMAL_DELAY,
-					tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
+			leaderTimer = tomLayer.getHeartBeatScheduler().scheduleWithFixedDelay(new LeaderHeartbeatBroadcastingTask(this),
+					NORMAL_DELAY, getHeartBeatTick(), TimeUnit.MILLISECONDS);
 		}
 
 		if (followerTimer == null) {
 			// 非领导者心跳定时器重新开启后，更新上次心跳消息接收时间
 			heartBeatting.time = System.currentTimeMillis();
-			followerTimer = Executors.newSingleThreadScheduledExecutor();
-			followerTimer.scheduleWithFixedDelay(new FollowerHeartbeatCheckingTask(), NORMAL_DELAY,
-					tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
+			followerTimer = tomLayer.getHeartBeatScheduler().scheduleWithFixedDelay(new FollowerHeartbeatCheckingTask(),
+					NORMAL_DELAY, tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
 		}
 
 	}
@@ -163,10 +209,10 @@ public class HeartBeatTimer {
 
 	private void innerStop() {
 		if (followerTimer != null) {
-			followerTimer.shutdownNow();
+			followerTimer.cancel(false);
 		}
 		if (leaderTimer != null) {
-			leaderTimer.shutdownNow();
+			leaderTimer.cancel(false);
 		}
 		followerTimer = null;
 		leaderTimer = null;
@@ -176,12 +222,46 @@ public class HeartBeatTimer {
 		return tomLayer.controller.getStaticConf().getHeartBeatPeriod();
 	}
 
+	/**
+	 * 领导者心跳任务的执行间隔，为心跳周期的一半，使得流量停止后的首个显式心跳不会晚于一个心跳周期太多；
+	 */
+	private long getHeartBeatTick() {
+		return Math.max(1, getHearBeatPeriod() / 2);
+	}
+
+	/**
+	 * 作为领导者发起共识提议后调用；
+	 * <p>
+	 * 跟随者把领导者的共识消息视为心跳，因此领导者在持续提议期间省略显式心跳；
+	 */
+	public void consensusProposed() {
+		lastProposeTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * 领导者此时是否需要广播显式心跳；
+	 * <p>
+	 * 距离上次显式心跳不足四分之三个心跳周期时不发送，使空闲时的心跳间隔保持为一个心跳周期；
+	 * 启用租约读时心跳同时用于续约，不省略；否则只在最近四分之三个心跳周期内没有发起提议，
+	 * 或者已经连续省略了 {@link #MAX_SUPPRESSED_PERIODS} 个心跳周期时发送；
+	 */
+	private boolean isHeartBeatDue(long now) {
+		long period = getHearBeatPeriod();
+		long idleInterval = period - period / 4;
+		if (now - lastHeartBeatSentTime < idleInterval) {
+			return false;
+		}
+		if (leaderLease != null) {
+			return true;
+		}
+		return now - lastProposeTime >= idleInterval || now - lastHeartBeatSentTime >= MAX_SUPPRESSED_PERIODS * period;
+	}
+
 	private void leaderTimerStart(long delay) {
 		// stop Replica timer，and start leader timer
 		if (initialized && leaderTimer == null) {
-			leaderTimer = Executors.newSingleThreadScheduledExecutor();
-			leaderTimer.scheduleWithFixedDelay(new LeaderHeartbeatBroadcastingTask(this), delay,
-					tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
+			leaderTimer = tomLayer.getHeartBeatScheduler().scheduleWithFixedDelay(new LeaderHeartbeatBroadcastingTask(this),
+					delay, getHeartBeatTick(), TimeUnit.MILLISECONDS);
 		}
 	}
 
@@ -189,9 +269,8 @@ public class HeartBeatTimer {
 		if (initialized && followerTimer == null) {
 			// 非领导者心跳定时器重新开启后，更新上次心跳消息接收时间
 			heartBeatting.time = System.currentTimeMillis();
-			followerTimer = Executors.newSingleThreadScheduledExecutor();
-			followerTimer.scheduleWithFixedDelay(new FollowerHeartbeatCheckingTask(), delay,
-					tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
+			followerTimer = tomLayer.getHeartBeatScheduler().scheduleWithFixedDelay(new FollowerHeartbeatCheckingTask(),
+					delay, tomLayer.controller.getStaticConf().getHeartBeatPeriod(), TimeUnit.MILLISECONDS);
 		}
 	}
 
@@ -201,6 +280,7 @@ public class HeartBeatTimer {
 	 * @param heartBeatMessage
 	 */
 	public synchronized void receiveHeartBeatMessage(HeartBeatMessage heartBeatMessage) {
+		recordArrival(heartBeatMessage.getSender());
 		// 需要考虑是否每次都更新innerHeartBeatMessage
 		LeaderRegency beatingRegengy = new LeaderRegency(heartBeatMessage.getLeader(),
 				heartBeatMessage.getLastRegency());
@@ -208,6 +288,9 @@ public class HeartBeatTimer {
 		if (beatingRegengy.getLeaderId() == tomLayer.leader() && beatingRegengy.getId() == currentRegency) {
 			// 领导者心跳正常；
 			heartBeatting = new HeartBeating(beatingRegengy, heartBeatMessage.getSender(), System.currentTimeMillis());
+			if (heartBeatMessage instanceof LeaseHeartBeatMessage) {
+				grantLease((LeaseHeartBeatMessage) heartBeatMessage);
+			}
 		} else {
 			// 收到的心跳执政期与当前节点所处的执政期不一致：要么执政期Id不相等，要么领导者不相等，要么两者都不等；
 			// 1. 当心跳执政期大于当前节点所处的执政期，则向其它节点查询确认领导者执政期，并尝试同步到多数一致的状态；
@@ -231,6 +314,139 @@ public class HeartBeatTimer {
 		}
 	}
 
+	/**
+	 * 收到其它节点经过认证的共识消息；当前领导者的共识消息同时视为心跳；
+	 *
+	 * @param consensusMessage
+	 */
+	public void receiveConsensusMessage(ConsensusMessage consensusMessage) {
+		int sender = consensusMessage.getSender();
+		recordArrival(sender);
+
+		// 当前领导者的共识消息视为心跳；
+		if (sender == getCurrentProcessId() || sender != tomLayer.leader()) {
+			return;
+		}
+		LCManager lcManager = tomLayer.getSynchronizer().getLCManager();
+		if (lcManager.isInProgress()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		HeartBeating beating = heartBeatting;
+		if (beating.getFrom() == sender && beating.getRegency().getId() == lcManager.getLastReg()) {
+			// 只更新时间；如果心跳消息同时替换了记录，更新的是旧的记录，不影响新的记录；
+			beating.time = now;
+			return;
+		}
+		// 替换记录时与心跳消息的处理互斥，避免以过期的执政期覆盖较新的记录；
+		synchronized (this) {
+			if (sender != tomLayer.leader() || lcManager.isInProgress()) {
+				return;
+			}
+			int regency = lcManager.getLastReg();
+			beating = heartBeatting;
+			if (beating.getFrom() == sender && beating.getRegency().getId() == regency) {
+				beating.time = now;
+			} else if (beating.getRegency().getId() <= regency) {
+				heartBeatting = new HeartBeating(new LeaderRegency(sender, regency), sender, now);
+			}
+		}
+	}
+
+	private void recordArrival(int sender) {
+		if (failureDetector != null && sender != getCurrentProcessId()) {
+			failureDetector.heartbeat(sender, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * 各个节点当前的 phi 值，按节点 Id 排列；未启用 phi 累积故障检测时返回空表；
+	 */
+	public Map<Integer, Double> getPhis() {
+		if (failureDetector == null) {
+			return Collections.emptyMap();
+		}
+		return failureDetector.getPhis(System.currentTimeMillis());
+	}
+
+	/**
+	 * 向领导者授予租约；
+	 * <p>
+	 * 正在进行选举，或者已经为新的执政期发出 STOP 时，不再授予租约；
+	 */
+	private void grantLease(LeaseHeartBeatMessage heartBeatMessage) {
+		if (leaderLease == null) {
+			return;
+		}
+		LCManager lcManager = tomLayer.getSynchronizer().getLCManager();
+		int regency = heartBeatMessage.getLastRegency();
+		if (lcManager.isInProgress() || !leaderLease.canGrant(regency)) {
+			return;
+		}
+		LeaseGrantMessage grant = new LeaseGrantMessage(getCurrentProcessId(), regency,
+				heartBeatMessage.getLeaseStart());
+		tomLayer.getCommunication().send(grant, heartBeatMessage.getSender());
+	}
+
+	/**
+	 * 收到跟随者授予的租约；
+	 *
+	 * @param grantMessage
+	 */
+	public void receiveLeaseGrantMessage(LeaseGrantMessage grantMessage) {
+		if (leaderLease == null) {
+			return;
+		}
+		leaderLease.granted(grantMessage.getSender(), grantMessage.getRegency(), grantMessage.getLeaseStart());
+	}
+
+	/**
+	 * 当前节点是否为持有有效租约的领导者；
+	 * <p>
+	 * 租约的法定数量与选举的法定数量相交：BFT 模式下不少于 2f+1，CFT 模式下不少于 f+1，且总是超过 n 减去选举法定数量；
+	 *
+	 * @return
+	 */
+	public boolean isLeaseHeld() {
+		if (leaderLease == null || !tomLayer.isLeader()) {
+			return false;
+		}
+		LCManager lcManager = tomLayer.getSynchronizer().getLCManager();
+		if (lcManager.isInProgress()) {
+			return false;
+		}
+		int electionQuorum = tomLayer.controller.getStaticConf().isBFT() ? lcManager.getBFTCommitQuorum()
+				: lcManager.getCFTCommitQuorum();
+		int quorum = Math.max(electionQuorum, tomLayer.controller.getCurrentViewN() - electionQuorum + 1);
+		return leaderLease.isHeld(lcManager.getLastReg(), getCurrentProcessId(),
+				tomLayer.controller.getCurrentViewProcesses(), quorum);
+	}
+
+	/**
+	 * 为新的执政期发出 STOP 之后调用，不再向之前执政期的领导者授予租约；
+	 *
+	 * @param proposedRegency 提议的新执政期；
+	 */
+	public void revokeLease(int proposedRegency) {
+		if (leaderLease != null) {
+			leaderLease.revoke(proposedRegency);
+		}
+	}
+
+	/**
+	 * 作为领导者提议之前，前任领导者的租约还需多久过期；
+	 * <p>
+	 * 不阻塞调用线程，由提议线程据此推迟提议；每个执政期只在首次调用时开始计时；
+	 *
+	 * @return 还需等待的纳秒数；前任领导者的租约已经过期或未启用租约读时返回 0；
+	 */
+	public long remainingProposeWait() {
+		if (leaderLease == null) {
+			return 0;
+		}
+		return leaderLease.remainingProposeWait(tomLayer.getSynchronizer().getLCManager().getLastReg());
+	}
+
 	/**
 	 * 向其它节点查询确认领导者执政期，并尝试同步到多数一致的状态；
 	 * <p>
@@ -303,8 +519,16 @@ public class HeartBeatTimer {
 	 * @return
 	 */
 	public boolean isHeartBeatTimeout() {
-		return System.currentTimeMillis() - heartBeatting.getTime() > tomLayer.controller.getStaticConf()
-				.getHeartBeatTimeout();
+		long now = System.currentTimeMillis();
+		long elapsed = now - heartBeatting.getTime();
+		if (elapsed > tomLayer.controller.getStaticConf().getHeartBeatTimeout()) {
+			return true;
+		}
+		if (failureDetector == null) {
+			return false;
+		}
+		// 心跳定时器（重新）启动后的一个心跳周期内不判定超时，新领导者有机会发出首个心跳；
+		return elapsed > getHearBeatPeriod() && failureDetector.isSuspected(tomLayer.leader(), now);
 	}
 
 	/**
@@ -438,6 +662,7 @@ public class HeartBeatTimer {
 	 * 在领导者节点上运行的心跳广播任务；
 	 * <p>
 	 * 该任务以配置文件指定的“心跳周期时长（HeartBeatPeriod）”为间隔周期性地广播心跳消息；
+	 * 领导者持续发起提议期间省略显式心跳，见 {@link HeartBeatTimer#isHeartBeatDue(long)}；
 	 */
 	static class LeaderHeartbeatBroadcastingTask implements Runnable {
 
@@ -462,13 +687,21 @@ public class HeartBeatTimer {
 				if (!HEART_BEAT_TIMER.tomLayer.isConnectRemotesOK()) {
 					return;
 				}
+				long now = System.currentTimeMillis();
+				if (!HEART_BEAT_TIMER.isHeartBeatDue(now)) {
+					return;
+				}
 				// 如果是Leader则发送心跳信息给其他节点，当前节点除外
 				int currentRegency = HEART_BEAT_TIMER.tomLayer.getSynchronizer().getLCManager().getLastReg();
-				HeartBeatMessage heartBeatMessage = new HeartBeatMessage(currentProcessId, currentProcessId,
-						currentRegency);
+				LeaderLease lease = HEART_BEAT_TIMER.leaderLease;
+				HeartBeatMessage heartBeatMessage = lease == null
+						? new HeartBeatMessage(currentProcessId, currentProcessId, currentRegency)
+						: new LeaseHeartBeatMessage(currentProcessId, currentProcessId, currentRegency,
+								lease.renew(currentRegency));
 
 				int[] followers = HEART_BEAT_TIMER.tomLayer.controller.getCurrentViewOtherAcceptors();
 				HEART_BEAT_TIMER.tomLayer.getCommunication().send(followers, heartBeatMessage);
+				HEART_BEAT_TIMER.lastHeartBeatSentTime = now;
 			} catch (Exception e) {
 				// 处理异常，避免出错退出；
 				LOGGER.warn("Error occurred while broadcasting heartbeat message from process[" + currentProcessId
@@ -506,23 +739,25 @@ public class HeartBeatTimer {
 						heartBeatting.getTime());
 
 				if (leaderTimeoutTask != null) {
-					// 实际上不可能执行到此处：
-					// 由于采用了 ScheduledExecutorService 的 scheduleWithFixedDelay 方式调度此任务，
-					// 保证了不会在未完成上一次超时任务之前重复执行；
-					LOGGER.error("There is a risky repeatedly scheduling of leader timeout checking task!");
+					// 上一次的超时任务仍在进行中，不重复启动；
+					// 超时任务在副本的调度器中执行，不在此处堵塞等待它完成，而是由它在结束时清除 leaderTimeoutTask；
 					return;
 				}
 
 				try {
-					leaderTimeoutTask = new LeaderTimeoutTask(HeartBeatTimer.this, tomLayer);
-					Future<?> future = leaderTimeoutTask.start();
-					future.get();
-				} catch (CancellationException e) {
-					LOGGER.warn("LeaderTimeoutTask is cancelled." + e.getMessage(), e);
+					LeaderTimeoutTask timeoutTask = new LeaderTimeoutTask(HeartBeatTimer.this, tomLayer) {
+						@Override
+						protected void onCompleted() {
+							if (leaderTimeoutTask == this) {
+								leaderTimeoutTask = null;
+							}
+						}
+					};
+					leaderTimeoutTask = timeoutTask;
+					timeoutTask.start();
 				} catch (Exception e) {
 					// 捕捉所有异常，防止异常抛出后终止心跳超时检测任务；
 					LOGGER.error("Error occurred while running LeaderTimeoutTask! --" + e.getMessage(), e);
-				} finally {
 					leaderTimeoutTask = null;
 				}
 			}
@@ -531,7 +766,7 @@ public class HeartBeatTimer {
 
 	private static class HeartBeating {
 
-		private long time;
+		private volatile long time;
 
 		private LeaderRegency regency;
 
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.security.PublicKey;
 import java.security.SignedObject;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,6 +82,13 @@ public class LCManager {
 
 	private LCTimestampStatePair lcTimestampStatePair;
 
+	/**
+	 * 验证 COLLECT 签名和决议证明的最大线程数；
+	 */
+	private static final int MAX_VERIFY_THREADS = 8;
+
+	private final CertificateVerifier certificateVerifier;
+
 	// private Cipher cipher;
 //	private Mac mac;
 
@@ -105,6 +114,9 @@ public class LCManager {
 
 		this.lcTimestampStatePair = new LCTimestampStatePair(System.currentTimeMillis(), LCState.NORMAL);
 
+		this.certificateVerifier = new CertificateVerifier(
+				Math.min(Runtime.getRuntime().availableProcessors(), MAX_VERIFY_THREADS));
+
 
 
 //		try {
@@ -759,6 +771,7 @@ public class LCManager {
 			if (keys[i] <= regency)
 				lastCIDs.remove(keys[i]);
 		}
+		certificateVerifier.removeUpTo(regency);
 	}
 
 	/**
@@ -822,6 +835,7 @@ public class LCManager {
 			if (keys[i] <= regency)
 				collects.remove(keys[i]);
 		}
+		certificateVerifier.removeUpTo(regency);
 	}
 
 	/**
@@ -1220,7 +1234,7 @@ public class LCManager {
 		if (c == null)
 			return null;
 
-		return normalizeCollects(getSignedCollects(c), cid, regency);
+		return normalizeCollects(getSignedCollects(c, regency), cid, regency);
 
 	}
 
@@ -1237,28 +1251,30 @@ public class LCManager {
 		if (signedObjects == null)
 			return null;
 
-		return normalizeCollects(getSignedCollects(signedObjects), cid, regency);
+		return normalizeCollects(getSignedCollects(signedObjects, regency), cid, regency);
 
 	}
 
-	// Filters the correctly signed collects
-	private HashSet<CollectData> getSignedCollects(HashSet<SignedObject> signedCollects) {
+	// Filters the correctly signed collects; the signatures are verified in
+	// parallel and the results are cached per sender and regency
+	private HashSet<CollectData> getSignedCollects(HashSet<SignedObject> signedCollects, int regency) {
+
+		SignedObject[] signedObjects = signedCollects.toArray(new SignedObject[signedCollects.size()]);
+		CollectData[] verified = new CollectData[signedObjects.length];
+		List<BooleanSupplier> checks = new ArrayList<BooleanSupplier>(signedObjects.length);
+		for (int i = 0; i < signedObjects.length; i++) {
+			final int index = i;
+			checks.add(() -> {
+				verified[index] = verifyCollect(signedObjects[index], regency);
+				return verified[index] != null;
+			});
+		}
+		certificateVerifier.verifyAll(checks);
 
 		HashSet<CollectData> colls = new HashSet<CollectData>();
-
-		for (SignedObject so : signedCollects) {
-
-			CollectData c;
-			try {
-				c = (CollectData) so.getObject();
-				int sender = c.getPid();
-				if (tomLayer.verifySignature(so, sender)) {
-					colls.add(c);
-				}
-			} catch (IOException ex) {
-				LOGGER.error(ex.getMessage(), ex);
-			} catch (ClassNotFoundException ex) {
-				LOGGER.error(ex.getMessage(), ex);
+		for (CollectData c : verified) {
+			if (c != null) {
+				colls.add(c);
 			}
 		}
 
@@ -1266,6 +1282,24 @@ public class LCManager {
 
 	}
 
+	// Returns the collect data if it is correctly signed by its sender, or null
+	// otherwise
+	private CollectData verifyCollect(SignedObject so, int regency) {
+		CollectData c;
+		try {
+			c = (CollectData) so.getObject();
+		} catch (IOException ex) {
+			LOGGER.error(ex.getMessage(), ex);
+			return null;
+		} catch (ClassNotFoundException ex) {
+			LOGGER.error(ex.getMessage(), ex);
+			return null;
+		}
+		int sender = c.getPid();
+		return certificateVerifier.cached(sender, regency, so,
+				() -> tomLayer.verifySignature(so, sender) ? c : null);
+	}
+
 	// Normalizes the set of collects. A set of collects is considered normalized if
 	// or when
 	// all collects are related to the same CID. This is important because not all
@@ -1294,7 +1328,7 @@ public class LCManager {
 			for (TimestampValuePair rv : c.getWriteSet()) {
 
 				if (rv.getValue() != null && rv.getValue().length > 0)
-					rv.setHashedValue(md.hash(rv.getValue()));
+					rv.setHashedValue(tomLayer.computeBatchHash(rv.getValue()));
 				else
 					rv.setHashedValue(new byte[0]);
 			}
@@ -1320,19 +1354,40 @@ public class LCManager {
 		if (lasts == null)
 			return null;
 
+		// the highest CID is selected whether its proof is valid or not (the
+		// replicas check the proof when they receive the SYNC message), so only
+		// the proof of the selected one is verified
 		for (CertifiedDecision l : lasts) {
-
-			// TODO: CHECK OF THE PROOF IS MISSING!!!!
-			if (tomLayer.controller.getStaticConf().isBFT() && hasValidProof(l) && l.getCID() > highest.getCID())
-				highest = l;
-			else if (l.getCID() > highest.getCID()) {
+			if (l.getCID() > highest.getCID()) {
 				highest = l;
 			}
 		}
 
+		// only logged: the other replicas reject an invalid proof when they process the SYNC message
+		if (tomLayer.controller.getStaticConf().isBFT() && !hasValidProof(highest, ts)) {
+			LOGGER.warn("(LCManager.getHighestLastCID) The proof of the highest last CID {} from proc {} is invalid",
+					highest.getCID(), highest.getPID());
+		}
+
 		return highest;
 	}
 
+	/**
+	 * Verifies if a proof associated with a decided value is valid; the result is
+	 * cached per sender and regency
+	 * 
+	 * @param cDec    the certified decision
+	 * @param regency the regency in which the certified decision was received
+	 * @return true if the proof is valid
+	 */
+	public boolean hasValidProof(CertifiedDecision cDec, int regency) {
+		if (cDec == null) {
+			return true;
+		}
+		Boolean valid = certificateVerifier.cached(cDec.getPID(), regency, cDec, () -> hasValidProof(cDec));
+		return valid;
+	}
+
 	// verifies is a proof associated with a decided value is valid
 	public boolean hasValidProof(CertifiedDecision cDec) {
 
@@ -1345,7 +1400,7 @@ public class LCManager {
 
 		byte[] hashedValue = null;
 		try {
-			hashedValue = md.hash(cDec.getDecision());
+			hashedValue = tomLayer.computeBatchHash(cDec.getDecision());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -1361,6 +1416,10 @@ public class LCManager {
 
 		HashSet<Integer> alreadyCounted = new HashSet<>(); // stores replica IDs that were already counted
 
+		// the signatures are verified after the loop, in parallel
+		List<Integer> signers = new ArrayList<>();
+		List<BooleanSupplier> signatureChecks = new ArrayList<>();
+
 		for (ConsensusMessage consMsg : ConsensusMessages) {
 
 			ConsensusMessage cm = new ConsensusMessage(consMsg.getType(), consMsg.getNumber(), consMsg.getEpoch(),
@@ -1415,19 +1474,23 @@ public class LCManager {
 				pubRSAKey = SVController.getStaticConf().getRSAPublicKey(consMsg.getSender());
 
 				byte[] signature = (byte[]) consMsg.getProof();
+				PublicKey senderKey = pubRSAKey;
 
-				if (TOMUtil.verifySignature(pubRSAKey, data, signature)
-						&& !alreadyCounted.contains(consMsg.getSender())) {
-
-					alreadyCounted.add(consMsg.getSender());
-					countValid++;
-				}
+				signers.add(consMsg.getSender());
+				signatureChecks.add(() -> TOMUtil.verifySignature(senderKey, data, signature));
 
 			} else {
 				LOGGER.error("(LCManager.hasValidProof) Proof is message is invalid");
 			}
 		}
 
+		boolean[] validSignatures = certificateVerifier.verifyAll(signatureChecks);
+		for (int i = 0; i < validSignatures.length; i++) {
+			if (validSignatures[i] && alreadyCounted.add(signers.get(i))) {
+				countValid++;
+			}
+		}
+
 		// If proofs were made of signatures, use a certificate correspondent to last
 		// view
 		// otherwise, use certificate for the current view
@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -42,8 +40,6 @@ public class LeaderConfirmationTask {
 
 	private long startTimestamp;
 
-	private ScheduledExecutorService executor;
-
 	private Map<Integer, LeaderRegencyView> responsedRegencies;
 
 	private View currentView;
@@ -62,7 +58,6 @@ public class LeaderConfirmationTask {
 		this.currentView = this.tomLayer.controller.getCurrentView();
 		this.startTimestamp = System.currentTimeMillis();
 
-		this.executor = Executors.newSingleThreadScheduledExecutor();
 		this.responsedRegencies = new ConcurrentHashMap<>();
 	}
 
@@ -84,7 +79,7 @@ public class LeaderConfirmationTask {
 	}
 
 	private ScheduledFuture<?> scheduleResponseReciever(long delay) {
-		return executor.scheduleWithFixedDelay(new LeaderResponseWaiting(), delay, 2000L, TimeUnit.MILLISECONDS);
+		return tomLayer.getScheduler().scheduleWithFixedDelay(new LeaderResponseWaiting(), delay, 2000L, TimeUnit.MILLISECONDS);
 	}
 
 	private boolean isStopped() {
@@ -284,12 +279,7 @@ public class LeaderConfirmationTask {
 		ScheduledFuture<?> future = taskFuture;
 		taskFuture = null;
 		if (future != null) {
-			future.cancel(true);
-
-			try {
-				executor.shutdown();
-			} catch (Exception e) {
-			}
+			future.cancel(false);
 
 			LOGGER.debug("Quit the leader confirm task! --[CurrentId={}][ExecLeaderId={}][Sequence={}]",
 					tomLayer.getCurrentProcessId(), tomLayer.getExecManager().getCurrentLeader(), startTimestamp);
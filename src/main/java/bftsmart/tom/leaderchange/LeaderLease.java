@@ -0,0 +1,157 @@
+package bftsmart.tom.leaderchange;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 领导者租约；
+ * <p>
+ *
+ * 领导者在心跳中携带本地的租约起始时刻（{@link System#nanoTime()}），跟随者在接受心跳后以
+ * {@link LeaseGrantMessage} 原样回送该时刻，表示授予租约；领导者持有法定数量的未过期授权时，可以不经共识直接在本地应答读请求；
+ * <p>
+ *
+ * 租约的安全性由以下约定保证：
+ * <p>
+ * 1. 跟随者发出 STOP 之后不再向旧执政期授予租约（{@link #revoke(int)}）；
+ * <p>
+ * 2. 租约的法定数量与选举的法定数量相交，因此新的执政期形成时，至少有一个授权节点已经停止授权；
+ * <p>
+ * 3. 新领导者在开始提议之前等待一个租约时长（附加时钟漂移余量），此时旧领导者的租约必然已经过期；执政期 0 没有前任领导者，不需等待；
+ * <p>
+ *
+ * 所有时刻都基于单调时钟，且只与同一节点上的时刻比较，不依赖节点间的时钟同步；
+ */
+public class LeaderLease {
+
+	/**
+	 * 新领导者等待前任租约过期时附加的时钟漂移余量，为租约时长的 1/10；
+	 */
+	private static final int DRIFT_MARGIN_DIVISOR = 10;
+
+	private final long leaseNanos;
+
+	/**
+	 * 领导者持有租约的执政期；
+	 */
+	private int leaseRegency = -1;
+
+	/**
+	 * 授权节点 Id 到其最新授权对应的租约起始时刻；
+	 */
+	private final Map<Integer, Long> grants = new HashMap<>();
+
+	/**
+	 * 不再授予租约的执政期上界，即小于此值的执政期不再获得授权；
+	 */
+	private int revokedRegency = -1;
+
+	/**
+	 * 新领导者等待前任租约过期的执政期以及允许提议的时刻；
+	 */
+	private int proposingRegency = -1;
+
+	private long proposeAllowedAt;
+
+	public LeaderLease(long leaseMillis) {
+		this.leaseNanos = leaseMillis * 1000000L;
+	}
+
+	/**
+	 * 领导者开始一次租约续期，返回随心跳发送的租约起始时刻；
+	 *
+	 * @param regency 当前执政期；
+	 * @return 租约起始时刻；
+	 */
+	public synchronized long renew(int regency) {
+		if (regency != leaseRegency) {
+			leaseRegency = regency;
+			grants.clear();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * 领导者收到跟随者的授权；
+	 *
+	 * @param sender     授权节点；
+	 * @param regency    授权的执政期；
+	 * @param leaseStart 授权对应的租约起始时刻；
+	 */
+	public synchronized void granted(int sender, int regency, long leaseStart) {
+		if (regency != leaseRegency) {
+			return;
+		}
+		Long previous = grants.get(sender);
+		if (previous == null || previous < leaseStart) {
+			grants.put(sender, leaseStart);
+		}
+	}
+
+	/**
+	 * 领导者是否在指定执政期持有有效的租约；
+	 *
+	 * @param regency 当前执政期；
+	 * @param me      当前节点 Id，领导者自身计入授权；
+	 * @param members 当前视图的全部节点；
+	 * @param quorum  租约的法定数量；
+	 * @return
+	 */
+	public synchronized boolean isHeld(int regency, int me, int[] members, int quorum) {
+		if (regency != leaseRegency || regency < revokedRegency) {
+			return false;
+		}
+		long now = System.nanoTime();
+		int count = 0;
+		for (int member : members) {
+			if (member == me) {
+				count++;
+				continue;
+			}
+			Long leaseStart = grants.get(member);
+			if (leaseStart != null && now - leaseStart < leaseNanos) {
+				count++;
+			}
+		}
+		return count >= quorum;
+	}
+
+	/**
+	 * 是否可以向指定执政期的领导者授予租约；
+	 */
+	public synchronized boolean canGrant(int regency) {
+		return regency >= revokedRegency;
+	}
+
+	/**
+	 * 发出新执政期的 STOP 之后，不再向之前的执政期授予租约；
+	 *
+	 * @param proposedRegency 提议的新执政期；
+	 */
+	public synchronized void revoke(int proposedRegency) {
+		if (proposedRegency > revokedRegency) {
+			revokedRegency = proposedRegency;
+		}
+	}
+
+	/**
+	 * 返回作为领导者在指定执政期开始提议之前还需等待的纳秒数；
+	 * <p>
+	 * 在首次以某个执政期调用时开始计时，等待时长为租约时长加上时钟漂移余量；执政期 0 没有前任领导者，不需等待；
+	 *
+	 * @param regency 当前执政期；
+	 * @return 剩余的等待纳秒数，不需等待时返回 0；
+	 */
+	public synchronized long remainingProposeWait(int regency) {
+		if (regency == 0) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		if (regency != proposingRegency) {
+			proposingRegency = regency;
+			proposeAllowedAt = now + leaseNanos + leaseNanos / DRIFT_MARGIN_DIVISOR;
+		}
+		long remaining = proposeAllowedAt - now;
+		return remaining > 0 ? remaining : 0;
+	}
+}
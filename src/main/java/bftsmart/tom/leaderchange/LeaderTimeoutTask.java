@@ -4,9 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -26,8 +24,6 @@ class LeaderTimeoutTask {
 
 	private final TOMLayer tomLayer;
 
-	private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-
 	private LeaderStatusContext leaderStatusContext;
 
 	private ScheduledFuture<?> taskFuture;
@@ -61,7 +57,7 @@ class LeaderTimeoutTask {
 		// 生成领导者状态请求消息
 		sendStatusRequest(startTimestamp);
 
-		taskFuture = executor.scheduleWithFixedDelay(new Runnable() {
+		taskFuture = tomLayer.getScheduler().scheduleWithFixedDelay(new Runnable() {
 			@Override
 			public void run() {
 				waitStatusResposne();
@@ -87,12 +83,7 @@ class LeaderTimeoutTask {
 		ScheduledFuture<?> future = taskFuture;
 		taskFuture = null;
 		if (future != null) {
-			future.cancel(true);
-
-			try {
-				executor.shutdown();
-			} catch (Exception e) {
-			}
+			future.cancel(false);
 
 			onCompleted();
 			
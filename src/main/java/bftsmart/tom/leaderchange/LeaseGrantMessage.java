@@ -0,0 +1,56 @@
+package bftsmart.tom.leaderchange;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import bftsmart.communication.SystemMessage;
+
+/**
+ * 跟随者向领导者授予租约的消息，是对 {@link LeaseHeartBeatMessage} 的应答；
+ */
+public class LeaseGrantMessage extends SystemMessage {
+
+	private int regency;
+
+	private long leaseStart;
+
+	public LeaseGrantMessage() {
+	}
+
+	public LeaseGrantMessage(int from, int regency, long leaseStart) {
+		super(from);
+		this.regency = regency;
+		this.leaseStart = leaseStart;
+	}
+
+	/**
+	 * 授权的执政期；
+	 */
+	public int getRegency() {
+		return regency;
+	}
+
+	/**
+	 * 原样回送的领导者租约起始时刻；
+	 */
+	public long getLeaseStart() {
+		return leaseStart;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+
+		out.writeInt(regency);
+		out.writeLong(leaseStart);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+
+		regency = in.readInt();
+		leaseStart = in.readLong();
+	}
+}
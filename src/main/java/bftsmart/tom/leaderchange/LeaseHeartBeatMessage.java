@@ -0,0 +1,44 @@
+package bftsmart.tom.leaderchange;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * 携带租约起始时刻的心跳消息，在启用租约读时由领导者广播；
+ * <p>
+ * 跟随者接受心跳后以 {@link LeaseGrantMessage} 回送租约起始时刻；
+ */
+public class LeaseHeartBeatMessage extends HeartBeatMessage {
+
+	private long leaseStart;
+
+	public LeaseHeartBeatMessage() {
+	}
+
+	public LeaseHeartBeatMessage(int from, int leader, int lastRegency, long leaseStart) {
+		super(from, leader, lastRegency);
+		this.leaseStart = leaseStart;
+	}
+
+	/**
+	 * 领导者本地的租约起始时刻，跟随者不解释此值；
+	 */
+	public long getLeaseStart() {
+		return leaseStart;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+
+		out.writeLong(leaseStart);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+
+		leaseStart = in.readLong();
+	}
+}
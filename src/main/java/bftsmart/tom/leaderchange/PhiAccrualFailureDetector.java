@@ -0,0 +1,177 @@
+package bftsmart.tom.leaderchange;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * phi 累积故障检测器（phi accrual failure detector）；
+ * <p>
+ *
+ * 对每个节点记录最近若干次消息到达的间隔，假设间隔服从正态分布，以“距离上次到达已经过去的时间”在该分布下出现的概率的负对数作为怀疑程度
+ * phi；phi 为 1 表示误判的概率约为 10%，phi 为 2 约为 1%，依此类推；
+ * <p>
+ *
+ * 与固定的超时时长相比，判定时间随观察到的网络状况自动调整：消息到达稳定时很快判定失效，抖动较大时自动放宽；
+ * 可接受的停顿时长计入分布的均值，用于容忍消息流量从密集转为空闲（只剩心跳）时的间隔跳变以及短暂的 GC 停顿；
+ * <p>
+ *
+ * 首次收到某个节点的消息时以预估的间隔初始化分布，因此不需要预热；
+ */
+public final class PhiAccrualFailureDetector {
+
+	private final double threshold;
+
+	private final int windowSize;
+
+	private final long minStdDeviation;
+
+	private final long acceptablePause;
+
+	private final long firstIntervalEstimate;
+
+	private final Map<Integer, History> histories = new ConcurrentHashMap<>();
+
+	/**
+	 * @param threshold             判定失效的 phi 阈值；
+	 * @param windowSize            每个节点保留的到达间隔的数量；
+	 * @param minStdDeviation       标准差的下限（毫秒），避免间隔过于稳定时对微小的延迟过度敏感；
+	 * @param acceptablePause       可接受的停顿时长（毫秒）；
+	 * @param firstIntervalEstimate 首次收到消息时预估的到达间隔（毫秒）；
+	 */
+	public PhiAccrualFailureDetector(double threshold, int windowSize, long minStdDeviation, long acceptablePause,
+			long firstIntervalEstimate) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("The threshold must be positive!");
+		}
+		if (windowSize < 2) {
+			throw new IllegalArgumentException("The window size must be at least 2!");
+		}
+		this.threshold = threshold;
+		this.windowSize = windowSize;
+		this.minStdDeviation = Math.max(1, minStdDeviation);
+		this.acceptablePause = Math.max(0, acceptablePause);
+		this.firstIntervalEstimate = Math.max(1, firstIntervalEstimate);
+	}
+
+	/**
+	 * 判定失效的 phi 阈值；
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * 记录收到指定节点的消息；
+	 *
+	 * @param peer 节点 Id；
+	 * @param now  到达时间（毫秒）；
+	 */
+	public void heartbeat(int peer, long now) {
+		History history = histories.get(peer);
+		if (history == null) {
+			history = histories.computeIfAbsent(peer, k -> new History(windowSize, firstIntervalEstimate));
+		}
+		history.arrived(now);
+	}
+
+	/**
+	 * 指定节点当前的 phi 值；从未收到该节点的消息时返回 0；
+	 */
+	public double phi(int peer, long now) {
+		History history = histories.get(peer);
+		return history == null ? 0.0 : history.phi(now, minStdDeviation, acceptablePause);
+	}
+
+	/**
+	 * 指定节点当前的 phi 值是否超过阈值；从未收到该节点的消息时返回 false；
+	 */
+	public boolean isSuspected(int peer, long now) {
+		return phi(peer, now) > threshold;
+	}
+
+	/**
+	 * 所有已知节点当前的 phi 值，按节点 Id 排列；
+	 */
+	public Map<Integer, Double> getPhis(long now) {
+		Map<Integer, Double> phis = new TreeMap<>();
+		for (Map.Entry<Integer, History> entry : histories.entrySet()) {
+			phis.put(entry.getKey(), entry.getValue().phi(now, minStdDeviation, acceptablePause));
+		}
+		return phis;
+	}
+
+	/**
+	 * 清除指定节点的到达记录，例如节点离开视图时；
+	 */
+	public void remove(int peer) {
+		histories.remove(peer);
+	}
+
+	/**
+	 * 按照正态分布计算间隔不小于 elapsed 的概率的负对数；使用 logistic 函数近似正态分布的累积分布函数；
+	 */
+	static double phi(long elapsed, double mean, double stdDeviation) {
+		double y = (elapsed - mean) / stdDeviation;
+		double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+		if (elapsed > mean) {
+			return -Math.log10(e / (1.0 + e));
+		}
+		return -Math.log10(1.0 - 1.0 / (1.0 + e));
+	}
+
+	private static final class History {
+
+		private final long[] intervals;
+
+		private int count;
+
+		private int next;
+
+		private long lastArrival = -1;
+
+		History(int windowSize, long firstIntervalEstimate) {
+			this.intervals = new long[windowSize];
+			// 以预估间隔加减四分之一作为初始的两个样本，得到均值为预估间隔、标准差为其四分之一的分布；
+			long deviation = firstIntervalEstimate / 4;
+			add(firstIntervalEstimate - deviation);
+			add(firstIntervalEstimate + deviation);
+		}
+
+		synchronized void arrived(long now) {
+			if (lastArrival >= 0 && now >= lastArrival) {
+				add(now - lastArrival);
+			}
+			if (now > lastArrival) {
+				lastArrival = now;
+			}
+		}
+
+		synchronized double phi(long now, long minStdDeviation, long acceptablePause) {
+			if (lastArrival < 0) {
+				return 0.0;
+			}
+			double sum = 0;
+			for (int i = 0; i < count; i++) {
+				sum += intervals[i];
+			}
+			double mean = sum / count;
+			double squares = 0;
+			for (int i = 0; i < count; i++) {
+				double diff = intervals[i] - mean;
+				squares += diff * diff;
+			}
+			double stdDeviation = Math.max(Math.sqrt(squares / count), minStdDeviation);
+			return PhiAccrualFailureDetector.phi(Math.max(0, now - lastArrival), mean + acceptablePause,
+					stdDeviation);
+		}
+
+		private void add(long interval) {
+			intervals[next] = interval;
+			next = (next + 1) % intervals.length;
+			if (count < intervals.length) {
+				count++;
+			}
+		}
+	}
+}
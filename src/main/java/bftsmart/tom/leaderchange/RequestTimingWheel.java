@@ -0,0 +1,187 @@
+package bftsmart.tom.leaderchange;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bftsmart.tom.core.messages.TOMMessage;
+
+/**
+ * 待处理请求的时间轮；
+ * <p>
+ *
+ * 请求按照收到的时间（{@link TOMMessage#receptionTime}）放入时间轮的槽位，每个槽位有自己的锁；
+ * 加入和取消都是 O(1)，只锁定请求所在的槽位，不同槽位之间互不阻塞；请求所在的槽位记录在索引中，
+ * 取消时可以使用与加入时不同但相等（{@link TOMMessage#equals(Object)}）的请求对象；
+ * <p>
+ *
+ * 查询超时请求时，游标只推进经过整个时间范围都早于 now - timeout 的槽位，把其中的请求移入超时队列；
+ * 每个请求只被移动一次，之后的查询不再访问未超时的请求；请求超时后仍然保留在超时队列中，直到被取消；
+ * 超时的判断以槽位为粒度，请求最多晚一个槽位的时间被报告；
+ */
+public final class RequestTimingWheel {
+
+	private static final long NO_CURSOR = Long.MIN_VALUE;
+
+	private final long tickMillis;
+
+	private final Slot[] slots;
+
+	/**
+	 * 已经超时的请求，按照超时的先后顺序排列；
+	 */
+	private final Slot expired = new Slot();
+
+	private final ConcurrentHashMap<TOMMessage, Slot> index = new ConcurrentHashMap<>();
+
+	private final Object cursorLock = new Object();
+
+	/**
+	 * 下一个待检查的时间刻度；早于游标的刻度都已经被移入超时队列；只在对应槽位的锁内推进；
+	 */
+	private volatile long cursorTick = NO_CURSOR;
+
+	/**
+	 * @param wheelSize  槽位数量；
+	 * @param tickMillis 每个槽位覆盖的时间长度（毫秒）；
+	 */
+	public RequestTimingWheel(int wheelSize, long tickMillis) {
+		this.tickMillis = Math.max(1, tickMillis);
+		this.slots = new Slot[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			slots[i] = new Slot();
+		}
+	}
+
+	/**
+	 * 加入请求；与已有请求相等时忽略；收到的时间已经被游标越过时直接加入超时队列；
+	 */
+	public void add(TOMMessage request) {
+		long tick = Math.floorDiv(request.receptionTime, tickMillis);
+		Slot slot = slotOf(tick);
+		synchronized (slot) {
+			if (cursorTick != NO_CURSOR && tick < cursorTick) {
+				synchronized (expired) {
+					if (index.putIfAbsent(request, expired) == null) {
+						expired.requests.add(request);
+					}
+				}
+			} else if (index.putIfAbsent(request, slot) == null) {
+				slot.requests.add(request);
+			}
+		}
+	}
+
+	/**
+	 * 取消请求；
+	 *
+	 * @return 请求在时间轮中时返回 true；
+	 */
+	public boolean remove(TOMMessage request) {
+		Slot slot;
+		while ((slot = index.get(request)) != null) {
+			synchronized (slot) {
+				if (index.remove(request, slot)) {
+					slot.requests.remove(request);
+					return true;
+				}
+			}
+			// 请求在此期间被移入了超时队列；
+		}
+		return false;
+	}
+
+	/**
+	 * 返回收到的时间早于 now - timeout 的请求，按照移入超时队列的顺序排列，即槽位的时间先后，同一槽位内按照加入的顺序；
+	 * <p>
+	 *
+	 * 只检查游标与 now - timeout 之间的槽位；游标落后超过一圈时（例如计时器停止了一段时间）按槽位顺序检查所有槽位一次，
+	 * 此时不同圈的请求不保证时间先后；
+	 * 返回结果只遍历超时队列，不访问未超时的请求；
+	 */
+	public List<TOMMessage> expired(long now, long timeout) {
+		long limit = Math.floorDiv(now - timeout, tickMillis);
+		long bound = limit * tickMillis;
+		synchronized (cursorLock) {
+			long from = cursorTick;
+			if (from == NO_CURSOR || limit - from > slots.length) {
+				from = limit - slots.length;
+			}
+			for (long tick = from; tick < limit; tick++) {
+				advance(tick, bound);
+			}
+		}
+		// 游标可能已经被更短的超时时间推进过；
+		List<TOMMessage> requests = new ArrayList<>();
+		synchronized (expired) {
+			for (TOMMessage request : expired.requests) {
+				if (request.receptionTime < bound) {
+					requests.add(request);
+				}
+			}
+		}
+		return requests;
+	}
+
+	/**
+	 * 把刻度所在槽位中收到的时间早于 bound 的请求移入超时队列，并把游标推进到下一个刻度；
+	 */
+	private void advance(long tick, long bound) {
+		Slot slot = slotOf(tick);
+		synchronized (slot) {
+			if (!slot.requests.isEmpty()) {
+				synchronized (expired) {
+					Iterator<TOMMessage> iterator = slot.requests.iterator();
+					while (iterator.hasNext()) {
+						TOMMessage request = iterator.next();
+						// 槽位中也可能有下一圈的请求；
+						if (request.receptionTime < bound) {
+							iterator.remove();
+							index.replace(request, slot, expired);
+							expired.requests.add(request);
+						}
+					}
+				}
+			}
+			cursorTick = tick + 1;
+		}
+	}
+
+	/**
+	 * 清除所有请求；
+	 */
+	public void clear() {
+		for (Slot slot : slots) {
+			clear(slot);
+		}
+		clear(expired);
+	}
+
+	private void clear(Slot slot) {
+		synchronized (slot) {
+			for (TOMMessage request : slot.requests) {
+				index.remove(request, slot);
+			}
+			slot.requests.clear();
+		}
+	}
+
+	/**
+	 * 时间轮中的请求数量；
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	private Slot slotOf(long tick) {
+		return slots[(int) Math.floorMod(tick, (long) slots.length)];
+	}
+
+	private static final class Slot {
+
+		final Set<TOMMessage> requests = new LinkedHashSet<>();
+	}
+}
@@ -20,16 +20,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.TreeSet;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import bftsmart.tom.core.messages.ForwardedMessage;
 import org.slf4j.LoggerFactory;
@@ -53,17 +45,16 @@ public class RequestsTimer {
 	private long timeout;
 	private long shortTimeout;
 	private long stoptimeout;
-	private TreeSet<TOMMessage> watched = new TreeSet<TOMMessage>();
-	private ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+	// 时间轮的槽位数量；时间轮覆盖两倍的请求超时时间
+	private static final int WHEEL_SIZE = 512;
+	private final RequestTimingWheel watched;
 
 	private boolean enabled = true;
 
 	private ServerCommunicationSystem communication; // Communication system between replicas
 	private ReplicaTopology controller; // Reconfiguration manager
 
-	private Hashtable<Integer, Timer> stopTimers = new Hashtable<>();
-
-	private ScheduledExecutorService requestsTimer = null;
+	private Hashtable<Integer, ScheduledFuture<?>> stopTimers = new Hashtable<>();
 
     private volatile ScheduledFuture<?> taskFuture;
 
@@ -85,6 +76,7 @@ public class RequestsTimer {
 		this.stoptimeout = this.controller.getStaticConf().getStopMsgTimeout();
 		this.timeout = this.controller.getStaticConf().getRequestTimeout();
 		this.shortTimeout = -1;
+		this.watched = new RequestTimingWheel(WHEEL_SIZE, 2 * this.timeout / WHEEL_SIZE);
 
 		// 请求定时器初次启动时延迟设置为4秒
 		startTimer(4000);
@@ -102,33 +94,23 @@ public class RequestsTimer {
 		return timeout;
 	}
 
-	public void startTimer(int delay) {
+	public synchronized void startTimer(int delay) {
 	    if (taskFuture != null) {
 	        return;
         }
-		requestsTimer = Executors.newSingleThreadScheduledExecutor();
-		taskFuture = requestsTimer.scheduleWithFixedDelay(new RequestsTimeoutTask(), delay,
+		taskFuture = tomLayer.getScheduler().scheduleWithFixedDelay(new RequestsTimeoutTask(), delay,
 				this.timeout, TimeUnit.MILLISECONDS);
 	}
 
 	public void stopTimer() {
-		if (requestsTimer != null) {
-			requestsTimer.shutdownNow();
-		}
-		requestsTimer = null;
-		taskFuture = null;
+		cancelTask();
 	}
 
     private synchronized void cancelTask() {
         ScheduledFuture<?> future = taskFuture;
         taskFuture = null;
         if (future != null) {
-            future.cancel(true);
-
-            try {
-                requestsTimer.shutdown();
-            } catch (Exception e) {
-            }
+            future.cancel(false);
 
             LOGGER.debug("I am proc {}, quit the requests timeout check task!", tomLayer.getCurrentProcessId());
         }
@@ -145,20 +127,8 @@ public class RequestsTimer {
 				return;
 			}
 
-			LinkedList<TOMMessage> pendingRequests = new LinkedList<TOMMessage>();
-
-			rwLock.readLock().lock();
-
-			for (Iterator<TOMMessage> iter = watched.iterator(); iter.hasNext();) {
-				TOMMessage request = iter.next();
-				if ((System.currentTimeMillis() - request.receptionTime) > timeout) {
-					pendingRequests.add(request);
-				} else {
-					break;
-				}
-			}
-
-			rwLock.readLock().unlock();
+			LinkedList<TOMMessage> pendingRequests = new LinkedList<TOMMessage>(
+					watched.expired(System.currentTimeMillis(), timeout));
 
 			// 存在超时的交易请求
 			if (pendingRequests.size() !=0) {
@@ -212,11 +182,9 @@ public class RequestsTimer {
 	 */
 	public void watch(TOMMessage request) {
 		// long startInstant = System.nanoTime();
-		rwLock.writeLock().lock();
 		watched.add(request);
 //        System.out.println("request client  " + request.getSender() + ", req seq  " + request.getSequence() + ", watch at  " + System.currentTimeMillis() + "\r\n");
 //        if (watched.size() >= 1 && enabled) startTimer();
-		rwLock.writeLock().unlock();
 	}
 
 	/**
@@ -226,11 +194,9 @@ public class RequestsTimer {
 	 */
 	public void unwatch(TOMMessage request) {
 		// long startInstant = System.nanoTime();
-		rwLock.writeLock().lock();
 		watched.remove(request);
 //        System.out.println("request client  " + request.getSender() + ", req seq  " + request.getSequence() + ", unwatch at  " + System.currentTimeMillis() + "\r\n");
 //        if (watched.remove(request) && watched.isEmpty()) stopTimer();
-		rwLock.writeLock().unlock();
 	}
 
 	/**
@@ -238,8 +204,6 @@ public class RequestsTimer {
 	 */
 	public void clearAll() {
 //        TOMMessage[] requests = new TOMMessage[watched.size()];
-		rwLock.writeLock().lock();
-
 		watched.clear();
 //
 //        watched.toArray(requests);
@@ -251,7 +215,15 @@ public class RequestsTimer {
 //                rtTask = null;
 //            }
 //        }
-		rwLock.writeLock().unlock();
+	}
+
+	/**
+	 * Returns the number of requests being watched
+	 * 
+	 * @return The number of requests being watched
+	 */
+	public int getWatchedCount() {
+		return watched.size();
 	}
 
 	public DefaultRecoverable getDefaultExecutor() {
@@ -273,23 +245,8 @@ public class RequestsTimer {
 		// System.out.println("(RequestTimerTask.run) I SOULD NEVER RUN WHEN THERE IS NO
 		// TIMEOUT");
 
-		LinkedList<TOMMessage> pendingRequests = new LinkedList<TOMMessage>();
-
-		rwLock.readLock().lock();
-
-		for (Iterator<TOMMessage> iter = watched.iterator(); iter.hasNext();) {
-			TOMMessage request = iter.next();
-			if ((System.currentTimeMillis() - request.receptionTime) > t) {
-//            if ((request.receptionTime + System.currentTimeMillis()) > t) {
-//                System.out.println("real consensus message timeout!!!!!!!!\r\n");
-//                System.out.println("request client  " + request.getSender() + ", req seq  " + request.getSequence() + ",  consensus message timeout at  " + System.currentTimeMillis() + "\r\n");
-				pendingRequests.add(request);
-			} else {
-				break;
-			}
-		}
-
-		rwLock.readLock().unlock();
+		LinkedList<TOMMessage> pendingRequests = new LinkedList<TOMMessage>(
+				watched.expired(System.currentTimeMillis(), t));
 
 		tomLayer.getSynchronizer().triggerTimeout(regencyPropose, pendingRequests);
 
@@ -344,9 +301,8 @@ public class RequestsTimer {
 		stopSTOP(regency);
 
 		SendStopTask stopTask = new SendStopTask(stop);
-		Timer stopTimer = new Timer("Stop message");
-
-		stopTimer.schedule(stopTask, stoptimeout);
+		ScheduledFuture<?> stopTimer = tomLayer.getScheduler().schedule(stopTask, stoptimeout,
+				TimeUnit.MILLISECONDS);
 
 		stopTimers.put(regency, stopTimer);
 
@@ -361,15 +317,15 @@ public class RequestsTimer {
 
 	public void stopSTOP(int regency) {
 
-		Timer stopTimer = stopTimers.remove(regency);
+		ScheduledFuture<?> stopTimer = stopTimers.remove(regency);
 		if (stopTimer != null)
-			stopTimer.cancel();
+			stopTimer.cancel(false);
 
 	}
 
 	public Set<Integer> getTimers() {
 
-		return ((Hashtable<Integer, Timer>) stopTimers.clone()).keySet();
+		return ((Hashtable<Integer, ScheduledFuture<?>>) stopTimers.clone()).keySet();
 
 	}
 
@@ -398,7 +354,7 @@ public class RequestsTimer {
 //        }
 //    }
 
-	class SendStopTask extends TimerTask {
+	class SendStopTask implements Runnable {
 
 		private LCMessage stop;
 
@@ -407,7 +363,7 @@ public class RequestsTimer {
 		}
 
 		/**
-		 * This is the code for the TimerTask. It sends a STOP message to the other
+		 * This is the code for the scheduled task. It sends a STOP message to the other
 		 * replicas
 		 */
 		@Override
@@ -0,0 +1,119 @@
+package bftsmart.tom.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的直方图；
+ * <p>
+ *
+ * 按照 HdrHistogram 的方式划分桶：小于 {@link #SUB_BUCKETS} 的值各占一个桶，更大的值按照最高位所在的区间划分为
+ * {@link #SUB_BUCKETS} 个等宽的桶，因此分位数的相对误差不超过 1/{@value #SUB_BUCKETS}；桶的数量固定，记录时只需要一次原子加法，不分配内存；
+ * <p>
+ *
+ * 记录和读取可以并发执行，读取得到的快照不保证是某个时刻的精确状态；
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * 每个区间划分的桶的数量；
+	 */
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 记录一个值；负值按 0 记录；
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * 已记录的值的数量；
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 当前记录的快照；
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] buckets = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = counts.get(i);
+			total += buckets[i];
+		}
+		long maxValue = max.get();
+		double mean = total == 0 ? 0.0 : (double) sum.sum() / total;
+		return new HistogramSnapshot(total, mean, maxValue, percentile(buckets, total, maxValue, 0.5),
+				percentile(buckets, total, maxValue, 0.9), percentile(buckets, total, maxValue, 0.99),
+				percentile(buckets, total, maxValue, 0.999));
+	}
+
+	/**
+	 * 清除所有记录；
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * 返回分位数所在的桶的上界，不超过记录过的最大值；
+	 */
+	private static long percentile(long[] buckets, long total, long maxValue, double quantile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long mantissa = bucket - shift * SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+}
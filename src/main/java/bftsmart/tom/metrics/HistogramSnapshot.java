@@ -0,0 +1,86 @@
+package bftsmart.tom.metrics;
+
+/**
+ * 直方图的快照；通过 JMX 读取时映射为复合数据（CompositeData）；
+ */
+public final class HistogramSnapshot {
+
+	private final long count;
+
+	private final double mean;
+
+	private final long max;
+
+	private final long p50;
+
+	private final long p90;
+
+	private final long p99;
+
+	private final long p999;
+
+	public HistogramSnapshot(long count, double mean, long max, long p50, long p90, long p99, long p999) {
+		this.count = count;
+		this.mean = mean;
+		this.max = max;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+	}
+
+	/**
+	 * 记录的值的数量；
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 平均值；
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * 最大值；
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * 中位数；
+	 */
+	public long getP50() {
+		return p50;
+	}
+
+	/**
+	 * 90% 分位数；
+	 */
+	public long getP90() {
+		return p90;
+	}
+
+	/**
+	 * 99% 分位数；
+	 */
+	public long getP99() {
+		return p99;
+	}
+
+	/**
+	 * 99.9% 分位数；
+	 */
+	public long getP999() {
+		return p999;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%s, mean=%.1f, p50=%s, p90=%s, p99=%s, p999=%s, max=%s", count, mean, p50, p90,
+				p99, p999, max);
+	}
+}
@@ -0,0 +1,297 @@
+package bftsmart.tom.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.tom.core.messages.TOMMessage;
+
+/**
+ * 副本的运行指标；
+ * <p>
+ *
+ * 记录批次大小、共识各个阶段的时延、交付和执行的时延、预计算和写日志的耗时，以及完成的共识和交付的请求数量；
+ * 共识各阶段的时延取自每个批次第一个请求的 {@link TOMMessage#consensusStartTime} 等时间戳；队列长度等瞬时值通过
+ * {@link #registerGauge(String, LongSupplier)} 注册，只在读取时计算；
+ * <p>
+ *
+ * 记录只使用无锁的累加器，可以在共识和交付线程中直接调用；时延的单位为微秒；
+ */
+public class ReplicaMetrics implements ReplicaMetricsMXBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaMetrics.class);
+
+	public static final String JMX_DOMAIN = "bftsmart";
+
+	public static final String CONSENSUS_DECIDED = "consensus.decided";
+
+	public static final String REQUESTS_DELIVERED = "requests.delivered";
+
+	public static final String BATCH_SIZE = "batch.size";
+
+	/**
+	 * 领导者从创建提议到收到自己的 PROPOSE；只在领导者上记录；
+	 */
+	public static final String CONSENSUS_PROPOSE = "consensus.propose";
+
+	/**
+	 * 从发送 WRITE 到发送 ACCEPT，包括等待 WRITE 法定数量和预计算；
+	 */
+	public static final String CONSENSUS_WRITE = "consensus.write";
+
+	/**
+	 * 从发送 ACCEPT 到决议；
+	 */
+	public static final String CONSENSUS_ACCEPT = "consensus.accept";
+
+	/**
+	 * 从共识开始（领导者创建提议，其它节点收到 PROPOSE）到决议；
+	 */
+	public static final String CONSENSUS_TOTAL = "consensus.total";
+
+	/**
+	 * 决议在交付队列中等待的时间；
+	 */
+	public static final String DELIVERY_WAIT = "delivery.wait";
+
+	/**
+	 * 一次交付的执行时间，包括应用执行、写日志和应答；
+	 */
+	public static final String EXECUTION = "execution";
+
+	public static final String PRECOMPUTE = "precompute";
+
+	/**
+	 * 写日志的耗时；开启 sync_log 时包括同步到磁盘的时间；
+	 */
+	public static final String LOG_WRITE = "log.write";
+
+	public static final String QUEUE_IN = "queue.in";
+
+	public static final String QUEUE_OUT = "queue.out";
+
+	public static final String REQUESTS_PENDING = "requests.pending";
+
+	public static final String DELIVERY_BACKLOG = "delivery.backlog";
+
+	private final LongAdder decided = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final Histogram batchSize = new Histogram();
+
+	private final Histogram propose = new Histogram();
+
+	private final Histogram write = new Histogram();
+
+	private final Histogram accept = new Histogram();
+
+	private final Histogram consensus = new Histogram();
+
+	private final Histogram deliveryWait = new Histogram();
+
+	private final Histogram execution = new Histogram();
+
+	private final Histogram precompute = new Histogram();
+
+	private final Histogram logWrite = new Histogram();
+
+	private final Map<String, Histogram> histograms;
+
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	private volatile ObjectName objectName;
+
+	public ReplicaMetrics() {
+		Map<String, Histogram> histograms = new LinkedHashMap<>();
+		histograms.put(BATCH_SIZE, batchSize);
+		histograms.put(CONSENSUS_PROPOSE, propose);
+		histograms.put(CONSENSUS_WRITE, write);
+		histograms.put(CONSENSUS_ACCEPT, accept);
+		histograms.put(CONSENSUS_TOTAL, consensus);
+		histograms.put(DELIVERY_WAIT, deliveryWait);
+		histograms.put(EXECUTION, execution);
+		histograms.put(PRECOMPUTE, precompute);
+		histograms.put(LOG_WRITE, logWrite);
+		this.histograms = Collections.unmodifiableMap(histograms);
+	}
+
+	/**
+	 * 记录一个决议被交付；
+	 *
+	 * @param requests     批次中的请求数量；
+	 * @param firstMessage 批次的第一个请求，携带共识各阶段的时间戳；为 null 时不记录时延；
+	 * @param now          交付的时间，{@link System#nanoTime()}；
+	 */
+	public void recordDecision(int requests, TOMMessage firstMessage, long now) {
+		decided.increment();
+		delivered.add(requests);
+		batchSize.record(requests);
+		if (firstMessage == null) {
+			return;
+		}
+		long start = firstMessage.consensusStartTime > 0 ? firstMessage.consensusStartTime
+				: firstMessage.proposeReceivedTime;
+		long decisionTime = firstMessage.decisionTime;
+		if (firstMessage.consensusStartTime > 0 && firstMessage.proposeReceivedTime > 0) {
+			recordNanos(propose, firstMessage.proposeReceivedTime - firstMessage.consensusStartTime);
+		}
+		if (firstMessage.writeSentTime > 0 && firstMessage.acceptSentTime > 0) {
+			recordNanos(write, firstMessage.acceptSentTime - firstMessage.writeSentTime);
+		}
+		if (decisionTime <= 0) {
+			// 通过状态传输等途径得到的决议没有经过本地的共识过程；
+			return;
+		}
+		if (firstMessage.acceptSentTime > 0) {
+			recordNanos(accept, decisionTime - firstMessage.acceptSentTime);
+		}
+		if (start > 0) {
+			recordNanos(consensus, decisionTime - start);
+		}
+		recordNanos(deliveryWait, now - decisionTime);
+	}
+
+	/**
+	 * 记录一次交付的执行耗时（纳秒）；
+	 */
+	public void recordExecution(long nanos) {
+		recordNanos(execution, nanos);
+	}
+
+	/**
+	 * 记录一次预计算的耗时（纳秒）；
+	 */
+	public void recordPrecompute(long nanos) {
+		recordNanos(precompute, nanos);
+	}
+
+	/**
+	 * 记录一次写日志的耗时（纳秒）；
+	 */
+	public void recordLogWrite(long nanos) {
+		recordNanos(logWrite, nanos);
+	}
+
+	/**
+	 * 注册一个瞬时值，读取指标时调用；同名的瞬时值被替换；
+	 */
+	public void registerGauge(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new LinkedHashMap<>();
+		counters.put(CONSENSUS_DECIDED, decided.sum());
+		counters.put(REQUESTS_DELIVERED, delivered.sum());
+		return counters;
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+			try {
+				values.put(entry.getKey(), entry.getValue().getAsLong());
+			} catch (RuntimeException e) {
+				LOGGER.debug("Error occurred while reading gauge[{}]! --{}", entry.getKey(), e.getMessage());
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, HistogramSnapshot> getHistograms() {
+		Map<String, HistogramSnapshot> snapshots = new LinkedHashMap<>();
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			snapshots.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * 指定名称的直方图的快照；名称不存在时返回 null；
+	 */
+	public HistogramSnapshot getHistogram(String name) {
+		Histogram histogram = histograms.get(name);
+		return histogram == null ? null : histogram.snapshot();
+	}
+
+	@Override
+	public void reset() {
+		decided.reset();
+		delivered.reset();
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * 注册到平台的 MBeanServer；同名的对象已经存在时（例如副本重启）替换之；注册失败只记录日志；
+	 *
+	 * @param realmName 共识域的名称，可以为 null；
+	 * @param processId 副本的 Id；
+	 */
+	public synchronized void registerMBean(String realmName, int processId) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ReplicaMetrics"
+					+ (realmName == null ? "" : ",realm=" + ObjectName.quote(realmName)) + ",id=" + processId);
+			try {
+				server.registerMBean(this, name);
+			} catch (InstanceAlreadyExistsException e) {
+				server.unregisterMBean(name);
+				server.registerMBean(this, name);
+			}
+			objectName = name;
+			LOGGER.info("Replica metrics are registered to JMX! --[ObjectName={}]", name);
+		} catch (JMException e) {
+			LOGGER.warn("Error occurred while registering replica metrics to JMX! --" + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 从平台的 MBeanServer 中注销；
+	 */
+	public synchronized void unregisterMBean() {
+		ObjectName name = objectName;
+		if (name == null) {
+			return;
+		}
+		objectName = null;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (InstanceNotFoundException e) {
+			// 已经被同名的新对象替换并注销；
+		} catch (JMException e) {
+			LOGGER.warn("Error occurred while unregistering replica metrics from JMX! --" + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 注册的 JMX 对象名；未注册时返回 null；
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private static void recordNanos(Histogram histogram, long nanos) {
+		histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+}
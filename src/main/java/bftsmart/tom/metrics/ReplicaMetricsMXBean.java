@@ -0,0 +1,32 @@
+package bftsmart.tom.metrics;
+
+import java.util.Map;
+
+/**
+ * 副本运行指标的 JMX 接口；
+ * <p>
+ *
+ * 注册的对象名为 “bftsmart:type=ReplicaMetrics,realm=&lt;realm&gt;,id=&lt;processId&gt;”；时延的单位为微秒；
+ */
+public interface ReplicaMetricsMXBean {
+
+	/**
+	 * 累计的计数，例如完成的共识数量和交付的请求数量；
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * 当前的队列长度等瞬时值；
+	 */
+	Map<String, Long> getGauges();
+
+	/**
+	 * 批次大小以及各个阶段耗时的分布；
+	 */
+	Map<String, HistogramSnapshot> getHistograms();
+
+	/**
+	 * 清除计数和直方图，重新开始统计；
+	 */
+	void reset();
+}
@@ -0,0 +1,66 @@
+package bftsmart.tom.server;
+
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+/**
+ *
+ * Lightweight information about a command handed to a
+ * {@link CommandViewExecutable}: who issued it and where it stands in the
+ * client's request stream. Unlike {@link bftsmart.tom.MessageContext}, it holds
+ * no consensus proof and no reference to the request.
+ *
+ */
+public final class CommandContext {
+
+	private final int sender;
+
+	private final int session;
+
+	private final int sequence;
+
+	private final int operationId;
+
+	private final int viewId;
+
+	private final TOMMessageType type;
+
+	public CommandContext(int sender, int session, int sequence, int operationId, int viewId,
+			TOMMessageType type) {
+		this.sender = sender;
+		this.session = session;
+		this.sequence = sequence;
+		this.operationId = operationId;
+		this.viewId = viewId;
+		this.type = type;
+	}
+
+	public static CommandContext of(TOMMessage request) {
+		return new CommandContext(request.getSender(), request.getSession(), request.getSequence(),
+				request.getOperationId(), request.getViewID(), request.getReqType());
+	}
+
+	public int getSender() {
+		return sender;
+	}
+
+	public int getSession() {
+		return session;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public int getOperationId() {
+		return operationId;
+	}
+
+	public int getViewId() {
+		return viewId;
+	}
+
+	public TOMMessageType getType() {
+		return type;
+	}
+}
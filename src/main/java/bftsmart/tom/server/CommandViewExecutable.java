@@ -0,0 +1,45 @@
+package bftsmart.tom.server;
+
+import java.nio.ByteBuffer;
+
+import bftsmart.consensus.app.BatchAppResultImpl;
+
+/**
+ *
+ * Executables that implement this interface receive the commands of a
+ * proposed batch as read-only views into the batch itself, instead of one
+ * copied byte array per command.
+ * <p>
+ *
+ * It is meant for applications with large payloads: the contents of the
+ * requests are not copied for the pre-computation, and a command that is only
+ * partially read is never copied at all. It is implemented by subclasses of
+ * {@link bftsmart.tom.server.defaultservices.DefaultRecoverable}, which call
+ * {@link #preComputeCommands(int, ByteBuffer[], CommandContext[], long)} in
+ * place of
+ * {@link bftsmart.tom.server.defaultservices.DefaultRecoverable#preComputeAppHash(int, byte[][], long)}.
+ * When client operation batching is enabled, the operations are unpacked into
+ * arrays and the array-based method is used instead.
+ * <p>
+ *
+ * The views share the batch: they MUST NOT be retained after the call returns;
+ * copy whatever has to outlive it.
+ *
+ */
+public interface CommandViewExecutable extends Executable {
+
+	/**
+	 * Pre-computes a batch of commands, like
+	 * {@link bftsmart.tom.server.defaultservices.DefaultRecoverable#preComputeAppHash(int, byte[][], long)}.
+	 *
+	 * @param cid       the consensus id of the batch
+	 * @param commands  read-only views of the commands, in batch order; a view
+	 *                  may be null for a request without content
+	 * @param contexts  information related with each command
+	 * @param timestamp the timestamp of the proposal
+	 * @return the result of the pre-computation
+	 */
+	public BatchAppResultImpl preComputeCommands(int cid, ByteBuffer[] commands, CommandContext[] contexts,
+			long timestamp);
+
+}
@@ -0,0 +1,51 @@
+package bftsmart.tom.server;
+
+import java.util.Collection;
+
+import bftsmart.tom.MessageContext;
+
+/**
+ *
+ * Executables that implement this interface declare which commands of a
+ * decided batch may run concurrently.
+ * <p>
+ *
+ * Two commands conflict if their conflict key sets intersect. Conflicting
+ * commands are executed in batch order, while independent commands are
+ * executed in parallel (see {@link ParallelBatchExecutor}). Replies are always
+ * delivered in batch order.
+ * <p>
+ *
+ * To keep replicas deterministic, the execution of a command MUST only read or
+ * write the state identified by its conflict keys; the keys themselves MUST be
+ * derived only from the command, never from local state.
+ *
+ */
+public interface ParallelBatchExecutable extends Executable {
+
+	/**
+	 * Returns the conflict keys of a command. Keys are compared with
+	 * {@link Object#equals(Object)}.
+	 *
+	 * @param command the command issued by the client
+	 * @param msgCtx  information related with the command; it may be null when
+	 *                the batch is executed outside the delivery thread (e.g. in
+	 *                the pre-compute phase)
+	 * @return the conflict keys of the command; an empty collection means that
+	 *         the command conflicts with no other command, and null means that it
+	 *         conflicts with every other command of the batch
+	 */
+	public Collection<?> getConflictKeys(byte[] command, MessageContext msgCtx);
+
+	/**
+	 * Executes a single ordered command. It may be invoked concurrently for
+	 * commands that do not conflict.
+	 *
+	 * @param command the command issued by the client
+	 * @param msgCtx  information related with the command; it may be null, see
+	 *                {@link #getConflictKeys(byte[], MessageContext)}
+	 * @return the reply for the request issued by the client
+	 */
+	public byte[] executeCommand(byte[] command, MessageContext msgCtx);
+
+}
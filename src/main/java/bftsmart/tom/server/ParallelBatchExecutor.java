@@ -0,0 +1,230 @@
+package bftsmart.tom.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.tom.MessageContext;
+
+/**
+ *
+ * Executes the commands of a batch on a fork-join pool, according to the
+ * conflict keys declared by a {@link ParallelBatchExecutable}.
+ * <p>
+ *
+ * For each batch a dependency graph is built: a command depends on the last
+ * preceding command that shares one of its keys, and a command without keys
+ * (null) depends on, and is depended on by, every other command. A command is
+ * submitted to the pool as soon as all its dependencies have completed, so the
+ * result is the same as executing the batch sequentially.
+ *
+ */
+public class ParallelBatchExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelBatchExecutor.class);
+
+	private final ForkJoinPool pool;
+
+	public ParallelBatchExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelBatchExecutor(int parallelism) {
+		final AtomicInteger threadIndex = new AtomicInteger(0);
+		this.pool = new ForkJoinPool(Math.max(1, parallelism), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thrd = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thrd.setName("Parallel-Batch-Executor-" + threadIndex.getAndIncrement());
+				return thrd;
+			}
+		}, null, false);
+	}
+
+	/**
+	 * Executes a batch of commands.
+	 *
+	 * @param executable the application
+	 * @param commands   the commands of the batch
+	 * @param msgCtxs    the contexts of the commands; may be null
+	 * @return the replies, in the same order as the commands
+	 */
+	public byte[][] execute(ParallelBatchExecutable executable, byte[][] commands, MessageContext[] msgCtxs) {
+		byte[][] replies = new byte[commands.length][];
+		if (commands.length == 0) {
+			return replies;
+		}
+		if (commands.length == 1 || pool.getParallelism() == 1) {
+			for (int i = 0; i < commands.length; i++) {
+				replies[i] = executable.executeCommand(commands[i], context(msgCtxs, i));
+			}
+			return replies;
+		}
+
+		CommandTask[] tasks = buildGraph(executable, commands, msgCtxs, replies);
+		BatchRun run = tasks[0].run;
+		// collect the roots before submitting any of them, since the counters change once tasks start to run
+		List<CommandTask> roots = new ArrayList<>();
+		for (CommandTask task : tasks) {
+			if (task.pendingDependencies.get() == 0) {
+				roots.add(task);
+			}
+		}
+		for (CommandTask root : roots) {
+			pool.execute(root);
+		}
+		try {
+			run.completion.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while executing batch in parallel!", e);
+		}
+		Throwable error = run.error.get();
+		if (error != null) {
+			throw new IllegalStateException("Error occurred while executing batch in parallel! --" + error.getMessage(),
+					error);
+		}
+		return replies;
+	}
+
+	private CommandTask[] buildGraph(ParallelBatchExecutable executable, byte[][] commands, MessageContext[] msgCtxs,
+			byte[][] replies) {
+		BatchRun run = new BatchRun(commands.length);
+		CommandTask[] tasks = new CommandTask[commands.length];
+
+		Map<Object, CommandTask> lastByKey = new HashMap<>();
+		// commands since the last barrier, which the next barrier has to wait for
+		List<CommandTask> sinceBarrier = new ArrayList<>();
+		CommandTask barrier = null;
+		int edges = 0;
+
+		for (int i = 0; i < commands.length; i++) {
+			MessageContext msgCtx = context(msgCtxs, i);
+			CommandTask task = new CommandTask(run, executable, commands[i], msgCtx, replies, i);
+			tasks[i] = task;
+
+			Collection<?> keys = executable.getConflictKeys(commands[i], msgCtx);
+			if (keys == null) {
+				if (barrier != null) {
+					edges += barrier.addSuccessor(task);
+				}
+				for (CommandTask previous : sinceBarrier) {
+					edges += previous.addSuccessor(task);
+				}
+				sinceBarrier.clear();
+				lastByKey.clear();
+				barrier = task;
+				continue;
+			}
+
+			if (barrier != null) {
+				edges += barrier.addSuccessor(task);
+			}
+			for (Object key : keys) {
+				CommandTask previous = lastByKey.put(key, task);
+				if (previous != null) {
+					edges += previous.addSuccessor(task);
+				}
+			}
+			sinceBarrier.add(task);
+		}
+
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("(ParallelBatchExecutor.buildGraph) {} commands, {} dependencies", commands.length, edges);
+		}
+		return tasks;
+	}
+
+	private static MessageContext context(MessageContext[] msgCtxs, int index) {
+		return msgCtxs == null ? null : msgCtxs[index];
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Shared state of one batch execution.
+	 */
+	private static class BatchRun {
+
+		final CountDownLatch completion;
+
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+
+		BatchRun(int size) {
+			this.completion = new CountDownLatch(size);
+		}
+	}
+
+	private class CommandTask implements Runnable {
+
+		final BatchRun run;
+
+		final ParallelBatchExecutable executable;
+
+		final byte[] command;
+
+		final MessageContext msgCtx;
+
+		final byte[][] replies;
+
+		final int index;
+
+		final AtomicInteger pendingDependencies = new AtomicInteger(0);
+
+		final List<CommandTask> successors = new ArrayList<>(2);
+
+		CommandTask(BatchRun run, ParallelBatchExecutable executable, byte[] command, MessageContext msgCtx,
+				byte[][] replies, int index) {
+			this.run = run;
+			this.executable = executable;
+			this.command = command;
+			this.msgCtx = msgCtx;
+			this.replies = replies;
+			this.index = index;
+		}
+
+		/**
+		 * @return 1 if the edge was added, 0 if it already existed
+		 */
+		int addSuccessor(CommandTask successor) {
+			// a command sharing several keys with the same predecessor is added once
+			if (!successors.isEmpty() && successors.get(successors.size() - 1) == successor) {
+				return 0;
+			}
+			successors.add(successor);
+			successor.pendingDependencies.incrementAndGet();
+			return 1;
+		}
+
+		@Override
+		public void run() {
+			try {
+				// after a failure the remaining commands are only accounted, not executed
+				if (run.error.get() == null) {
+					replies[index] = executable.executeCommand(command, msgCtx);
+				}
+			} catch (Throwable e) {
+				run.error.compareAndSet(null, e);
+			} finally {
+				for (CommandTask successor : successors) {
+					if (successor.pendingDependencies.decrementAndGet() == 0) {
+						pool.execute(successor);
+					}
+				}
+				run.completion.countDown();
+			}
+		}
+	}
+}
@@ -17,6 +17,13 @@ package bftsmart.tom.server;
  * @author joao
  */
 public interface RequestVerifier {
+
+    /**
+     * Accepts every request; used when the application provides no verifier, so
+     * that the replica can skip the verification (and the copy of the request
+     * content it needs) altogether.
+     */
+    public static final RequestVerifier ACCEPT_ALL = request -> true;
     
     public boolean isValidRequest(byte[] request);
     
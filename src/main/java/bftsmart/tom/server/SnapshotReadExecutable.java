@@ -0,0 +1,33 @@
+package bftsmart.tom.server;
+
+import bftsmart.tom.MessageContext;
+
+/**
+ *
+ * Executables that implement this interface execute read-only requests on a
+ * snapshot of the state.
+ * <p>
+ *
+ * Read-only requests may run on several threads concurrently with the
+ * execution of the decided batches (see 'system.numreadthreads'). An executable
+ * that implements this interface receives them in
+ * {@link #executeSnapshotRead(byte[], MessageContext, int)} together with the
+ * last committed consensus, so that it never observes a half-executed batch.
+ *
+ */
+public interface SnapshotReadExecutable extends Executable {
+
+	/**
+	 * Executes a read-only command on the state as it was after the given
+	 * consensus was committed. It MUST NOT modify the state, nor depend on the
+	 * state of the delivery thread.
+	 *
+	 * @param command the read-only command issued by the client
+	 * @param msgCtx  information related with the command
+	 * @param cid     the last committed consensus, i.e. the one the snapshot
+	 *                belongs to
+	 * @return the reply for the request issued by the client
+	 */
+	public byte[] executeSnapshotRead(byte[] command, MessageContext msgCtx, int cid);
+
+}
@@ -52,6 +52,7 @@ public class CommandsInfo implements Serializable {
                             msgCtx[i].getRegency(), msgCtx[i].getLeader(),
                             msgCtx[i].getConsensusId(), msgCtx[i].getProof(),
                             msgCtx[i].getFirstInBatch(), msgCtx[i].isNoOp());
+                    msg.setOperationBatch(msgCtx[i].isOperationBatch());
                     onlyNeeded[i] = msg;
         	}
         }
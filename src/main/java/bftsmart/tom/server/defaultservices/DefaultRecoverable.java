@@ -21,6 +21,7 @@ package bftsmart.tom.server.defaultservices;
 import bftsmart.consensus.app.BatchAppResultImpl;
 import bftsmart.consensus.app.PreComputeBatchExecutable;
 import bftsmart.consensus.app.SHA256Utils;
+import bftsmart.reconfiguration.ReconfigureRequest;
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.statemanagement.ApplicationState;
 import bftsmart.statemanagement.SMMessage;
@@ -32,10 +33,20 @@ import bftsmart.tom.MessageContext;
 import bftsmart.tom.ReplicaConfiguration;
 import bftsmart.tom.ReplicaContext;
 import bftsmart.tom.ReplyContextMessage;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.metrics.ReplicaMetrics;
+import bftsmart.tom.server.CommandContext;
+import bftsmart.tom.server.CommandViewExecutable;
+import bftsmart.tom.server.ParallelBatchExecutable;
+import bftsmart.tom.server.ParallelBatchExecutor;
 import bftsmart.tom.server.Recoverable;
+import bftsmart.tom.server.SnapshotReadExecutable;
+import bftsmart.tom.util.OperationBatch;
 import bftsmart.tom.util.TOMUtil;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -60,8 +71,21 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 	private StateLog log;
 	private String realName;
 	private StateManager stateManager;
+	private volatile ParallelBatchExecutor parallelExecutor;
+	private volatile PrecomputeCache precomputeCache;
+	private volatile ReplicaMetrics metrics;
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DefaultRecoverable.class);
 
+	/**
+	 * 状态重放时预取的批次数量；
+	 */
+	private static final int REPLAY_PREFETCH_DEPTH = 8;
+
+	/**
+	 * 状态重放时更新执行进度的间隔（以批次计）；
+	 */
+	private static final int REPLAY_BOOKKEEPING_INTERVAL = 64;
+
 	public DefaultRecoverable() {
 
 //        try {
@@ -73,24 +97,200 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	@Override
 	public BatchAppResultImpl preComputeHash(int cid, byte[][] commands, long timestamp) {
-		return preComputeAppHash(cid, commands, timestamp);
+		return preComputeHash(cid, commands, null, timestamp);
+	}
+
+	/**
+	 * @param batched 每个命令是否是客户端合并提交的操作批次；为 null 表示都不是；
+	 */
+	private BatchAppResultImpl preComputeHash(int cid, byte[][] commands, boolean[] batched, long timestamp) {
+		PrecomputeCache cache = precomputeCache;
+		if (cache == null) {
+			return preComputeBatch(cid, commands, batched, timestamp);
+		}
+		byte[] valueHash = PrecomputeCache.valueHash(commands, timestamp);
+		BatchAppResultImpl result = cache.reuse(cid, valueHash);
+		if (result == null) {
+			result = preComputeBatch(cid, commands, batched, timestamp);
+			cache.opened(cid, valueHash, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 对提议的请求进行预计算；
+	 * <p>
+	 *
+	 * 应用实现了 {@link CommandViewExecutable} 时，请求的内容以批次内的只读视图交给应用，不再复制；否则与
+	 * {@link #preComputeHash(int, byte[][], long)} 相同；重配置请求交给应用的是其扩展信息；标记为操作批次
+	 * （{@link TOMMessage#isOperationBatch()}）的请求展开成单独的命令交给应用；
+	 *
+	 * @param cid       共识 ID；
+	 * @param requests  提议的请求；
+	 * @param timestamp 提议的时间戳；
+	 * @return 预计算结果；
+	 */
+	public BatchAppResultImpl preComputeHash(int cid, TOMMessage[] requests, long timestamp) {
+		boolean[] batched = operationBatches(requests);
+		if (!(this instanceof CommandViewExecutable) || batched != null) {
+			byte[][] commands = new byte[requests.length][];
+			for (int i = 0; i < requests.length; i++) {
+				commands[i] = requests[i].getReqType() == TOMMessageType.RECONFIG ? getExtendInfo(requests[i])
+						: requests[i].getContent();
+			}
+			return preComputeHash(cid, commands, batched, timestamp);
+		}
+
+		ByteBuffer[] commands = new ByteBuffer[requests.length];
+		CommandContext[] contexts = new CommandContext[requests.length];
+		for (int i = 0; i < requests.length; i++) {
+			commands[i] = requests[i].getReqType() == TOMMessageType.RECONFIG
+					? ByteBuffer.wrap(getExtendInfo(requests[i])).asReadOnlyBuffer()
+					: requests[i].getContentView();
+			contexts[i] = CommandContext.of(requests[i]);
+		}
+		CommandViewExecutable executable = (CommandViewExecutable) this;
+		PrecomputeCache cache = precomputeCache;
+		if (cache == null) {
+			return executable.preComputeCommands(cid, commands, contexts, timestamp);
+		}
+		byte[] valueHash = PrecomputeCache.valueHash(commands, timestamp);
+		BatchAppResultImpl result = cache.reuse(cid, valueHash);
+		if (result == null) {
+			result = executable.preComputeCommands(cid, commands, contexts, timestamp);
+			cache.opened(cid, valueHash, result);
+		}
+		return result;
+	}
+
+	private static byte[] getExtendInfo(TOMMessage reconfig) {
+		return ((ReconfigureRequest) TOMUtil.getObject(reconfig.getContent())).getExtendInfo();
+	}
+
+	private BatchAppResultImpl preComputeBatch(int cid, byte[][] commands, boolean[] batched, long timestamp) {
+		if (batched == null) {
+			return preComputeAppHash(cid, commands, timestamp);
+		}
+		// 客户端合并提交的操作展开后交给应用，应答再按请求合并；
+		OperationBatch.Expansion expansion = OperationBatch.expand(commands, batched);
+		if (!expansion.isExpanded()) {
+			return preComputeAppHash(cid, commands, timestamp);
+		}
+		BatchAppResultImpl result = preComputeAppHash(cid, expansion.getOperations(), timestamp);
+		if (result != null && result.getAsyncResponses() != null) {
+			result.setAsyncResponses(expansion.repack(result.getAsyncResponses()));
+		}
+		return result;
 	}
 
 	@Override
 	public void preComputeCommit(int cid, String batchId) {
+		PrecomputeCache cache = precomputeCache;
+		if (cache != null) {
+			cache.release(batchId);
+		}
 		preComputeAppCommit(cid, batchId);
 	}
 
 	@Override
 	public void preComputeRollback(int cid, String batchId) {
+		PrecomputeCache cache = precomputeCache;
+		if (cache != null && !cache.release(batchId)) {
+			// 已经回滚过；
+			return;
+		}
 		preComputeAppRollback(cid, batchId);
 	}
 
+	/**
+	 * 因为共识进入新的时期或者领导者切换而放弃预计算的批次；
+	 * <p>
+	 *
+	 * 启用预计算结果缓存时批次只是挂起，新的时期对相同的值预计算时直接复用结果；否则与 {@link #preComputeRollback(int, String)}
+	 * 相同；
+	 */
+	public void preComputeSuspend(int cid, String batchId) {
+		PrecomputeCache cache = precomputeCache;
+		if (cache != null && cache.suspend(cid, batchId)) {
+			LOGGER.info("Suspend the pre compute batch of cid[{}]! --[BatchId={}]", cid, batchId);
+			return;
+		}
+		preComputeRollback(cid, batchId);
+	}
+
+	/**
+	 * 回滚所有挂起的预计算批次；在不经过预计算而直接改变应用状态之前调用；
+	 */
+	private void rollbackSuspendedPrecompute() {
+		PrecomputeCache cache = precomputeCache;
+		if (cache != null) {
+			cache.rollbackSuspended();
+		}
+	}
+
 	@Override
 	public List<byte[]> updateResponses(List<byte[]> asyncResponseLinkedList, byte[] commonHash, boolean isConsistent) {
 		return updateAppResponses(asyncResponseLinkedList, commonHash, isConsistent);
 	}
 
+	/**
+	 * 回滚后更新提议中各个请求的应答；与 {@link #updateResponses(List, byte[], boolean)} 相同，
+	 * 但是操作批次请求的应答先拆开交给应用，再重新合并；
+	 *
+	 * @param requests                提议的请求，与应答一一对应；
+	 * @param asyncResponseLinkedList 预计算得到的应答；
+	 * @param commonHash              共识的哈希；
+	 * @param isConsistent            预计算的结果是否一致；
+	 * @return 更新后的应答；
+	 */
+	public List<byte[]> updateResponses(TOMMessage[] requests, List<byte[]> asyncResponseLinkedList,
+			byte[] commonHash, boolean isConsistent) {
+		boolean[] batched = operationBatches(requests);
+		if (batched == null || asyncResponseLinkedList == null || asyncResponseLinkedList.size() != batched.length) {
+			return updateAppResponses(asyncResponseLinkedList, commonHash, isConsistent);
+		}
+		OperationBatch.Expansion expansion = OperationBatch
+				.expand(asyncResponseLinkedList.toArray(new byte[asyncResponseLinkedList.size()][]), batched);
+		if (!expansion.isExpanded()) {
+			return updateAppResponses(asyncResponseLinkedList, commonHash, isConsistent);
+		}
+		List<byte[]> updated = updateAppResponses(new ArrayList<>(Arrays.asList(expansion.getOperations())),
+				commonHash, isConsistent);
+		return expansion.repack(updated);
+	}
+
+	/**
+	 * 标记了哪些请求是客户端合并提交的操作批次；没有这样的请求时返回 null；
+	 */
+	private static boolean[] operationBatches(TOMMessage[] requests) {
+		boolean[] batched = null;
+		for (int i = 0; i < requests.length; i++) {
+			if (requests[i].isOperationBatch()) {
+				if (batched == null) {
+					batched = new boolean[requests.length];
+				}
+				batched[i] = true;
+			}
+		}
+		return batched;
+	}
+
+	/**
+	 * 与 {@link #operationBatches(TOMMessage[])} 相同，从请求的上下文中读取标记；
+	 */
+	private static boolean[] operationBatches(MessageContext[] msgCtxs) {
+		boolean[] batched = null;
+		for (int i = 0; i < msgCtxs.length; i++) {
+			if (msgCtxs[i] != null && msgCtxs[i].isOperationBatch()) {
+				if (batched == null) {
+					batched = new boolean[msgCtxs.length];
+				}
+				batched[i] = true;
+			}
+		}
+		return batched;
+	}
+
 //    @Override
 //    public byte[][] executeBatch(byte[][] commands, MessageContext[] msgCtxs) {
 //        return executeBatch(commands, msgCtxs, false, null);
@@ -98,6 +298,7 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	@Override
 	public byte[][] executeBatch(byte[][] commands, MessageContext[] msgCtxs) {
+		rollbackSuspendedPrecompute();
 		return executeBatch(commands, msgCtxs, false);
 	}
 
@@ -237,7 +438,12 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 				saveState(snapshot, cid);
 			}
 
+			long logStart = System.nanoTime();
 			saveCommands(commands, msgCtxs);
+			ReplicaMetrics replicaMetrics = metrics;
+			if (replicaMetrics != null) {
+				replicaMetrics.recordLogWrite(System.nanoTime() - logStart);
+			}
 
 			getStateManager().setLastCID(cid);
 		}
@@ -256,6 +462,42 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 		return ret;
 	}
 
+	/**
+	 * 设置并行执行批次的执行器；执行器由宿主 {@link bftsmart.tom.ServiceReplica} 持有并负责关闭，传入 null 表示执行器已关闭；
+	 *
+	 * @param parallelExecutor 并行批次执行器；
+	 */
+	public void setParallelExecutor(ParallelBatchExecutor parallelExecutor) {
+		this.parallelExecutor = parallelExecutor;
+	}
+
+	/**
+	 * 按照 {@link ParallelBatchExecutable} 声明的冲突键并行执行一个批次的命令，返回的结果与命令的顺序一致；
+	 * <p>
+	 * 供实现了 {@link ParallelBatchExecutable} 的应用在 {@link #preComputeAppHash(int, byte[][], long)}
+	 * 或 {@link #appExecuteBatch(byte[][], MessageContext[], boolean)} 中调用；没有设置执行器时按批次顺序逐个执行；
+	 *
+	 * @param commands 命令列表；
+	 * @param msgCtxs  命令的上下文；预计算阶段没有上下文，可以为 null；
+	 * @return 各个命令的执行结果；
+	 */
+	protected final byte[][] executeParallel(byte[][] commands, MessageContext[] msgCtxs) {
+		if (!(this instanceof ParallelBatchExecutable)) {
+			throw new IllegalStateException(
+					getClass().getName() + " doesn't implement " + ParallelBatchExecutable.class.getName() + "!");
+		}
+		ParallelBatchExecutable executable = (ParallelBatchExecutable) this;
+		ParallelBatchExecutor executor = parallelExecutor;
+		if (executor != null) {
+			return executor.execute(executable, commands, msgCtxs);
+		}
+		byte[][] replies = new byte[commands.length][];
+		for (int i = 0; i < commands.length; i++) {
+			replies[i] = executable.executeCommand(commands[i], msgCtxs == null ? null : msgCtxs[i]);
+		}
+		return replies;
+	}
+
 	private StateLog getLog() {
 		initLog();
 		return log;
@@ -359,6 +601,7 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 		DefaultApplicationState state = null;
 		byte[] remoteBlockHash;
 
+		rollbackSuspendedPrecompute();
 		stateLock.lock();
 		try {
 			if (recvState instanceof DefaultApplicationState) {
@@ -383,24 +626,7 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 						controller.getStaticConf().getProcessId(), localCid, state.getLastCheckpointCID(), remoteLastCid);
 
 				// 执行最新checkpoint的交易重放过程
-				for (int cid = localCid + 1; cid <= remoteLastCid; cid++) {
-
-					LOGGER.debug("[DefaultRecoverable.setState] interpreting and verifying batched requests for cid {}", cid);
-
-					CommandsInfo cmdInfo = state.getMessageBatch(cid);
-
-					if (cmdInfo != null) {
-
-						LOGGER.info("I am proc {}, will do appExecuteBatch, cid = {}", controller.getStaticConf().getProcessId(), cid);
-
-						appExecuteBatch(cmdInfo.commands, cmdInfo.msgCtx, false);
-
-						((StandardStateManager) this.getStateManager()).setLastCID(cid);
-						//更新上次执行的共识ID，同时把正在进行中的共识设置为-1
-						((StandardStateManager) this.getStateManager()).getTomLayer().setLastExec(cid);
-						((StandardStateManager) this.getStateManager()).getTomLayer().setInExec(-1);
-					}
-				}
+				replayMessageBatches(state, localCid + 1, remoteLastCid);
 
 				byte[] currBlockHash = getBlockHashByCid(remoteLastCid);
 
@@ -430,6 +656,87 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 		return ((StandardStateManager) this.getStateManager()).getLastCID();
 	}
 
+	/**
+	 * 重放指定范围内的交易批次；
+	 * <p>
+	 *
+	 * 批次的读取和准备（见 {@link #prepareReplayBatch(int, byte[][], MessageContext[])}）在预取线程中进行，
+	 * 与当前批次的执行重叠；最后执行的 CID 每隔 {@link #REPLAY_BOOKKEEPING_INTERVAL} 个批次以及重放结束时更新一次；
+	 *
+	 * @param state   多数节点认可的状态；
+	 * @param fromCid 起始 CID（包含）；
+	 * @param toCid   终止 CID（包含）；
+	 */
+	private void replayMessageBatches(DefaultApplicationState state, int fromCid, int toCid) throws InterruptedException {
+		if (fromCid > toCid) {
+			return;
+		}
+		int processId = controller.getStaticConf().getProcessId();
+		LogReplayPipeline pipeline = new LogReplayPipeline(state, fromCid, toCid, REPLAY_PREFETCH_DEPTH,
+				new LogReplayPipeline.BatchPreparer() {
+					@Override
+					public LogReplayPipeline.ReplayBatch prepare(int cid, byte[][] commands, MessageContext[] msgCtxs) {
+						boolean[] batched = operationBatches(msgCtxs);
+						if (batched != null) {
+							OperationBatch.Expansion expansion = OperationBatch.expand(commands, batched);
+							if (expansion.isExpanded()) {
+								int[] origins = expansion.origins();
+								MessageContext[] expandedCtxs = new MessageContext[origins.length];
+								for (int i = 0; i < origins.length; i++) {
+									expandedCtxs[i] = msgCtxs[origins[i]];
+								}
+								commands = expansion.getOperations();
+								msgCtxs = expandedCtxs;
+							}
+						}
+						prepareReplayBatch(cid, commands, msgCtxs);
+						return new LogReplayPipeline.ReplayBatch(cid, commands, msgCtxs);
+					}
+				});
+
+		try {
+			pipeline.replay(processId, new LogReplayPipeline.BatchExecutor() {
+				@Override
+				public void execute(LogReplayPipeline.ReplayBatch batch) {
+					LOGGER.debug("I am proc {}, will do appExecuteBatch, cid = {}", processId, batch.cid);
+
+					appExecuteBatch(batch.commands, batch.msgCtxs, false);
+				}
+			}, REPLAY_BOOKKEEPING_INTERVAL, this::recordReplayProgress);
+		} finally {
+			int lastReplayedCid = pipeline.getLastReplayedCid();
+			if (lastReplayedCid > -1) {
+				//把正在进行中的共识设置为-1
+				((StandardStateManager) this.getStateManager()).getTomLayer().setInExec(-1);
+			}
+			LOGGER.info("I am proc {}, replayed {} cids [{} - {}] in {} ms, throughput = {} CIDs/s", processId,
+					pipeline.getReplayedCount(), fromCid, lastReplayedCid, pipeline.getElapsedMillis(),
+					String.format("%.2f", pipeline.getThroughput()));
+		}
+	}
+
+	/**
+	 * 更新上次执行的共识ID；
+	 */
+	private void recordReplayProgress(int cid) {
+		((StandardStateManager) this.getStateManager()).setLastCID(cid);
+		((StandardStateManager) this.getStateManager()).getTomLayer().setLastExec(cid);
+	}
+
+	/**
+	 * 状态重放时对批次的预处理，例如预先解码交易；
+	 * <p>
+	 *
+	 * 该方法在重放预取线程中调用，与前一个批次的 {@link #appExecuteBatch(byte[][], MessageContext[], boolean)}
+	 * 并发执行，因此不应修改应用状态；默认不做任何处理；
+	 *
+	 * @param cid      批次对应的共识 ID；
+	 * @param commands 批次中的交易；
+	 * @param msgCtxs  交易对应的上下文；
+	 */
+	protected void prepareReplayBatch(int cid, byte[][] commands, MessageContext[] msgCtxs) {
+	}
+
 	/**
 	 * Iterates over the message context array and get the consensus id of each
 	 * command being executed. As several times during the execution of commands and
@@ -574,6 +881,11 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 		
 		this.controller = replicaContext.getSVController();
 		this.config = replicaContext.getStaticConfiguration();
+		if (config.getPrecomputeCacheSize() > 0 && precomputeCache == null) {
+			precomputeCache = new PrecomputeCache(config.getPrecomputeCacheSize(), this::preComputeAppRollback);
+		}
+
+		this.metrics = replicaContext.getTOMLayer().getMetrics();
 
 		replicaContext.getTOMLayer().setLastExec((int) lastCid);
 
@@ -601,6 +913,11 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	@Override
 	public byte[] executeUnordered(byte[] command, MessageContext msgCtx) {
+		if (this instanceof SnapshotReadExecutable) {
+			// 只读请求可能与批次的执行并发进行，在最近一个已提交共识的状态快照上执行；
+			return ((SnapshotReadExecutable) this).executeSnapshotRead(command, msgCtx,
+					getStateManager().getLastCID());
+		}
 		return appExecuteUnordered(command, msgCtx);
 	}
 
@@ -0,0 +1,296 @@
+package bftsmart.tom.server.defaultservices;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.tom.MessageContext;
+
+/**
+ * 状态安装时的日志重放流水线；
+ * <p>
+ *
+ * 由一个预取线程按 CID 顺序从 {@link DefaultApplicationState} 中取出批次并完成准备工作（校验、应用层预解码），
+ * 放入有界队列；调用线程按顺序取出并执行。这样第 k+1 个批次的准备与第 k 个批次的执行是重叠进行的；
+ * <p>
+ *
+ * 队列中的批次严格按 CID 递增顺序输出，不影响重放的确定性；
+ */
+public class LogReplayPipeline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogReplayPipeline.class);
+
+	/**
+	 * 预取线程在队列尾部放入的结束标记；
+	 */
+	private static final ReplayBatch END_OF_REPLAY = new ReplayBatch(-1, null, null);
+
+	private final DefaultApplicationState state;
+
+	private final int fromCid;
+
+	private final int toCid;
+
+	private final BatchPreparer preparer;
+
+	private final BlockingQueue<ReplayBatch> preparedBatches;
+
+	private volatile Thread prefetchThread;
+
+	private volatile boolean closed = false;
+
+	private volatile Throwable prefetchError;
+
+	private long startTime;
+
+	private long endTime;
+
+	private int replayedCount;
+
+	private volatile int lastReplayedCid = -1;
+
+	/**
+	 * @param state    待重放的状态；
+	 * @param fromCid  重放的起始 CID（包含）；
+	 * @param toCid    重放的终止 CID（包含）；
+	 * @param depth    预取深度，即已准备好但尚未执行的最大批次数；
+	 * @param preparer 批次准备回调，在预取线程中执行；
+	 */
+	public LogReplayPipeline(DefaultApplicationState state, int fromCid, int toCid, int depth, BatchPreparer preparer) {
+		this.state = state;
+		this.fromCid = fromCid;
+		this.toCid = toCid;
+		this.preparer = preparer;
+		this.preparedBatches = new ArrayBlockingQueue<>(Math.max(1, depth));
+	}
+
+	/**
+	 * 启动预取线程；
+	 *
+	 * @param processId 当前节点 Id，用于线程命名；
+	 */
+	public void start(int processId) {
+		startTime = System.currentTimeMillis();
+		Thread thrd = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				prefetch();
+			}
+		}, "Log-Replay-Prefetch[" + processId + "]");
+		thrd.setDaemon(true);
+		prefetchThread = thrd;
+		thrd.start();
+	}
+
+	private void prefetch() {
+		try {
+			for (int cid = fromCid; cid <= toCid && !closed; cid++) {
+				CommandsInfo cmdInfo = state.getMessageBatch(cid);
+				if (cmdInfo == null || cmdInfo.commands == null || cmdInfo.msgCtx == null) {
+					LOGGER.debug("[LogReplayPipeline] no batch found for cid {}, skip it!", cid);
+					continue;
+				}
+				if (cmdInfo.commands.length != cmdInfo.msgCtx.length) {
+					throw new IllegalStateException(String.format(
+							"The size of commands[%s] and message contexts[%s] is different in the batch of cid[%s]!",
+							cmdInfo.commands.length, cmdInfo.msgCtx.length, cid));
+				}
+				preparedBatches.put(preparer.prepare(cid, cmdInfo.commands, cmdInfo.msgCtx));
+			}
+		} catch (InterruptedException e) {
+			// closed by the replaying thread;
+		} catch (Throwable e) {
+			prefetchError = e;
+		} finally {
+			putEndOfReplay();
+		}
+	}
+
+	private void putEndOfReplay() {
+		// 消费者关闭后不再需要结束标记；关闭时会中断本线程，因此不会永久阻塞；
+		try {
+			while (!closed) {
+				if (preparedBatches.offer(END_OF_REPLAY, 100, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed by the replaying thread;
+		}
+	}
+
+	/**
+	 * 按 CID 顺序返回下一个已准备好的批次；
+	 *
+	 * @return 下一个批次；如果已经全部重放完毕，则返回 null；
+	 * @throws IllegalStateException 如果预取过程中发生错误；
+	 */
+	public ReplayBatch next() throws InterruptedException {
+		if (closed) {
+			return null;
+		}
+		ReplayBatch batch = preparedBatches.take();
+		if (batch == END_OF_REPLAY) {
+			closed = true;
+			endTime = System.currentTimeMillis();
+			if (prefetchError != null) {
+				throw new IllegalStateException(
+						"Error occurred while preparing the replay batches! --" + prefetchError.getMessage(),
+						prefetchError);
+			}
+			return null;
+		}
+		replayedCount++;
+		return batch;
+	}
+
+	/**
+	 * 启动预取线程，并在调用线程中按 CID 顺序执行全部批次；
+	 * <p>
+	 *
+	 * 最后执行的 CID 每隔 bookkeepingInterval 个批次记录一次；重放结束或执行出错时关闭流水线，并记录最后一个执行成功的 CID；
+	 *
+	 * @param processId           当前节点 Id，用于线程命名；
+	 * @param executor            批次执行回调；
+	 * @param bookkeepingInterval 记录执行进度的间隔批次数；
+	 * @param recorder            执行进度记录回调；
+	 * @return 最后执行的 CID；没有执行任何批次时返回 -1；
+	 */
+	public int replay(int processId, BatchExecutor executor, int bookkeepingInterval, ProgressRecorder recorder)
+			throws InterruptedException {
+		int unrecordedCount = 0;
+		start(processId);
+		try {
+			ReplayBatch batch;
+			while ((batch = next()) != null) {
+				executor.execute(batch);
+
+				lastReplayedCid = batch.cid;
+				unrecordedCount++;
+				if (unrecordedCount >= bookkeepingInterval) {
+					recorder.record(lastReplayedCid);
+					unrecordedCount = 0;
+				}
+			}
+		} finally {
+			close();
+			if (unrecordedCount > 0) {
+				recorder.record(lastReplayedCid);
+			}
+		}
+		return lastReplayedCid;
+	}
+
+	/**
+	 * 关闭流水线，停止预取；
+	 */
+	public void close() {
+		if (endTime == 0) {
+			endTime = System.currentTimeMillis();
+		}
+		closed = true;
+		Thread thrd = prefetchThread;
+		if (thrd != null) {
+			thrd.interrupt();
+		}
+	}
+
+	/**
+	 * 已经交付执行的批次数量；
+	 *
+	 * @return
+	 */
+	public int getReplayedCount() {
+		return replayedCount;
+	}
+
+	/**
+	 * 重放耗时，单位为“毫秒”；
+	 *
+	 * @return
+	 */
+	public long getElapsedMillis() {
+		long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+		return end - startTime;
+	}
+
+	/**
+	 * 重放吞吐量，单位为 “CIDs/s”；
+	 *
+	 * @return
+	 */
+	public double getThroughput() {
+		long elapsed = getElapsedMillis();
+		if (elapsed <= 0) {
+			return replayedCount;
+		}
+		return replayedCount * 1000D / elapsed;
+	}
+
+	/**
+	 * 最后一个执行成功的 CID；没有执行任何批次时返回 -1；
+	 *
+	 * @return
+	 */
+	public int getLastReplayedCid() {
+		return lastReplayedCid;
+	}
+
+	/**
+	 * 预取线程是否仍在运行；
+	 *
+	 * @return
+	 */
+	public boolean isPrefetching() {
+		Thread thrd = prefetchThread;
+		return thrd != null && thrd.isAlive();
+	}
+
+	/**
+	 * 已准备好的重放批次；
+	 */
+	public static class ReplayBatch {
+
+		public final int cid;
+
+		public final byte[][] commands;
+
+		public final MessageContext[] msgCtxs;
+
+		public ReplayBatch(int cid, byte[][] commands, MessageContext[] msgCtxs) {
+			this.cid = cid;
+			this.commands = commands;
+			this.msgCtxs = msgCtxs;
+		}
+	}
+
+	/**
+	 * 批次准备回调；返回待执行的批次，其中的命令和上下文可以与日志中的不同（例如展开了客户端的操作批次）；
+	 */
+	public interface BatchPreparer {
+
+		ReplayBatch prepare(int cid, byte[][] commands, MessageContext[] msgCtxs);
+
+	}
+
+	/**
+	 * 批次执行回调，在调用 {@link LogReplayPipeline#replay(int, BatchExecutor, int, ProgressRecorder)} 的线程中按 CID 顺序执行；
+	 */
+	public interface BatchExecutor {
+
+		void execute(ReplayBatch batch);
+
+	}
+
+	/**
+	 * 执行进度记录回调；
+	 */
+	public interface ProgressRecorder {
+
+		void record(int lastCid);
+
+	}
+}
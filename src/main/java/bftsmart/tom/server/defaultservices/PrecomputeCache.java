@@ -0,0 +1,268 @@
+package bftsmart.tom.server.defaultservices;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.consensus.app.BatchAppResultImpl;
+
+/**
+ * 预计算结果缓存；
+ * <p>
+ *
+ * 共识进入新的时期（epoch）或者领导者切换时，未提交的预计算批次需要回滚；而新时期或新领导者提议的往往是同一个值，
+ * 回滚后又要对同样的批次重新预计算；
+ * <p>
+ *
+ * 缓存把这类回滚改为“挂起”：批次保持打开，结果按照共识 ID 和提议值的哈希保存；同一共识再次对相同的值预计算时直接返回挂起的结果；
+ * 对任何其它值预计算之前、提交之前以及状态传输之前，挂起的批次都会先被真正回滚，因此应用同时只会有一个打开的批次；
+ * <p>
+ *
+ * 挂起的批次数量不超过容量，超出时回滚最早挂起的批次；
+ */
+public class PrecomputeCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PrecomputeCache.class);
+
+	/**
+	 * 回滚批次的操作；
+	 */
+	public interface Rollback {
+
+		void rollback(int cid, String batchId);
+
+	}
+
+	private static final int ROLLED_BACK_HISTORY = 64;
+
+	private final int capacity;
+
+	private final Rollback rollback;
+
+	/**
+	 * 批次 ID 到缓存项，按打开的顺序排列；
+	 */
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	/**
+	 * 最近由缓存回滚的批次 ID，避免同一批次被重复回滚；
+	 */
+	private final Map<String, Boolean> rolledBack = new LinkedHashMap<String, Boolean>() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > ROLLED_BACK_HISTORY;
+		}
+	};
+
+	private long hits;
+
+	private long misses;
+
+	public PrecomputeCache(int capacity, Rollback rollback) {
+		this.capacity = capacity;
+		this.rollback = rollback;
+	}
+
+	/**
+	 * 计算提议值的哈希；提议值由命令和提议的时间戳组成；
+	 */
+	public static byte[] valueHash(byte[][] commands, long timestamp) {
+		MessageDigest digest = newDigest(commands.length, timestamp);
+		ByteBuffer length = ByteBuffer.allocate(4);
+		for (byte[] command : commands) {
+			length.clear();
+			length.putInt(command == null ? -1 : command.length);
+			digest.update(length.array());
+			if (command != null) {
+				digest.update(command);
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * 计算提议值的哈希，命令以只读视图的形式给出；与 {@link #valueHash(byte[][], long)} 的结果相同；
+	 */
+	public static byte[] valueHash(ByteBuffer[] commands, long timestamp) {
+		MessageDigest digest = newDigest(commands.length, timestamp);
+		ByteBuffer length = ByteBuffer.allocate(4);
+		for (ByteBuffer command : commands) {
+			length.clear();
+			length.putInt(command == null ? -1 : command.remaining());
+			digest.update(length.array());
+			if (command != null) {
+				digest.update(command.duplicate());
+			}
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest newDigest(int count, long timestamp) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putLong(timestamp).putInt(count);
+			digest.update(header.array());
+			return digest;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 查找可以复用的挂起结果；找到时批次重新变为打开状态；
+	 * <p>
+	 *
+	 * 没有找到时回滚所有挂起的批次，调用方随后对新的值进行预计算；
+	 *
+	 * @param cid       共识 ID；
+	 * @param valueHash 提议值的哈希；
+	 * @return 挂起的预计算结果；没有时返回 null；
+	 */
+	public synchronized BatchAppResultImpl reuse(int cid, byte[] valueHash) {
+		ByteBuffer key = ByteBuffer.wrap(valueHash);
+		for (Entry entry : entries.values()) {
+			if (entry.suspended && entry.cid == cid && entry.key.equals(key)) {
+				entry.suspended = false;
+				hits++;
+				LOGGER.info("Reuse the suspended pre compute result of cid[{}]! --[BatchId={}]", cid, entry.batchId);
+				return entry.result;
+			}
+		}
+		misses++;
+		rollbackSuspended();
+		return null;
+	}
+
+	/**
+	 * 记录新打开的批次；
+	 */
+	public synchronized void opened(int cid, byte[] valueHash, BatchAppResultImpl result) {
+		if (result == null || result.getBatchId() == null) {
+			return;
+		}
+		entries.put(result.getBatchId(), new Entry(cid, ByteBuffer.wrap(valueHash), result));
+	}
+
+	/**
+	 * 挂起批次；
+	 *
+	 * @return 批次已经挂起（或者此前已经挂起）时返回 true；不是缓存中打开的批次时返回 false，由调用方回滚；
+	 */
+	public synchronized boolean suspend(int cid, String batchId) {
+		Entry entry = entries.get(batchId);
+		if (entry == null || entry.cid != cid) {
+			return false;
+		}
+		if (!entry.suspended) {
+			entry.suspended = true;
+			evictOverflow();
+		}
+		return true;
+	}
+
+	/**
+	 * 批次将被提交或者回滚，从缓存中移除；
+	 *
+	 * @return 批次已经由缓存回滚过时返回 false，调用方不应再次回滚；
+	 */
+	public synchronized boolean release(String batchId) {
+		entries.remove(batchId);
+		return rolledBack.remove(batchId) == null;
+	}
+
+	/**
+	 * 回滚所有挂起的批次；
+	 */
+	public synchronized void rollbackSuspended() {
+		List<Entry> suspended = new ArrayList<>();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.suspended) {
+				suspended.add(entry);
+				iterator.remove();
+			}
+		}
+		for (Entry entry : suspended) {
+			rollback(entry);
+		}
+	}
+
+	/**
+	 * 当前挂起的批次数量；
+	 */
+	public synchronized int getSuspendedCount() {
+		int count = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.suspended) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 复用挂起结果的次数；
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * 没有可以复用的结果而重新预计算的次数；
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private void evictOverflow() {
+		int overflow = getSuspendedCount() - capacity;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (overflow > 0 && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.suspended) {
+				iterator.remove();
+				overflow--;
+				rollback(entry);
+			}
+		}
+	}
+
+	private void rollback(Entry entry) {
+		LOGGER.info("Rollback the suspended pre compute batch of cid[{}]! --[BatchId={}]", entry.cid, entry.batchId);
+		rolledBack.put(entry.batchId, Boolean.TRUE);
+		rollback.rollback(entry.cid, entry.batchId);
+	}
+
+	private static class Entry {
+
+		final int cid;
+
+		final ByteBuffer key;
+
+		final BatchAppResultImpl result;
+
+		final String batchId;
+
+		boolean suspended;
+
+		Entry(int cid, ByteBuffer key, BatchAppResultImpl result) {
+			this.cid = cid;
+			this.key = key;
+			this.result = result;
+			this.batchId = result.getBatchId();
+		}
+	}
+}
@@ -94,7 +94,7 @@ public final class BatchBuilder {
 		for (TOMMessage msg : msgs) {
 			//TOMMessage msg = msgs.next();
 			LOGGER.debug("(BatchBuilder.makeBatch) adding request from client {} with sequence number {} for session {} to PROPOSE", msg.getSender(), msg.getSequence(), msg.getSession());
-			messages[i] = msg.serializedMessage;
+			messages[i] = msg.getSerializedMessage();
 			signatures[i] = msg.serializedMessageSignature;
 
 			totalMessageSize += messages[i].length;
@@ -120,7 +120,7 @@ public final class BatchBuilder {
 		for (TOMMessage msg : msgs) {
 			//TOMMessage msg = msgs.next();
 			//LOGGER.debug("(TOMLayer.run) adding req " + msg + " to PROPOSE");
-			messages[i] = msg.serializedMessage;
+			messages[i] = msg.getSerializedMessage();
 			signatures[i] = msg.serializedMessageSignature;
 
 			totalMessageSize += messages[i].length;
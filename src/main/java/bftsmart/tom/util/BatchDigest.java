@@ -0,0 +1,256 @@
+package bftsmart.tom.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import bftsmart.tom.core.messages.TOMMessage;
+
+/**
+ * 批次摘要；
+ * <p>
+ *
+ * 批次的摘要定义为各个请求摘要之上的 Merkle 根，而不是整个批次字节的哈希：
+ * <ul>
+ * <li>请求摘要（叶子）：SHA256(0x00 || 请求字节 || 签名)；</li>
+ * <li>中间节点：SHA256(0x01 || 左子节点 || 右子节点)，某一层的节点数为奇数时，最后一个节点直接提升到上一层；</li>
+ * <li>批次摘要：SHA256(0x02 || 批次头 || Merkle 根)，批次头包括时间戳、随机数种子、视图 Id 和请求数量；</li>
+ * </ul>
+ * <p>
+ *
+ * 请求摘要在请求进入节点时（{@link TOMMessage#serializedMessageDigest}）计算，因此共识值的哈希只需要对每个请求做一次 32 字节级别的合并；
+ * 同时可以为单个请求生成包含证明（{@link #inclusionPath(byte[][], int)}）；
+ * <p>
+ *
+ * 无法按批次格式解析的值（例如拜占庭主节点提交的错误数据）退化为 SHA256(0x03 || 值)，保证所有节点对同一个值得到相同的摘要；
+ */
+public final class BatchDigest {
+
+	public static final int DIGEST_LENGTH = 256 / 8;
+
+	private static final byte LEAF_PREFIX = 0x00;
+
+	private static final byte NODE_PREFIX = 0x01;
+
+	private static final byte BATCH_PREFIX = 0x02;
+
+	private static final byte RAW_PREFIX = 0x03;
+
+	private static final ThreadLocal<SHA256Digest> DIGESTS = ThreadLocal.withInitial(SHA256Digest::new);
+
+	private BatchDigest() {
+	}
+
+	/**
+	 * 计算单个请求的摘要；
+	 *
+	 * @param message   请求的序列化字节；
+	 * @param signature 请求的签名；没有签名时为 null；
+	 * @return
+	 */
+	public static byte[] requestDigest(byte[] message, byte[] signature) {
+		SHA256Digest digest = DIGESTS.get();
+		digest.update(LEAF_PREFIX);
+		digest.update(message, 0, message.length);
+		if (signature != null) {
+			digest.update(signature, 0, signature.length);
+		}
+		return doFinal(digest);
+	}
+
+	/**
+	 * 计算 Merkle 根；
+	 *
+	 * @param leaves 请求摘要列表；
+	 * @return
+	 */
+	public static byte[] merkleRoot(byte[][] leaves) {
+		if (leaves.length == 0) {
+			SHA256Digest digest = DIGESTS.get();
+			digest.update(NODE_PREFIX);
+			return doFinal(digest);
+		}
+		byte[][] level = leaves;
+		while (level.length > 1) {
+			level = nextLevel(level);
+		}
+		return level[0];
+	}
+
+	/**
+	 * 生成指定请求的包含证明，即从叶子到根的路径上所有兄弟节点；
+	 * <p>
+	 * 节点被直接提升的层不产生兄弟节点，验证方根据叶子总数可以还原出这些层；
+	 *
+	 * @param leaves 请求摘要列表；
+	 * @param index  请求在批次中的位置；
+	 * @return
+	 */
+	public static byte[][] inclusionPath(byte[][] leaves, int index) {
+		if (index < 0 || index >= leaves.length) {
+			throw new IllegalArgumentException("Leaf index[" + index + "] is out of bounds[" + leaves.length + "]!");
+		}
+		List<byte[]> path = new ArrayList<>();
+		byte[][] level = leaves;
+		int idx = index;
+		while (level.length > 1) {
+			int sibling = idx ^ 1;
+			if (sibling < level.length) {
+				path.add(level[sibling]);
+			}
+			level = nextLevel(level);
+			idx >>= 1;
+		}
+		return path.toArray(new byte[path.size()][]);
+	}
+
+	/**
+	 * 根据包含证明还原 Merkle 根；结果与已知的根相同时，证明请求包含在批次中；
+	 *
+	 * @param leaf      请求摘要；
+	 * @param index     请求在批次中的位置；
+	 * @param leafCount 批次中的请求数量；
+	 * @param path      包含证明；
+	 * @return 还原的 Merkle 根；如果证明与叶子总数不匹配，则返回 null；
+	 */
+	public static byte[] rootFromPath(byte[] leaf, int index, int leafCount, byte[][] path) {
+		if (index < 0 || index >= leafCount) {
+			return null;
+		}
+		byte[] node = leaf;
+		int idx = index;
+		int width = leafCount;
+		int p = 0;
+		while (width > 1) {
+			int sibling = idx ^ 1;
+			if (sibling < width) {
+				if (p >= path.length) {
+					return null;
+				}
+				node = (idx & 1) == 0 ? hashNode(node, path[p]) : hashNode(path[p], node);
+				p++;
+			}
+			idx >>= 1;
+			width = (width + 1) >> 1;
+		}
+		return p == path.length ? node : null;
+	}
+
+	/**
+	 * 计算共识值（批次）的摘要；
+	 * <p>
+	 * 如果提供了从该值反序列化得到的请求，则优先复用请求上已经计算好的摘要，否则直接对批次中的请求字节计算摘要；
+	 *
+	 * @param value         共识值；
+	 * @param useSignatures 批次中是否包含请求签名；
+	 * @param signatureSize 签名的长度；
+	 * @param requests      从 value 反序列化得到的请求；可以为 null；
+	 * @return
+	 */
+	public static byte[] batchHash(byte[] value, boolean useSignatures, int signatureSize, TOMMessage[] requests) {
+		int headerLength = headerLength(value);
+		byte[][] leaves = headerLength < 0 ? null
+				: requestDigests(value, headerLength, useSignatures ? signatureSize : 0, requests);
+
+		SHA256Digest digest = DIGESTS.get();
+		if (leaves == null) {
+			digest.update(RAW_PREFIX);
+			digest.update(value, 0, value.length);
+			return doFinal(digest);
+		}
+		byte[] root = merkleRoot(leaves);
+		digest.update(BATCH_PREFIX);
+		digest.update(value, 0, headerLength);
+		digest.update(root, 0, root.length);
+		return doFinal(digest);
+	}
+
+	/**
+	 * 按批次格式解析出每个请求的摘要；
+	 *
+	 * @param value         共识值；
+	 * @param useSignatures 批次中是否包含请求签名；
+	 * @param signatureSize 签名的长度；
+	 * @return 请求摘要列表；如果值不符合批次格式，则返回 null；
+	 */
+	public static byte[][] requestDigests(byte[] value, boolean useSignatures, int signatureSize) {
+		int headerLength = headerLength(value);
+		if (headerLength < 0) {
+			return null;
+		}
+		return requestDigests(value, headerLength, useSignatures ? signatureSize : 0, null);
+	}
+
+	private static byte[][] requestDigests(byte[] value, int headerLength, int signatureSize, TOMMessage[] requests) {
+		ByteBuffer buffer = ByteBuffer.wrap(value);
+		int count = buffer.getInt(headerLength - 4);
+		// 每个请求至少占用 4 字节的长度字段，据此排除伪造的请求数量；
+		if (count < 0 || count > (value.length - headerLength) / 4) {
+			return null;
+		}
+		boolean useCached = requests != null && requests.length == count;
+
+		byte[][] leaves = new byte[count][];
+		int offset = headerLength;
+		for (int i = 0; i < count; i++) {
+			if (value.length - offset < 4) {
+				return null;
+			}
+			int length = buffer.getInt(offset);
+			offset += 4;
+			if (length < 0 || (long) length + signatureSize > value.length - offset) {
+				return null;
+			}
+			byte[] cached = useCached && requests[i] != null ? requests[i].serializedMessageDigest : null;
+			if (cached != null) {
+				leaves[i] = cached;
+			} else {
+				SHA256Digest digest = DIGESTS.get();
+				digest.update(LEAF_PREFIX);
+				digest.update(value, offset, length + signatureSize);
+				leaves[i] = doFinal(digest);
+			}
+			offset += length + signatureSize;
+		}
+		// 尾部存在多余字节时不视为合法批次，保证摘要覆盖值的全部字节；
+		return offset == value.length ? leaves : null;
+	}
+
+	/**
+	 * 返回批次头的长度；如果值不符合批次格式，则返回 -1；
+	 */
+	private static int headerLength(byte[] value) {
+		// timestamp(8) + nonces(4) + [seed(8)] + viewId(4) + numMessages(4)
+		if (value == null || value.length < 20) {
+			return -1;
+		}
+		int nonces = ByteBuffer.wrap(value).getInt(8);
+		int length = nonces > 0 ? 28 : 20;
+		return value.length < length ? -1 : length;
+	}
+
+	private static byte[][] nextLevel(byte[][] level) {
+		byte[][] next = new byte[(level.length + 1) >> 1][];
+		for (int i = 0; i < next.length; i++) {
+			int left = i << 1;
+			next[i] = left + 1 < level.length ? hashNode(level[left], level[left + 1]) : level[left];
+		}
+		return next;
+	}
+
+	private static byte[] hashNode(byte[] left, byte[] right) {
+		SHA256Digest digest = DIGESTS.get();
+		digest.update(NODE_PREFIX);
+		digest.update(left, 0, left.length);
+		digest.update(right, 0, right.length);
+		return doFinal(digest);
+	}
+
+	private static byte[] doFinal(SHA256Digest digest) {
+		byte[] result = new byte[DIGEST_LENGTH];
+		digest.doFinal(result, 0);
+		return result;
+	}
+}
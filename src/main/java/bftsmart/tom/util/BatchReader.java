@@ -17,11 +17,10 @@ package bftsmart.tom.util;
 
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageView;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Random;
 
 /**
  * Batch format: N_MESSAGES(int) + N_MESSAGES*[MSGSIZE(int),MSG(byte)] +
@@ -48,10 +47,9 @@ public final class BatchReader {
 
         long seed = 0;
 
-        Random rnd = null;
+        // the nonces are generated by the application from the seed (see MessageContext)
         if(numberOfNonces > 0){
             seed = proposalBuffer.getLong();
-            rnd = new Random(seed);
         }
         else numberOfNonces = 0; // make sure the value is correct
 
@@ -61,29 +59,29 @@ public final class BatchReader {
 
         TOMMessage[] requests = new TOMMessage[numberOfMessages];
 
+        // the messages are read in place; their contents stay views of the batch until someone asks for a copy
+        TOMMessageView view = new TOMMessageView();
+
         for (int i = 0; i < numberOfMessages; i++) {
             //read the message and its signature from the batch
             int messageSize = proposalBuffer.getInt();
 
-            byte[] message = new byte[messageSize];
-            proposalBuffer.get(message);
+            int messageStart = proposalBuffer.position();
+            proposalBuffer.position(messageStart + messageSize);
 
             byte[] signature = null;
             if(useSignatures){
                 signature = new byte[TOMUtil.getSignatureSize(controller)];
                 proposalBuffer.get(signature);
             }
-            //obtain the nonces to be delivered to the application
-            byte[] nonces = new byte[numberOfNonces];
-            if (nonces.length > 0) {
-                rnd.nextBytes(nonces);
-            }
+
             try {
-                DataInputStream ois = new DataInputStream(new ByteArrayInputStream(message));
-                TOMMessage tm = new TOMMessage();
-                tm.rExternal(ois);
+                view.wrap(proposalBuffer, messageStart);
+                if (view.getSerializedLength() != messageSize) {
+                    throw new IOException("Invalid size [" + messageSize + "] of message!");
+                }
+                TOMMessage tm = view.toMessage();
 
-                tm.serializedMessage = message;
                 tm.serializedMessageSignature = signature;
                 tm.numOfNonces = numberOfNonces;
                 tm.seed = seed;
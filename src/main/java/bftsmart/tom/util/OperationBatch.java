@@ -0,0 +1,187 @@
+package bftsmart.tom.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 操作批次；
+ * <p>
+ *
+ * 客户端把多个小操作合并成一个有序请求（信封）提交，每个操作不再单独占用一个 {@link bftsmart.tom.core.messages.TOMMessage}
+ * 的消息头、签名、客户端记录和请求计时器；副本在交给应用执行之前把信封拆成单独的命令，执行后再把各个命令的应答合并成一个应答；
+ * <p>
+ *
+ * 格式：MAGIC(4) || 操作数量(4) || { 操作长度(4) || 操作字节 }*；应答使用同样的格式，应答为 null 时长度记为 -1；
+ * <p>
+ *
+ * 信封请求由客户端在消息头中显式标记（{@link bftsmart.tom.core.messages.TOMMessage#isOperationBatch()}），
+ * 副本只拆开有标记的请求，不会根据内容猜测，普通命令即使恰好符合此格式也原样交给应用；MAGIC 只用于检查格式；
+ */
+public final class OperationBatch {
+
+	private static final int MAGIC = 0x4F504241;
+
+	private static final int HEADER_LENGTH = 8;
+
+	private OperationBatch() {
+	}
+
+	/**
+	 * 把多个操作（或者多个应答）打包成一个信封；
+	 */
+	public static byte[] pack(List<byte[]> operations) {
+		int length = HEADER_LENGTH;
+		for (byte[] operation : operations) {
+			length += 4 + (operation == null ? 0 : operation.length);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(operations.size());
+		for (byte[] operation : operations) {
+			if (operation == null) {
+				buffer.putInt(-1);
+			} else {
+				buffer.putInt(operation.length);
+				buffer.put(operation);
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * 拆开信封；
+	 *
+	 * @return 信封中的操作；不是格式完整的信封时返回 null；
+	 */
+	public static byte[][] unpack(byte[] bytes) {
+		if (bytes == null || bytes.length < HEADER_LENGTH) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (buffer.getInt() != MAGIC) {
+			return null;
+		}
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / 4) {
+			return null;
+		}
+		byte[][] operations = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			if (buffer.remaining() < 4) {
+				return null;
+			}
+			int length = buffer.getInt();
+			if (length == -1) {
+				continue;
+			}
+			if (length < 0 || length > buffer.remaining()) {
+				return null;
+			}
+			operations[i] = new byte[length];
+			buffer.get(operations[i]);
+		}
+		return buffer.hasRemaining() ? null : operations;
+	}
+
+	/**
+	 * 把一组命令中的信封展开；
+	 *
+	 * @param commands 命令列表，其中可以同时包含信封和普通命令；
+	 * @param batched  与命令一一对应，标记哪些命令是信封；只展开有标记的命令，有标记但格式不完整的命令按普通命令处理；
+	 * @return 展开结果；
+	 */
+	public static Expansion expand(byte[][] commands, boolean[] batched) {
+		int[] counts = new int[commands.length];
+		List<byte[]> flat = new ArrayList<>(commands.length);
+		boolean expanded = false;
+		for (int i = 0; i < commands.length; i++) {
+			byte[][] operations = batched[i] ? unpack(commands[i]) : null;
+			if (operations == null) {
+				counts[i] = -1;
+				flat.add(commands[i]);
+			} else {
+				counts[i] = operations.length;
+				for (byte[] operation : operations) {
+					flat.add(operation);
+				}
+				expanded = true;
+			}
+		}
+		return new Expansion(flat.toArray(new byte[flat.size()][]), counts, expanded);
+	}
+
+	/**
+	 * 一组命令展开后的结果，记录每个原始命令对应的操作数量，用于合并应答；
+	 */
+	public static final class Expansion {
+
+		private final byte[][] operations;
+
+		/**
+		 * 每个原始命令展开的操作数量；-1 表示原始命令不是信封；
+		 */
+		private final int[] counts;
+
+		private final boolean expanded;
+
+		private Expansion(byte[][] operations, int[] counts, boolean expanded) {
+			this.operations = operations;
+			this.counts = counts;
+			this.expanded = expanded;
+		}
+
+		/**
+		 * 展开后的操作列表；
+		 */
+		public byte[][] getOperations() {
+			return operations;
+		}
+
+		/**
+		 * 是否至少展开了一个信封；没有展开时 {@link #getOperations()} 与原始命令一致；
+		 */
+		public boolean isExpanded() {
+			return expanded;
+		}
+
+		/**
+		 * 第 index 个操作所属的原始命令的位置；
+		 */
+		public int[] origins() {
+			int[] origins = new int[operations.length];
+			int pos = 0;
+			for (int i = 0; i < counts.length; i++) {
+				int n = counts[i] < 0 ? 1 : counts[i];
+				for (int j = 0; j < n; j++) {
+					origins[pos++] = i;
+				}
+			}
+			return origins;
+		}
+
+		/**
+		 * 把展开后各个操作的应答合并回原始命令的应答；信封命令的应答也打包成信封；
+		 *
+		 * @param responses 与 {@link #getOperations()} 一一对应的应答；
+		 * @return 与原始命令一一对应的应答；
+		 */
+		public List<byte[]> repack(List<byte[]> responses) {
+			if (responses == null || responses.size() != operations.length) {
+				throw new IllegalArgumentException("The number of responses[" + (responses == null ? 0 : responses.size())
+						+ "] doesn't match the number of operations[" + operations.length + "]!");
+			}
+			List<byte[]> packed = new ArrayList<>(counts.length);
+			int pos = 0;
+			for (int count : counts) {
+				if (count < 0) {
+					packed.add(responses.get(pos++));
+				} else {
+					packed.add(pack(responses.subList(pos, pos + count)));
+					pos += count;
+				}
+			}
+			return packed;
+		}
+	}
+}
@@ -47,6 +47,21 @@ public class RSAKeyPairGenerator {
         PrivateKey prk = kp.getPrivate();
         saveToFile(id,puk,prk);
     }
+
+    /**
+     * Generate the key pair of the specified signature scheme for the process
+     * with id = <id>, using the default key size of the scheme
+     *
+     * @param id the id of the process to generate key
+     * @param scheme the signature scheme
+     * @throws Exception something goes wrong when writing the files
+     */
+    public void run(int id, SignatureScheme scheme) throws Exception {
+        KeyPair kp = scheme.newKeyPairGenerator().generateKeyPair();
+        PublicKey puk = kp.getPublic();
+        PrivateKey prk = kp.getPrivate();
+        saveToFile(id,puk,prk);
+    }
     
     private void saveToFile(int id, PublicKey puk, PrivateKey prk) throws Exception {
         String path = "config"+System.getProperty("file.separator")+"keys"+
@@ -72,9 +87,13 @@ public class RSAKeyPairGenerator {
 
     public static void main(String[] args){
         try{
-            new RSAKeyPairGenerator().run(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            if (args.length > 1 && !args[1].matches("\\d+")) {
+                new RSAKeyPairGenerator().run(Integer.parseInt(args[0]), SignatureScheme.of(args[1]));
+            } else {
+                new RSAKeyPairGenerator().run(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            }
         }catch(Exception e){
-            System.err.println("Use: RSAKeyPairGenerator <id> <key size>");
+            System.err.println("Use: RSAKeyPairGenerator <id> <key size | RSA | ECDSA | ED25519>");
         }
     }
 
@@ -64,7 +64,7 @@ public class ShutdownHookThread extends Thread {
             
             for (TimestampValuePair rv : c.getWriteSet()) {
                 if  (rv.getValue() != null && rv.getValue().length > 0)
-                    rv.setHashedValue(md.hash(rv.getValue()));
+                    rv.setHashedValue(tomLayer.computeBatchHash(rv.getValue()));
             }
             
             buffer.append("\n\n\t -- Consensus state: \n\n\t\tETS=" + c.getEts() + " \n\t\tWriteSet=["+ c.getWriteSet()
@@ -85,7 +85,7 @@ public class ShutdownHookThread extends Thread {
             
             for (TimestampValuePair rv : c.getWriteSet()) {
                 if  (rv.getValue() != null && rv.getValue().length > 0)
-                    rv.setHashedValue(md.hash(rv.getValue()));
+                    rv.setHashedValue(tomLayer.computeBatchHash(rv.getValue()));
             }
             
             buffer.append("\n\n\t -- Consensus state: \n\n\t\tETS=" + c.getEts() + " \n\t\tWriteSet=["+ c.getWriteSet()
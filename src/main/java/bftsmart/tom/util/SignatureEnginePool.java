@@ -0,0 +1,207 @@
+package bftsmart.tom.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.SignedObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程安全的签名引擎池；
+ * <p>
+ *
+ * 按密钥缓存已经初始化（initSign / initVerify）的 {@link Signature} 实例。{@link Signature#sign()} 和
+ * {@link Signature#verify(byte[])} 完成后引擎会恢复到初始化之后的状态，因此可以直接复用，避免每次签名都重新创建和初始化引擎；
+ * <p>
+ *
+ * 每个密钥缓存的空闲引擎数量有上限，并发度更高时临时创建的引擎在归还时被丢弃；
+ * <p>
+ *
+ * 缓存的密钥数量也有上限，超出时淘汰最久未使用的密钥的引擎，避免不断出示新公钥的客户端耗尽内存；
+ *
+ */
+public class SignatureEnginePool {
+
+	private static final int DEFAULT_MAX_IDLE_PER_KEY = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final int DEFAULT_MAX_KEYS = 1024;
+
+	private final int maxIdlePerKey;
+
+	private final int maxKeys;
+
+	/**
+	 * 按访问顺序排列的引擎队列，超出 {@link #maxKeys} 时淘汰最久未使用的密钥；
+	 */
+	private final Map<Key, EngineQueue> engines = new LinkedHashMap<Key, EngineQueue>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, EngineQueue> eldest) {
+			return size() > maxKeys;
+		}
+	};
+
+	public SignatureEnginePool() {
+		this(DEFAULT_MAX_IDLE_PER_KEY);
+	}
+
+	public SignatureEnginePool(int maxIdlePerKey) {
+		this(maxIdlePerKey, DEFAULT_MAX_KEYS);
+	}
+
+	/**
+	 * @param maxIdlePerKey 每个密钥缓存的空闲引擎数量上限；
+	 * @param maxKeys       缓存的密钥数量上限；
+	 */
+	public SignatureEnginePool(int maxIdlePerKey, int maxKeys) {
+		this.maxIdlePerKey = Math.max(1, maxIdlePerKey);
+		this.maxKeys = Math.max(1, maxKeys);
+	}
+
+	/**
+	 * 签名；
+	 *
+	 * @param key     私钥；
+	 * @param message 消息；
+	 * @return 签名；
+	 */
+	public byte[] sign(PrivateKey key, byte[] message) throws GeneralSecurityException {
+		EngineQueue queue = getQueue(key);
+		Signature engine = queue.poll();
+		if (engine == null) {
+			engine = SignatureScheme.forKey(key).newSignature();
+			engine.initSign(key);
+		}
+		engine.update(message);
+		byte[] signature = engine.sign();
+		queue.offer(engine);
+		return signature;
+	}
+
+	/**
+	 * 验证签名；
+	 *
+	 * @param key       公钥；
+	 * @param message   消息；
+	 * @param signature 签名；
+	 * @return 签名有效时返回 true；
+	 */
+	public boolean verify(PublicKey key, byte[] message, byte[] signature) throws GeneralSecurityException {
+		EngineQueue queue = getQueue(key);
+		Signature engine = queue.poll();
+		if (engine == null) {
+			engine = SignatureScheme.forKey(key).newSignature();
+			engine.initVerify(key);
+		}
+		engine.update(message);
+		boolean valid;
+		try {
+			valid = engine.verify(signature);
+		} catch (SignatureException e) {
+			// 格式错误的签名会使引擎处于不确定的状态，因此不再归还到池中；
+			return false;
+		}
+		queue.offer(engine);
+		return valid;
+	}
+
+	/**
+	 * 创建签名对象；
+	 *
+	 * @param obj 被签名的对象；
+	 * @param key 私钥；
+	 * @return
+	 */
+	public SignedObject sign(Serializable obj, PrivateKey key) throws GeneralSecurityException, IOException {
+		EngineQueue queue = getQueue(key);
+		Signature engine = queue.poll();
+		if (engine == null) {
+			engine = SignatureScheme.forKey(key).newSignature();
+		}
+		SignedObject so = new SignedObject(obj, key, engine);
+		queue.offer(engine);
+		return so;
+	}
+
+	/**
+	 * 验证签名对象；
+	 *
+	 * @param so  签名对象；
+	 * @param key 公钥；
+	 * @return 签名有效时返回 true；
+	 */
+	public boolean verify(SignedObject so, PublicKey key) throws GeneralSecurityException {
+		EngineQueue queue = getQueue(key);
+		Signature engine = queue.poll();
+		if (engine == null) {
+			engine = SignatureScheme.forKey(key).newSignature();
+		}
+		boolean valid;
+		try {
+			valid = so.verify(key, engine);
+		} catch (SignatureException e) {
+			return false;
+		}
+		queue.offer(engine);
+		return valid;
+	}
+
+	/**
+	 * 返回当前缓存了引擎的密钥数量；
+	 *
+	 * @return
+	 */
+	public int getKeyCount() {
+		synchronized (engines) {
+			return engines.size();
+		}
+	}
+
+	private EngineQueue getQueue(Key key) {
+		// 被淘汰的队列中仍在使用的引擎在归还时随队列一起被丢弃；
+		synchronized (engines) {
+			EngineQueue queue = engines.get(key);
+			if (queue == null) {
+				queue = new EngineQueue();
+				engines.put(key, queue);
+			}
+			return queue;
+		}
+	}
+
+	/**
+	 * 单个密钥的空闲引擎队列；
+	 */
+	private class EngineQueue {
+
+		private final Queue<Signature> idles = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger idleCount = new AtomicInteger(0);
+
+		Signature poll() {
+			Signature engine = idles.poll();
+			if (engine != null) {
+				idleCount.decrementAndGet();
+			}
+			return engine;
+		}
+
+		void offer(Signature engine) {
+			if (idleCount.incrementAndGet() > maxIdlePerKey) {
+				idleCount.decrementAndGet();
+				return;
+			}
+			idles.offer(engine);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package bftsmart.tom.util;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.Signature;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * 签名算法方案；
+ * <p>
+ *
+ * RSA 方案沿用 JDK 默认的 SHA1withRSA 实现，保持与已有部署的兼容；ECDSA 和 Ed25519 方案通过 BouncyCastle 提供者实现，
+ * 签名和验签的开销远小于 RSA；
+ * <p>
+ *
+ * 客户端请求的编解码要求签名长度固定，因此 ECDSA 采用 r||s 的定长编码（PLAIN-ECDSA）而不是 DER 编码；
+ *
+ */
+public enum SignatureScheme {
+
+	RSA("RSA", "SHA1withRSA", 1024, false),
+
+	ECDSA("EC", "SHA256withPLAIN-ECDSA", 256, true),
+
+	ED25519("Ed25519", "Ed25519", 255, true);
+
+	private static final Provider BC_PROVIDER = new BouncyCastleProvider();
+
+	private final String keyAlgorithm;
+
+	private final String signatureAlgorithm;
+
+	private final int defaultKeySize;
+
+	private final boolean bouncyCastle;
+
+	private SignatureScheme(String keyAlgorithm, String signatureAlgorithm, int defaultKeySize,
+			boolean bouncyCastle) {
+		this.keyAlgorithm = keyAlgorithm;
+		this.signatureAlgorithm = signatureAlgorithm;
+		this.defaultKeySize = defaultKeySize;
+		this.bouncyCastle = bouncyCastle;
+	}
+
+	public String getKeyAlgorithm() {
+		return keyAlgorithm;
+	}
+
+	public String getSignatureAlgorithm() {
+		return signatureAlgorithm;
+	}
+
+	public int getDefaultKeySize() {
+		return defaultKeySize;
+	}
+
+	public Signature newSignature() throws GeneralSecurityException {
+		return bouncyCastle ? Signature.getInstance(signatureAlgorithm, BC_PROVIDER)
+				: Signature.getInstance(signatureAlgorithm);
+	}
+
+	public KeyFactory newKeyFactory() throws GeneralSecurityException {
+		return bouncyCastle ? KeyFactory.getInstance(keyAlgorithm, BC_PROVIDER) : KeyFactory.getInstance(keyAlgorithm);
+	}
+
+	public KeyPairGenerator newKeyPairGenerator() throws GeneralSecurityException {
+		KeyPairGenerator keyGen = bouncyCastle ? KeyPairGenerator.getInstance(keyAlgorithm, BC_PROVIDER)
+				: KeyPairGenerator.getInstance(keyAlgorithm);
+		if (this != ED25519) {
+			keyGen.initialize(defaultKeySize);
+		}
+		return keyGen;
+	}
+
+	/**
+	 * 根据名称解析签名方案，名称不区分大小写；
+	 *
+	 * @param name 方案名称；为空时返回 {@link #RSA}；
+	 * @return
+	 */
+	public static SignatureScheme of(String name) {
+		if (name == null || name.trim().length() == 0) {
+			return RSA;
+		}
+		String n = name.trim();
+		for (SignatureScheme scheme : values()) {
+			if (scheme.name().equalsIgnoreCase(n) || scheme.keyAlgorithm.equalsIgnoreCase(n)) {
+				return scheme;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported signature scheme[" + name + "]!");
+	}
+
+	/**
+	 * 根据密钥的算法确定签名方案；
+	 *
+	 * @param key 公钥或私钥；
+	 * @return
+	 */
+	public static SignatureScheme forKey(Key key) {
+		String algorithm = key.getAlgorithm();
+		if ("RSA".equalsIgnoreCase(algorithm)) {
+			return RSA;
+		}
+		if ("EC".equalsIgnoreCase(algorithm) || "ECDSA".equalsIgnoreCase(algorithm)) {
+			return ECDSA;
+		}
+		if ("Ed25519".equalsIgnoreCase(algorithm) || "EdDSA".equalsIgnoreCase(algorithm)) {
+			return ED25519;
+		}
+		throw new IllegalArgumentException("Unsupported key algorithm[" + algorithm + "]!");
+	}
+}
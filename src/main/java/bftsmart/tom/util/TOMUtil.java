@@ -49,6 +49,8 @@ public class TOMUtil {
 
 	private static int signatureSize = -1;
 
+	private static final SignatureEnginePool SIGNATURE_ENGINES = new SignatureEnginePool();
+
 	public static int getSignatureSize(ViewTopology controller) {
 		if (signatureSize > 0) {
 			return signatureSize;
@@ -108,13 +110,8 @@ public class TOMUtil {
 	 */
 	public static byte[] signMessage(PrivateKey key, byte[] message) {
 		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-			signatureEngine.initSign(key);
-			signatureEngine.update(message);
-			
-			byte[] result = signatureEngine.sign();
-			return result;
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
+			return SIGNATURE_ENGINES.sign(key, message);
+		} catch (GeneralSecurityException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
 	}
@@ -132,11 +129,7 @@ public class TOMUtil {
 		boolean result = false;
 
 		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-
-			signatureEngine.initVerify(key);
-
-			result = verifySignature(signatureEngine, message, signature);
+			result = SIGNATURE_ENGINES.verify(key, message, signature);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -144,6 +137,36 @@ public class TOMUtil {
 		return result;
 	}
 
+	/**
+	 * Creates a signed object with a pooled signature engine.
+	 *
+	 * @param key the private key to be used to generate the signature
+	 * @param obj the object to be signed
+	 * @return the signed object
+	 */
+	public static SignedObject signObject(PrivateKey key, Serializable obj) {
+		try {
+			return SIGNATURE_ENGINES.sign(obj, key);
+		} catch (GeneralSecurityException | IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Verify the signature of a signed object with a pooled signature engine.
+	 *
+	 * @param key the public key to be used to verify the signature
+	 * @param so  the signed object
+	 * @return true if the signature is valid, false otherwise
+	 */
+	public static boolean verifySignedObject(PublicKey key, SignedObject so) {
+		try {
+			return SIGNATURE_ENGINES.verify(so, key);
+		} catch (GeneralSecurityException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Verify the signature of a message.
 	 *
@@ -0,0 +1,65 @@
+package test.bftsmart.clientsmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.clientsmanagement.ClientData;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class ClientDataTest {
+
+	/**
+	 * 窗口内提前到达的请求在缺失的序号到达之后按序取出；
+	 */
+	@Test
+	public void testHeldRequestsFollowTheGap() {
+		ClientData clientData = new ClientData(1001, null);
+		clientData.setLastMessageReceived(3);
+
+		assertTrue(clientData.holdRequest(request(6)));
+		assertTrue(clientData.holdRequest(request(5)));
+		assertFalse(clientData.holdRequest(request(5)));
+		assertTrue(clientData.holdRequest(request(8)));
+		assertTrue(clientData.pollHeldRequests().isEmpty());
+
+		clientData.setLastMessageReceived(4);
+		List<TOMMessage> ready = clientData.pollHeldRequests();
+		assertEquals(2, ready.size());
+		assertEquals(5, ready.get(0).getSequence());
+		assertEquals(6, ready.get(1).getSequence());
+		assertEquals(1, clientData.getHeldRequestsCount());
+	}
+
+	/**
+	 * 已经越过的序号不再被取出；
+	 */
+	@Test
+	public void testStaleHeldRequestsAreDropped() {
+		ClientData clientData = new ClientData(1001, null);
+		clientData.setLastMessageReceived(0);
+		clientData.holdRequest(request(2));
+		clientData.holdRequest(request(3));
+		clientData.holdRequest(request(5));
+
+		clientData.setLastMessageReceived(3);
+		assertTrue(clientData.pollHeldRequests().isEmpty());
+		assertEquals(1, clientData.getHeldRequestsCount());
+
+		clientData.setLastMessageReceived(4);
+		List<TOMMessage> ready = clientData.pollHeldRequests();
+		assertEquals(1, ready.size());
+		assertEquals(5, ready.get(0).getSequence());
+		assertEquals(0, clientData.getHeldRequestsCount());
+	}
+
+	private static TOMMessage request(int sequence) {
+		return new TOMMessage(1001, 0, sequence, sequence, new byte[] { (byte) sequence }, null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+	}
+}
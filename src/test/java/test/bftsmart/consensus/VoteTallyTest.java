@@ -0,0 +1,123 @@
+package test.bftsmart.consensus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import bftsmart.consensus.VoteTally;
+
+public class VoteTallyTest {
+
+	private static final byte[] A = new byte[] { 1, 2, 3 };
+
+	private static final byte[] B = new byte[] { 4, 5, 6 };
+
+	/**
+	 * 节点重新投票时替换此前的投票，旧值的票数相应减少；
+	 */
+	@Test
+	public void testReplaceVote() {
+		VoteTally tally = new VoteTally(4);
+		assertEquals(1, tally.vote(0, A));
+		assertEquals(2, tally.vote(1, A.clone()));
+		assertEquals(1, tally.vote(2, B));
+
+		assertEquals(2, tally.vote(1, B));
+		assertEquals(1, tally.count(A));
+		assertEquals(2, tally.count(B));
+		assertEquals(3, tally.votesCount());
+
+		// 改投 null 时不计入任何值；
+		assertEquals(0, tally.vote(2, null));
+		assertEquals(1, tally.count(B));
+		assertEquals(0, tally.count(null));
+		assertEquals(3, tally.votesCount());
+		assertEquals(1, tally.maxCount());
+	}
+
+	/**
+	 * 同一节点重复投相同的值不重复计票；
+	 */
+	@Test
+	public void testDuplicateSender() {
+		VoteTally tally = new VoteTally(4);
+		tally.vote(0, A);
+		assertEquals(1, tally.vote(0, A.clone()));
+		assertEquals(1, tally.vote(0, A));
+		assertEquals(1, tally.count(A));
+		assertEquals(1, tally.votesCount());
+		assertEquals(1, tally.maxCount());
+		assertEquals(1, tally.samePairs());
+	}
+
+	/**
+	 * 票数并列时，其中一个值失去选票后最大票数仍然由另一个值保持；
+	 */
+	@Test
+	public void testMaxCountWithTies() {
+		VoteTally tally = new VoteTally(4);
+		tally.vote(0, A);
+		tally.vote(1, A);
+		tally.vote(2, B);
+		tally.vote(3, B);
+		assertEquals(2, tally.maxCount());
+
+		tally.vote(0, B);
+		assertEquals(3, tally.maxCount());
+
+		tally.vote(0, null);
+		tally.vote(2, null);
+		assertEquals(1, tally.maxCount());
+
+		// null 的票数再多也不计入最大票数；
+		tally.vote(1, null);
+		tally.vote(3, null);
+		assertEquals(0, tally.maxCount());
+	}
+
+	/**
+	 * 相同值的有序节点对数量等于各值票数的平方和；
+	 */
+	@Test
+	public void testSamePairs() {
+		VoteTally tally = new VoteTally(5);
+		tally.vote(0, A);
+		tally.vote(1, A);
+		tally.vote(2, A);
+		tally.vote(3, B);
+		assertEquals(3 * 3 + 1, tally.samePairs());
+
+		tally.vote(2, B);
+		assertEquals(2 * 2 + 2 * 2, tally.samePairs());
+
+		tally.vote(4, null);
+		tally.vote(3, null);
+		assertEquals(2 * 2 + 1 + 2 * 2, tally.samePairs());
+	}
+
+	/**
+	 * 视图变更后按新位置重新计票，离开视图的节点的投票被丢弃；
+	 */
+	@Test
+	public void testRemap() {
+		VoteTally tally = new VoteTally(4);
+		tally.vote(0, A);
+		tally.vote(1, B);
+		tally.vote(2, B);
+		tally.vote(3, B);
+
+		// 位置 1 的节点离开视图，其它节点依次前移，新视图增加一个节点；
+		tally.remap(4, new int[] { 0, -1, 1, 2 });
+		assertEquals(3, tally.votesCount());
+		assertEquals(1, tally.count(A));
+		assertEquals(2, tally.count(B));
+		assertEquals(2, tally.maxCount());
+		assertEquals(1 + 2 * 2, tally.samePairs());
+
+		// 新位置上的投票可以被替换，新加入的节点可以投票；
+		assertEquals(3, tally.vote(0, B));
+		assertEquals(4, tally.vote(3, B));
+		assertEquals(0, tally.count(A));
+		assertEquals(4, tally.maxCount());
+	}
+}
@@ -0,0 +1,118 @@
+package test.bftsmart.leaderchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import bftsmart.tom.leaderchange.CertificateVerifier;
+
+public class CertificateVerifierTest {
+
+	/**
+	 * 并行执行的结果与检查的顺序一致，抛出异常的检查视为不通过；
+	 */
+	@Test
+	public void testVerifyAll() {
+		CertificateVerifier verifier = new CertificateVerifier(4);
+		try {
+			List<BooleanSupplier> checks = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				final int index = i;
+				checks.add(() -> {
+					if (index == 7) {
+						throw new IllegalStateException("test");
+					}
+					return index % 3 == 0;
+				});
+			}
+			boolean[] results = verifier.verifyAll(checks);
+			assertEquals(50, results.length);
+			for (int i = 0; i < results.length; i++) {
+				assertEquals(i != 7 && i % 3 == 0, results[i]);
+			}
+		} finally {
+			verifier.shutdown();
+		}
+	}
+
+	/**
+	 * 同一对象在同一执政期内只验证一次，不同的对象分别验证；
+	 */
+	@Test
+	public void testCached() {
+		CertificateVerifier verifier = new CertificateVerifier(1);
+		AtomicInteger verified = new AtomicInteger();
+		Object source = new Object();
+		String result = "valid";
+
+		assertSame(result, verifier.cached(1, 5, source, () -> {
+			verified.incrementAndGet();
+			return result;
+		}));
+		assertSame(result, verifier.cached(1, 5, source, () -> {
+			verified.incrementAndGet();
+			return "other";
+		}));
+		assertEquals(1, verified.get());
+
+		assertFalse(verifier.cached(1, 5, new Object(), () -> {
+			verified.incrementAndGet();
+			return false;
+		}));
+		assertTrue(verifier.cached(2, 5, source, () -> {
+			verified.incrementAndGet();
+			return true;
+		}));
+		assertEquals(3, verified.get());
+		assertEquals(3, verifier.getCachedCount());
+	}
+
+	/**
+	 * 同一发送者在同一执政期内发送的另一个对象即使内容相同也重新验证，不会得到之前的结果；
+	 */
+	@Test
+	public void testDifferentObjectVerifiedAgain() {
+		CertificateVerifier verifier = new CertificateVerifier(1);
+		AtomicInteger verified = new AtomicInteger();
+		String first = new String("collect");
+		String second = new String("collect");
+
+		assertTrue(verifier.cached(1, 5, first, () -> verified.incrementAndGet() > 0));
+		assertFalse(verifier.cached(1, 5, second, () -> verified.incrementAndGet() < 0));
+		assertEquals(2, verified.get());
+
+		// 两个对象的结果分别缓存；
+		assertTrue(verifier.cached(1, 5, first, () -> false));
+		assertFalse(verifier.cached(1, 5, second, () -> true));
+		assertEquals(2, verified.get());
+		assertEquals(2, verifier.getCachedCount());
+	}
+
+	/**
+	 * 清除不大于指定执政期的缓存；
+	 */
+	@Test
+	public void testRemoveUpTo() {
+		CertificateVerifier verifier = new CertificateVerifier(1);
+		Object source = new Object();
+		verifier.cached(1, 3, source, () -> true);
+		verifier.cached(1, 4, source, () -> true);
+		verifier.cached(2, 5, source, () -> true);
+
+		verifier.removeUpTo(4);
+		assertEquals(1, verifier.getCachedCount());
+
+		AtomicInteger verified = new AtomicInteger();
+		verifier.cached(1, 4, source, () -> verified.incrementAndGet() > 0);
+		verifier.cached(2, 5, source, () -> verified.incrementAndGet() > 0);
+		assertEquals(1, verified.get());
+	}
+}
@@ -0,0 +1,72 @@
+package test.bftsmart.leaderchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bftsmart.tom.leaderchange.LeaderLease;
+
+public class LeaderLeaseTest {
+
+	private static final int[] MEMBERS = { 0, 1, 2, 3 };
+
+	@Test
+	public void testQuorumOfGrants() throws InterruptedException {
+		LeaderLease lease = new LeaderLease(200);
+		long start = lease.renew(5);
+
+		assertFalse(lease.isHeld(5, 0, MEMBERS, 3));
+		lease.granted(1, 5, start);
+		assertFalse(lease.isHeld(5, 0, MEMBERS, 3));
+		// grants of another regency are ignored;
+		lease.granted(2, 4, start);
+		assertFalse(lease.isHeld(5, 0, MEMBERS, 3));
+		lease.granted(2, 5, start);
+		assertTrue(lease.isHeld(5, 0, MEMBERS, 3));
+		assertFalse(lease.isHeld(6, 0, MEMBERS, 3));
+
+		// expires without renewal;
+		Thread.sleep(250);
+		assertFalse(lease.isHeld(5, 0, MEMBERS, 3));
+
+		long renewed = lease.renew(5);
+		lease.granted(1, 5, renewed);
+		lease.granted(3, 5, renewed);
+		assertTrue(lease.isHeld(5, 0, MEMBERS, 3));
+
+		// a new regency drops all the grants;
+		lease.renew(6);
+		assertFalse(lease.isHeld(6, 0, MEMBERS, 3));
+	}
+
+	@Test
+	public void testRevoke() {
+		LeaderLease lease = new LeaderLease(1000);
+		long start = lease.renew(2);
+		lease.granted(1, 2, start);
+		lease.granted(2, 2, start);
+		assertTrue(lease.isHeld(2, 0, MEMBERS, 3));
+		assertTrue(lease.canGrant(2));
+
+		lease.revoke(3);
+		assertFalse(lease.canGrant(2));
+		assertTrue(lease.canGrant(3));
+		assertFalse(lease.isHeld(2, 0, MEMBERS, 3));
+	}
+
+	@Test
+	public void testProposeWait() {
+		LeaderLease lease = new LeaderLease(1000);
+		long wait = lease.remainingProposeWait(1);
+		assertTrue(wait > 1000L * 1000000L);
+		assertTrue(lease.remainingProposeWait(1) <= wait);
+
+		// the first regency has no previous leader;
+		assertEquals(0, lease.remainingProposeWait(0));
+
+		LeaderLease noWait = new LeaderLease(0);
+		assertEquals(0, noWait.remainingProposeWait(1));
+	}
+}
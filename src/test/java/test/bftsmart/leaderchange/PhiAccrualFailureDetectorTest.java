@@ -0,0 +1,98 @@
+package test.bftsmart.leaderchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import bftsmart.tom.leaderchange.PhiAccrualFailureDetector;
+
+public class PhiAccrualFailureDetectorTest {
+
+	/**
+	 * 到达间隔稳定时，phi 随着静默时间单调增长，并在超过阈值后判定失效；
+	 */
+	@Test
+	public void testSteadyArrivals() {
+		PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(8, 100, 10, 0, 1000);
+		long now = 0;
+		for (int i = 0; i < 200; i++) {
+			now += 100;
+			detector.heartbeat(1, now);
+		}
+
+		assertTrue(detector.phi(1, now + 100) < 1);
+		assertFalse(detector.isSuspected(1, now + 100));
+
+		double last = 0;
+		for (long elapsed = 100; elapsed <= 300; elapsed += 20) {
+			double phi = detector.phi(1, now + elapsed);
+			assertTrue(phi >= last);
+			last = phi;
+		}
+		assertTrue(detector.isSuspected(1, now + 300));
+	}
+
+	/**
+	 * 到达间隔抖动较大时，同样的静默时间对应较小的 phi；
+	 */
+	@Test
+	public void testJitterDelaysSuspicion() {
+		PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(8, 100, 10, 0, 1000);
+		long steady = 0;
+		long jittery = 0;
+		for (int i = 0; i < 200; i++) {
+			steady += 100;
+			jittery += (i % 2 == 0) ? 20 : 180;
+			detector.heartbeat(1, steady);
+			detector.heartbeat(2, jittery);
+		}
+		assertTrue(detector.phi(2, jittery + 250) < detector.phi(1, steady + 250));
+		assertTrue(detector.isSuspected(1, steady + 250));
+		assertFalse(detector.isSuspected(2, jittery + 250));
+	}
+
+	/**
+	 * 可接受的停顿时长推迟判定；
+	 */
+	@Test
+	public void testAcceptablePause() {
+		PhiAccrualFailureDetector strict = new PhiAccrualFailureDetector(8, 100, 10, 0, 1000);
+		PhiAccrualFailureDetector tolerant = new PhiAccrualFailureDetector(8, 100, 10, 1000, 1000);
+		long now = 0;
+		for (int i = 0; i < 200; i++) {
+			now += 100;
+			strict.heartbeat(1, now);
+			tolerant.heartbeat(1, now);
+		}
+		assertTrue(strict.isSuspected(1, now + 500));
+		assertFalse(tolerant.isSuspected(1, now + 500));
+		assertTrue(tolerant.isSuspected(1, now + 1500));
+	}
+
+	/**
+	 * 首次到达后以预估间隔初始化，从未到达的节点不被怀疑；
+	 */
+	@Test
+	public void testFirstArrival() {
+		PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(8, 100, 10, 0, 1000);
+		assertEquals(0.0, detector.phi(1, 5000), 0.0);
+		assertFalse(detector.isSuspected(1, 5000));
+
+		detector.heartbeat(1, 0);
+		assertFalse(detector.isSuspected(1, 1000));
+		assertTrue(detector.isSuspected(1, 10000));
+
+		detector.heartbeat(2, 0);
+		Map<Integer, Double> phis = detector.getPhis(500);
+		assertEquals(2, phis.size());
+		assertTrue(phis.containsKey(1));
+		assertTrue(phis.containsKey(2));
+
+		detector.remove(1);
+		assertEquals(0.0, detector.phi(1, 10000), 0.0);
+	}
+}
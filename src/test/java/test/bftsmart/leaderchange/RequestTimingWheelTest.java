@@ -0,0 +1,104 @@
+package test.bftsmart.leaderchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.leaderchange.RequestTimingWheel;
+
+public class RequestTimingWheelTest {
+
+	@Test
+	public void testExpired() {
+		RequestTimingWheel wheel = new RequestTimingWheel(8, 10);
+		// spread over several rounds of the wheel
+		for (int i = 0; i < 20; i++) {
+			wheel.add(request(20 - i, i, 1000 + i * 30));
+		}
+		assertEquals(20, wheel.size());
+
+		List<TOMMessage> expired = wheel.expired(1000 + 10 * 30, 100);
+		// received at 1000 .. 1180
+		assertEquals(7, expired.size());
+		for (int i = 0; i < expired.size(); i++) {
+			assertTrue(expired.get(i).receptionTime < 1200);
+		}
+		// expired requests stay watched until they are removed
+		assertEquals(7, wheel.expired(1000 + 10 * 30, 100).size());
+		// a longer timeout only gets the older ones
+		assertEquals(4, wheel.expired(1000 + 10 * 30, 200).size());
+
+		assertTrue(wheel.remove(request(20, 0, 0)));
+		assertEquals(6, wheel.expired(1000 + 10 * 30, 100).size());
+		assertEquals(19, wheel.size());
+	}
+
+	/**
+	 * 游标按时间推进，超时的请求按照收到的时间的先后排列，不需要排序；
+	 */
+	@Test
+	public void testExpiredInOrder() {
+		RequestTimingWheel wheel = new RequestTimingWheel(8, 10);
+		assertTrue(wheel.expired(1000, 100).isEmpty());
+		for (int i = 0; i < 10; i++) {
+			wheel.add(request(10 - i, i, 1000 + i * 5));
+		}
+		assertEquals(6, wheel.expired(1130, 100).size());
+		List<TOMMessage> expired = wheel.expired(1150, 100);
+		assertEquals(10, expired.size());
+		for (int i = 0; i < expired.size(); i++) {
+			assertEquals(1000 + i * 5, expired.get(i).receptionTime);
+		}
+	}
+
+	/**
+	 * 收到的时间已经被游标越过的请求直接超时；
+	 */
+	@Test
+	public void testAddBehindCursor() {
+		RequestTimingWheel wheel = new RequestTimingWheel(8, 10);
+		wheel.add(request(1, 1, 1000));
+		assertEquals(1, wheel.expired(1200, 100).size());
+
+		TOMMessage late = request(2, 1, 1050);
+		wheel.add(late);
+		wheel.add(request(3, 1, 1150));
+		List<TOMMessage> expired = wheel.expired(1200, 100);
+		assertEquals(2, expired.size());
+		assertEquals(late, expired.get(1));
+
+		assertTrue(wheel.remove(late));
+		assertEquals(1, wheel.expired(1200, 100).size());
+		// 游标长时间没有推进时检查所有槽位一次；
+		assertEquals(2, wheel.expired(100000, 100).size());
+	}
+
+	/**
+	 * 取消时使用的是与加入时相等的另一个请求对象（例如共识决议中的请求）；
+	 */
+	@Test
+	public void testRemoveEqualRequest() {
+		RequestTimingWheel wheel = new RequestTimingWheel(8, 10);
+		TOMMessage watched = request(1, 1, 1000);
+		wheel.add(watched);
+		wheel.add(request(1, 1, 5000));
+		assertEquals(1, wheel.size());
+
+		assertTrue(wheel.remove(request(1, 1, 0)));
+		assertFalse(wheel.remove(watched));
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.expired(10000, 100).isEmpty());
+	}
+
+	private static TOMMessage request(int sender, int sequence, long receptionTime) {
+		TOMMessage request = new TOMMessage(sender, 0, sequence, 0, new byte[0], null, 0, TOMMessageType.ORDERED_REQUEST);
+		request.receptionTime = receptionTime;
+		return request;
+	}
+}
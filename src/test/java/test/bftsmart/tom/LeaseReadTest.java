@@ -0,0 +1,149 @@
+package test.bftsmart.tom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.communication.client.ReplyReceiver;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.reconfiguration.util.HostsConfig;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.MemoryBasedViewStorage;
+import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.tom.ServiceProxy;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class LeaseReadTest {
+
+	private static final int[] ALL = { 0, 1, 2, 3 };
+
+	private static final byte[] STALE = { 1 };
+
+	private static final byte[] FRESH = { 2 };
+
+	/**
+	 * BFT 模式下不启用租约读；
+	 */
+	@Test
+	public void testDisabledInBFT() {
+		assertFalse(config(true).isLeaseReads());
+		assertTrue(config(false).isLeaseReads());
+	}
+
+	/**
+	 * BFT 模式下租约读按有序请求执行，拜占庭领导者和落后的跟随者一致的旧值不被接受；
+	 */
+	@Test
+	public void testLaggingFollowerInBFT() throws Exception {
+		RecordingCommunication communication = new RecordingCommunication();
+		TestProxy proxy = new TestProxy(true, communication);
+		ExecutorService client = Executors.newSingleThreadExecutor();
+		try {
+			Future<byte[]> read = client.submit(() -> proxy.invokeLeaseRead(new byte[] { 9 }));
+			TOMMessage request = communication.sent.poll(5, TimeUnit.SECONDS);
+			assertEquals(TOMMessageType.ORDERED_REQUEST, request.getReqType());
+
+			// 领导者 0 和没有执行最近共识的跟随者 1 以租约读应答旧值；
+			proxy.replyReceived(reply(0, 0, request, TOMMessageType.LEASE_READ_REQUEST, STALE));
+			proxy.replyReceived(reply(1, 0, request, TOMMessageType.LEASE_READ_REQUEST, STALE));
+			assertFalse(read.isDone());
+
+			proxy.replyReceived(reply(2, 0, request, TOMMessageType.ORDERED_REQUEST, FRESH));
+			proxy.replyReceived(reply(3, 0, request, TOMMessageType.ORDERED_REQUEST, FRESH));
+			assertArrayEquals(FRESH, read.get(5, TimeUnit.SECONDS));
+		} finally {
+			client.shutdownNow();
+		}
+	}
+
+	/**
+	 * CFT 模式下只接受自称领导者的节点的应答，落后的跟随者的应答被忽略；
+	 */
+	@Test
+	public void testLaggingFollowerInCFT() throws Exception {
+		RecordingCommunication communication = new RecordingCommunication();
+		TestProxy proxy = new TestProxy(false, communication);
+		ExecutorService client = Executors.newSingleThreadExecutor();
+		try {
+			Future<byte[]> read = client.submit(() -> proxy.invokeLeaseRead(new byte[] { 9 }));
+			TOMMessage request = communication.sent.poll(5, TimeUnit.SECONDS);
+			assertEquals(TOMMessageType.LEASE_READ_REQUEST, request.getReqType());
+
+			proxy.replyReceived(reply(1, 0, request, TOMMessageType.LEASE_READ_REQUEST, STALE));
+			assertFalse(read.isDone());
+
+			proxy.replyReceived(reply(0, 0, request, TOMMessageType.LEASE_READ_REQUEST, FRESH));
+			assertArrayEquals(FRESH, read.get(5, TimeUnit.SECONDS));
+			// 没有回退为有序请求；
+			assertNull(communication.sent.poll());
+		} finally {
+			client.shutdownNow();
+		}
+	}
+
+	private static TOMConfiguration config(boolean bft) {
+		Properties properties = new Properties();
+		properties.setProperty("system.bft", String.valueOf(bft));
+		properties.setProperty("system.totalordermulticast.leaseReads", "true");
+		return new TOMConfiguration(1001, properties, new HostsConfig());
+	}
+
+	private static TOMMessage reply(int sender, int leader, TOMMessage request, TOMMessageType type,
+			byte[] content) {
+		TOMMessage reply = new TOMMessage(sender, request.getSession(), request.getSequence(),
+				request.getOperationId(), content, null, 0, type);
+		reply.setLeader(leader);
+		return reply;
+	}
+
+	private static class TestProxy extends ServiceProxy {
+
+		private TestProxy(boolean bft, CommunicationSystemClientSide communication) {
+			super(new ClientViewController(config(bft),
+					new MemoryBasedViewStorage(new View(0, ALL, 1, new NodeNetwork[ALL.length]))), communication,
+					null, null);
+			setInvokeTimeout(5);
+		}
+	}
+
+	private static class RecordingCommunication implements CommunicationSystemClientSide {
+
+		private final BlockingQueue<TOMMessage> sent = new LinkedBlockingQueue<>();
+
+		@Override
+		public void send(boolean sign, int[] targets, TOMMessage sm) {
+			sent.add(sm);
+		}
+
+		@Override
+		public void setReplyReceiver(ReplyReceiver trr) {
+		}
+
+		@Override
+		public void sign(TOMMessage sm) {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void updateConnections() {
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package test.bftsmart.tom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.communication.client.ReplyReceiver;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.reconfiguration.util.HostsConfig;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.MemoryBasedViewStorage;
+import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.tom.TOMSender;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class TOMSenderTest {
+
+	private static final int[] ALL = { 0, 1, 2, 3 };
+
+	/**
+	 * 没有已知的领导者时发送给所有节点；
+	 */
+	@Test
+	public void testHintUnset() {
+		TestSender sender = new TestSender(true);
+		assertArrayEquals(ALL, sender.orderedTargets());
+
+		// 少于 f+1 个应答报告同一个领导者时不记录；
+		sender.update(reply(0, 2), reply(1, 3), null, reply(3, -1));
+		assertArrayEquals(ALL, sender.orderedTargets());
+	}
+
+	/**
+	 * f+1 个应答报告同一个领导者时发送给领导者及其后的 f 个节点；
+	 */
+	@Test
+	public void testHintSet() {
+		TestSender sender = new TestSender(true);
+		sender.update(reply(0, 3), null, reply(2, 3), reply(3, 1));
+		assertArrayEquals(new int[] { 3, 0 }, sender.orderedTargets());
+		assertEquals(3, sender.leader());
+
+		// 清除后重新发送给所有节点；
+		sender.clear();
+		assertArrayEquals(ALL, sender.orderedTargets());
+		assertEquals(-1, sender.leader());
+
+		// 未开启向领导者发送时忽略已知的领导者；
+		TestSender broadcast = new TestSender(false);
+		broadcast.update(reply(0, 3), reply(1, 3), reply(2, 3), null);
+		assertArrayEquals(ALL, broadcast.orderedTargets());
+	}
+
+	/**
+	 * 视图变更后之前记录的领导者失效；
+	 */
+	@Test
+	public void testHintStale() {
+		TestSender sender = new TestSender(true);
+		sender.update(reply(0, 1), reply(1, 1), null, null);
+		assertArrayEquals(new int[] { 1, 2 }, sender.orderedTargets());
+
+		int[] processes = { 0, 1, 2, 3, 4 };
+		sender.getViewManager().reconfigureTo(new View(1, processes, 1, new NodeNetwork[processes.length]));
+		assertEquals(-1, sender.leader());
+		assertArrayEquals(processes, sender.orderedTargets());
+
+		// 回到记录领导者时的视图也不再使用；
+		sender.getViewManager().reconfigureTo(new View(0, ALL, 1, new NodeNetwork[ALL.length]));
+		assertArrayEquals(ALL, sender.orderedTargets());
+	}
+
+	private static TOMMessage reply(int sender, int leader) {
+		TOMMessage reply = new TOMMessage(sender, 0, 0, 0, new byte[0], null, 0, TOMMessageType.ORDERED_REQUEST);
+		reply.setLeader(leader);
+		return reply;
+	}
+
+	private static class TestSender extends TOMSender {
+
+		private TestSender(boolean leaderDirected) {
+			Properties properties = new Properties();
+			properties.setProperty("system.totalordermulticast.leaderDirected", String.valueOf(leaderDirected));
+			TOMConfiguration config = new TOMConfiguration(1001, properties, new HostsConfig());
+			View view = new View(0, ALL, 1, new NodeNetwork[ALL.length]);
+			init(new ClientViewController(config, new MemoryBasedViewStorage(view)), new NoopCommunication());
+		}
+
+		private int[] orderedTargets() {
+			return getOrderedTargets();
+		}
+
+		private void update(TOMMessage... replies) {
+			updateLeaderHint(replies);
+		}
+
+		private int leader() {
+			return getLeaderHint();
+		}
+
+		private void clear() {
+			clearLeaderHint();
+		}
+
+		@Override
+		public void replyReceived(TOMMessage reply) {
+		}
+	}
+
+	private static class NoopCommunication implements CommunicationSystemClientSide {
+
+		@Override
+		public void send(boolean sign, int[] targets, TOMMessage sm) {
+		}
+
+		@Override
+		public void setReplyReceiver(ReplyReceiver trr) {
+		}
+
+		@Override
+		public void sign(TOMMessage sm) {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void updateConnections() {
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import bftsmart.consensus.Consensus;
+import bftsmart.consensus.Decision;
+import bftsmart.tom.core.ConsensusWindow;
+
+public class ConsensusWindowTest {
+
+	/**
+	 * 同一 cid 总是返回同一个实例；槽位冲突的实例保存在溢出表中，互不影响；
+	 */
+	@Test
+	public void testSlotCollision() {
+		ConsensusWindow window = new ConsensusWindow(100, cid -> new Consensus(null, new Decision(cid)));
+		assertEquals(128, window.size());
+
+		Consensus first = window.getOrCreate(5);
+		Consensus collided = window.getOrCreate(5 + window.size());
+		assertSame(first, window.getOrCreate(5));
+		assertSame(collided, window.get(5 + window.size()));
+		assertEquals(5 + window.size(), collided.getId());
+		assertEquals(1, window.getOverflowCount());
+
+		assertSame(first, window.remove(5));
+		assertNull(window.get(5));
+		assertSame(collided, window.get(5 + window.size()));
+		assertSame(collided, window.remove(5 + window.size()));
+		assertEquals(0, window.getOverflowCount());
+	}
+
+	@Test
+	public void testRemoveRange() {
+		ConsensusWindow window = new ConsensusWindow(64, cid -> new Consensus(null, new Decision(cid)));
+		for (int cid = 0; cid < 40; cid++) {
+			window.getOrCreate(cid);
+		}
+		window.getOrCreate(1000);
+
+		window.removeRange(0, 30);
+		assertNull(window.get(29));
+		assertEquals(30, window.get(30).getId());
+
+		window.removeRange(30, 2000);
+		assertNull(window.get(39));
+		assertNull(window.get(1000));
+	}
+}
@@ -0,0 +1,72 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.DefaultReplicaScheduler;
+
+public class DefaultReplicaSchedulerTest {
+
+	/**
+	 * 周期任务抛出异常后仍然继续执行；
+	 */
+	@Test
+	public void testPeriodicTaskSurvivesError() throws InterruptedException {
+		DefaultReplicaScheduler scheduler = new DefaultReplicaScheduler(0);
+		try {
+			CountDownLatch runs = new CountDownLatch(3);
+			ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(() -> {
+				runs.countDown();
+				throw new IllegalStateException("test");
+			}, 0, 10, TimeUnit.MILLISECONDS);
+			assertTrue(runs.await(5, TimeUnit.SECONDS));
+			future.cancel(false);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * 取消的任务立即从队列中移除；
+	 */
+	@Test
+	public void testCancelRemovesTask() {
+		DefaultReplicaScheduler scheduler = new DefaultReplicaScheduler(0);
+		try {
+			AtomicInteger executed = new AtomicInteger();
+			ScheduledFuture<?>[] futures = new ScheduledFuture<?>[100];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = scheduler.schedule(executed::incrementAndGet, 1, TimeUnit.HOURS);
+			}
+			assertEquals(100, scheduler.getQueuedCount());
+			for (ScheduledFuture<?> future : futures) {
+				future.cancel(false);
+			}
+			assertEquals(0, scheduler.getQueuedCount());
+			assertEquals(0, executed.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * 关闭之后提交的任务被忽略，不抛出异常；
+	 */
+	@Test
+	public void testScheduleAfterShutdown() throws InterruptedException {
+		DefaultReplicaScheduler scheduler = new DefaultReplicaScheduler(0);
+		scheduler.shutdown();
+
+		AtomicInteger executed = new AtomicInteger();
+		scheduler.schedule(executed::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+		Thread.sleep(50);
+		assertEquals(0, executed.get());
+	}
+}
@@ -0,0 +1,74 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.tom.core.OutOfContextBuffer;
+
+public class OutOfContextBufferTest {
+
+	@Test
+	public void testIndexedByCid() {
+		OutOfContextBuffer buffer = new OutOfContextBuffer(0);
+		ConsensusMessage propose = message(MessageFactory.PROPOSE, 5, 0, 100);
+		ConsensusMessage write = message(MessageFactory.WRITE, 5, 1, 32);
+		ConsensusMessage accept = message(MessageFactory.ACCEPT, 5, 2, 32);
+		assertTrue(buffer.add(propose));
+		assertTrue(buffer.add(write));
+		assertTrue(buffer.add(accept));
+		assertTrue(buffer.add(message(MessageFactory.WRITE, 6, 1, 32)));
+		assertEquals(4, buffer.getBufferedMessages());
+
+		assertSame(propose, buffer.takePropose(5));
+		assertFalse(buffer.hasPropose(5));
+		List<ConsensusMessage> messages = buffer.takeMessages(5);
+		assertEquals(2, messages.size());
+		assertSame(write, messages.get(0));
+		assertSame(accept, messages.get(1));
+		assertNull(buffer.takeMessages(5));
+		assertTrue(buffer.hasMessages(6));
+
+		buffer.removeUpTo(6);
+		assertEquals(0, buffer.getBufferedMessages());
+		assertEquals(0, buffer.getBufferedBytes());
+	}
+
+	/**
+	 * 超出预算时先丢弃该节点最远共识的消息，不影响其它节点；
+	 */
+	@Test
+	public void testPeerBudget() {
+		OutOfContextBuffer buffer = new OutOfContextBuffer(1000);
+		assertTrue(buffer.add(message(MessageFactory.WRITE, 10, 0, 400)));
+		assertTrue(buffer.add(message(MessageFactory.WRITE, 20, 0, 400)));
+		assertTrue(buffer.add(message(MessageFactory.WRITE, 20, 1, 400)));
+
+		// the farthest message of proc 0 is evicted for a nearer one
+		assertTrue(buffer.add(message(MessageFactory.WRITE, 15, 0, 400)));
+		assertTrue(buffer.hasMessages(10));
+		assertTrue(buffer.hasMessages(15));
+		assertEquals(1, buffer.getDroppedMessages());
+		// the message of cid 20 from proc 1 is kept
+		List<ConsensusMessage> kept = buffer.getMessages(20);
+		assertEquals(1, kept.size());
+		assertEquals(1, kept.get(0).getSender());
+
+		// a message farther than everything buffered for proc 0 is dropped
+		assertFalse(buffer.add(message(MessageFactory.WRITE, 30, 0, 400)));
+		assertEquals(2, buffer.getDroppedMessages());
+		assertTrue(buffer.getBufferedBytes(0) <= 1000);
+	}
+
+	private static ConsensusMessage message(int type, int cid, int sender, int size) {
+		return new ConsensusMessage(type, cid, 0, sender, new byte[size]);
+	}
+}
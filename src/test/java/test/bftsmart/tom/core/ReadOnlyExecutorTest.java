@@ -0,0 +1,134 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.ReadOnlyExecutor;
+
+public class ReadOnlyExecutorTest {
+
+	/**
+	 * 单线程执行时，各客户端的请求轮流执行，且同一客户端的请求保持提交顺序；
+	 */
+	@Test
+	public void testRoundRobinAmongClients() throws InterruptedException {
+		ReadOnlyExecutor executor = new ReadOnlyExecutor(1, 100);
+		try {
+			CountDownLatch blocker = new CountDownLatch(1);
+			List<String> executed = Collections.synchronizedList(new ArrayList<>());
+			// occupies the only worker until all the requests are queued;
+			assertTrue(executor.submit(9, () -> await(blocker)));
+			waitForQueue(executor);
+
+			for (int i = 0; i < 3; i++) {
+				final int seq = i;
+				assertTrue(executor.submit(1, () -> executed.add("1-" + seq)));
+			}
+			for (int i = 0; i < 3; i++) {
+				final int seq = i;
+				assertTrue(executor.submit(2, () -> executed.add("2-" + seq)));
+			}
+			assertEquals(6, executor.getQueueDepth());
+
+			// the last request of client 2 is executed last;
+			CountDownLatch done = new CountDownLatch(1);
+			assertTrue(executor.submit(2, done::countDown));
+			blocker.countDown();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+
+			assertEquals(6, executed.size());
+			for (int i = 0; i < 3; i++) {
+				assertEquals("1-" + i, executed.get(2 * i));
+				assertEquals("2-" + i, executed.get(2 * i + 1));
+			}
+			assertEquals(7, executor.getMaxQueueDepth());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testBoundedQueue() throws InterruptedException {
+		ReadOnlyExecutor executor = new ReadOnlyExecutor(1, 2);
+		try {
+			CountDownLatch blocker = new CountDownLatch(1);
+			assertTrue(executor.submit(1, () -> await(blocker)));
+			waitForQueue(executor);
+
+			assertTrue(executor.submit(1, () -> {
+			}));
+			assertTrue(executor.submit(2, () -> {
+			}));
+			assertFalse(executor.submit(3, () -> {
+			}));
+			assertEquals(1, executor.getRejectedCount());
+
+			blocker.countDown();
+			waitForQueue(executor);
+			assertTrue(executor.submit(3, () -> {
+			}));
+		} finally {
+			executor.shutdown();
+		}
+		assertFalse(executor.submit(4, () -> {
+		}));
+	}
+
+	/**
+	 * 队列已满时在提交线程中执行拒绝任务，被拒绝的请求不会执行；
+	 */
+	@Test
+	public void testRejectionWhenFull() throws InterruptedException {
+		ReadOnlyExecutor executor = new ReadOnlyExecutor(1, 1);
+		try {
+			CountDownLatch blocker = new CountDownLatch(1);
+			assertTrue(executor.submit(1, () -> await(blocker)));
+			waitForQueue(executor);
+			assertTrue(executor.submit(1, () -> {
+			}, () -> fail("Queued request rejected!")));
+
+			AtomicBoolean executed = new AtomicBoolean();
+			List<Thread> rejectedBy = new ArrayList<>();
+			assertFalse(executor.submit(2, () -> executed.set(true), () -> rejectedBy.add(Thread.currentThread())));
+			assertEquals(1, rejectedBy.size());
+			assertSame(Thread.currentThread(), rejectedBy.get(0));
+			assertEquals(1, executor.getRejectedCount());
+
+			CountDownLatch done = new CountDownLatch(1);
+			blocker.countDown();
+			waitForQueue(executor);
+			assertTrue(executor.submit(2, done::countDown, () -> fail("Request rejected after the queue drained!")));
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertFalse(executed.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void waitForQueue(ReadOnlyExecutor executor) throws InterruptedException {
+		for (int i = 0; i < 500 && executor.getQueueDepth() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, executor.getQueueDepth());
+	}
+}
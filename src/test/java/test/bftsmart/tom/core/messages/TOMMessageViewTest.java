@@ -0,0 +1,184 @@
+package test.bftsmart.tom.core.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.core.messages.TOMMessageView;
+import bftsmart.tom.util.BatchReader;
+
+public class TOMMessageViewTest {
+
+	private static final int MESSAGES = 100;
+
+	private static final int CONTENT = 4096;
+
+	private static final int ROUNDS = 20;
+
+	@Test
+	public void testSameBytesAsStreams() throws Exception {
+		TOMMessage message = new TOMMessage(7, 3, 11, 2, new byte[] { 1, 2, 3 }, null, 5,
+				TOMMessageType.ORDERED_REQUEST);
+		message.setReplyServer(1);
+		message.setOperationBatch(true);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		message.wExternal(dos);
+		dos.flush();
+		byte[] bytes = TOMMessage.messageToBytes(message);
+		assertTrue(Arrays.equals(baos.toByteArray(), bytes));
+		assertEquals(bytes.length, message.getSerializedLength());
+
+		TOMMessageView view = new TOMMessageView().wrap(ByteBuffer.wrap(bytes), 0);
+		assertEquals(7, view.getSender());
+		assertEquals(5, view.getViewID());
+		assertEquals(TOMMessageType.ORDERED_REQUEST, view.getReqType());
+		assertEquals(3, view.getSession());
+		assertEquals(11, view.getSequence());
+		assertEquals(2, view.getOperationId());
+		assertEquals(1, view.getReplyServer());
+		assertTrue(view.isOperationBatch());
+		assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), view.getContent());
+		assertEquals(-1, view.getViewContentLength());
+
+		TOMMessage copy = view.toMessage();
+		assertEquals(message, copy);
+		assertTrue(copy.isOperationBatch());
+		assertTrue(Arrays.equals(message.getContent(), copy.getContent()));
+	}
+
+	@Test
+	public void testContentView() throws Exception {
+		TOMMessage message = new TOMMessage(7, 3, 11, 2, new byte[] { 1, 2, 3 }, null, 5,
+				TOMMessageType.ORDERED_REQUEST);
+		ByteBuffer batch = ByteBuffer.wrap(TOMMessage.messageToBytes(message));
+
+		TOMMessage read = new TOMMessage();
+		read.rExternalView(batch);
+		assertEquals(0, batch.remaining());
+		ByteBuffer view = read.getContentView();
+		assertTrue(view.isReadOnly());
+		assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), view);
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, read.getContent()));
+		assertTrue(read.getContent() == read.getContent());
+		assertTrue(Arrays.equals(TOMMessage.messageToBytes(message), TOMMessage.messageToBytes(read)));
+	}
+
+	@Test
+	public void testTruncated() {
+		byte[] bytes = TOMMessage.messageToBytes(
+				new TOMMessage(1, 0, 0, 0, new byte[16], null, 0, TOMMessageType.ORDERED_REQUEST));
+		try {
+			new TOMMessageView().wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1)), 0);
+			fail("A truncated message is accepted!");
+		} catch (IOException e) {
+		}
+		try {
+			new TOMMessage().rExternal(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1)));
+			fail("A truncated message is accepted!");
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * 从共识值中读取请求时内容和序列化字节都是共识值的视图，按需才复制；
+	 */
+	@Test
+	public void testBatchReaderKeepsViews() {
+		TOMMessage message = new TOMMessage(7, 3, 11, 2, new byte[] { 1, 2, 3 }, null, 5,
+				TOMMessageType.ORDERED_REQUEST);
+		message.setOperationBatch(true);
+		byte[] bytes = TOMMessage.messageToBytes(message);
+
+		TOMMessage[] requests = new BatchReader(batch(bytes, bytes), false).deserialiseRequests(null);
+		assertEquals(2, requests.length);
+		for (TOMMessage request : requests) {
+			assertEquals(message, request);
+			assertTrue(request.isOperationBatch());
+			assertEquals(ByteBuffer.wrap(bytes), request.getSerializedView());
+			assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), request.getContentView());
+			assertTrue(Arrays.equals(bytes, request.getSerializedMessage()));
+			assertTrue(request.getSerializedMessage() == request.getSerializedMessage());
+			assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, request.getContent()));
+		}
+
+		// 长度与消息不符的请求被丢弃；
+		byte[] padded = Arrays.copyOf(bytes, bytes.length + 1);
+		requests = new BatchReader(batch(padded, bytes), false).deserialiseRequests(null);
+		assertNull(requests[0]);
+		assertEquals(message, requests[1]);
+	}
+
+	/**
+	 * 读取共识值中的请求不应复制请求的内容；
+	 */
+	@Test
+	public void testBatchReaderDoesNotCopy() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		byte[][] messages = new byte[MESSAGES][];
+		for (int i = 0; i < MESSAGES; i++) {
+			messages[i] = TOMMessage.messageToBytes(
+					new TOMMessage(i, 0, i, i, new byte[CONTENT], null, 0, TOMMessageType.ORDERED_REQUEST));
+		}
+		byte[] batch = batch(messages);
+
+		long checksum = read(batch);
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for (int round = 0; round < ROUNDS; round++) {
+			checksum += read(batch);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		assertTrue(checksum > 0);
+		// a copy of the contents alone would take ROUNDS * MESSAGES * CONTENT bytes;
+		assertTrue("Allocated " + allocated + " bytes", allocated < ROUNDS * MESSAGES * CONTENT / 4);
+	}
+
+	private static long read(byte[] batch) {
+		long checksum = 0;
+		for (TOMMessage request : new BatchReader(batch, false).deserialiseRequests(null)) {
+			checksum += request.getSender() + request.getSequence() + request.getContentView().remaining();
+		}
+		return checksum;
+	}
+
+	/**
+	 * 按照 {@link BatchReader} 的格式组装不带随机数和签名的共识值；
+	 */
+	private static byte[] batch(byte[]... messages) {
+		int size = 8 + 4 + 4 + 4;
+		for (byte[] message : messages) {
+			size += 4 + message.length;
+		}
+		ByteBuffer batch = ByteBuffer.allocate(size);
+		batch.putLong(1000);
+		batch.putInt(0);
+		batch.putInt(0);
+		batch.putInt(messages.length);
+		for (byte[] message : messages) {
+			batch.putInt(message.length);
+			batch.put(message);
+		}
+		return batch.array();
+	}
+}
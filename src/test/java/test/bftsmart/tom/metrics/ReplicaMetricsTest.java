@@ -0,0 +1,126 @@
+package test.bftsmart.tom.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.metrics.Histogram;
+import bftsmart.tom.metrics.HistogramSnapshot;
+import bftsmart.tom.metrics.ReplicaMetrics;
+
+public class ReplicaMetricsTest {
+
+	/**
+	 * 分位数的相对误差不超过桶的精度；
+	 */
+	@Test
+	public void testHistogramPercentiles() {
+		Histogram histogram = new Histogram();
+		for (long value = 1; value <= 100000; value++) {
+			histogram.record(value);
+		}
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(100000, snapshot.getCount());
+		assertEquals(50000.5, snapshot.getMean(), 0.001);
+		assertEquals(100000, snapshot.getMax());
+		assertWithin(50000, snapshot.getP50());
+		assertWithin(90000, snapshot.getP90());
+		assertWithin(99000, snapshot.getP99());
+		assertWithin(99900, snapshot.getP999());
+
+		histogram.record(-5);
+		assertEquals(100001, histogram.getCount());
+
+		histogram.reset();
+		snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getP99());
+		assertEquals(0, snapshot.getMax());
+	}
+
+	/**
+	 * 按照批次第一个请求的时间戳记录共识各阶段的时延；
+	 */
+	@Test
+	public void testRecordDecision() {
+		ReplicaMetrics metrics = new ReplicaMetrics();
+		TOMMessage first = new TOMMessage();
+		first.proposeReceivedTime = 1_000_000;
+		first.writeSentTime = 2_000_000;
+		first.acceptSentTime = 5_000_000;
+		first.decisionTime = 9_000_000;
+		metrics.recordDecision(10, first, 10_000_000);
+		// 通过状态传输得到的决议没有时间戳；
+		metrics.recordDecision(20, null, 10_000_000);
+
+		assertEquals(Long.valueOf(2), metrics.getCounters().get(ReplicaMetrics.CONSENSUS_DECIDED));
+		assertEquals(Long.valueOf(30), metrics.getCounters().get(ReplicaMetrics.REQUESTS_DELIVERED));
+		assertEquals(2, metrics.getHistogram(ReplicaMetrics.BATCH_SIZE).getCount());
+		// 非领导者没有创建提议的时间；
+		assertEquals(0, metrics.getHistogram(ReplicaMetrics.CONSENSUS_PROPOSE).getCount());
+		assertEquals(3000, metrics.getHistogram(ReplicaMetrics.CONSENSUS_WRITE).getMax());
+		assertEquals(4000, metrics.getHistogram(ReplicaMetrics.CONSENSUS_ACCEPT).getMax());
+		assertEquals(8000, metrics.getHistogram(ReplicaMetrics.CONSENSUS_TOTAL).getMax());
+		assertEquals(1000, metrics.getHistogram(ReplicaMetrics.DELIVERY_WAIT).getMax());
+
+		metrics.reset();
+		assertEquals(Long.valueOf(0), metrics.getCounters().get(ReplicaMetrics.CONSENSUS_DECIDED));
+		assertEquals(0, metrics.getHistogram(ReplicaMetrics.CONSENSUS_TOTAL).getCount());
+	}
+
+	/**
+	 * 注册到 JMX 后可以读取计数、瞬时值和直方图；
+	 */
+	@Test
+	public void testJmx() throws Exception {
+		ReplicaMetrics metrics = new ReplicaMetrics();
+		metrics.registerGauge(ReplicaMetrics.QUEUE_IN, () -> 7);
+		metrics.registerGauge(ReplicaMetrics.QUEUE_OUT, () -> {
+			throw new IllegalStateException("test");
+		});
+		metrics.recordExecution(2_000_000);
+		metrics.registerMBean("test-realm", 3);
+		try {
+			ObjectName name = metrics.getObjectName();
+			assertNotNull(name);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertTrue(server.isRegistered(name));
+
+			TabularData gauges = (TabularData) server.getAttribute(name, "Gauges");
+			assertEquals(1, gauges.size());
+			CompositeData gauge = gauges.get(new Object[] { ReplicaMetrics.QUEUE_IN });
+			assertEquals(7L, gauge.get("value"));
+
+			TabularData histograms = (TabularData) server.getAttribute(name, "Histograms");
+			CompositeData execution = (CompositeData) histograms.get(new Object[] { ReplicaMetrics.EXECUTION })
+					.get("value");
+			assertEquals(1L, execution.get("count"));
+			assertEquals(2000L, execution.get("max"));
+
+			// 重复注册时替换已有的对象；
+			ReplicaMetrics restarted = new ReplicaMetrics();
+			restarted.registerMBean("test-realm", 3);
+			assertEquals(name, restarted.getObjectName());
+			restarted.unregisterMBean();
+			assertFalse(server.isRegistered(name));
+		} finally {
+			metrics.unregisterMBean();
+		}
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				Math.abs(actual - expected) <= expected / 32 + 1);
+	}
+}
@@ -0,0 +1,114 @@
+package test.bftsmart.tom.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import bftsmart.tom.MessageContext;
+import bftsmart.tom.server.ParallelBatchExecutable;
+import bftsmart.tom.server.ParallelBatchExecutor;
+
+public class ParallelBatchExecutorTest {
+
+	/**
+	 * 并行执行的结果必须与顺序执行的结果完全一致；
+	 */
+	@Test
+	public void testSameResultAsSequentialExecution() {
+		Random rnd = new Random(11);
+		byte[][] commands = new byte[2000][];
+		for (int i = 0; i < commands.length; i++) {
+			// key(int) + delta(int); key < 0 means a command conflicting with all others;
+			int key = rnd.nextInt(50) == 0 ? -1 : rnd.nextInt(16);
+			commands[i] = ByteBuffer.allocate(8).putInt(key).putInt(rnd.nextInt(100)).array();
+		}
+
+		CounterService sequential = new CounterService();
+		byte[][] expected = new byte[commands.length][];
+		for (int i = 0; i < commands.length; i++) {
+			expected[i] = sequential.executeCommand(commands[i], null);
+		}
+
+		ParallelBatchExecutor executor = new ParallelBatchExecutor(8);
+		try {
+			for (int round = 0; round < 5; round++) {
+				CounterService parallel = new CounterService();
+				byte[][] replies = executor.execute(parallel, commands, null);
+
+				assertEquals(expected.length, replies.length);
+				for (int i = 0; i < expected.length; i++) {
+					assertArrayEquals(expected[i], replies[i]);
+				}
+				assertEquals(sequential.snapshot(), parallel.snapshot());
+				assertTrue(parallel.maxConcurrency > 0);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class CounterService implements ParallelBatchExecutable {
+
+		private final Map<Integer, Integer> counters = new ConcurrentHashMap<>();
+
+		private volatile int total;
+
+		private final Map<Integer, Boolean> running = new ConcurrentHashMap<>();
+
+		volatile int maxConcurrency;
+
+		@Override
+		public Collection<?> getConflictKeys(byte[] command, MessageContext msgCtx) {
+			int key = ByteBuffer.wrap(command).getInt();
+			return key < 0 ? null : Collections.singleton(key);
+		}
+
+		@Override
+		public byte[] executeCommand(byte[] command, MessageContext msgCtx) {
+			ByteBuffer buffer = ByteBuffer.wrap(command);
+			int key = buffer.getInt();
+			int delta = buffer.getInt();
+			if (key < 0) {
+				// reads and resets every counter;
+				int sum = 0;
+				for (Integer k : counters.keySet()) {
+					sum += counters.put(k, 0);
+				}
+				total += sum;
+				return ByteBuffer.allocate(4).putInt(sum).array();
+			}
+			if (running.put(key, Boolean.TRUE) != null) {
+				throw new IllegalStateException("Conflicting commands are running concurrently!");
+			}
+			maxConcurrency = Math.max(maxConcurrency, running.size());
+			try {
+				int value = counters.getOrDefault(key, 0) + delta;
+				counters.put(key, value);
+				return ByteBuffer.allocate(4).putInt(value).array();
+			} finally {
+				running.remove(key);
+			}
+		}
+
+		@Override
+		public byte[] executeUnordered(byte[] command, MessageContext msgCtx) {
+			return null;
+		}
+
+		Map<Integer, Integer> snapshot() {
+			Map<Integer, Integer> copy = new HashMap<>(counters);
+			copy.put(-1, total);
+			return copy;
+		}
+	}
+}
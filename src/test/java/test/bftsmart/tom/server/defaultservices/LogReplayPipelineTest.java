@@ -0,0 +1,133 @@
+package test.bftsmart.tom.server.defaultservices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.tom.MessageContext;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.server.defaultservices.CommandsInfo;
+import bftsmart.tom.server.defaultservices.DefaultApplicationState;
+import bftsmart.tom.server.defaultservices.LogReplayPipeline;
+
+public class LogReplayPipelineTest {
+
+	private static final int DEPTH = 2;
+
+	private static final int BATCHES = 20;
+
+	/**
+	 * 批次数量超过预取深度时仍按 CID 顺序执行，并按间隔记录执行进度；
+	 */
+	@Test
+	public void testReplayInOrder() throws Exception {
+		LogReplayPipeline pipeline = new LogReplayPipeline(state(BATCHES), 0, BATCHES - 1, DEPTH,
+				LogReplayPipeline.ReplayBatch::new);
+		List<Integer> executed = new ArrayList<>();
+		List<Integer> recorded = new ArrayList<>();
+
+		int lastCid = pipeline.replay(0, batch -> {
+			assertEquals(batch.cid, batch.commands[0][0]);
+			executed.add(batch.cid);
+		}, 8, recorded::add);
+
+		assertEquals(BATCHES - 1, lastCid);
+		assertEquals(BATCHES, pipeline.getReplayedCount());
+		for (int i = 0; i < BATCHES; i++) {
+			assertEquals(i, (int) executed.get(i));
+		}
+		assertEquals(3, recorded.size());
+		assertEquals(7, (int) recorded.get(0));
+		assertEquals(15, (int) recorded.get(1));
+		assertEquals(BATCHES - 1, (int) recorded.get(2));
+	}
+
+	/**
+	 * 后续批次的准备与当前批次的执行并发进行；
+	 */
+	@Test
+	public void testPrepareConcurrentlyWithExecution() throws Exception {
+		CountDownLatch[] prepared = new CountDownLatch[BATCHES];
+		for (int i = 0; i < BATCHES; i++) {
+			prepared[i] = new CountDownLatch(1);
+		}
+		Thread replayThread = Thread.currentThread();
+		List<Boolean> concurrent = new ArrayList<>();
+
+		LogReplayPipeline pipeline = new LogReplayPipeline(state(BATCHES), 0, BATCHES - 1, DEPTH,
+				(cid, commands, msgCtxs) -> {
+					assertFalse(Thread.currentThread() == replayThread);
+					prepared[cid].countDown();
+					return new LogReplayPipeline.ReplayBatch(cid, commands, msgCtxs);
+				});
+
+		pipeline.replay(0, batch -> {
+			// 执行当前批次时，下一个批次在预取线程中完成准备；
+			if (batch.cid + 1 < BATCHES) {
+				try {
+					concurrent.add(prepared[batch.cid + 1].await(5, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}, 8, cid -> {
+		});
+
+		assertEquals(BATCHES - 1, concurrent.size());
+		for (boolean c : concurrent) {
+			assertTrue(c);
+		}
+	}
+
+	/**
+	 * 执行批次出错时停止预取，并记录最后一个执行成功的 CID；
+	 */
+	@Test
+	public void testStopOnExecutionError() throws Exception {
+		int failedCid = 10;
+		LogReplayPipeline pipeline = new LogReplayPipeline(state(BATCHES), 0, BATCHES - 1, DEPTH,
+				LogReplayPipeline.ReplayBatch::new);
+		List<Integer> recorded = new ArrayList<>();
+
+		try {
+			pipeline.replay(0, batch -> {
+				if (batch.cid == failedCid) {
+					throw new IllegalStateException("execution error");
+				}
+			}, 4, recorded::add);
+			fail("The execution error should be thrown!");
+		} catch (IllegalStateException e) {
+			assertEquals("execution error", e.getMessage());
+		}
+
+		assertEquals(failedCid - 1, pipeline.getLastReplayedCid());
+		assertEquals(failedCid - 1, (int) recorded.get(recorded.size() - 1));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pipeline.isPrefetching() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertFalse(pipeline.isPrefetching());
+	}
+
+	/**
+	 * CID 从 0 开始的状态，每个批次只有一条内容为其 CID 的命令；
+	 */
+	private static DefaultApplicationState state(int batches) {
+		CommandsInfo[] messageBatches = new CommandsInfo[batches];
+		for (int cid = 0; cid < batches; cid++) {
+			MessageContext msgCtx = new MessageContext(0, 0, TOMMessageType.ORDERED_REQUEST, 0, cid, cid, 0, null, 0,
+					0, 0, 0, 0, cid, null, null, false);
+			messageBatches[cid] = new CommandsInfo(new byte[][] { { (byte) cid } }, new MessageContext[] { msgCtx });
+		}
+		return new DefaultApplicationState(messageBatches, -1, batches - 1, null, null, 0);
+	}
+}
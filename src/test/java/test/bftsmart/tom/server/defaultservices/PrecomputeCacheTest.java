@@ -0,0 +1,61 @@
+package test.bftsmart.tom.server.defaultservices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.consensus.app.BatchAppResultImpl;
+import bftsmart.tom.server.defaultservices.PrecomputeCache;
+
+public class PrecomputeCacheTest {
+
+	private static final byte[][] COMMANDS = { { 1, 2 }, { 3 } };
+
+	@Test
+	public void testReuseSameValue() {
+		List<String> rolledBack = new ArrayList<>();
+		PrecomputeCache cache = new PrecomputeCache(2, (cid, batchId) -> rolledBack.add(batchId));
+
+		byte[] hash = PrecomputeCache.valueHash(COMMANDS, 100);
+		assertNull(cache.reuse(5, hash));
+		BatchAppResultImpl result = new BatchAppResultImpl(new ArrayList<>(), new byte[0], "b1", new byte[0]);
+		cache.opened(5, hash, result);
+
+		// a new epoch proposes the same value;
+		assertTrue(cache.suspend(5, "b1"));
+		assertTrue(cache.suspend(5, "b1"));
+		assertEquals(1, cache.getSuspendedCount());
+		assertSame(result, cache.reuse(5, PrecomputeCache.valueHash(COMMANDS, 100)));
+		assertEquals(1, cache.getHits());
+		assertEquals(0, cache.getSuspendedCount());
+
+		assertTrue(cache.release("b1"));
+		assertTrue(rolledBack.isEmpty());
+		// unknown batches are rolled back by the caller;
+		assertFalse(cache.suspend(5, "b2"));
+	}
+
+	@Test
+	public void testOtherValueRollsBackSuspended() {
+		List<String> rolledBack = new ArrayList<>();
+		PrecomputeCache cache = new PrecomputeCache(2, (cid, batchId) -> rolledBack.add(batchId));
+
+		byte[] hash = PrecomputeCache.valueHash(COMMANDS, 100);
+		cache.opened(5, hash, new BatchAppResultImpl(new ArrayList<>(), new byte[0], "b1", new byte[0]));
+		assertTrue(cache.suspend(5, "b1"));
+
+		// the new leader proposes another timestamp;
+		assertNull(cache.reuse(5, PrecomputeCache.valueHash(COMMANDS, 101)));
+		assertEquals(1, rolledBack.size());
+		assertEquals("b1", rolledBack.get(0));
+		// the batch must not be rolled back twice;
+		assertFalse(cache.release("b1"));
+	}
+}
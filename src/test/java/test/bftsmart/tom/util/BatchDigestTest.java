@@ -0,0 +1,99 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.util.BatchDigest;
+
+public class BatchDigestTest {
+
+	private static final int SIGNATURE_SIZE = 64;
+
+	@Test
+	public void testInclusionPath() {
+		for (int count = 1; count <= 9; count++) {
+			byte[][] leaves = new byte[count][];
+			for (int i = 0; i < count; i++) {
+				leaves[i] = BatchDigest.requestDigest(new byte[] { (byte) i }, null);
+			}
+			byte[] root = BatchDigest.merkleRoot(leaves);
+			for (int i = 0; i < count; i++) {
+				byte[][] path = BatchDigest.inclusionPath(leaves, i);
+				assertArrayEquals(root, BatchDigest.rootFromPath(leaves[i], i, count, path));
+				if (count > 1) {
+					assertFalse(Arrays.equals(root, BatchDigest.rootFromPath(leaves[(i + 1) % count], i, count, path)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCachedDigestsProduceSameHash() {
+		Random rnd = new Random(7);
+		byte[][] messages = new byte[5][];
+		byte[][] signatures = new byte[5][];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = new byte[10 + rnd.nextInt(100)];
+			rnd.nextBytes(messages[i]);
+			signatures[i] = new byte[SIGNATURE_SIZE];
+			rnd.nextBytes(signatures[i]);
+		}
+		byte[] batch = batch(messages, signatures);
+
+		TOMMessage[] requests = new TOMMessage[messages.length];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = new TOMMessage();
+			requests[i].serializedMessageDigest = BatchDigest.requestDigest(messages[i], signatures[i]);
+		}
+
+		byte[] hash = BatchDigest.batchHash(batch, true, SIGNATURE_SIZE, null);
+		assertArrayEquals(hash, BatchDigest.batchHash(batch, true, SIGNATURE_SIZE, requests));
+		assertEquals(messages.length, BatchDigest.requestDigests(batch, true, SIGNATURE_SIZE).length);
+
+		// any changed byte must change the hash;
+		byte[] tampered = batch.clone();
+		tampered[tampered.length - 1] ^= 1;
+		assertFalse(Arrays.equals(hash, BatchDigest.batchHash(tampered, true, SIGNATURE_SIZE, null)));
+	}
+
+	@Test
+	public void testMalformedValue() {
+		byte[] batch = batch(new byte[][] { new byte[] { 1, 2, 3 } }, new byte[][] { null });
+		byte[] withTrailing = Arrays.copyOf(batch, batch.length + 1);
+
+		assertNull(BatchDigest.requestDigests(withTrailing, false, 0));
+		assertNull(BatchDigest.requestDigests(new byte[] { 1, 2 }, false, 0));
+		assertFalse(Arrays.equals(BatchDigest.batchHash(batch, false, 0, null),
+				BatchDigest.batchHash(withTrailing, false, 0, null)));
+	}
+
+	private static byte[] batch(byte[][] messages, byte[][] signatures) {
+		int size = 28;
+		for (int i = 0; i < messages.length; i++) {
+			size += 4 + messages[i].length + (signatures[i] == null ? 0 : signatures[i].length);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putLong(System.currentTimeMillis());
+		buffer.putInt(16);
+		buffer.putLong(42L);
+		buffer.putInt(0);
+		buffer.putInt(messages.length);
+		for (int i = 0; i < messages.length; i++) {
+			buffer.putInt(messages[i].length);
+			buffer.put(messages[i]);
+			if (signatures[i] != null) {
+				buffer.put(signatures[i]);
+			}
+		}
+		return buffer.array();
+	}
+}
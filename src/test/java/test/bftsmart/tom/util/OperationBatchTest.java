@@ -0,0 +1,77 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.tom.util.OperationBatch;
+
+public class OperationBatchTest {
+
+	@Test
+	public void testPackAndUnpack() {
+		List<byte[]> operations = Arrays.asList(new byte[] { 1, 2 }, new byte[0], null, new byte[] { 3 });
+		byte[] envelope = OperationBatch.pack(operations);
+
+		byte[][] unpacked = OperationBatch.unpack(envelope);
+		assertEquals(4, unpacked.length);
+		assertArrayEquals(new byte[] { 1, 2 }, unpacked[0]);
+		assertArrayEquals(new byte[0], unpacked[1]);
+		assertNull(unpacked[2]);
+		assertArrayEquals(new byte[] { 3 }, unpacked[3]);
+
+		assertNull(OperationBatch.unpack(new byte[] { 1, 2, 3 }));
+		assertNull(OperationBatch.unpack(Arrays.copyOf(envelope, envelope.length - 1)));
+		assertNull(OperationBatch.unpack(Arrays.copyOf(envelope, envelope.length + 1)));
+	}
+
+	/**
+	 * 信封展开后的应答按原始命令合并，普通命令的应答保持不变；
+	 */
+	@Test
+	public void testExpandAndRepack() {
+		byte[] plain = new byte[] { 9 };
+		byte[][] commands = new byte[][] { OperationBatch.pack(Arrays.asList(new byte[] { 1 }, new byte[] { 2 })),
+				plain, OperationBatch.pack(Arrays.asList(new byte[] { 3 })) };
+
+		OperationBatch.Expansion expansion = OperationBatch.expand(commands, new boolean[] { true, false, true });
+		assertTrue(expansion.isExpanded());
+		assertEquals(4, expansion.getOperations().length);
+		assertTrue(Arrays.equals(new int[] { 0, 0, 1, 2 }, expansion.origins()));
+
+		List<byte[]> responses = new ArrayList<>();
+		for (byte[] operation : expansion.getOperations()) {
+			responses.add(new byte[] { (byte) (operation[0] * 10) });
+		}
+		List<byte[]> packed = expansion.repack(responses);
+		assertEquals(3, packed.size());
+		byte[][] first = OperationBatch.unpack(packed.get(0));
+		assertArrayEquals(new byte[] { 10 }, first[0]);
+		assertArrayEquals(new byte[] { 20 }, first[1]);
+		assertArrayEquals(new byte[] { 90 }, packed.get(1));
+		assertArrayEquals(new byte[] { 30 }, OperationBatch.unpack(packed.get(2))[0]);
+
+		assertFalse(OperationBatch.expand(new byte[][] { plain }, new boolean[] { true }).isExpanded());
+	}
+
+	/**
+	 * 没有标记的命令即使符合信封的格式也不展开；
+	 */
+	@Test
+	public void testUnflaggedNotExpanded() {
+		byte[] lookalike = OperationBatch.pack(Arrays.asList(new byte[] { 1 }, new byte[] { 2 }));
+		OperationBatch.Expansion expansion = OperationBatch.expand(new byte[][] { lookalike, lookalike },
+				new boolean[] { false, true });
+		assertEquals(3, expansion.getOperations().length);
+		assertTrue(expansion.getOperations()[0] == lookalike);
+		assertTrue(Arrays.equals(new int[] { 0, 1, 1 }, expansion.origins()));
+	}
+}
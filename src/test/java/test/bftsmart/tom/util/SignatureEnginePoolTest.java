@@ -0,0 +1,86 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.SignedObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.tom.util.SignatureEnginePool;
+import bftsmart.tom.util.SignatureScheme;
+
+public class SignatureEnginePoolTest {
+
+	@Test
+	public void testSignAndVerify() throws Exception {
+		SignatureEnginePool pool = new SignatureEnginePool(2);
+		byte[] message = "hello bftsmart".getBytes();
+		byte[] tampered = "hello bftsmarT".getBytes();
+
+		for (SignatureScheme scheme : SignatureScheme.values()) {
+			KeyPair kp = scheme.newKeyPairGenerator().generateKeyPair();
+			assertEquals(scheme, SignatureScheme.forKey(kp.getPublic()));
+
+			// 复用池中的引擎时签名长度保持不变；
+			byte[] signature = pool.sign(kp.getPrivate(), message);
+			for (int i = 0; i < 5; i++) {
+				byte[] sig = pool.sign(kp.getPrivate(), message);
+				assertEquals(signature.length, sig.length);
+				assertTrue(pool.verify(kp.getPublic(), message, sig));
+				assertFalse(pool.verify(kp.getPublic(), tampered, sig));
+			}
+
+			SignedObject so = pool.sign("signed object", kp.getPrivate());
+			assertTrue(pool.verify(so, kp.getPublic()));
+		}
+	}
+
+	@Test
+	public void testConcurrentSign() throws Exception {
+		final SignatureEnginePool pool = new SignatureEnginePool(4);
+		final KeyPair kp = SignatureScheme.ED25519.newKeyPairGenerator().generateKeyPair();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			final byte[] message = ("message-" + i).getBytes();
+			results.add(executor.submit(() -> {
+				byte[] sig = pool.sign(kp.getPrivate(), message);
+				return pool.verify(kp.getPublic(), message, sig);
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsedKeys() throws Exception {
+		SignatureEnginePool pool = new SignatureEnginePool(2, 4);
+		byte[] message = "hello bftsmart".getBytes();
+		KeyPair replica = SignatureScheme.ED25519.newKeyPairGenerator().generateKeyPair();
+		byte[] replicaSignature = pool.sign(replica.getPrivate(), message);
+
+		// 客户端不断出示新的公钥；
+		for (int i = 0; i < 32; i++) {
+			KeyPair client = SignatureScheme.ED25519.newKeyPairGenerator().generateKeyPair();
+			byte[] signature = pool.sign(client.getPrivate(), message);
+			assertTrue(pool.verify(client.getPublic(), message, signature));
+			assertTrue(pool.getKeyCount() <= 4);
+			// 副本密钥被频繁使用，其引擎保留在池中并可继续复用；
+			assertTrue(pool.verify(replica.getPublic(), message, replicaSignature));
+		}
+		assertEquals(4, pool.getKeyCount());
+	}
+}